@@ -0,0 +1,94 @@
+package schema.registry.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.AvroSchemaRegistry;
+import schema.registry.SchemaInfo;
+
+/**
+ * AvroSchemaRegistry JSON to binary and back. "binary" is one record with
+ * size items, "file" is a data file of size records with ten items each.
+ *
+ * java -jar target/benchmarks.jar AvroRegistryBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvroRegistryBenchmark {
+
+    @Param({"binary", "file"})
+    public String payload;
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private File root;
+    private AvroSchemaRegistry registry;
+    private Map<String, String[]> parameters;
+    private byte[] json;
+    private byte[] binary;
+    private ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        root = BenchmarkSchemas.createRoot(schemas);
+        registry = new AvroSchemaRegistry(schemas, root);
+        parameters = Collections.singletonMap("avro.payload", new String[]{payload});
+
+        StringBuilder sb = new StringBuilder();
+        if ("file".equals(payload)) {
+            for (int i = 0; i < size; ++i) {
+                sb.append(BenchmarkSchemas.avroRecord(i, 10));
+            }
+        } else {
+            sb.append(BenchmarkSchemas.avroRecord(1, size));
+        }
+        json = sb.toString().getBytes(StandardCharsets.UTF_8);
+        serialize();
+        binary = sink.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSchemas.deleteRoot(root);
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        sink.reset();
+        registry.serialize(BenchmarkSchemas.AVRO, null, new ByteArrayInputStream(json), sink, parameters);
+        return sink.size();
+    }
+
+    @Benchmark
+    public int deserialize() throws IOException {
+        sink.reset();
+        registry.deserialize(BenchmarkSchemas.AVRO, null, new ByteArrayInputStream(binary), sink, parameters);
+        return sink.size();
+    }
+}
@@ -0,0 +1,258 @@
+package schema.registry.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.TFieldRequirementType;
+import org.apache.thrift.meta_data.FieldMetaData;
+import org.apache.thrift.meta_data.FieldValueMetaData;
+import org.apache.thrift.meta_data.ListMetaData;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+/**
+ * Hand written equivalent of the struct generated by the Thrift compiler for
+ * the following IDL, so benchmarks don't depend on the compiler:
+ *
+ * <pre>
+ * struct BenchmarkEvent {
+ *   1: i64 id,
+ *   2: string name,
+ *   3: list&lt;string&gt; tags
+ * }
+ * </pre>
+ */
+public class BenchmarkEvent implements TBase<BenchmarkEvent, BenchmarkEvent._Fields> {
+
+    private static final TStruct STRUCT_DESC = new TStruct("BenchmarkEvent");
+    private static final TField ID_FIELD_DESC = new TField("id", TType.I64, (short) 1);
+    private static final TField NAME_FIELD_DESC = new TField("name", TType.STRING, (short) 2);
+    private static final TField TAGS_FIELD_DESC = new TField("tags", TType.LIST, (short) 3);
+
+    public enum _Fields implements TFieldIdEnum {
+        ID((short) 1, "id"),
+        NAME((short) 2, "name"),
+        TAGS((short) 3, "tags");
+
+        private final short id;
+        private final String name;
+
+        _Fields(short id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public short getThriftFieldId() {
+            return id;
+        }
+
+        @Override
+        public String getFieldName() {
+            return name;
+        }
+    }
+
+    public static final Map<_Fields, FieldMetaData> metaDataMap;
+
+    static {
+        Map<_Fields, FieldMetaData> m = new EnumMap<>(_Fields.class);
+        m.put(_Fields.ID, new FieldMetaData("id", TFieldRequirementType.DEFAULT,
+                new FieldValueMetaData(TType.I64)));
+        m.put(_Fields.NAME, new FieldMetaData("name", TFieldRequirementType.DEFAULT,
+                new FieldValueMetaData(TType.STRING)));
+        m.put(_Fields.TAGS, new FieldMetaData("tags", TFieldRequirementType.DEFAULT,
+                new ListMetaData(TType.LIST, new FieldValueMetaData(TType.STRING))));
+        metaDataMap = Collections.unmodifiableMap(m);
+        FieldMetaData.addStructMetaDataMap(BenchmarkEvent.class, metaDataMap);
+    }
+
+    private long id;
+    private boolean idIsSet;
+    private String name;
+    private List<String> tags;
+
+    public BenchmarkEvent() {
+    }
+
+    public BenchmarkEvent(long id, String name, List<String> tags) {
+        this.id = id;
+        this.idIsSet = true;
+        this.name = name;
+        this.tags = tags;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    @Override
+    public void read(TProtocol iprot) throws TException {
+        iprot.readStructBegin();
+        while (true) {
+            TField field = iprot.readFieldBegin();
+            if (field.type == TType.STOP) {
+                break;
+            }
+
+            switch (field.id) {
+                case 1:
+                    if (field.type == TType.I64) {
+                        id = iprot.readI64();
+                        idIsSet = true;
+                    } else {
+                        TProtocolUtil.skip(iprot, field.type);
+                    }
+                    break;
+                case 2:
+                    if (field.type == TType.STRING) {
+                        name = iprot.readString();
+                    } else {
+                        TProtocolUtil.skip(iprot, field.type);
+                    }
+                    break;
+                case 3:
+                    if (field.type == TType.LIST) {
+                        TList list = iprot.readListBegin();
+                        tags = new ArrayList<>(list.size);
+                        for (int i = 0; i < list.size; ++i) {
+                            tags.add(iprot.readString());
+                        }
+                        iprot.readListEnd();
+                    } else {
+                        TProtocolUtil.skip(iprot, field.type);
+                    }
+                    break;
+                default:
+                    TProtocolUtil.skip(iprot, field.type);
+                    break;
+            }
+            iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+    }
+
+    @Override
+    public void write(TProtocol oprot) throws TException {
+        oprot.writeStructBegin(STRUCT_DESC);
+        if (idIsSet) {
+            oprot.writeFieldBegin(ID_FIELD_DESC);
+            oprot.writeI64(id);
+            oprot.writeFieldEnd();
+        }
+        if (name != null) {
+            oprot.writeFieldBegin(NAME_FIELD_DESC);
+            oprot.writeString(name);
+            oprot.writeFieldEnd();
+        }
+        if (tags != null) {
+            oprot.writeFieldBegin(TAGS_FIELD_DESC);
+            oprot.writeListBegin(new TList(TType.STRING, tags.size()));
+            for (String tag : tags) {
+                oprot.writeString(tag);
+            }
+            oprot.writeListEnd();
+            oprot.writeFieldEnd();
+        }
+        oprot.writeFieldStop();
+        oprot.writeStructEnd();
+    }
+
+    @Override
+    public _Fields fieldForId(int fieldId) {
+        for (_Fields f : _Fields.values()) {
+            if (f.id == fieldId) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isSet(_Fields field) {
+        switch (field) {
+            case ID:
+                return idIsSet;
+            case NAME:
+                return name != null;
+            default:
+                return tags != null;
+        }
+    }
+
+    @Override
+    public Object getFieldValue(_Fields field) {
+        switch (field) {
+            case ID:
+                return id;
+            case NAME:
+                return name;
+            default:
+                return tags;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void setFieldValue(_Fields field, Object value) {
+        switch (field) {
+            case ID:
+                idIsSet = value != null;
+                id = value == null ? 0 : (Long) value;
+                break;
+            case NAME:
+                name = (String) value;
+                break;
+            default:
+                tags = (List<String>) value;
+                break;
+        }
+    }
+
+    @Override
+    public BenchmarkEvent deepCopy() {
+        BenchmarkEvent copy = new BenchmarkEvent(id, name, tags == null ? null : new ArrayList<>(tags));
+        copy.idIsSet = idIsSet;
+        return copy;
+    }
+
+    @Override
+    public void clear() {
+        id = 0;
+        idIsSet = false;
+        name = null;
+        tags = null;
+    }
+
+    @Override
+    public int compareTo(BenchmarkEvent other) {
+        int c = Long.compare(id, other.id);
+        if (c == 0) {
+            c = String.valueOf(name).compareTo(String.valueOf(other.name));
+        }
+        return c != 0 ? c : String.valueOf(tags).compareTo(String.valueOf(other.tags));
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkEvent(id:" + id + ", name:" + name + ", tags:" + tags + ")";
+    }
+}
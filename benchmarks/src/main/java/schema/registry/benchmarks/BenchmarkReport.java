@@ -0,0 +1,106 @@
+package schema.registry.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH result files written with "-rf json", prints the change
+ * of every benchmark found in both and exits with status 1 if any got worse
+ * by more than the threshold. Throughput is better when higher, the other
+ * modes are better when lower.
+ *
+ * java -cp target/benchmarks.jar schema.registry.benchmarks.BenchmarkReport \
+ *     baseline/FilterBenchmark.json current.json [threshold percent, default 10]
+ */
+public class BenchmarkReport {
+
+    // JMH breaks the line after commas in parameter values, like "base64,\n gzip"
+    private static ObjectMapper mapper = new ObjectMapper()
+            .configure(JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS, true);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkReport baseline.json current.json [threshold-percent]");
+            System.exit(2);
+        }
+
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, JsonNode> baseline = load(new File(args[0]));
+        Map<String, JsonNode> current = load(new File(args[1]));
+
+        int regressions = 0;
+        System.out.println(String.format("%-72s %14s %14s %9s", "benchmark", "baseline", "current", "change"));
+        for (Map.Entry<String, JsonNode> e : current.entrySet()) {
+            JsonNode b = baseline.get(e.getKey());
+            JsonNode c = e.getValue();
+            if (b == null) {
+                System.out.println(String.format("%-72s %14s %14.3f %9s", e.getKey(), "-", score(c), "new"));
+                continue;
+            }
+
+            double change = (score(c) - score(b)) / score(b) * 100;
+            // positive means better
+            double gain = "thrpt".equals(c.path("mode").asText()) ? change : -change;
+            String flag = "";
+            if (gain < -threshold) {
+                flag = "  REGRESSION";
+                ++regressions;
+            } else if (gain > threshold) {
+                flag = "  improvement";
+            }
+
+            System.out.println(String.format("%-72s %14.3f %14.3f %+8.1f%%%s", e.getKey(),
+                    score(b), score(c), change, flag));
+        }
+
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println(String.format("%-72s %14.3f %14s %9s", key,
+                        score(baseline.get(key)), "-", "missing"));
+            }
+        }
+
+        System.out.println(String.format("%d regression(s) beyond %.1f%%", regressions, threshold));
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return results keyed by "ShortName.method mode param=value,..."
+     */
+    private static Map<String, JsonNode> load(File f) throws IOException {
+        Map<String, JsonNode> results = new TreeMap<>();
+        for (JsonNode result : mapper.readTree(f)) {
+            String benchmark = result.path("benchmark").asText();
+            StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.',
+                    benchmark.lastIndexOf('.') - 1) + 1));
+            key.append(' ').append(result.path("mode").asText());
+
+            Map<String, String> params = new LinkedHashMap<>();
+            JsonNode p = result.path("params");
+            for (Iterator<String> it = p.fieldNames(); it.hasNext();) {
+                String name = it.next();
+                params.put(name, p.get(name).asText().replaceAll("\\s+", ""));
+            }
+            if (!params.isEmpty()) {
+                key.append(' ').append(params.toString().replace(", ", ","));
+            }
+
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+}
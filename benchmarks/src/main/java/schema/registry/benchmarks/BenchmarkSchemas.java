@@ -0,0 +1,168 @@
+package schema.registry.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.TextFormat;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TJSONProtocol;
+
+import schema.registry.SchemaInfo;
+
+/**
+ * Schemas and payloads shared by registry benchmarks. Protobuf uses
+ * DescriptorProtos shipped with protobuf-java and Thrift uses
+ * {@link BenchmarkEvent}, so no code generator is needed, their classes are
+ * found by the parent class loader.
+ */
+class BenchmarkSchemas {
+
+    static final String AVRO = "bench-avro";
+    static final String PROTOBUF = "bench-protobuf";
+    static final String THRIFT = "bench-thrift";
+    static final String PROTOBUF_MESSAGE = "FileDescriptorProto";
+
+    private static final String AVRO_SCHEMA = "{\"type\": \"record\", \"name\": \"Event\", \"namespace\": \"%s\","
+            + " \"fields\": ["
+            + "{\"name\": \"id\", \"type\": \"long\"},"
+            + "{\"name\": \"name\", \"type\": \"string\"},"
+            + "{\"name\": \"score\", \"type\": \"double\"},"
+            + "{\"name\": \"tags\", \"type\": {\"type\": \"array\", \"items\": \"string\"}},"
+            + "{\"name\": \"items\", \"type\": {\"type\": \"array\", \"items\": {\"type\": \"record\","
+            + " \"name\": \"Item\", \"fields\": ["
+            + "{\"name\": \"key\", \"type\": \"string\"},"
+            + "{\"name\": \"value\", \"type\": \"long\"},"
+            + "{\"name\": \"note\", \"type\": [\"null\", \"string\"]}]}}}]}";
+
+    /**
+     * Creates a root directory with one Avro, Protobuf and Thrift schema.
+     */
+    static File createRoot(Map<String, SchemaInfo> schemas) throws IOException {
+        File root = Files.createTempDir();
+        addAvro(root, schemas, AVRO, "bench", Collections.<String>emptyList());
+        add(root, schemas, PROTOBUF, "protobuf", "CLASSNAME", DescriptorProtos.class.getName());
+        add(root, schemas, THRIFT, "thrift", "CLASSNAME", BenchmarkEvent.class.getName());
+        return root;
+    }
+
+    /**
+     * @param namespace Avro names must be unique across schemas of a registry
+     */
+    static void addAvro(File root, Map<String, SchemaInfo> schemas, String id, String namespace,
+            List<String> dependencies) throws IOException {
+        add(root, schemas, id, "avro", "event.avsc", String.format(AVRO_SCHEMA, namespace));
+        schemas.get(id).setDependencies(dependencies);
+    }
+
+    static void writeSchemaList(File file, Map<String, SchemaInfo> schemas) throws IOException {
+        Map<String, Map<String, Object>> list = new LinkedHashMap<>();
+        for (Map.Entry<String, SchemaInfo> e : schemas.entrySet()) {
+            SchemaInfo info = e.getValue();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("url", "http://example.com/" + e.getKey());
+            m.put("filename", info.getFilename());
+            m.put("type", info.getType());
+            m.put("sha1sum", info.getSha1sum());
+            m.put("depends", info.getDependencies());
+            list.put(e.getKey(), m);
+        }
+        new ObjectMapper().writeValue(file, list);
+    }
+
+    static void deleteRoot(File root) {
+        File[] files = root.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    deleteRoot(f);
+                } else {
+                    f.delete();
+                }
+            }
+        }
+        root.delete();
+    }
+
+    /**
+     * One Avro JSON record with the given number of tags and items.
+     */
+    static String avroRecord(int id, int items) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"id\": ").append(id)
+                .append(", \"name\": \"event-").append(id).append('"')
+                .append(", \"score\": ").append(id * 0.5)
+                .append(", \"tags\": [");
+        for (int i = 0; i < items; ++i) {
+            sb.append(i == 0 ? "" : ", ").append("\"tag-").append(i % 64).append('"');
+        }
+        sb.append("], \"items\": [");
+        for (int i = 0; i < items; ++i) {
+            sb.append(i == 0 ? "" : ", ")
+                    .append("{\"key\": \"key-").append(i).append('"')
+                    .append(", \"value\": ").append((long) i * 31)
+                    .append(", \"note\": ").append(i % 2 == 0 ? "null" : "{\"string\": \"note " + i + "\"}")
+                    .append('}');
+        }
+        return sb.append("]}\n").toString();
+    }
+
+    /**
+     * A .proto file descriptor in text format with the given number of
+     * messages of four fields each.
+     */
+    static String protobufText(int id, int messages) {
+        DescriptorProtos.FileDescriptorProto.Builder file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("event-" + id + ".proto")
+                .setPackage("bench");
+        List<DescriptorProtos.FieldDescriptorProto.Type> types = Arrays.asList(
+                DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT64,
+                DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING,
+                DescriptorProtos.FieldDescriptorProto.Type.TYPE_DOUBLE,
+                DescriptorProtos.FieldDescriptorProto.Type.TYPE_BOOL);
+        for (int i = 0; i < messages; ++i) {
+            DescriptorProtos.DescriptorProto.Builder message = file.addMessageTypeBuilder().setName("Message" + i);
+            for (int j = 0; j < types.size(); ++j) {
+                message.addFieldBuilder()
+                        .setName("field" + j)
+                        .setNumber(j + 1)
+                        .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL)
+                        .setType(types.get(j));
+            }
+        }
+        return TextFormat.printToString(file.build());
+    }
+
+    static byte[] thriftJson(int id, int tags) throws TException {
+        List<String> list = new ArrayList<>(tags);
+        for (int i = 0; i < tags; ++i) {
+            list.add("tag-" + i);
+        }
+        return new TSerializer(new TJSONProtocol.Factory()).serialize(
+                new BenchmarkEvent(id, "event-" + id, list));
+    }
+
+    private static void add(File root, Map<String, SchemaInfo> schemas, String id, String type,
+            String filename, String content) throws IOException {
+        File dir = new File(root, id);
+        dir.mkdirs();
+        Files.write(content.getBytes(StandardCharsets.UTF_8), new File(dir, filename));
+
+        SchemaInfo info = new SchemaInfo();
+        info.setType(type);
+        info.setFilename(filename);
+        info.setSha1sum(Files.hash(new File(dir, filename), Hashing.sha1()).toString());
+        schemas.put(id, info);
+    }
+}
@@ -0,0 +1,79 @@
+package schema.registry.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.FilterStreamUtil;
+
+/**
+ * Every FilterStreamUtil codec alone and in chains commonly seen in "f"
+ * parameter, FilterBenchmark compares the pipeline with the legacy chain.
+ *
+ * java -jar target/benchmarks.jar CodecBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"identity", "base64", "base64raw", "bzip2", "deflate", "gzip", "gzip:1", "pgzip",
+        "lz4", "lz4:hc", "lzf", "snappy",
+        "base64,gzip", "base64,lz4", "base64,snappy", "base64,deflate,gzip"})
+    public String filters;
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private byte[] payload;
+    private byte[] encoded;
+    private byte[] scratch = new byte[8192];
+    private ByteArrayOutputStream sink;
+
+    @Setup
+    public void setup() throws IOException {
+        payload = FilterBenchmark.newPayload(size, 42);
+        sink = new ByteArrayOutputStream(size * 2);
+        encode();
+        encoded = sink.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        sink.reset();
+        try (OutputStream o = FilterStreamUtil.filter(sink, filters)) {
+            o.write(payload);
+        }
+        return sink.size();
+    }
+
+    @Benchmark
+    public long decode() throws IOException {
+        long total = 0;
+        try (InputStream in = FilterStreamUtil.filter(new ByteArrayInputStream(encoded), filters)) {
+            int n;
+            while ((n = in.read(scratch)) > 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,101 @@
+package schema.registry.benchmarks;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.AbstractSchemaRegistry;
+import schema.registry.SchemaCodec;
+import schema.registry.SchemaInfo;
+
+/**
+ * AbstractSchemaRegistry.getAllDependencies() from the top of a dependency
+ * DAG. "chain" has one schema per level, "diamond" has two schemas per
+ * level, each depending on both schemas of the next level, so shared
+ * dependencies are reached through many paths.
+ *
+ * java -jar target/benchmarks.jar DependencyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DependencyBenchmark {
+
+    @Param({"chain", "diamond"})
+    public String shape;
+
+    @Param({"8", "12", "16"})
+    public int depth;
+
+    private AbstractSchemaRegistry registry;
+
+    @Setup
+    public void setup() {
+        int width = "diamond".equals(shape) ? 2 : 1;
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        for (int level = 0; level < depth; ++level) {
+            for (int i = 0; i < width; ++i) {
+                List<String> dependencies = new ArrayList<>();
+                if (level + 1 < depth) {
+                    for (int j = 0; j < width; ++j) {
+                        dependencies.add(id(level + 1, j));
+                    }
+                }
+
+                SchemaInfo info = new SchemaInfo();
+                info.setType("avro");
+                info.setDependencies(dependencies);
+                schemas.put(id(level, i), info);
+            }
+        }
+
+        registry = new AbstractSchemaRegistry(Collections.unmodifiableMap(schemas), new File(".")) {
+            @Override
+            public void serialize(String id, String messageName, InputStream in, OutputStream out,
+                    Map<String, String[]> parameters) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void deserialize(String id, String messageName, InputStream in, OutputStream out,
+                    Map<String, String[]> parameters) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public SchemaCodec resolve(String id, String messageName, Map<String, String[]> parameters) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Benchmark
+    public List<String> getAllDependencies() {
+        return registry.getAllDependencies(id(0, 0));
+    }
+
+    private static String id(int level, int i) {
+        return "schema-" + level + "-" + i;
+    }
+}
@@ -0,0 +1,158 @@
+package schema.registry.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+import schema.registry.FilterStreamUtil;
+
+/**
+ * Filter chains of "f" parameter, "pipeline" is FilterStreamUtil, "legacy"
+ * is the nested stream chain it replaced.
+ *
+ * java -jar target/benchmarks.jar FilterBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({"base64", "base64,snappy", "base64,deflate,gzip", "gzip"})
+    public String filters;
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    @Param({"pipeline", "legacy"})
+    public String impl;
+
+    private byte[] payload;
+    private byte[] encoded;
+    private byte[] scratch = new byte[8192];
+    private ByteArrayOutputStream sink;
+
+    @Setup
+    public void setup() throws IOException {
+        payload = newPayload(size, 42);
+        sink = new ByteArrayOutputStream(size * 2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream o = FilterStreamUtil.filter(out, filters)) {
+            o.write(payload);
+        }
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        sink.reset();
+        try (OutputStream o = "legacy".equals(impl)
+                ? legacyFilter(sink, filters) : FilterStreamUtil.filter(sink, filters)) {
+            o.write(payload);
+        }
+        return sink.size();
+    }
+
+    @Benchmark
+    public long decode() throws IOException {
+        long total = 0;
+        try (InputStream in = "legacy".equals(impl)
+                ? legacyFilter(new ByteArrayInputStream(encoded), filters)
+                : FilterStreamUtil.filter(new ByteArrayInputStream(encoded), filters)) {
+            int n;
+            while ((n = in.read(scratch)) > 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Text like payload, compressible like typical JSON messages.
+     */
+    static byte[] newPayload(int size, long seed) {
+        String[] words = {"\"id\":", "\"name\":", "\"value\":", "true", "false", "null",
+            "12345", "{", "}", "[", "]", ",", "\"example\"", "\"schema\"", "\"registry\""};
+        Random r = new Random(seed);
+        byte[] b = new byte[size];
+        int i = 0;
+        while (i < size) {
+            byte[] w = words[r.nextInt(words.length)].getBytes();
+            for (int j = 0; j < w.length && i < size; ++j) {
+                b[i++] = w[j];
+            }
+        }
+        return b;
+    }
+
+    static InputStream legacyFilter(InputStream in, String filters) throws IOException {
+        for (String f : filters.split(",")) {
+            switch (f) {
+                case "base64":
+                    in = new Base64InputStream(in);
+                    break;
+                case "deflate":
+                    in = new InflaterInputStream(in);
+                    break;
+                case "gzip":
+                    in = new GZIPInputStream(in);
+                    break;
+                case "snappy":
+                    in = new SnappyInputStream(in);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown filter " + f);
+            }
+        }
+        return in;
+    }
+
+    static OutputStream legacyFilter(OutputStream out, String filters) throws IOException {
+        for (String f : filters.split(",")) {
+            switch (f) {
+                case "base64":
+                    out = new Base64OutputStream(out);
+                    break;
+                case "deflate":
+                    out = new DeflaterOutputStream(out);
+                    break;
+                case "gzip":
+                    out = new GZIPOutputStream(out);
+                    break;
+                case "snappy":
+                    out = new SnappyOutputStream(out);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown filter " + f);
+            }
+        }
+        return out;
+    }
+}
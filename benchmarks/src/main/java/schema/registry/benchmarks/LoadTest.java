@@ -0,0 +1,714 @@
+package schema.registry.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.FilterStreamUtil;
+import schema.registry.PayloadGenerator;
+import schema.registry.SchemaCatalog;
+
+/**
+ * Replays a workload against CentralSchemaRegistry in process or against
+ * /e, /d and /i of a running instance, optionally with concurrent reloads,
+ * and checks every response against the expected one. Arguments after the
+ * command are name=value pairs:
+ *
+ * <pre>
+ * LoadTest generate schemaList=schemas.json rootDirectory=generated out=workload.jsonl
+ *     [count=10] [seed=1] [param.NAME=VALUE ...] [generator.* options of PayloadGenerator]
+ *
+ * LoadTest run workload=workload.jsonl [mode=inprocess|http]
+ *     [schemaList=schemas.json rootDirectory=generated]   required by inprocess mode and reloads
+ *     [url=http://localhost:8080/SchemaRegistry]           http mode
+ *     [threads=4] [rate=0] [duration=30] [warmup=5] [mix=e:6,d:3,i:1]
+ *     [reloadInterval=0] [report=report.json]
+ * </pre>
+ *
+ * "generate" writes an "e", a "d" request for count messages of every
+ * message of every schema and an "i" request per schema, expected results
+ * come from a single threaded run of the registry. Recorded traffic can be
+ * written in the same format, one WorkloadEntry in JSON per line.
+ *
+ * "run" picks requests by the weights of "mix", or uniformly from the
+ * workload without it. With rate=N requests are scheduled N per second in
+ * total and latency counts from the scheduled time, so a stalled server
+ * isn't hidden by fewer requests. Reloads construct a new registry every
+ * reloadInterval seconds in process, in http mode they touch schemaList so
+ * the server reloads it. Allocation is measured on the worker threads, it
+ * includes the server side only in process. Exits with 1 on any error or
+ * mismatch.
+ */
+public class LoadTest {
+
+    private static final int MAX_LOGGED_FAILURES = 10;
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || !(args[0].equals("generate") || args[0].equals("run"))) {
+            System.err.println("usage: LoadTest generate|run name=value...");
+            System.exit(2);
+        }
+
+        Properties config = new Properties();
+        for (int i = 1; i < args.length; ++i) {
+            int n = args[i].indexOf('=');
+            if (n <= 0) {
+                System.err.println("bad argument, expect name=value: " + args[i]);
+                System.exit(2);
+            }
+            config.setProperty(args[i].substring(0, n), args[i].substring(n + 1));
+        }
+
+        if (args[0].equals("generate")) {
+            generate(config);
+        } else {
+            System.exit(run(config) ? 0 : 1);
+        }
+    }
+
+    static void generate(Properties config) throws IOException, ClassNotFoundException {
+        CentralSchemaRegistry registry = new CentralSchemaRegistry(new File(require(config, "schemaList")),
+                new File(require(config, "rootDirectory")));
+        int count = Integer.parseInt(config.getProperty("count", "10"));
+        long seed = Long.parseLong(config.getProperty("seed", "1"));
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String name : config.stringPropertyNames()) {
+            if (name.startsWith("param.")) {
+                parameters.put(name.substring("param.".length()), config.getProperty(name));
+            }
+        }
+        Map<String, String[]> registryParameters = toRegistryParameters(parameters);
+        String filters = parameters.get("f");
+
+        PayloadGenerator generator = new PayloadGenerator(registry,
+                PayloadGenerator.Options.fromProperties(config), seed);
+        File out = new File(require(config, "out"));
+        int entries = 0;
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(out), StandardCharsets.UTF_8))) {
+            for (String id : registry.getSchemas().keySet()) {
+                WorkloadEntry info = new WorkloadEntry();
+                info.setOp(WorkloadEntry.INFO);
+                info.setId(id);
+                write(writer, info);
+                ++entries;
+            }
+
+            for (PayloadGenerator.Payload p : generator.generateAll(count, registryParameters)) {
+                WorkloadEntry encode = new WorkloadEntry();
+                encode.setOp(WorkloadEntry.ENCODE);
+                encode.setId(p.getId());
+                encode.setMessageName(p.getMessageName());
+                encode.setParameters(parameters);
+                encode.setBody(p.getText());
+                encode.setExpected(p.getBinary());
+                write(writer, encode);
+
+                ByteArrayOutputStream filtered = new ByteArrayOutputStream();
+                try (OutputStream o = FilterStreamUtil.filter(filtered, filters)) {
+                    o.write(p.getBinary());
+                }
+                ByteArrayOutputStream text = new ByteArrayOutputStream();
+                registry.deserialize(p.getId(), p.getMessageName(), new ByteArrayInputStream(p.getBinary()),
+                        text, registryParameters);
+
+                WorkloadEntry decode = new WorkloadEntry();
+                decode.setOp(WorkloadEntry.DECODE);
+                decode.setId(p.getId());
+                decode.setMessageName(p.getMessageName());
+                decode.setParameters(parameters);
+                decode.setBody(filtered.toByteArray());
+                decode.setExpected(text.toByteArray());
+                write(writer, decode);
+                entries += 2;
+            }
+        }
+
+        System.out.println("wrote " + entries + " requests to " + out);
+    }
+
+    static boolean run(Properties config) throws Exception {
+        List<WorkloadEntry> workload = load(new File(require(config, "workload")));
+        if (workload.isEmpty()) {
+            throw new IllegalArgumentException("empty workload");
+        }
+
+        String mode = config.getProperty("mode", "inprocess");
+        int threads = Integer.parseInt(config.getProperty("threads", "4"));
+        double rate = Double.parseDouble(config.getProperty("rate", "0"));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(config.getProperty("duration", "30")));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(config.getProperty("warmup", "5")));
+        long reloadInterval = TimeUnit.SECONDS.toMillis(Long.parseLong(config.getProperty("reloadInterval", "0")));
+
+        final Target target;
+        if (mode.equals("inprocess")) {
+            target = new InProcessTarget(new File(require(config, "schemaList")),
+                    new File(require(config, "rootDirectory")));
+        } else if (mode.equals("http")) {
+            target = new HttpTarget(config.getProperty("url", "http://localhost:8080/SchemaRegistry"),
+                    config.getProperty("schemaList"));
+        } else {
+            throw new IllegalArgumentException("unknown mode " + mode);
+        }
+
+        final Mix mix = new Mix(workload, config.getProperty("mix"));
+        final long start = System.nanoTime();
+        final long measureFrom = start + warmup;
+        final long end = measureFrom + duration;
+        final long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        final AtomicLong tickets = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            Worker w = new Worker(target, mix, start, measureFrom, end, intervalNanos, tickets, failures);
+            w.setName("load-test-" + i);
+            workers.add(w);
+        }
+
+        Reloader reloader = null;
+        if (reloadInterval > 0) {
+            reloader = new Reloader(target, reloadInterval, end);
+            reloader.start();
+        }
+        for (Worker w : workers) {
+            w.start();
+        }
+        for (Worker w : workers) {
+            w.join();
+        }
+        if (reloader != null) {
+            reloader.join();
+        }
+
+        Map<String, Object> report = report(mode, threads, rate, duration, workers, reloader);
+        String reportFile = config.getProperty("report");
+        if (reportFile != null) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(new File(reportFile), report);
+        }
+
+        return failures.get() == 0;
+    }
+
+    private static Map<String, Object> report(String mode, int threads, double rate,
+            long duration, List<Worker> workers, Reloader reloader) {
+        double seconds = duration / 1e9;
+        Map<String, OpStats> ops = new TreeMap<>();
+        OpStats all = new OpStats();
+        long allocated = 0;
+        for (Worker w : workers) {
+            allocated += w.allocatedBytes;
+            for (Map.Entry<String, OpStats> e : w.stats.entrySet()) {
+                OpStats s = ops.get(e.getKey());
+                if (s == null) {
+                    s = new OpStats();
+                    ops.put(e.getKey(), s);
+                }
+                s.add(e.getValue());
+                all.add(e.getValue());
+            }
+        }
+        Map<String, OpStats> rows = new LinkedHashMap<>(ops);
+        rows.put("all", all);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", mode);
+        report.put("threads", threads);
+        report.put("rate", rate);
+        report.put("durationSeconds", seconds);
+        report.put("reloads", reloader == null ? 0 : reloader.reloads);
+        report.put("reloadMillis", reloader == null ? 0 : reloader.nanos / 1000000);
+        report.put("allocatedBytesPerSecond", allocated < 0 ? -1 : (long) (allocated / seconds));
+        report.put("allocatedBytesPerRequest", allocated < 0 || all.requests == 0 ? -1 : allocated / all.requests);
+
+        System.out.println(String.format("mode=%s threads=%d rate=%s duration=%.0fs reloads=%s",
+                mode, threads, rate > 0 ? String.valueOf(rate) : "unlimited", seconds, report.get("reloads")));
+        System.out.println(String.format("%-4s %10s %12s %8s %10s %9s %9s %9s %9s %9s",
+                "op", "requests", "requests/s", "errors", "mismatches",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        Map<String, Object> opReports = new LinkedHashMap<>();
+        for (Map.Entry<String, OpStats> e : rows.entrySet()) {
+            OpStats s = e.getValue();
+            long[] latencies = s.sortedLatencies();
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("requests", s.requests);
+            r.put("requestsPerSecond", s.requests / seconds);
+            r.put("errors", s.errors);
+            r.put("mismatches", s.mismatches);
+            r.put("bytesIn", s.bytesIn);
+            r.put("bytesOut", s.bytesOut);
+            r.put("p50Millis", percentile(latencies, 0.5));
+            r.put("p90Millis", percentile(latencies, 0.9));
+            r.put("p99Millis", percentile(latencies, 0.99));
+            r.put("p999Millis", percentile(latencies, 0.999));
+            r.put("maxMillis", percentile(latencies, 1));
+            opReports.put(e.getKey(), r);
+
+            System.out.println(String.format("%-4s %10d %12.1f %8d %10d %9.3f %9.3f %9.3f %9.3f %9.3f",
+                    e.getKey(), s.requests, s.requests / seconds, s.errors, s.mismatches,
+                    r.get("p50Millis"), r.get("p90Millis"), r.get("p99Millis"),
+                    r.get("p999Millis"), r.get("maxMillis")));
+        }
+        report.put("ops", opReports);
+
+        if (allocated >= 0) {
+            System.out.println(String.format("allocation on worker threads: %.1f MB/s, %d bytes/request",
+                    allocated / seconds / 1048576, report.get("allocatedBytesPerRequest")));
+        }
+        return report;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1e6;
+    }
+
+    private static List<WorkloadEntry> load(File f) throws IOException {
+        List<WorkloadEntry> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (!line.trim().isEmpty()) {
+                    entries.add(mapper.readValue(line, WorkloadEntry.class));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void write(BufferedWriter writer, WorkloadEntry entry) throws IOException {
+        writer.write(mapper.writeValueAsString(entry));
+        writer.newLine();
+    }
+
+    private static String require(Properties config, String name) {
+        String value = config.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing argument " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String[]> toRegistryParameters(Map<String, String> parameters) {
+        Map<String, String[]> m = new HashMap<>();
+        for (Map.Entry<String, String> e : parameters.entrySet()) {
+            m.put(e.getKey(), new String[]{e.getValue()});
+        }
+        return m;
+    }
+
+    /**
+     * Response body with filters in "f" undone, so it's comparable with the
+     * expected one.
+     */
+    private static byte[] unfilter(WorkloadEntry entry, byte[] response) throws IOException {
+        String filters = entry.getParameters().get("f");
+        if (!WorkloadEntry.ENCODE.equals(entry.getOp()) || filters == null || filters.isEmpty()) {
+            return response;
+        }
+        try (InputStream in = FilterStreamUtil.filter(new ByteArrayInputStream(response), filters)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    interface Target {
+
+        byte[] execute(WorkloadEntry entry) throws IOException;
+
+        /**
+         * @return false if the target can't reload
+         */
+        boolean reload() throws IOException;
+    }
+
+    static class InProcessTarget implements Target {
+
+        private final File schemaList;
+        private final File rootDirectory;
+        private final AtomicReference<CentralSchemaRegistry> registry = new AtomicReference<>();
+
+        InProcessTarget(File schemaList, File rootDirectory) throws IOException, ClassNotFoundException {
+            this.schemaList = schemaList;
+            this.rootDirectory = rootDirectory;
+            registry.set(new CentralSchemaRegistry(schemaList, rootDirectory));
+        }
+
+        @Override
+        public byte[] execute(WorkloadEntry entry) throws IOException {
+            CentralSchemaRegistry r = registry.get();
+            String filters = entry.getParameters().get("f");
+            Map<String, String[]> parameters = toRegistryParameters(entry.getParameters());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            switch (entry.getOp()) {
+                case WorkloadEntry.ENCODE:
+                    try (OutputStream filterOut = FilterStreamUtil.filter(out, filters)) {
+                        r.serialize(entry.getId(), entry.getMessageName(),
+                                new ByteArrayInputStream(entry.getBody()), filterOut, parameters);
+                    }
+                    break;
+                case WorkloadEntry.DECODE:
+                    try (InputStream filterIn = FilterStreamUtil.filter(
+                            new ByteArrayInputStream(entry.getBody()), filters)) {
+                        r.deserialize(entry.getId(), entry.getMessageName(), filterIn, out, parameters);
+                    }
+                    break;
+                case WorkloadEntry.INFO:
+                    SchemaCatalog.Snapshot snapshot = r.getCatalog().get(entry.getId());
+                    if (snapshot == null) {
+                        throw new IOException("schema ID isn't found");
+                    }
+                    return snapshot.getBytes();
+                default:
+                    throw new IllegalArgumentException("unknown op " + entry.getOp());
+            }
+
+            return out.toByteArray();
+        }
+
+        @Override
+        public boolean reload() throws IOException {
+            try {
+                registry.set(new CentralSchemaRegistry(schemaList, rootDirectory));
+                return true;
+            } catch (ClassNotFoundException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    static class HttpTarget implements Target {
+
+        private final String url;
+        private final File schemaList;
+
+        HttpTarget(String url, String schemaList) {
+            this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+            this.schemaList = schemaList == null ? null : new File(schemaList);
+        }
+
+        @Override
+        public byte[] execute(WorkloadEntry entry) throws IOException {
+            StringBuilder sb = new StringBuilder(url).append('/').append(entry.getOp())
+                    .append('/').append(URLEncoder.encode(entry.getId(), "UTF-8"));
+            char separator = '?';
+            if (entry.getMessageName() != null) {
+                sb.append(separator).append("m=").append(URLEncoder.encode(entry.getMessageName(), "UTF-8"));
+                separator = '&';
+            }
+            for (Map.Entry<String, String> e : entry.getParameters().entrySet()) {
+                sb.append(separator).append(URLEncoder.encode(e.getKey(), "UTF-8"))
+                        .append('=').append(URLEncoder.encode(e.getValue(), "UTF-8"));
+                separator = '&';
+            }
+
+            HttpURLConnection conn = (HttpURLConnection) new URL(sb.toString()).openConnection();
+            if (entry.getBody() != null) {
+                conn.setDoOutput(true);
+                conn.setRequestMethod("POST");
+                conn.setRequestProperty("Content-Type", "application/octet-stream");
+                conn.setFixedLengthStreamingMode(entry.getBody().length);
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(entry.getBody());
+                }
+            }
+
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                InputStream err = conn.getErrorStream();
+                String message = err == null ? "" : new String(ByteStreams.toByteArray(err),
+                        StandardCharsets.UTF_8).trim();
+                if (err != null) {
+                    err.close();
+                }
+                throw new IOException("HTTP " + status + " " + message);
+            }
+
+            try (InputStream in = conn.getInputStream()) {
+                return ByteStreams.toByteArray(in);
+            }
+        }
+
+        @Override
+        public boolean reload() {
+            return schemaList != null && schemaList.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Picks workload entries by weights of their ops, or uniformly.
+     */
+    static class Mix {
+
+        private final List<List<WorkloadEntry>> groups = new ArrayList<>();
+        private final double[] cumulativeWeights;
+
+        Mix(List<WorkloadEntry> workload, String spec) {
+            if (spec == null || spec.isEmpty()) {
+                groups.add(workload);
+                cumulativeWeights = new double[]{1};
+                return;
+            }
+
+            Map<String, List<WorkloadEntry>> byOp = new HashMap<>();
+            for (WorkloadEntry e : workload) {
+                List<WorkloadEntry> list = byOp.get(e.getOp());
+                if (list == null) {
+                    list = new ArrayList<>();
+                    byOp.put(e.getOp(), list);
+                }
+                list.add(e);
+            }
+
+            String[] parts = spec.split(",");
+            cumulativeWeights = new double[parts.length];
+            double total = 0;
+            for (int i = 0; i < parts.length; ++i) {
+                String[] kv = parts[i].trim().split(":");
+                List<WorkloadEntry> list = byOp.get(kv[0]);
+                if (list == null) {
+                    throw new IllegalArgumentException("no " + kv[0] + " request in workload");
+                }
+                groups.add(list);
+                total += kv.length > 1 ? Double.parseDouble(kv[1]) : 1;
+                cumulativeWeights[i] = total;
+            }
+        }
+
+        WorkloadEntry next(ThreadLocalRandom random) {
+            int i = 0;
+            if (groups.size() > 1) {
+                double w = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+                while (i < cumulativeWeights.length - 1 && w >= cumulativeWeights[i]) {
+                    ++i;
+                }
+            }
+            List<WorkloadEntry> group = groups.get(i);
+            return group.get(random.nextInt(group.size()));
+        }
+    }
+
+    static class OpStats {
+
+        long requests;
+        long errors;
+        long mismatches;
+        long bytesIn;
+        long bytesOut;
+        long[] latencies = new long[1024];
+        int size;
+
+        void record(long nanos) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+        }
+
+        void add(OpStats other) {
+            requests += other.requests;
+            errors += other.errors;
+            mismatches += other.mismatches;
+            bytesIn += other.bytesIn;
+            bytesOut += other.bytesOut;
+            for (int i = 0; i < other.size; ++i) {
+                record(other.latencies[i]);
+            }
+        }
+
+        long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    static class Worker extends Thread {
+
+        private final Target target;
+        private final Mix mix;
+        private final long start;
+        private final long measureFrom;
+        private final long end;
+        private final long intervalNanos;
+        private final AtomicLong tickets;
+        private final AtomicLong failures;
+        final Map<String, OpStats> stats = new HashMap<>();
+        /**
+         * Bytes allocated by this thread while measuring, -1 if unsupported.
+         */
+        long allocatedBytes = -1;
+
+        Worker(Target target, Mix mix, long start, long measureFrom, long end, long intervalNanos,
+                AtomicLong tickets, AtomicLong failures) {
+            this.target = target;
+            this.mix = mix;
+            this.start = start;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.intervalNanos = intervalNanos;
+            this.tickets = tickets;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long allocatedAtStart = -1;
+
+            while (true) {
+                long scheduled = System.nanoTime();
+                if (intervalNanos > 0) {
+                    scheduled = start + tickets.getAndIncrement() * intervalNanos;
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        sleepNanos(wait);
+                    }
+                }
+                if (scheduled >= end) {
+                    break;
+                }
+
+                boolean measuring = scheduled >= measureFrom;
+                if (measuring && allocatedAtStart < 0) {
+                    allocatedAtStart = allocatedBytes();
+                }
+
+                WorkloadEntry entry = mix.next(random);
+                boolean error = false;
+                boolean mismatch = false;
+                byte[] response = null;
+                try {
+                    response = target.execute(entry);
+                    mismatch = entry.getExpected() != null
+                            && !Arrays.equals(entry.getExpected(), unfilter(entry, response));
+                } catch (Exception ex) {
+                    error = true;
+                    log(entry, ex.toString());
+                }
+                long latency = System.nanoTime() - scheduled;
+                if (mismatch) {
+                    log(entry, "response differs from the expected one");
+                }
+
+                if (measuring) {
+                    OpStats s = stats.get(entry.getOp());
+                    if (s == null) {
+                        s = new OpStats();
+                        stats.put(entry.getOp(), s);
+                    }
+                    ++s.requests;
+                    s.errors += error ? 1 : 0;
+                    s.mismatches += mismatch ? 1 : 0;
+                    s.bytesIn += entry.getBody() == null ? 0 : entry.getBody().length;
+                    s.bytesOut += response == null ? 0 : response.length;
+                    s.record(latency);
+                }
+            }
+
+            if (allocatedAtStart >= 0) {
+                long allocated = allocatedBytes();
+                allocatedBytes = allocated < 0 ? -1 : allocated - allocatedAtStart;
+            }
+        }
+
+        private void log(WorkloadEntry entry, String message) {
+            if (failures.incrementAndGet() <= MAX_LOGGED_FAILURES) {
+                System.err.println(entry.getOp() + " " + entry.getId()
+                        + (entry.getMessageName() == null ? "" : "/" + entry.getMessageName())
+                        + " " + entry.getParameters() + ": " + message);
+            }
+        }
+
+        private static long allocatedBytes() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+            }
+            return -1;
+        }
+
+        private static void sleepNanos(long nanos) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static class Reloader extends Thread {
+
+        private final Target target;
+        private final long intervalMillis;
+        private final long end;
+        volatile int reloads;
+        volatile long nanos;
+
+        Reloader(Target target, long intervalMillis, long end) {
+            this.target = target;
+            this.intervalMillis = intervalMillis;
+            this.end = end;
+            setName("load-test-reloader");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(intervalMillis) < end) {
+                    Thread.sleep(intervalMillis);
+
+                    long t = System.nanoTime();
+                    if (!target.reload()) {
+                        System.err.println("reload isn't possible, http mode needs schemaList");
+                        return;
+                    }
+                    nanos += System.nanoTime() - t;
+                    ++reloads;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ex) {
+                System.err.println("reload failed: " + ex);
+            }
+        }
+    }
+}
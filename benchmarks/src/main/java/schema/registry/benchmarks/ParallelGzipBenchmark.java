@@ -0,0 +1,93 @@
+package schema.registry.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.ParallelGzipOutputStream;
+
+/**
+ * Throughput of pgzip by thread count, threads=0 is GZIPOutputStream as
+ * baseline. Score is ops/s of compressing one payload, multiply by size for
+ * bytes per second.
+ *
+ * java -jar target/benchmarks.jar ParallelGzipBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelGzipBenchmark {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"131072"})
+    public int chunkSize;
+
+    @Param({"16777216"})
+    public int size;
+
+    private byte[] payload;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        payload = FilterBenchmark.newPayload(size, 42);
+        if (threads > 0) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long compress() throws IOException {
+        CountingSink sink = new CountingSink();
+        try (OutputStream out = threads == 0 ? new GZIPOutputStream(sink, 8192)
+                : new ParallelGzipOutputStream(sink, Deflater.DEFAULT_COMPRESSION, chunkSize,
+                        executor, threads * 2)) {
+            out.write(payload);
+        }
+        return sink.count;
+    }
+
+    static class CountingSink extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
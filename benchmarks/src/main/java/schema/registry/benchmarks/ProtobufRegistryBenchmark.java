@@ -0,0 +1,97 @@
+package schema.registry.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.ProtobufSchemaRegistry;
+import schema.registry.SchemaInfo;
+
+/**
+ * ProtobufSchemaRegistry text format to binary and back. A single message is
+ * a file descriptor of size message types, "delimited" is size descriptors
+ * of ten message types each.
+ *
+ * java -jar target/benchmarks.jar ProtobufRegistryBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtobufRegistryBenchmark {
+
+    @Param({"false", "true"})
+    public String delimited;
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private File root;
+    private ProtobufSchemaRegistry registry;
+    private Map<String, String[]> parameters;
+    private byte[] text;
+    private byte[] binary;
+    private ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws IOException, ClassNotFoundException {
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        root = BenchmarkSchemas.createRoot(schemas);
+        registry = new ProtobufSchemaRegistry(schemas, root);
+        parameters = Collections.singletonMap("protobuf.delimited", new String[]{delimited});
+
+        StringBuilder sb = new StringBuilder();
+        if ("true".equals(delimited)) {
+            for (int i = 0; i < size; ++i) {
+                sb.append(BenchmarkSchemas.protobufText(i, 10)).append('\n');
+            }
+        } else {
+            sb.append(BenchmarkSchemas.protobufText(1, size));
+        }
+        text = sb.toString().getBytes(StandardCharsets.UTF_8);
+        serialize();
+        binary = sink.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSchemas.deleteRoot(root);
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        sink.reset();
+        registry.serialize(BenchmarkSchemas.PROTOBUF, BenchmarkSchemas.PROTOBUF_MESSAGE,
+                new ByteArrayInputStream(text), sink, parameters);
+        return sink.size();
+    }
+
+    @Benchmark
+    public int deserialize() throws IOException {
+        sink.reset();
+        registry.deserialize(BenchmarkSchemas.PROTOBUF, BenchmarkSchemas.PROTOBUF_MESSAGE,
+                new ByteArrayInputStream(binary), sink, parameters);
+        return sink.size();
+    }
+}
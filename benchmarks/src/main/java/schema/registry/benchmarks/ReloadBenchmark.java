@@ -0,0 +1,72 @@
+package schema.registry.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.SchemaInfo;
+
+/**
+ * CentralSchemaRegistry construction, which is what a reload costs, against
+ * schema count. Besides one protobuf and thrift schema the rest are Avro
+ * schemas, each depending on the previous one.
+ *
+ * java -jar target/benchmarks.jar ReloadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReloadBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int schemas;
+
+    private File root;
+    private File schemaList;
+
+    @Setup
+    public void setup() throws IOException {
+        Map<String, SchemaInfo> infos = new LinkedHashMap<>();
+        root = BenchmarkSchemas.createRoot(infos);
+        String previous = null;
+        for (int i = 0; i < schemas; ++i) {
+            String id = "bench-avro-" + i;
+            BenchmarkSchemas.addAvro(root, infos, id, "bench" + i, previous == null
+                    ? Collections.<String>emptyList() : Collections.singletonList(previous));
+            previous = id;
+        }
+
+        schemaList = new File(root, "schemas.json");
+        BenchmarkSchemas.writeSchemaList(schemaList, infos);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSchemas.deleteRoot(root);
+    }
+
+    @Benchmark
+    public CentralSchemaRegistry reload() throws IOException, ClassNotFoundException {
+        return new CentralSchemaRegistry(schemaList, root);
+    }
+}
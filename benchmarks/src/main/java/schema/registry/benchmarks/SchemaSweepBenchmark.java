@@ -0,0 +1,112 @@
+package schema.registry.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.PayloadGenerator;
+import schema.registry.SchemaInfo;
+
+/**
+ * Converts generated payloads of every message of every registered schema,
+ * one operation converts each of them once. Without "schemaList" the
+ * benchmark schemas are used, point it to a real schemas.json and its
+ * compiled root directory to cover production schemas:
+ *
+ * java -jar target/benchmarks.jar SchemaSweepBenchmark \
+ *     -p schemaList=../schemas.json -p rootDirectory=../generated
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaSweepBenchmark {
+
+    @Param({""})
+    public String schemaList;
+
+    @Param({""})
+    public String rootDirectory;
+
+    /**
+     * Larger skews favor small strings and collections.
+     */
+    @Param({"1", "4"})
+    public double skew;
+
+    private File root;
+    private CentralSchemaRegistry registry;
+    private List<PayloadGenerator.Payload> payloads;
+    private Map<String, String[]> parameters = Collections.emptyMap();
+    private ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws IOException, ClassNotFoundException {
+        if (schemaList.isEmpty()) {
+            Map<String, SchemaInfo> schemas = new LinkedHashMap<>();
+            root = BenchmarkSchemas.createRoot(schemas);
+            File list = new File(root, "schemas.json");
+            BenchmarkSchemas.writeSchemaList(list, schemas);
+            registry = new CentralSchemaRegistry(list, root);
+        } else {
+            registry = new CentralSchemaRegistry(new File(schemaList), new File(rootDirectory));
+        }
+
+        PayloadGenerator.Options options = new PayloadGenerator.Options();
+        options.setSkew(skew);
+        payloads = new PayloadGenerator(registry, options, 42).generateAll(1, parameters);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (root != null) {
+            BenchmarkSchemas.deleteRoot(root);
+        }
+    }
+
+    @Benchmark
+    public long serialize() throws IOException {
+        long total = 0;
+        for (PayloadGenerator.Payload p : payloads) {
+            sink.reset();
+            registry.serialize(p.getId(), p.getMessageName(), new ByteArrayInputStream(p.getText()),
+                    sink, parameters);
+            total += sink.size();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long deserialize() throws IOException {
+        long total = 0;
+        for (PayloadGenerator.Payload p : payloads) {
+            sink.reset();
+            registry.deserialize(p.getId(), p.getMessageName(), new ByteArrayInputStream(p.getBinary()),
+                    sink, parameters);
+            total += sink.size();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,85 @@
+package schema.registry.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import schema.registry.SchemaInfo;
+import schema.registry.ThriftSchemaRegistry;
+
+/**
+ * ThriftSchemaRegistry JSON to binary or compact protocol and back, the
+ * struct has size tags.
+ *
+ * java -jar target/benchmarks.jar ThriftRegistryBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThriftRegistryBenchmark {
+
+    @Param({"binary", "compact"})
+    public String protocol;
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private File root;
+    private ThriftSchemaRegistry registry;
+    private Map<String, String[]> parameters;
+    private byte[] json;
+    private byte[] binary;
+    private ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws IOException, ClassNotFoundException, TException {
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        root = BenchmarkSchemas.createRoot(schemas);
+        registry = new ThriftSchemaRegistry(schemas, root);
+        parameters = Collections.singletonMap("thrift.protocol", new String[]{protocol});
+        json = BenchmarkSchemas.thriftJson(1, size);
+        serialize();
+        binary = sink.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkSchemas.deleteRoot(root);
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        sink.reset();
+        registry.serialize(BenchmarkSchemas.THRIFT, null, new ByteArrayInputStream(json), sink, parameters);
+        return sink.size();
+    }
+
+    @Benchmark
+    public int deserialize() throws IOException {
+        sink.reset();
+        registry.deserialize(BenchmarkSchemas.THRIFT, null, new ByteArrayInputStream(binary), sink, parameters);
+        return sink.size();
+    }
+}
@@ -0,0 +1,77 @@
+package schema.registry.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One request of a load test workload, a line of JSON in workload files.
+ * Bodies are base64 encoded, "expected" is the response body before the
+ * filters in "f", an entry without it is only checked for success.
+ */
+public class WorkloadEntry {
+
+    public static final String ENCODE = "e";
+    public static final String DECODE = "d";
+    public static final String INFO = "i";
+
+    private String op;
+    private String id;
+    private String messageName;
+    private Map<String, String> parameters = new LinkedHashMap<>();
+    private byte[] body;
+    private byte[] expected;
+
+    /**
+     * @return "e", "d" or "i" like the URL paths
+     */
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(String op) {
+        this.op = op;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getMessageName() {
+        return messageName;
+    }
+
+    public void setMessageName(String messageName) {
+        this.messageName = messageName;
+    }
+
+    /**
+     * @return query parameters besides "m"
+     */
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Map<String, String> parameters) {
+        this.parameters = parameters;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public void setBody(byte[] body) {
+        this.body = body;
+    }
+
+    public byte[] getExpected() {
+        return expected;
+    }
+
+    public void setExpected(byte[] expected) {
+        this.expected = expected;
+    }
+}
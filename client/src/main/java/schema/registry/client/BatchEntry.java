@@ -0,0 +1,48 @@
+package schema.registry.client;
+
+import schema.registry.BatchProcessor;
+
+/**
+ * One conversion of a batch, see SchemaRegistryClient.batch().
+ */
+public class BatchEntry {
+
+    private final int direction;
+    private final String id;
+    private final String messageName;
+    private final byte[] payload;
+
+    /**
+     * @param direction BatchProcessor.ENCODE or BatchProcessor.DECODE
+     * @param messageName null or empty for the default message
+     */
+    public BatchEntry(int direction, String id, String messageName, byte[] payload) {
+        if (direction != BatchProcessor.ENCODE && direction != BatchProcessor.DECODE) {
+            throw new IllegalArgumentException("unknown direction " + direction);
+        }
+
+        this.direction = direction;
+        this.id = id;
+        this.messageName = messageName == null || messageName.isEmpty() ? null : messageName;
+        this.payload = payload;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return null for the default message
+     */
+    public String getMessageName() {
+        return messageName;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
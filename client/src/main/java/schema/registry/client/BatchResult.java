@@ -0,0 +1,43 @@
+package schema.registry.client;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Result of one batch entry, status codes are the same as /b returns.
+ */
+public class BatchResult {
+
+    private final int status;
+    private final byte[] body;
+
+    public BatchResult(int status, byte[] body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    public BatchResult(int status, String message) {
+        this(status, String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == 200;
+    }
+
+    /**
+     * @return the converted payload, or the error message in UTF-8
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return null if the entry succeeded
+     */
+    public String getMessage() {
+        return isOk() ? null : new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,150 @@
+package schema.registry.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import schema.registry.SchemaInfo;
+
+/**
+ * Local copy of /i, refreshed with If-None-Match so an unchanged catalog
+ * costs a 304 without body. The last catalog is kept in the cache directory
+ * and served while the service can't be reached, also across restarts.
+ */
+class CatalogMirror {
+
+    private static Logger logger = LoggerFactory.getLogger(CatalogMirror.class);
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    interface Listener {
+
+        void changed(Map<String, SchemaInfo> schemas);
+    }
+
+    private final Transport transport;
+    private final File catalogFile;
+    private final File etagFile;
+    private final Listener listener;
+    private volatile Map<String, SchemaInfo> schemas = Collections.emptyMap();
+    private volatile String etag;
+    private volatile long refreshedAt;
+
+    CatalogMirror(Transport transport, File cacheDirectory, Listener listener) {
+        this.transport = transport;
+        this.catalogFile = new File(cacheDirectory, "catalog.json");
+        this.etagFile = new File(cacheDirectory, "catalog.etag");
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the catalog kept by an earlier run, a broken copy is ignored and
+     * fetched again.
+     */
+    void load() {
+        if (!catalogFile.isFile() || !etagFile.isFile()) {
+            return;
+        }
+
+        try {
+            schemas = parse(Files.toByteArray(catalogFile));
+            etag = Files.toString(etagFile, StandardCharsets.UTF_8).trim();
+        } catch (IOException ex) {
+            logger.warn("fail to load cached catalog " + catalogFile, ex);
+            schemas = Collections.emptyMap();
+            etag = null;
+        }
+    }
+
+    /**
+     * @return true if the catalog changed
+     * @throws IOException if the service can't be reached or fails, the
+     * current catalog stays
+     */
+    boolean refresh() throws IOException {
+        Transport.Response response = transport.get("/i", etag);
+        if (response.getStatus() == 304) {
+            refreshedAt = System.currentTimeMillis();
+            return false;
+        }
+
+        if (response.getStatus() != 200) {
+            throw new IOException("fail to get catalog, status " + response.getStatus()
+                    + ": " + response.getMessage());
+        }
+
+        Map<String, SchemaInfo> newSchemas = parse(response.getBody());
+        schemas = newSchemas;
+        etag = response.getEtag();
+        refreshedAt = System.currentTimeMillis();
+        save(response.getBody(), response.getEtag());
+
+        listener.changed(newSchemas);
+        return true;
+    }
+
+    /**
+     * Logs instead of throwing, for the polling thread.
+     */
+    void poll() {
+        try {
+            refresh();
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("fail to refresh catalog, keep serving the cached one: {}", ex.toString());
+        }
+    }
+
+    Map<String, SchemaInfo> getSchemas() {
+        return schemas;
+    }
+
+    /**
+     * @return null before the first successful load or refresh
+     */
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return milliseconds since epoch of the last successful refresh, 0 if
+     * the catalog only comes from the cache directory
+     */
+    long getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    private static Map<String, SchemaInfo> parse(byte[] json) throws IOException {
+        return Collections.unmodifiableMap((Map<String, SchemaInfo>) mapper.readValue(json,
+                new TypeReference<Map<String, SchemaInfo>>() {
+        }));
+    }
+
+    /**
+     * Writes to temporary files and renames them, so a crash never leaves a
+     * truncated catalog behind.
+     */
+    private void save(byte[] json, String newEtag) {
+        if (newEtag == null) {
+            return;
+        }
+
+        try {
+            File tmp = new File(catalogFile.getPath() + ".tmp");
+            Files.write(json, tmp);
+            Files.move(tmp, catalogFile);
+
+            tmp = new File(etagFile.getPath() + ".tmp");
+            Files.write(newEtag, tmp, StandardCharsets.UTF_8);
+            Files.move(tmp, etagFile);
+        } catch (IOException ex) {
+            logger.warn("fail to save catalog to " + catalogFile, ex);
+        }
+    }
+}
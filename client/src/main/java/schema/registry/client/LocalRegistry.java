@@ -0,0 +1,296 @@
+package schema.registry.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.ParameterUtil;
+import schema.registry.SchemaBundle;
+import schema.registry.SchemaCodec;
+import schema.registry.SchemaInfo;
+
+/**
+ * Converts in process with a CentralSchemaRegistry built from bundles of
+ * /bundle/{ID}. Bundles are kept as zip files with their ETags in the cache
+ * directory, every rebuild extracts them into a new directory so class
+ * loaders of the previous registry never see their files change.
+ */
+class LocalRegistry {
+
+    private static Logger logger = LoggerFactory.getLogger(LocalRegistry.class);
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    private final Transport transport;
+    private final CatalogMirror catalog;
+    private final File bundleDirectory;
+    private final File registryDirectory;
+    private final Object lock = new Object();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong downloads = new AtomicLong();
+    private volatile Generation generation;
+
+    LocalRegistry(Transport transport, CatalogMirror catalog, File cacheDirectory) throws IOException {
+        this.transport = transport;
+        this.catalog = catalog;
+        this.bundleDirectory = new File(cacheDirectory, "bundles");
+        this.registryDirectory = new File(cacheDirectory, "registries");
+
+        mkdirs(bundleDirectory);
+        mkdirs(registryDirectory);
+        deleteExcept(registryDirectory, null, null);
+    }
+
+    /**
+     * @param offline don't download a missing bundle, for fallback while the
+     * service can't be reached
+     * @return a codec that throws IllegalStateException once the registry is
+     * rebuilt, callers get it again
+     */
+    SchemaCodec getCodec(String id, String messageName, Map<String, String> options, boolean offline)
+            throws IOException {
+        String key = id + "\n" + messageName + "\n" + new TreeMap<>(options);
+        Generation g = generation;
+        SchemaCodec codec = g == null ? null : g.codecs.get(key);
+        if (codec != null) {
+            return codec;
+        }
+
+        g = ensure(id, offline);
+        codec = g.registry.resolve(id, messageName, ParameterUtil.toParameters(options));
+        SchemaCodec old = g.codecs.putIfAbsent(key, codec);
+        return old == null ? codec : old;
+    }
+
+    boolean hasBundle(String id) {
+        Generation g = generation;
+        return (g != null && g.registry.getSchemas().containsKey(id)) || getBundleFile(id).isFile();
+    }
+
+    /**
+     * Revalidates every cached bundle, rebuilds the registry if any changed.
+     * Called when the catalog changes.
+     */
+    void refresh() throws IOException {
+        synchronized (lock) {
+            boolean changed = false;
+            for (String id : getBundleIds()) {
+                changed |= download(id);
+            }
+
+            if (changed && generation != null) {
+                rebuild();
+            }
+        }
+    }
+
+    long getRebuilds() {
+        return rebuilds.get();
+    }
+
+    long getDownloads() {
+        return downloads.get();
+    }
+
+    /**
+     * @return the current registry, null before the first local conversion
+     */
+    CentralSchemaRegistry getRegistry() {
+        Generation g = generation;
+        return g == null ? null : g.registry;
+    }
+
+    private Generation ensure(String id, boolean offline) throws IOException {
+        synchronized (lock) {
+            Generation g = generation;
+            if (g != null && g.registry.getSchemas().containsKey(id)) {
+                return g;
+            }
+
+            if (!getBundleFile(id).isFile()) {
+                if (offline) {
+                    throw new IOException("schema bundle of " + id
+                            + " isn't cached and the service can't be reached");
+                }
+                download(id);
+            }
+
+            rebuild();
+            g = generation;
+            if (!g.registry.getSchemas().containsKey(id)) {
+                throw new IllegalArgumentException("schema " + id + " isn't in the catalog");
+            }
+
+            return g;
+        }
+    }
+
+    /**
+     * @return true if the bundle changed
+     */
+    private boolean download(String id) throws IOException {
+        File zip = getBundleFile(id);
+        File etagFile = new File(bundleDirectory, id + ".etag");
+        String etag = zip.isFile() && etagFile.isFile()
+                ? Files.toString(etagFile, StandardCharsets.UTF_8).trim() : null;
+
+        Transport.Response response = transport.get("/bundle/" + SchemaRegistryClient.encodePath(id), etag);
+        switch (response.getStatus()) {
+            case 304:
+                return false;
+            case 200:
+                break;
+            case 404:
+                if (zip.delete()) {
+                    logger.info("schema {} is removed, deleted its bundle", id);
+                    return true;
+                }
+                throw new IllegalArgumentException("schema ID isn't found");
+            default:
+                throw new IOException("fail to get bundle of " + id + ", status " + response.getStatus()
+                        + ": " + response.getMessage());
+        }
+
+        downloads.incrementAndGet();
+        File tmp = new File(zip.getPath() + ".tmp");
+        Files.write(response.getBody(), tmp);
+        Files.move(tmp, zip);
+        if (response.getEtag() != null) {
+            Files.write(response.getEtag(), etagFile, StandardCharsets.UTF_8);
+        }
+
+        logger.debug("downloaded bundle of {}, {} bytes", id, response.getBody().length);
+        return true;
+    }
+
+    /**
+     * Schemas missing from the catalog or depending on a missing one are
+     * left out, the catalog comes from the cache directory while the service
+     * can't be reached.
+     */
+    private void rebuild() throws IOException {
+        File root = new File(registryDirectory, System.currentTimeMillis() + "-" + rebuilds.incrementAndGet());
+        mkdirs(root);
+
+        Map<String, SchemaInfo> known = catalog.getSchemas();
+        Map<String, SchemaInfo> schemas = new TreeMap<>();
+        for (String bundleId : getBundleIds()) {
+            try (InputStream in = new FileInputStream(getBundleFile(bundleId))) {
+                for (String id : SchemaBundle.extract(in, root)) {
+                    if (known.containsKey(id)) {
+                        schemas.put(id, known.get(id));
+                    }
+                }
+            }
+        }
+
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (String id : new ArrayList<>(schemas.keySet())) {
+                if (!schemas.keySet().containsAll(schemas.get(id).getDependencies())) {
+                    logger.warn("schema {} or its dependencies aren't in the catalog, left out", id);
+                    schemas.remove(id);
+                    removed = true;
+                }
+            }
+        }
+
+        File schemaList = new File(root, "schemas.json");
+        mapper.writeValue(schemaList, schemas);
+
+        CentralSchemaRegistry registry;
+        try {
+            registry = new CentralSchemaRegistry(schemaList, root);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("fail to load classes of schema bundles", ex);
+        }
+
+        Generation old = generation;
+        generation = new Generation(registry);
+        if (old != null) {
+            old.registry.retire();
+        }
+
+        // the previous directory stays for conversions still running on it
+        deleteExcept(registryDirectory, root, old == null ? null : old.registry.getRootDirectory());
+        logger.info("built local registry of {} schemas in {}", schemas.size(), root);
+    }
+
+    private List<String> getBundleIds() {
+        List<String> ids = new ArrayList<>();
+        File[] files = bundleDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(".zip")) {
+                    ids.add(f.getName().substring(0, f.getName().length() - ".zip".length()));
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    private File getBundleFile(String id) {
+        return new File(bundleDirectory, id + ".zip");
+    }
+
+    private static void deleteExcept(File dir, File keep, File keep2) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File f : files) {
+            if (!f.equals(keep) && !f.equals(keep2)) {
+                delete(f);
+            }
+        }
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+
+        if (!f.delete()) {
+            logger.warn("fail to delete {}", f);
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("fail to create directory " + dir);
+        }
+    }
+
+    /**
+     * Codecs live as long as the registry they're resolved from.
+     */
+    private static class Generation {
+
+        private final CentralSchemaRegistry registry;
+        private final ConcurrentMap<String, SchemaCodec> codecs = new ConcurrentHashMap<>();
+
+        Generation(CentralSchemaRegistry registry) {
+            this.registry = registry;
+        }
+    }
+}
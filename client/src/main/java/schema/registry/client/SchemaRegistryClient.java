@@ -0,0 +1,612 @@
+package schema.registry.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import schema.registry.BatchProcessor;
+import schema.registry.ConfigUtil;
+import schema.registry.FilterStreamUtil;
+import schema.registry.SchemaCodec;
+import schema.registry.SchemaInfo;
+
+/**
+ * Client of the schema registry service.
+ *
+ * <ul>
+ * <li>requests share a pool of keep-alive connections</li>
+ * <li>the catalog of /i is mirrored locally and polled with If-None-Match,
+ * schema files of /s are cached and only fetched again when their sha1sum in
+ * the catalog changes</li>
+ * <li>batches are split into /b requests sent in parallel on the pool,
+ * results come back in entry order</li>
+ * <li>in local mode conversions run in process on bundles of /bundle/{ID},
+ * downloaded once for the schemas in use and refreshed when the catalog
+ * changes</li>
+ * <li>while the service can't be reached the cached catalog and schema
+ * files are served, and conversions of schemas with a cached bundle run in
+ * process</li>
+ * </ul>
+ *
+ * Options of conversions are the query parameters of /e, /d and /b besides
+ * "m", "f" applies in local mode too. Thread safe.
+ */
+public class SchemaRegistryClient implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(SchemaRegistryClient.class);
+
+    private final Options options;
+    private final Transport transport;
+    private final CatalogMirror catalog;
+    private final LocalRegistry local;
+    private final File fileDirectory;
+    private final ScheduledExecutorService poller;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong remoteRequests = new AtomicLong();
+    private final AtomicLong localConversions = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Loads the catalog kept by an earlier run and refreshes it, the client
+     * starts with the cached catalog if the service can't be reached.
+     *
+     * @param url base URL of the service, "http://host:8080/SchemaRegistry"
+     */
+    public SchemaRegistryClient(String url, Options options) throws IOException {
+        this.options = options;
+
+        File cacheDirectory = options.getCacheDirectory();
+        if (cacheDirectory == null) {
+            cacheDirectory = new File(System.getProperty("java.io.tmpdir"),
+                    "schema-registry-client/" + url.replaceAll("[^A-Za-z0-9.-]", "_"));
+        }
+        fileDirectory = new File(cacheDirectory, "files");
+        if (!fileDirectory.isDirectory() && !fileDirectory.mkdirs()) {
+            throw new IOException("fail to create directory " + fileDirectory);
+        }
+
+        transport = new Transport(url, options);
+        catalog = new CatalogMirror(transport, cacheDirectory, new CatalogMirror.Listener() {
+            @Override
+            public void changed(Map<String, SchemaInfo> schemas) {
+                try {
+                    local.refresh();
+                } catch (IOException | RuntimeException ex) {
+                    logger.warn("fail to refresh schema bundles: {}", ex.toString());
+                }
+            }
+        });
+        local = new LocalRegistry(transport, catalog, cacheDirectory);
+
+        catalog.load();
+        catalog.poll();
+
+        poller = Executors.newSingleThreadScheduledExecutor(newThreadFactory("poller"));
+        if (options.getPollInterval() > 0) {
+            poller.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    catalog.poll();
+                }
+            }, options.getPollInterval(), options.getPollInterval(), TimeUnit.SECONDS);
+        }
+
+        executor = new ThreadPoolExecutor(options.getMaxConnections(), options.getMaxConnections(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory("batch"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the mirrored catalog, keyed by schema ID
+     */
+    public Map<String, SchemaInfo> getSchemas() {
+        return catalog.getSchemas();
+    }
+
+    /**
+     * @return null if the schema ID isn't in the catalog
+     */
+    public SchemaInfo getSchema(String id) {
+        return catalog.getSchemas().get(id);
+    }
+
+    /**
+     * Polls the catalog now instead of waiting for the next poll.
+     *
+     * @return true if the catalog changed
+     */
+    public boolean refresh() throws IOException {
+        return catalog.refresh();
+    }
+
+    /**
+     * Content of /s/{ID}. A cached file whose ETag equals the sha1sum in the
+     * catalog is returned without a request.
+     *
+     * @throws IllegalArgumentException if the service doesn't know the schema
+     */
+    public byte[] getSchemaFile(String id) throws IOException {
+        File file = new File(fileDirectory, id);
+        File etagFile = new File(fileDirectory, id + ".etag");
+        String etag = file.isFile() && etagFile.isFile()
+                ? Files.toString(etagFile, StandardCharsets.UTF_8).trim() : null;
+
+        SchemaInfo info = catalog.getSchemas().get(id);
+        if (etag != null && info != null && info.getSha1sum() != null
+                && etag.equals("\"" + info.getSha1sum() + "\"")) {
+            return Files.toByteArray(file);
+        }
+
+        Transport.Response response;
+        try {
+            response = transport.get("/s/" + encodePath(id), etag);
+        } catch (IOException ex) {
+            if (etag == null) {
+                throw ex;
+            }
+
+            fallbacks.incrementAndGet();
+            return Files.toByteArray(file);
+        }
+
+        remoteRequests.incrementAndGet();
+        if (response.getStatus() == 304) {
+            return Files.toByteArray(file);
+        }
+
+        byte[] body = check(response);
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(body, tmp);
+        Files.move(tmp, file);
+        if (response.getEtag() != null) {
+            Files.write(response.getEtag(), etagFile, StandardCharsets.UTF_8);
+        }
+
+        return body;
+    }
+
+    /**
+     * @param messageName null or empty for the default message
+     * @param options query parameters of /e besides "m", may be empty
+     * @throws IllegalArgumentException if the schema, message, an option or
+     * the text is invalid
+     */
+    public byte[] encode(String id, String messageName, byte[] text, Map<String, String> options)
+            throws IOException {
+        return convert(BatchProcessor.ENCODE, id, messageName, text, options);
+    }
+
+    /**
+     * @param messageName null or empty for the default message
+     * @param options query parameters of /d besides "m", may be empty
+     * @throws IllegalArgumentException if the schema, message, an option or
+     * the binary is invalid
+     */
+    public byte[] decode(String id, String messageName, byte[] binary, Map<String, String> options)
+            throws IOException {
+        return convert(BatchProcessor.DECODE, id, messageName, binary, options);
+    }
+
+    /**
+     * Entries are sent in /b requests of at most "batchSize" entries, several
+     * requests in parallel. A failed entry doesn't fail the others.
+     *
+     * @param options query parameters of /b, they apply to every entry
+     * @return results in entry order
+     */
+    public List<BatchResult> batch(List<BatchEntry> entries, final Map<String, String> options)
+            throws IOException {
+        int batchSize = this.options.getBatchSize();
+        if (entries.size() <= batchSize) {
+            return convertBatch(entries, options);
+        }
+
+        List<Future<List<BatchResult>>> futures = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i += batchSize) {
+            final List<BatchEntry> chunk = entries.subList(i, Math.min(entries.size(), i + batchSize));
+            futures.add(executor.submit(new Callable<List<BatchResult>>() {
+                @Override
+                public List<BatchResult> call() throws IOException {
+                    return convertBatch(chunk, options);
+                }
+            }));
+        }
+
+        List<BatchResult> results = new ArrayList<>(entries.size());
+        boolean done = false;
+        try {
+            for (Future<List<BatchResult>> future : futures) {
+                results.addAll(future.get());
+            }
+            done = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } finally {
+            if (!done) {
+                for (Future<List<BatchResult>> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @return request and conversion counters, the catalog ETag and age
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("catalogEtag", catalog.getEtag());
+        stats.put("catalogSchemas", catalog.getSchemas().size());
+        stats.put("catalogAgeSeconds", catalog.getRefreshedAt() == 0 ? -1
+                : (System.currentTimeMillis() - catalog.getRefreshedAt()) / 1000);
+        stats.put("remoteRequests", remoteRequests.get());
+        stats.put("localConversions", localConversions.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("bundleDownloads", local.getDownloads());
+        stats.put("localRebuilds", local.getRebuilds());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+        executor.shutdownNow();
+        transport.close();
+    }
+
+    private byte[] convert(int direction, String id, String messageName, byte[] payload,
+            Map<String, String> options) throws IOException {
+        if (this.options.isLocal()) {
+            return convertLocally(direction, id, messageName, payload, options, false);
+        }
+
+        Transport.Response response;
+        try {
+            response = transport.post((direction == BatchProcessor.ENCODE ? "/e/" : "/d/")
+                    + encodePath(id) + query(messageName, options), payload);
+        } catch (IOException ex) {
+            if (!canFallback(id)) {
+                throw ex;
+            }
+
+            fallbacks.incrementAndGet();
+            logger.debug("service can't be reached, convert {} locally: {}", id, ex.toString());
+            return convertLocally(direction, id, messageName, payload, options, true);
+        }
+
+        remoteRequests.incrementAndGet();
+        return check(response);
+    }
+
+    private List<BatchResult> convertBatch(List<BatchEntry> entries, Map<String, String> options)
+            throws IOException {
+        if (this.options.isLocal()) {
+            return convertBatchLocally(entries, options, false);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        for (BatchEntry e : entries) {
+            BatchProcessor.writeEntry(out, e.getDirection(), e.getId(), e.getMessageName(), e.getPayload());
+        }
+        out.flush();
+
+        Transport.Response response;
+        try {
+            response = transport.post("/b" + query(null, options), body.toByteArray());
+        } catch (IOException ex) {
+            if (!this.options.isFallback()) {
+                throw ex;
+            }
+
+            fallbacks.incrementAndGet();
+            logger.debug("service can't be reached, convert batch locally: {}", ex.toString());
+            return convertBatchLocally(entries, options, true);
+        }
+
+        remoteRequests.incrementAndGet();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(check(response)));
+        List<BatchResult> results = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); ++i) {
+            int status = in.readUnsignedShort();
+            byte[] result = new byte[in.readInt()];
+            in.readFully(result);
+            results.add(new BatchResult(status, result));
+        }
+
+        return results;
+    }
+
+    /**
+     * Status codes follow BatchProcessor, entries whose bundle can't be
+     * downloaded get 503.
+     */
+    private List<BatchResult> convertBatchLocally(List<BatchEntry> entries, Map<String, String> options,
+            boolean offline) {
+        List<BatchResult> results = new ArrayList<>(entries.size());
+        for (BatchEntry e : entries) {
+            if (!catalog.getSchemas().containsKey(e.getId())) {
+                results.add(new BatchResult(BatchProcessor.SC_NOT_FOUND, "schema ID isn't found"));
+                continue;
+            }
+
+            try {
+                results.add(new BatchResult(BatchProcessor.SC_OK, convertLocally(e.getDirection(), e.getId(),
+                        e.getMessageName(), e.getPayload(), options, offline)));
+            } catch (IOException ex) {
+                results.add(new BatchResult(503, ex.getMessage()));
+            } catch (RuntimeException ex) {
+                results.add(new BatchResult(BatchProcessor.SC_BAD_REQUEST, ex.getMessage()));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * A codec of a registry rebuilt in between is resolved again once.
+     * Failed conversions throw IllegalArgumentException like 400 of the
+     * service, IOException is left to bundles that can't be downloaded.
+     */
+    private byte[] convertLocally(int direction, String id, String messageName, byte[] payload,
+            Map<String, String> options, boolean offline) throws IOException {
+        localConversions.incrementAndGet();
+        for (int attempt = 0; ; ++attempt) {
+            SchemaCodec codec = local.getCodec(id, messageName, options, offline);
+            try {
+                return convert(codec, direction, payload, options.get("f"));
+            } catch (IllegalStateException ex) {
+                if (attempt > 0) {
+                    throw ex;
+                }
+            } catch (IOException ex) {
+                throw new IllegalArgumentException(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * "f" filters the output of encoding and the input of decoding, like /e
+     * and /d do.
+     */
+    private static byte[] convert(SchemaCodec codec, int direction, byte[] payload, String filters)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (direction == BatchProcessor.ENCODE) {
+            try (OutputStream filterOut = FilterStreamUtil.filter(out, filters)) {
+                codec.encode(new ByteArrayInputStream(payload), filterOut);
+            }
+        } else {
+            try (InputStream filterIn = FilterStreamUtil.filter(new ByteArrayInputStream(payload), filters)) {
+                codec.decode(filterIn, out);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private boolean canFallback(String id) {
+        return options.isFallback() && local.hasBundle(id);
+    }
+
+    /**
+     * @throws IllegalArgumentException for 400 and 404, the service rejects
+     * the request itself
+     */
+    private static byte[] check(Transport.Response response) throws IOException {
+        switch (response.getStatus()) {
+            case 200:
+                return response.getBody();
+            case 400:
+            case 404:
+                throw new IllegalArgumentException(response.getMessage());
+            default:
+                throw new IOException("status " + response.getStatus() + ": " + response.getMessage());
+        }
+    }
+
+    private static String query(String messageName, Map<String, String> options) {
+        StringBuilder sb = new StringBuilder();
+        if (messageName != null && !messageName.isEmpty()) {
+            sb.append("?m=").append(encodeQuery(messageName));
+        }
+
+        for (Map.Entry<String, String> e : options.entrySet()) {
+            sb.append(sb.length() == 0 ? '?' : '&')
+                    .append(encodeQuery(e.getKey()))
+                    .append('=')
+                    .append(encodeQuery(e.getValue()));
+        }
+
+        return sb.toString();
+    }
+
+    static String encodePath(String s) {
+        return encodeQuery(s).replace("+", "%20");
+    }
+
+    private static String encodeQuery(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "schema-registry-client-" + name + "-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    public static class Options {
+
+        private File cacheDirectory;
+        private int maxConnections = 8;
+        private int connectTimeout = 5000;
+        private int readTimeout = 60000;
+        private int pollInterval = 30;
+        private int batchSize = 256;
+        private boolean local = false;
+        private boolean fallback = true;
+
+        /**
+         * Reads client.cacheDirectory, client.maxConnections,
+         * client.connectTimeout, client.readTimeout, client.pollInterval,
+         * client.batchSize, client.local and client.fallback.
+         */
+        public static Options fromProperties(Properties config) {
+            Options options = new Options();
+            String cacheDirectory = config.getProperty("client.cacheDirectory");
+            if (cacheDirectory != null && !cacheDirectory.isEmpty()) {
+                options.setCacheDirectory(new File(cacheDirectory));
+            }
+            options.setMaxConnections(ConfigUtil.getInt(config, "client.maxConnections", options.maxConnections));
+            options.setConnectTimeout(ConfigUtil.getInt(config, "client.connectTimeout", options.connectTimeout));
+            options.setReadTimeout(ConfigUtil.getInt(config, "client.readTimeout", options.readTimeout));
+            options.setPollInterval(ConfigUtil.getInt(config, "client.pollInterval", options.pollInterval));
+            options.setBatchSize(ConfigUtil.getInt(config, "client.batchSize", options.batchSize));
+            options.setLocal(ConfigUtil.getBoolean(config, "client.local", options.local));
+            options.setFallback(ConfigUtil.getBoolean(config, "client.fallback", options.fallback));
+            return options;
+        }
+
+        /**
+         * @return null for a directory under java.io.tmpdir derived from the
+         * service URL
+         */
+        public File getCacheDirectory() {
+            return cacheDirectory;
+        }
+
+        public void setCacheDirectory(File cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+        }
+
+        /**
+         * @return pooled connections, also the parallelism of batches
+         */
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = Math.max(1, maxConnections);
+        }
+
+        /**
+         * @return milliseconds
+         */
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        /**
+         * @return milliseconds
+         */
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        /**
+         * @return seconds between catalog polls, 0 disables polling
+         */
+        public int getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(int pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        /**
+         * @return entries per /b request
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = Math.max(1, batchSize);
+        }
+
+        /**
+         * @return true to convert in process on downloaded bundles
+         */
+        public boolean isLocal() {
+            return local;
+        }
+
+        public void setLocal(boolean local) {
+            this.local = local;
+        }
+
+        /**
+         * @return true to convert in process with cached bundles while the
+         * service can't be reached
+         */
+        public boolean isFallback() {
+            return fallback;
+        }
+
+        public void setFallback(boolean fallback) {
+            this.fallback = fallback;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package schema.registry.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.ByteStreams;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * HTTP requests on a pool of keep-alive connections to one service. Response
+ * bodies are always consumed so connections go back to the pool.
+ */
+class Transport implements Closeable {
+
+    private final String url;
+    private final PoolingClientConnectionManager connections;
+    private final DefaultHttpClient http;
+
+    /**
+     * @param url base URL of the service, "http://host:8080/SchemaRegistry"
+     */
+    Transport(String url, SchemaRegistryClient.Options options) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+
+        connections = new PoolingClientConnectionManager();
+        connections.setMaxTotal(options.getMaxConnections());
+        connections.setDefaultMaxPerRoute(options.getMaxConnections());
+
+        http = new DefaultHttpClient(connections);
+        HttpParams params = http.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, options.getConnectTimeout());
+        HttpConnectionParams.setSoTimeout(params, options.getReadTimeout());
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+    }
+
+    /**
+     * @param ifNoneMatch null for an unconditional request
+     * @throws IOException if the service can't be reached
+     */
+    Response get(String path, String ifNoneMatch) throws IOException {
+        HttpGet get = new HttpGet(url + path);
+        get.setHeader("Accept-Encoding", "gzip");
+        if (ifNoneMatch != null) {
+            get.setHeader("If-None-Match", ifNoneMatch);
+        }
+
+        return execute(get);
+    }
+
+    /**
+     * @throws IOException if the service can't be reached
+     */
+    Response post(String path, byte[] body) throws IOException {
+        HttpPost post = new HttpPost(url + path);
+        post.setEntity(new ByteArrayEntity(body));
+
+        return execute(post);
+    }
+
+    private Response execute(HttpRequestBase request) throws IOException {
+        try {
+            HttpResponse response = http.execute(request);
+            HttpEntity entity = response.getEntity();
+            byte[] body = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+
+            Header encoding = response.getFirstHeader("Content-Encoding");
+            if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = ByteStreams.toByteArray(in);
+                }
+            }
+
+            Header etag = response.getFirstHeader("ETag");
+            return new Response(response.getStatusLine().getStatusCode(),
+                    etag == null ? null : etag.getValue(), body);
+        } catch (IOException | RuntimeException ex) {
+            request.abort();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() {
+        connections.shutdown();
+    }
+
+    static class Response {
+
+        private final int status;
+        private final String etag;
+        private final byte[] body;
+
+        Response(int status, String etag, byte[] body) {
+            this.status = status;
+            this.etag = etag;
+            this.body = body;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return null if the response has no ETag
+         */
+        String getEtag() {
+            return etag;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the body as error message
+         */
+        String getMessage() {
+            return new String(body, StandardCharsets.UTF_8).trim();
+        }
+    }
+}
@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +32,17 @@ public abstract class AbstractSchemaRegistry implements SchemaRegistry {
         return schemas;
     }
 
+    /**
+     * @return footprints of schemas handled by this registry, keyed by ID
+     */
+    public Map<String, SchemaFootprint> getFootprints() {
+        return Collections.emptyMap();
+    }
+
+    public Collection<SchemaClassLoader> getClassLoaders() {
+        return Collections.emptyList();
+    }
+
     public List<String> getAllDependencies(String id) {
         Set<String> result = new TreeSet<>();
 
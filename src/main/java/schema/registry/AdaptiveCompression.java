@@ -0,0 +1,280 @@
+package schema.registry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Resolves filter "auto" by compressing a sample of the output with every
+ * candidate codec, the smallest output within the CPU budget wins, and
+ * "identity" wins if no codec saves enough.
+ *
+ * Choices for full samples are cached per key, which is usually schema ID,
+ * message name and filters, so later responses skip sampling. Choices for
+ * shorter outputs are cached by their size class, they say little about
+ * large outputs of the same message.
+ */
+public class AdaptiveCompression {
+
+    public static final String ATTRIBUTE = "adaptiveCompression";
+    /**
+     * Response header carrying the filters with "auto" replaced by the
+     * chosen codec, usable as "f" parameter of decoding.
+     */
+    public static final String HEADER = "X-Filter";
+    public static final String IDENTITY = "identity";
+    public static final String DEFAULT_CANDIDATES = "lz4,snappy,gzip:1,gzip:6";
+    public static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+    public static final double DEFAULT_MAX_NANOS_PER_BYTE = 20;
+    public static final double DEFAULT_MIN_SAVING = 0.1;
+    /**
+     * The first run of a codec is often much slower, the fastest run counts.
+     */
+    private static final int TRIALS = 2;
+    private static final Splitter SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final List<String> candidates = new ArrayList<>();
+    private final int sampleSize;
+    private final double maxNanosPerByte;
+    private final double minSaving;
+    private final Cache<String, String> choices;
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Reads "filter.auto.candidates", "filter.auto.sampleSize",
+     * "filter.auto.maxNanosPerByte", "filter.auto.minSaving",
+     * "filter.auto.cacheSize" and "filter.auto.ttl".
+     */
+    public AdaptiveCompression(Properties config) throws IOException {
+        for (String candidate : SPLITTER.split(
+                config.getProperty("filter.auto.candidates", DEFAULT_CANDIDATES))) {
+            // fails early on unknown filters, "auto" isn't allowed here
+            FilterStreamUtil.filter(new ByteArrayOutputStream(), candidate).close();
+            candidates.add(candidate.toLowerCase());
+        }
+
+        sampleSize = Math.max(1, ConfigUtil.getInt(config, "filter.auto.sampleSize", DEFAULT_SAMPLE_SIZE));
+        maxNanosPerByte = ConfigUtil.getDouble(config, "filter.auto.maxNanosPerByte", DEFAULT_MAX_NANOS_PER_BYTE);
+        minSaving = ConfigUtil.getDouble(config, "filter.auto.minSaving", DEFAULT_MIN_SAVING);
+        choices = CacheBuilder.newBuilder()
+                .maximumSize(ConfigUtil.getLong(config, "filter.auto.cacheSize", 10000))
+                .expireAfterWrite(ConfigUtil.getLong(config, "filter.auto.ttl", 600), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @param listener notified of the chosen codec before anything is
+     * written to the underlying stream
+     */
+    public Selection select(String key, Listener listener) {
+        return new Selection(key, listener);
+    }
+
+    /**
+     * @return filters with "auto" replaced by the chosen codec
+     */
+    public static String resolve(String filters, String choice) {
+        List<String> resolved = new ArrayList<>();
+        for (String filter : SPLITTER.split(filters)) {
+            resolved.add(filter.equalsIgnoreCase("auto") ? choice : filter);
+        }
+
+        return Joiner.on(',').join(resolved);
+    }
+
+    public List<String> getCandidates() {
+        return candidates;
+    }
+
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getCachedChoices() {
+        return choices.size();
+    }
+
+    /**
+     * @return the candidate with the smallest output among those within CPU
+     * budget and saving at least minSaving, otherwise "identity"
+     */
+    String evaluate(byte[] sample, int length) throws IOException {
+        evaluations.incrementAndGet();
+
+        String best = IDENTITY;
+        long bestSize = (long) (length * (1 - minSaving));
+        for (String candidate : candidates) {
+            long nanos = Long.MAX_VALUE;
+            long size = 0;
+            for (int i = 0; i < TRIALS; ++i) {
+                CountingOutputStream counter = new CountingOutputStream(ByteStreams.nullOutputStream());
+                long start = System.nanoTime();
+                try (OutputStream out = FilterStreamUtil.filter(counter, candidate)) {
+                    out.write(sample, 0, length);
+                }
+                nanos = Math.min(nanos, System.nanoTime() - start);
+                size = counter.getCount();
+            }
+
+            if (nanos <= maxNanosPerByte * length && size < bestSize) {
+                best = candidate;
+                bestSize = size;
+            }
+        }
+
+        return best;
+    }
+
+    public interface Listener {
+
+        void chosen(String filter);
+    }
+
+    /**
+     * Resolves filter "auto" in one filter chain.
+     */
+    public class Selection {
+
+        private final String key;
+        private final Listener listener;
+        private boolean used;
+
+        Selection(String key, Listener listener) {
+            this.key = key;
+            this.listener = listener;
+        }
+
+        public OutputStream wrap(OutputStream out) throws IOException {
+            if (used) {
+                throw new IllegalArgumentException("filter auto can be used only once");
+            }
+            used = true;
+
+            String choice = choices.getIfPresent(key);
+            if (choice == null) {
+                return new SamplingOutputStream(out, this);
+            }
+
+            hits.incrementAndGet();
+            return chosen(out, choice);
+        }
+
+        OutputStream chosen(OutputStream out, String choice) throws IOException {
+            if (listener != null) {
+                listener.chosen(choice);
+            }
+            return FilterStreamUtil.filter(out, choice);
+        }
+    }
+
+    /**
+     * Buffers up to sampleSize bytes before choosing the codec, flush() is
+     * ignored until then as nothing has reached the underlying stream.
+     */
+    private class SamplingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final Selection selection;
+        private byte[] sample = new byte[Math.min(sampleSize, 4096)];
+        private int length;
+        private OutputStream target;
+
+        SamplingOutputStream(OutputStream out, Selection selection) {
+            this.out = out;
+            this.selection = selection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target == null) {
+                if (sample == null) {
+                    throw new IOException("stream is closed");
+                }
+
+                int n = Math.min(len, sampleSize - length);
+                if (length + n > sample.length) {
+                    sample = Arrays.copyOf(sample, Math.min(sampleSize, Math.max(length + n, sample.length * 2)));
+                }
+                System.arraycopy(b, off, sample, length, n);
+                length += n;
+                off += n;
+                len -= n;
+
+                if (length < sampleSize) {
+                    return;
+                }
+                choose();
+            }
+
+            if (len > 0) {
+                target.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (target == null && sample == null) {
+                return;
+            }
+
+            try {
+                if (target == null) {
+                    choose();
+                }
+            } finally {
+                if (target != null) {
+                    target.close();
+                } else {
+                    sample = null;
+                    out.close();
+                }
+            }
+        }
+
+        private void choose() throws IOException {
+            String key = length == sampleSize ? selection.key
+                    : selection.key + "#" + (32 - Integer.numberOfLeadingZeros(length));
+            String choice = choices.getIfPresent(key);
+            if (choice == null) {
+                choice = evaluate(sample, length);
+                choices.put(key, choice);
+            } else {
+                hits.incrementAndGet();
+            }
+
+            target = selection.chosen(out, choice);
+            target.write(sample, 0, length);
+            sample = null;
+        }
+    }
+}
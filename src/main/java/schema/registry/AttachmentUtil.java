@@ -7,8 +7,14 @@ public class AttachmentUtil {
 
     public static void attach(HttpServletRequest request, HttpServletResponse response, String filename) {
         if (request.getParameter("attachment") != null) {
-            response.setHeader("Content-Disposition", "attachment; filename=\""
-                    + filename.replace('"', '-') + "\"");
+            response.setHeader("Content-Disposition", getDisposition(filename));
         }
     }
+
+    /**
+     * @return value of "Content-Disposition" to save the response as filename
+     */
+    public static String getDisposition(String filename) {
+        return "attachment; filename=\"" + filename.replace('"', '-') + "\"";
+    }
 }
@@ -0,0 +1,114 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableInput;
+import org.apache.avro.io.DatumReader;
+
+/**
+ * Sync marker index of an Avro data file, maps each block's starting
+ * position to the number of records before it.
+ */
+public class AvroBlockIndex {
+
+    private final long[] positions;
+    private final long[] firstRecords;
+    private final long recordCount;
+
+    private AvroBlockIndex(long[] positions, long[] firstRecords, long recordCount) {
+        this.positions = positions;
+        this.firstRecords = firstRecords;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Walks all blocks of a data file without decoding records, the reader
+     * must be positioned at the first block.
+     */
+    public static AvroBlockIndex build(BlockReader<?> reader) throws IOException {
+        long[] positions = new long[16];
+        long[] firstRecords = new long[16];
+        int n = 0;
+        long total = 0;
+
+        long position = reader.previousSync();
+        while (reader.hasNext()) {
+            if (n == positions.length) {
+                positions = Arrays.copyOf(positions, n * 2);
+                firstRecords = Arrays.copyOf(firstRecords, n * 2);
+            }
+
+            positions[n] = position;
+            firstRecords[n] = total;
+            ++n;
+
+            total += reader.getBlockCount();
+            reader.nextBlock();
+            position = reader.nextBlockStart();
+        }
+
+        return new AvroBlockIndex(Arrays.copyOf(positions, n),
+                Arrays.copyOf(firstRecords, n), total);
+    }
+
+    public int getBlockCount() {
+        return positions.length;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the block containing the record at given offset, or -1 if the
+     * offset is beyond the last record.
+     */
+    public int findBlock(long offset) {
+        if (offset < 0 || offset >= recordCount) {
+            return -1;
+        }
+
+        int i = Arrays.binarySearch(firstRecords, offset);
+        if (i < 0) {
+            i = -i - 2;
+        }
+
+        // skip empty blocks sharing the same first record
+        while (i + 1 < firstRecords.length && firstRecords[i + 1] == offset) {
+            ++i;
+        }
+
+        return i;
+    }
+
+    public long getPosition(int block) {
+        return positions[block];
+    }
+
+    public long getFirstRecord(int block) {
+        return firstRecords[block];
+    }
+
+    /**
+     * A data file reader telling where the next block starts after
+     * nextBlock(). tell() includes what the decoder has buffered ahead and
+     * previousSync() is only moved when next() finishes a block.
+     */
+    public static class BlockReader<D> extends DataFileReader<D> {
+
+        public BlockReader(SeekableInput in, DatumReader<D> reader) throws IOException {
+            super(in, reader);
+        }
+
+        /**
+         * @return the position right after the sync marker of the block
+         *         just read
+         */
+        public long nextBlockStart() throws IOException {
+            blockFinished();
+            return previousSync();
+        }
+    }
+}
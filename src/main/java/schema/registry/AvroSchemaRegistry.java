@@ -2,16 +2,29 @@ package schema.registry;
 
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileStream;
 import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.file.SeekableFileInput;
+import org.apache.avro.file.SeekableInput;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
@@ -27,6 +40,13 @@ public class AvroSchemaRegistry extends AbstractSchemaRegistry {
     public static String TYPE = "avro";
     private static Logger logger = LoggerFactory.getLogger(AvroSchemaRegistry.class);
     private Map<String, Schema> avroSchemas = new HashMap<>();
+    /**
+     * Block indexes of data files keyed by content hash, they only depend on
+     * file content so they're shared by all registry instances.
+     */
+    private static Cache<String, AvroBlockIndex> blockIndexes = CacheBuilder.newBuilder()
+            .maximumSize(1024)
+            .build();
 
     public AvroSchemaRegistry(Map<String, SchemaInfo> schemas, File rootDirectory)
             throws IOException {
@@ -40,14 +60,42 @@ public class AvroSchemaRegistry extends AbstractSchemaRegistry {
             if (TYPE.equals(info.getType())) {
                 Schema schema = parser.parse(new File(rootDirectory, id + "/" + info.getFilename()));
                 avroSchemas.put(id, schema);
+                info.setFingerprint(SchemaNormalization.parsingFingerprint64(schema));
 
                 logger.debug("parsed avro schema {}({})", id, schema.getFullName());
             }
         }
     }
 
+    /**
+     * Avro has no generated classes, readers and writers aren't cached.
+     */
+    @Override
+    public Map<String, SchemaFootprint> getFootprints() {
+        Map<String, SchemaFootprint> footprints = new TreeMap<>();
+        for (Map.Entry<String, Schema> e : avroSchemas.entrySet()) {
+            footprints.put(e.getKey(), new SchemaFootprint(e.getKey(), TYPE, null,
+                    FootprintUtil.estimate(e.getValue(), FootprintUtil.newVisitedSet()), 0, 0));
+        }
+
+        return footprints;
+    }
+
     @Override
     public void serialize(String id, String messageName, InputStream in, OutputStream out, Map<String, String[]> parameters) throws IOException {
+        resolve(id, messageName, parameters).encode(in, out);
+    }
+
+    @Override
+    public void deserialize(String id, String messageName, InputStream in, OutputStream out, Map<String, String[]> parameters) throws IOException {
+        resolve(id, messageName, parameters).decode(in, out);
+    }
+
+    /**
+     * Avro schemas have no message names, messageName is ignored.
+     */
+    @Override
+    public SchemaCodec resolve(String id, String messageName, Map<String, String[]> parameters) {
         Schema schema = getSchema(id);
 
         if (wantsDataFile(parameters)) {
@@ -56,38 +104,21 @@ public class AvroSchemaRegistry extends AbstractSchemaRegistry {
                 codec = "null";
             }
 
-            serializeDataFile(schema, in, out,
-                    CodecFactory.fromString(codec));
-        } else {
-            convertRecord(schema,
-                    DecoderFactory.get().jsonDecoder(schema, in),
-                    EncoderFactory.get().binaryEncoder(out, null));
-        }
-    }
-
-    @Override
-    public void deserialize(String id, String messageName, InputStream in, OutputStream out, Map<String, String[]> parameters) throws IOException {
-        Schema schema = getSchema(id);
+            CodecFactory codecFactory;
+            try {
+                codecFactory = CodecFactory.fromString(codec);
+            } catch (AvroRuntimeException ex) {
+                throw new IllegalArgumentException("invalid avro.codec: " + codec, ex);
+            }
 
-        if (wantsDataFile(parameters)) {
-            // only use the writer schema embedded in file
-            deserializeDataFile(in, out);
+            return new DataFileCodec(id, schema, codecFactory,
+                    getLongParameter(parameters, "avro.offset", -1),
+                    getLongParameter(parameters, "avro.limit", -1));
         } else {
-            convertRecord(schema,
-                    DecoderFactory.get().binaryDecoder(in, null),
-                    EncoderFactory.get().jsonEncoder(schema, out));
+            return new RecordCodec(id, schema);
         }
     }
 
-    private void convertRecord(Schema schema, Decoder decoder, Encoder encoder) throws IOException {
-        GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>(schema);
-        GenericRecord record = reader.read(null, decoder);
-
-        GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
-        writer.write(record, encoder);
-        encoder.flush();
-    }
-
     private void serializeDataFile(Schema schema, InputStream in, OutputStream out, CodecFactory c) throws IOException {
         GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
 
@@ -128,7 +159,95 @@ public class AvroSchemaRegistry extends AbstractSchemaRegistry {
         }
     }
 
-    private Schema getSchema(String id) {
+    /**
+     * Spools the data file to a temporary file, then reads at most limit
+     * records starting from offset, limit &lt; 0 means no limit.
+     */
+    private void deserializeDataFile(InputStream in, OutputStream out, long offset, long limit)
+            throws IOException {
+        File spool = File.createTempFile("avro-", ".spool");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            try (DigestInputStream din = new DigestInputStream(in, digest);
+                    FileOutputStream fout = new FileOutputStream(spool)) {
+                ByteStreams.copy(din, fout);
+            }
+
+            String key = BaseEncoding.base16().lowerCase().encode(digest.digest());
+            try (SeekableFileInput sin = new SeekableFileInput(spool)) {
+                deserializeDataFile(sin, key, out, offset, limit);
+            }
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        } finally {
+            if (!spool.delete()) {
+                logger.warn("fail to delete spool file {}", spool);
+            }
+        }
+    }
+
+    /**
+     * Reads at most limit records starting from offset, limit &lt; 0 means
+     * no limit.
+     *
+     * @param in seekable data file, a server local file or a spooled upload
+     * @param key identifies the file content, used to cache the block index
+     */
+    public void deserializeDataFile(SeekableInput in, String key, OutputStream out,
+            long offset, long limit) throws IOException {
+        GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>();
+
+        try (AvroBlockIndex.BlockReader<GenericRecord> fin = new AvroBlockIndex.BlockReader<>(in, reader)) {
+            Schema schema = fin.getSchema();
+            reader.setSchema(schema);
+
+            AvroBlockIndex index = blockIndexes.getIfPresent(key);
+            if (index == null) {
+                index = AvroBlockIndex.build(fin);
+                blockIndexes.put(key, index);
+                logger.debug("built block index for {}, {} blocks, {} records",
+                        key, index.getBlockCount(), index.getRecordCount());
+            }
+
+            Encoder encoder = EncoderFactory.get().jsonEncoder(schema, out);
+            GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(schema);
+
+            int block = index.findBlock(offset);
+            if (block >= 0 && limit != 0) {
+                fin.seek(index.getPosition(block));
+
+                GenericRecord record = null;
+                for (long i = index.getFirstRecord(block); i < offset && fin.hasNext(); ++i) {
+                    record = fin.next(record);
+                }
+
+                for (long i = 0; (limit < 0 || i < limit) && fin.hasNext(); ++i) {
+                    record = fin.next(record);
+                    writer.write(record, encoder);
+                }
+            }
+
+            encoder.flush();
+        }
+    }
+
+    private long getLongParameter(Map<String, String[]> parameters, String name, long defaultValue) {
+        String value = ParameterUtil.getParameter(parameters, name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid " + name + ": " + value);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the schema isn't an Avro schema
+     */
+    public Schema getSchema(String id) {
         Schema schema = avroSchemas.get(id);
         if (schema == null) {
             throw new IllegalArgumentException("unknown schema ID");
@@ -140,4 +259,76 @@ public class AvroSchemaRegistry extends AbstractSchemaRegistry {
     private boolean wantsDataFile(Map<String, String[]> parameters) {
         return "file".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "avro.payload"));
     }
+
+    /**
+     * GenericDatumReader and GenericDatumWriter keep no state between calls
+     * besides thread local resolvers, so one pair serves all threads.
+     */
+    private static class RecordCodec extends SchemaCodec {
+
+        private final Schema schema;
+        private final GenericDatumReader<GenericRecord> reader;
+        private final GenericDatumWriter<GenericRecord> writer;
+
+        RecordCodec(String id, Schema schema) {
+            super(id, null);
+            this.schema = schema;
+            this.reader = new GenericDatumReader<>(schema);
+            this.writer = new GenericDatumWriter<>(schema);
+        }
+
+        @Override
+        public void encode(InputStream in, OutputStream out) throws IOException {
+            convert(DecoderFactory.get().jsonDecoder(schema, in),
+                    EncoderFactory.get().binaryEncoder(out, null));
+        }
+
+        @Override
+        public void decode(InputStream in, OutputStream out) throws IOException {
+            convert(DecoderFactory.get().binaryDecoder(in, null),
+                    EncoderFactory.get().jsonEncoder(schema, out));
+        }
+
+        private void convert(Decoder decoder, Encoder encoder) throws IOException {
+            writer.write(reader.read(null, decoder), encoder);
+            encoder.flush();
+        }
+    }
+
+    /**
+     * Data file readers and writers close their streams, they're shielded
+     * to leave closing to the caller.
+     */
+    private class DataFileCodec extends SchemaCodec {
+
+        private final Schema schema;
+        private final CodecFactory codecFactory;
+        private final long offset;
+        private final long limit;
+
+        DataFileCodec(String id, Schema schema, CodecFactory codecFactory, long offset, long limit) {
+            super(id, null);
+            this.schema = schema;
+            this.codecFactory = codecFactory;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public void encode(InputStream in, OutputStream out) throws IOException {
+            serializeDataFile(schema, in, FilterStreamUtil.shield(out), codecFactory);
+        }
+
+        @Override
+        public void decode(InputStream in, OutputStream out) throws IOException {
+            in = FilterStreamUtil.shield(in);
+
+            // only use the writer schema embedded in file
+            if (offset < 0 && limit < 0) {
+                deserializeDataFile(in, out);
+            } else {
+                deserializeDataFile(in, out, Math.max(offset, 0), limit);
+            }
+        }
+    }
 }
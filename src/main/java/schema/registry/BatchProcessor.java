@@ -0,0 +1,311 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Converts a stream of framed entries of different schemas in parallel,
+ * results are written in request order.
+ *
+ * Request entry, all integers are big endian:
+ * <pre>
+ *   u8  direction, 'e' to serialize, 'd' to deserialize
+ *   u16 length of schema ID, then schema ID in UTF-8
+ *   u16 length of message name, then message name in UTF-8, empty for default message
+ *   u32 length of payload, then payload
+ * </pre>
+ *
+ * Response entry:
+ * <pre>
+ *   u16 status, same as HTTP status code
+ *   u32 length of body, then converted payload or error message in UTF-8
+ * </pre>
+ *
+ * Only a bounded window of entries is in memory, so the batch size isn't
+ * limited by heap.
+ */
+public class BatchProcessor {
+
+    public static final int ENCODE = 'e';
+    public static final int DECODE = 'd';
+    public static final int SC_OK = 200;
+    public static final int SC_BAD_REQUEST = 400;
+    public static final int SC_NOT_FOUND = 404;
+    public static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final CentralSchemaRegistry registry;
+    private final Bulkheads bulkheads;
+    private final Executor executor;
+    private final int window;
+    private final int maxEntrySize;
+
+    /**
+     * @param bulkheads null for unlimited
+     * @param executor entries are converted in caller's thread when it
+     * rejects them
+     * @param window maximum entries being converted at the same time
+     */
+    public BatchProcessor(CentralSchemaRegistry registry, Bulkheads bulkheads, Executor executor,
+            int window, int maxEntrySize) {
+        this.registry = registry;
+        this.bulkheads = bulkheads;
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public void process(InputStream in, OutputStream out, final Map<String, String[]> parameters)
+            throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        DataOutputStream dout = new DataOutputStream(out);
+        Deque<FutureTask<Result>> pending = new ArrayDeque<>();
+
+        Entry entry;
+        while (null != (entry = readEntry(din, maxEntrySize))) {
+            final Entry e = entry;
+            final SchemaInfo schema = registry.getSchemas().get(e.id);
+            final Bulkheads.Permit permit = acquire(e, schema, dout, pending);
+            FutureTask<Result> task = new FutureTask<>(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return convert(e, schema, permit, parameters);
+                }
+            });
+
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                task.run();
+            }
+
+            pending.add(task);
+            if (pending.size() >= window) {
+                writeResult(dout, pending.poll());
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            writeResult(dout, pending.poll());
+        }
+
+        dout.flush();
+    }
+
+    /**
+     * Takes the permit of an entry before it's queued. When a limit is
+     * exceeded, results of entries in flight are written first, they may
+     * hold the permits themselves, so a batch never gets 429 because of its
+     * own concurrency, only because of other requests.
+     *
+     * @return null if the entry isn't limited or is rejected
+     */
+    private Bulkheads.Permit acquire(Entry entry, SchemaInfo schema, DataOutputStream out,
+            Deque<FutureTask<Result>> pending) throws IOException {
+        if (bulkheads == null || schema == null || (entry.direction != ENCODE && entry.direction != DECODE)) {
+            return null;
+        }
+
+        Bulkheads.Permit permit;
+        while (null == (permit = bulkheads.tryAcquire(entry.id, schema, entry.payload.length))
+                && !pending.isEmpty()) {
+            writeResult(out, pending.poll());
+        }
+
+        return permit;
+    }
+
+    private Result convert(Entry entry, SchemaInfo schema, Bulkheads.Permit permit,
+            Map<String, String[]> parameters) {
+        if (schema == null) {
+            return new Result(SC_NOT_FOUND, "schema ID isn't found");
+        }
+
+        if (entry.direction != ENCODE && entry.direction != DECODE) {
+            return new Result(SC_BAD_REQUEST, "unknown direction " + entry.direction);
+        }
+
+        if (bulkheads != null && permit == null) {
+            return new Result(SC_TOO_MANY_REQUESTS, "too many requests for schema " + entry.id);
+        }
+
+        String filters = ParameterUtil.getParameter(parameters, "f");
+        String messageName = entry.messageName.isEmpty() ? null : entry.messageName;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            if (entry.direction == ENCODE) {
+                try (OutputStream filterOut = FilterStreamUtil.filter(out, filters)) {
+                    registry.serialize(entry.id, messageName, new ByteArrayInputStream(entry.payload),
+                            filterOut, parameters);
+                }
+            } else {
+                try (InputStream filterIn = FilterStreamUtil.filter(
+                        new ByteArrayInputStream(entry.payload), filters)) {
+                    registry.deserialize(entry.id, messageName, filterIn, out, parameters);
+                }
+            }
+
+            return new Result(SC_OK, out.toByteArray());
+        } catch (Exception ex) {
+            return new Result(SC_BAD_REQUEST, String.valueOf(ex.getMessage()));
+        } finally {
+            if (permit != null) {
+                permit.release(entry.payload.length);
+            }
+        }
+    }
+
+    /**
+     * Runs the entry in caller's thread if no executor thread picked it up
+     * yet, the caller may itself occupy the executor's last thread.
+     */
+    private static void writeResult(DataOutputStream out, FutureTask<Result> future) throws IOException {
+        future.run();
+
+        Result result;
+        try {
+            result = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ex);
+        } catch (ExecutionException ex) {
+            result = new Result(SC_BAD_REQUEST, String.valueOf(ex.getCause()));
+        }
+
+        out.writeShort(result.status);
+        out.writeInt(result.body.length);
+        out.write(result.body);
+    }
+
+    /**
+     * @return null at end of stream
+     */
+    public static Entry readEntry(DataInputStream in, int maxEntrySize) throws IOException {
+        int direction = in.read();
+        if (direction == -1) {
+            return null;
+        }
+
+        String id = readString(in);
+        String messageName = readString(in);
+        int length = in.readInt();
+        if (length < 0 || length > maxEntrySize) {
+            throw new IOException("bad payload length " + (length & 0xffffffffL)
+                    + " for schema " + id + ", maximum is " + maxEntrySize);
+        }
+
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+
+        return new Entry(direction, id, messageName, payload);
+    }
+
+    public static void writeEntry(DataOutputStream out, int direction, String id, String messageName,
+            byte[] payload) throws IOException {
+        out.write(direction);
+        writeString(out, id);
+        writeString(out, messageName == null ? "" : messageName);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * @return null at end of stream
+     */
+    public static Result readResult(DataInputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            return null;
+        }
+
+        int status = (b << 8) | in.readUnsignedByte();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+
+        return new Result(status, body);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readUnsignedShort()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xffff) {
+            throw new IllegalArgumentException("string too long: " + s.substring(0, 32) + "...");
+        }
+
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    public static class Entry {
+
+        private final int direction;
+        private final String id;
+        private final String messageName;
+        private final byte[] payload;
+
+        public Entry(int direction, String id, String messageName, byte[] payload) {
+            this.direction = direction;
+            this.id = id;
+            this.messageName = messageName;
+            this.payload = payload;
+        }
+
+        public int getDirection() {
+            return direction;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getMessageName() {
+            return messageName;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    public static class Result {
+
+        private final int status;
+        private final byte[] body;
+
+        public Result(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public Result(int status, String message) {
+            this(status, message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
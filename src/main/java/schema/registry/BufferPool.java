@@ -0,0 +1,89 @@
+package schema.registry;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of heap or direct ByteBuffers of the same size, buffers
+ * beyond the bound are allocated on demand and dropped on release.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong acquired = new AtomicLong();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this(bufferSize, maxPooled, false);
+    }
+
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("buffer size is too small: " + bufferSize);
+        }
+
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * @return a cleared buffer, backed by an accessible array unless the
+     * pool is direct
+     */
+    public ByteBuffer acquire() {
+        acquired.incrementAndGet();
+
+        ByteBuffer b = buffers.poll();
+        if (b != null) {
+            pooled.decrementAndGet();
+            b.clear();
+            return b;
+        }
+
+        allocated.incrementAndGet();
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * The buffer must not be used after released.
+     */
+    public void release(ByteBuffer b) {
+        if (b == null || b.capacity() != bufferSize) {
+            return;
+        }
+
+        // racy bound check, may exceed maxPooled by number of releasing threads
+        if (pooled.get() < maxPooled) {
+            pooled.incrementAndGet();
+            buffers.offer(b);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public int getPooled() {
+        return pooled.get();
+    }
+
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+}
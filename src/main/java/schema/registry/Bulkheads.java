@@ -0,0 +1,336 @@
+package schema.registry;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per schema ID and per schema type concurrency and byte rate limits, so an
+ * expensive schema can't degrade all the others.
+ *
+ * Schema limits come from "maxConcurrency" and "maxBytesPerSecond" of each
+ * entry in schema list, type limits come from configuration
+ * "limit.{type}.maxConcurrency" and "limit.{type}.maxBytesPerSecond". Zero or
+ * missing means unlimited.
+ *
+ * A permit is taken before the conversion is queued and released once it
+ * finishes. Rejected requests get "Retry-After" from {@link #getRetryAfter},
+ * the time until the byte rate allows the request, or configuration
+ * "retryAfter" for concurrency limits.
+ *
+ * Permits are kept in lock free counters that survive registry reloads, the
+ * schema limits are always read from the current SchemaInfo, type limits are
+ * resolved once from configuration. Rejections are counted for the schema
+ * whichever limit is exceeded, and also for the type when a type limit is
+ * exceeded.
+ */
+public class Bulkheads {
+
+    public static final String ATTRIBUTE = "bulkheads";
+
+    private static final String TYPE_LIMIT_PREFIX = "limit.";
+    private static final String MAX_CONCURRENCY = ".maxConcurrency";
+    private static final String MAX_BYTES_PER_SECOND = ".maxBytesPerSecond";
+
+    private final int retryAfter;
+    private final ConcurrentMap<String, Bulkhead> schemaBulkheads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Bulkhead> typeBulkheads = new ConcurrentHashMap<>();
+
+    public Bulkheads(Properties config) {
+        retryAfter = ConfigUtil.getInt(config, "retryAfter", 1);
+
+        for (String name : config.stringPropertyNames()) {
+            String type = null;
+            if (name.startsWith(TYPE_LIMIT_PREFIX) && name.endsWith(MAX_CONCURRENCY)) {
+                type = name.substring(TYPE_LIMIT_PREFIX.length(), name.length() - MAX_CONCURRENCY.length());
+            } else if (name.startsWith(TYPE_LIMIT_PREFIX) && name.endsWith(MAX_BYTES_PER_SECOND)) {
+                type = name.substring(TYPE_LIMIT_PREFIX.length(), name.length() - MAX_BYTES_PER_SECOND.length());
+            }
+
+            if (type != null && !typeBulkheads.containsKey(type)) {
+                typeBulkheads.put(type, new Bulkhead(
+                        ConfigUtil.getInt(config, TYPE_LIMIT_PREFIX + type + MAX_CONCURRENCY, 0),
+                        ConfigUtil.getLong(config, TYPE_LIMIT_PREFIX + type + MAX_BYTES_PER_SECOND, 0)));
+            }
+        }
+    }
+
+    /**
+     * @param bytes request body size, -1 if unknown, then the actual size is
+     * charged when the permit is released
+     * @return null if any limit is exceeded
+     */
+    public Permit tryAcquire(String id, SchemaInfo schema, long bytes) {
+        Bulkhead typeBulkhead = getBulkhead(typeBulkheads, schema.getType());
+        Bulkhead schemaBulkhead = getBulkhead(schemaBulkheads, id);
+
+        int typeConcurrency = typeBulkhead.maxConcurrency;
+        long typeRate = typeBulkhead.maxBytesPerSecond;
+        int schemaConcurrency = schema.getMaxConcurrency() == null ? 0 : schema.getMaxConcurrency();
+        long schemaRate = schema.getMaxBytesPerSecond() == null ? 0 : schema.getMaxBytesPerSecond();
+
+        if (!typeBulkhead.tryAcquire(typeConcurrency)) {
+            schemaBulkhead.rejected.incrementAndGet();
+            return null;
+        }
+
+        if (!schemaBulkhead.tryAcquire(schemaConcurrency)) {
+            typeBulkhead.release();
+            return null;
+        }
+
+        if (!schemaBulkhead.tryConsume(schemaRate, bytes)) {
+            schemaBulkhead.release();
+            typeBulkhead.release();
+            return null;
+        }
+
+        if (!typeBulkhead.tryConsume(typeRate, bytes)) {
+            schemaBulkhead.refund(bytes);
+            schemaBulkhead.rejected.incrementAndGet();
+            schemaBulkhead.release();
+            typeBulkhead.release();
+            return null;
+        }
+
+        return new Permit(schemaBulkhead, typeBulkhead, bytes);
+    }
+
+    /**
+     * @param bytes request body size, -1 if unknown
+     * @return seconds until a request rejected by {@link #tryAcquire} may pass
+     * the byte rate limits, at least configuration "retryAfter"
+     */
+    public int getRetryAfter(String id, SchemaInfo schema, long bytes) {
+        Bulkhead typeBulkhead = getBulkhead(typeBulkheads, schema.getType());
+        long schemaRate = schema.getMaxBytesPerSecond() == null ? 0 : schema.getMaxBytesPerSecond();
+
+        long seconds = Math.max(typeBulkhead.getRefillSeconds(typeBulkhead.maxBytesPerSecond, bytes),
+                getBulkhead(schemaBulkheads, id).getRefillSeconds(schemaRate, bytes));
+        return (int) Math.min(Math.max(seconds, retryAfter), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return statistics keyed by schema ID
+     */
+    public Map<String, Stats> getSchemaStats() {
+        return getStats(schemaBulkheads);
+    }
+
+    /**
+     * @return statistics keyed by schema type
+     */
+    public Map<String, Stats> getTypeStats() {
+        return getStats(typeBulkheads);
+    }
+
+    private static Map<String, Stats> getStats(Map<String, Bulkhead> bulkheads) {
+        Map<String, Stats> stats = new TreeMap<>();
+        for (Map.Entry<String, Bulkhead> e : bulkheads.entrySet()) {
+            Bulkhead b = e.getValue();
+            stats.put(e.getKey(), new Stats(b.inFlight.get(), b.rejected.get()));
+        }
+
+        return stats;
+    }
+
+    private static Bulkhead getBulkhead(ConcurrentMap<String, Bulkhead> bulkheads, String key) {
+        Bulkhead b = bulkheads.get(key);
+        if (b == null) {
+            // schemas and unconfigured types, schema limits are passed in
+            Bulkhead old = bulkheads.putIfAbsent(key, b = new Bulkhead(0, 0));
+            if (old != null) {
+                b = old;
+            }
+        }
+
+        return b;
+    }
+
+    public static class Permit {
+
+        private final Bulkhead schemaBulkhead;
+        private final Bulkhead typeBulkhead;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Bulkhead schemaBulkhead, Bulkhead typeBulkhead, long bytes) {
+            this.schemaBulkhead = schemaBulkhead;
+            this.typeBulkhead = typeBulkhead;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @param actualBytes bytes actually read, charged to byte rate limits
+         * if request size was unknown on acquiring
+         */
+        public void release(long actualBytes) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (bytes < 0 && actualBytes > 0) {
+                schemaBulkhead.charge(actualBytes);
+                typeBulkhead.charge(actualBytes);
+            }
+
+            schemaBulkhead.release();
+            typeBulkhead.release();
+        }
+    }
+
+    public static class Stats {
+
+        private final int inFlight;
+        private final long rejected;
+
+        public Stats(int inFlight, long rejected) {
+            this.inFlight = inFlight;
+            this.rejected = rejected;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+    }
+
+    /**
+     * A single counter per key, not striped: the concurrency limit needs an
+     * exact count to compare against, and it's updated once per request,
+     * which is cheap next to a conversion.
+     */
+    private static class Bulkhead {
+
+        /**
+         * Type limits from configuration, zero for schema bulkheads.
+         */
+        final int maxConcurrency;
+        final long maxBytesPerSecond;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong rejected = new AtomicLong();
+        /**
+         * Token bucket of bytes, may go negative when a request of unknown
+         * size is charged after the fact.
+         */
+        final AtomicLong tokens = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+        Bulkhead(int maxConcurrency, long maxBytesPerSecond) {
+            this.maxConcurrency = maxConcurrency;
+            this.maxBytesPerSecond = maxBytesPerSecond;
+        }
+
+        boolean tryAcquire(int limit) {
+            while (true) {
+                int n = inFlight.get();
+                if (limit > 0 && n >= limit) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+
+                if (inFlight.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * A request larger than the bucket passes when the bucket is full.
+         */
+        boolean tryConsume(long rate, long bytes) {
+            if (rate <= 0) {
+                return true;
+            }
+
+            refill(rate);
+
+            long need = Math.min(Math.max(bytes, 1), rate);
+            long cost = Math.max(bytes, 0);
+            while (true) {
+                long t = tokens.get();
+                if (t < need) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+
+                if (tokens.compareAndSet(t, t - cost)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return seconds until tryConsume() of bytes may succeed, 0 if now
+         */
+        long getRefillSeconds(long rate, long bytes) {
+            if (rate <= 0) {
+                return 0;
+            }
+
+            refill(rate);
+
+            long t = tokens.get();
+            long need = Math.min(Math.max(bytes, 1), rate);
+            if (t == Long.MIN_VALUE || t >= need) {
+                return 0;
+            }
+
+            // tokens may be far below zero after charging a request of unknown size
+            return (need - t + rate - 1) / rate;
+        }
+
+        void refund(long bytes) {
+            if (bytes > 0 && tokens.get() != Long.MIN_VALUE) {
+                tokens.addAndGet(bytes);
+            }
+        }
+
+        void charge(long bytes) {
+            if (tokens.get() != Long.MIN_VALUE) {
+                tokens.addAndGet(-bytes);
+            }
+        }
+
+        private void refill(long rate) {
+            long now = System.nanoTime();
+            long last = lastRefill.get();
+            long t = tokens.get();
+
+            if (t == Long.MIN_VALUE) {
+                // first use, start with a full bucket
+                if (tokens.compareAndSet(Long.MIN_VALUE, rate)) {
+                    lastRefill.set(now);
+                }
+                return;
+            }
+
+            // the bucket holds at most one second of bytes
+            long elapsed = Math.min(now - last, 1000000000L);
+            long add = elapsed * rate / 1000000000L;
+            if (add <= 0 || !lastRefill.compareAndSet(last, now)) {
+                return;
+            }
+
+            while (true) {
+                t = tokens.get();
+                long refilled = Math.min(rate, t + add);
+                if (refilled <= t || tokens.compareAndSet(t, refilled)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,19 +1,55 @@
 package schema.registry;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class CentralSchemaRegistry extends AbstractSchemaRegistry {
 
+    private static Logger logger = LoggerFactory.getLogger(CentralSchemaRegistry.class);
+    /**
+     * Encoded size limit of a message with "header.delimited=true".
+     */
+    public static final int MAX_DELIMITED_MESSAGE_SIZE = 64 * 1024 * 1024;
+    private static AtomicLong generations = new AtomicLong();
+    /**
+     * Increases every time schema list is loaded.
+     */
+    private final long generation = generations.incrementAndGet();
+    private volatile boolean retired;
     private Map<String, SchemaRegistry> registries = new HashMap<>();
+    private SchemaCatalog catalog;
+    private SchemaIndex index;
+    private SchemaFiles files;
+    /**
+     * Schema number to schema ID.
+     */
+    private LongObjectMap<String> numbers;
+    /**
+     * Avro fingerprint to schema ID.
+     */
+    private LongObjectMap<String> fingerprints;
 
     public CentralSchemaRegistry(File schemaList, File rootDirectory) throws IOException, ClassNotFoundException {
         super(Collections.unmodifiableMap(
@@ -24,26 +60,295 @@ public class CentralSchemaRegistry extends AbstractSchemaRegistry {
         registries.put(ProtobufSchemaRegistry.TYPE, new ProtobufSchemaRegistry(schemas, rootDirectory));
         registries.put(AvroSchemaRegistry.TYPE, new AvroSchemaRegistry(schemas, rootDirectory));
         registries.put(ThriftSchemaRegistry.TYPE, new ThriftSchemaRegistry(schemas, rootDirectory));
+
+        buildHeaderIndexes();
+
+        catalog = SchemaCatalog.build(schemas);
+        index = SchemaIndex.build(schemas);
+        files = SchemaFiles.build(schemas, rootDirectory);
+
+        GenerationTracker.track(generation, this, getClassLoaders());
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Marks this generation replaced, codecs resolved from it fail from now
+     * on so holders resolve them again from the new generation. serialize()
+     * and deserialize() keep working for requests in flight.
+     */
+    public void retire() {
+        retired = true;
+    }
+
+    public boolean isRetired() {
+        return retired;
+    }
+
+    public SchemaCatalog getCatalog() {
+        return catalog;
+    }
+
+    public SchemaIndex getIndex() {
+        return index;
+    }
+
+    public SchemaFiles getFiles() {
+        return files;
+    }
+
+    @Override
+    public Map<String, SchemaFootprint> getFootprints() {
+        Map<String, SchemaFootprint> footprints = new TreeMap<>();
+        for (SchemaRegistry registry : registries.values()) {
+            footprints.putAll(((AbstractSchemaRegistry) registry).getFootprints());
+        }
+        for (SchemaFootprint footprint : footprints.values()) {
+            footprint.setGeneration(generation);
+        }
+
+        return footprints;
     }
 
+    @Override
+    public Collection<SchemaClassLoader> getClassLoaders() {
+        List<SchemaClassLoader> classLoaders = new ArrayList<>();
+        for (SchemaRegistry registry : registries.values()) {
+            classLoaders.addAll(((AbstractSchemaRegistry) registry).getClassLoaders());
+        }
+
+        return classLoaders;
+    }
+
+    /**
+     * Writes a wire header before the message if parameter "header" is "id"
+     * or "fingerprint", with "header.delimited=true" a 4 bytes big endian
+     * length is written between header and message. A delimited message is
+     * encoded into memory first to learn its length, it's limited to
+     * {@link #MAX_DELIMITED_MESSAGE_SIZE} bytes.
+     */
     @Override
     public void serialize(String id, String messageName, InputStream in, OutputStream out,
             Map<String, String[]> parameters) throws IOException {
-        getRegistry(id).serialize(id, messageName, in, out, parameters);
+        CountingInputStream countingIn = new CountingInputStream(in);
+        CountingOutputStream countingOut = new CountingOutputStream(out);
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            resolveCodec(id, messageName, parameters).encodeMessage(countingIn, countingOut);
+            ok = true;
+        } finally {
+            record(Metrics.ENCODE, id, messageName, parameters, System.nanoTime() - start,
+                    countingIn.getCount(), countingOut.getCount(), ok);
+        }
     }
 
     @Override
     public void deserialize(String id, String messageName, InputStream in, OutputStream out,
             Map<String, String[]> parameters) throws IOException {
-        getRegistry(id).deserialize(id, messageName, in, out, parameters);
+        CountingInputStream countingIn = new CountingInputStream(in);
+        CountingOutputStream countingOut = new CountingOutputStream(out);
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            getRegistry(id).deserialize(id, messageName, countingIn, countingOut, parameters);
+            ok = true;
+        } finally {
+            record(Metrics.DECODE, id, messageName, parameters, System.nanoTime() - start,
+                    countingIn.getCount(), countingOut.getCount(), ok);
+        }
+    }
+
+    /**
+     * Codecs handle wire headers like serialize(), record metrics like
+     * serialize() and deserialize() and throw IllegalStateException once
+     * this generation is retired.
+     */
+    @Override
+    public SchemaCodec resolve(String id, String messageName, Map<String, String[]> parameters)
+            throws IOException {
+        return resolveCodec(id, messageName, parameters);
+    }
+
+    private ResolvedCodec resolveCodec(String id, String messageName, Map<String, String[]> parameters)
+            throws IOException {
+        SchemaCodec codec = getRegistry(id).resolve(id, messageName, parameters);
+
+        byte[] header = null;
+        String format = ParameterUtil.getParameter(parameters, "header");
+        if (format != null && !format.isEmpty()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WireHeader.write(out, getSchema(id), format);
+            header = out.toByteArray();
+        }
+
+        return new ResolvedCodec(codec, header, isDelimitedHeader(parameters),
+                ParameterUtil.getParameter(parameters, "f"));
+    }
+
+    /**
+     * Decodes messages prefixed by a wire header, the schema is looked up by
+     * the header. With "header.delimited=true" the input is a sequence of
+     * header, 4 bytes big endian length and message, each message may refer
+     * to a different schema, the outputs are separated by new lines.
+     */
+    public void deserializeWithHeader(String messageName, InputStream in, OutputStream out,
+            Map<String, String[]> parameters) throws IOException {
+        if (!isDelimitedHeader(parameters)) {
+            WireHeader header = WireHeader.read(in);
+            if (header == null) {
+                throw new EOFException("missing header");
+            }
+
+            deserialize(resolve(header), messageName, in, out, parameters);
+            return;
+        }
+
+        OutputStream shieldedOut = FilterStreamUtil.shield(out);
+        WireHeader header;
+        while (null != (header = WireHeader.read(in))) {
+            String id = resolve(header);
+            InputStream frame = ByteStreams.limit(in, WireHeader.readLength(in));
+
+            deserialize(id, messageName, FilterStreamUtil.shield(frame), shieldedOut, parameters);
+            shieldedOut.write('\n');
+
+            // the decoder may leave trailing bytes in the frame
+            ByteStreams.copy(frame, ByteStreams.nullOutputStream());
+        }
+
+        out.flush();
+    }
+
+    public String getIdByNumber(int number) {
+        return numbers.get(number);
+    }
+
+    public String getIdByFingerprint(long fingerprint) {
+        return fingerprints.get(fingerprint);
+    }
+
+    private String resolve(WireHeader header) {
+        String id = header.isFingerprint()
+                ? fingerprints.get(header.getValue())
+                : numbers.get(header.getValue());
+
+        if (id == null) {
+            throw new IllegalArgumentException("unknown schema "
+                    + (header.isFingerprint() ? "fingerprint " + Long.toHexString(header.getValue())
+                    : "number " + header.getValue()));
+        }
+
+        return id;
     }
 
-    private SchemaRegistry getRegistry(String id) {
+    /**
+     * Explicit schema numbers take priority, the others are derived from
+     * schema IDs so they are stable across reloads, a derived number already
+     * taken is probed to the next free one.
+     */
+    private void buildHeaderIndexes() throws IOException {
+        Map<String, SchemaInfo> sortedSchemas = new TreeMap<>(schemas);
+        numbers = new LongObjectMap<>(schemas.size());
+        fingerprints = new LongObjectMap<>(schemas.size());
+
+        for (Map.Entry<String, SchemaInfo> e : sortedSchemas.entrySet()) {
+            Integer number = e.getValue().getNumber();
+            if (number == null) {
+                continue;
+            }
+
+            if (number < 0) {
+                throw new IOException("negative schema number " + number + " for " + e.getKey());
+            }
+
+            String old = numbers.put(number, e.getKey());
+            if (old != null) {
+                throw new IOException("schema number " + number + " is used by both "
+                        + old + " and " + e.getKey());
+            }
+        }
+
+        for (Map.Entry<String, SchemaInfo> e : sortedSchemas.entrySet()) {
+            SchemaInfo schema = e.getValue();
+            if (schema.getNumber() != null) {
+                continue;
+            }
+
+            int number = Hashing.murmur3_32().hashString(e.getKey(), StandardCharsets.UTF_8)
+                    .asInt() & Integer.MAX_VALUE;
+            String old;
+            while (null != (old = numbers.get(number))) {
+                // probed in ID order, stable as long as the colliding schemas stay
+                int next = (number + 1) & Integer.MAX_VALUE;
+                logger.warn("derived schema number {} of {} collides with {}, use {}, specify \"number\""
+                        + " explicitly to keep it stable", number, e.getKey(), old, next);
+                number = next;
+            }
+
+            numbers.put(number, e.getKey());
+            schema.setNumber(number);
+        }
+
+        for (Map.Entry<String, SchemaInfo> e : sortedSchemas.entrySet()) {
+            Long fingerprint = e.getValue().getFingerprint();
+            if (fingerprint == null) {
+                continue;
+            }
+
+            String old = fingerprints.get(fingerprint);
+            if (old != null) {
+                logger.warn("schema {} has same fingerprint as {}, ignored in header lookup",
+                        e.getKey(), old);
+                continue;
+            }
+
+            fingerprints.put(fingerprint, e.getKey());
+        }
+    }
+
+    /**
+     * Unknown schema IDs are recorded as "other" so they can't inflate the
+     * number of series.
+     */
+    private void record(String direction, String id, String messageName, Map<String, String[]> parameters,
+            long nanos, long bytesIn, long bytesOut, boolean ok) {
+        record(direction, id, messageName, ParameterUtil.getParameter(parameters, "f"),
+                nanos, bytesIn, bytesOut, ok);
+    }
+
+    private void record(String direction, String id, String messageName, String filters,
+            long nanos, long bytesIn, long bytesOut, boolean ok) {
+        SchemaInfo schema = schemas.get(id);
+        Metrics.get().recordConversion(direction,
+                schema == null ? Metrics.OTHER : schema.getType(),
+                schema == null ? Metrics.OTHER : id,
+                schema == null ? null : messageName,
+                filters,
+                nanos, bytesIn, bytesOut, !ok);
+    }
+
+    private boolean isDelimitedHeader(Map<String, String[]> parameters) {
+        return "true".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "header.delimited"));
+    }
+
+    private SchemaInfo getSchema(String id) {
         SchemaInfo schema = schemas.get(id);
         if (schema == null) {
             throw new IllegalArgumentException("unknown schema");
         }
 
+        return schema;
+    }
+
+    /**
+     * @return the registry handling the type of the schema
+     */
+    public SchemaRegistry getRegistry(String id) {
+        SchemaInfo schema = getSchema(id);
+
         SchemaRegistry registry = registries.get(schema.getType());
         if (registry == null) {
             throw new IllegalArgumentException("unknown schema type");
@@ -51,4 +356,112 @@ public class CentralSchemaRegistry extends AbstractSchemaRegistry {
 
         return registry;
     }
+
+    /**
+     * "f" isn't applied, it only labels metrics as it does for serialize()
+     * and deserialize().
+     */
+    private class ResolvedCodec extends SchemaCodec {
+
+        private final SchemaCodec codec;
+        /**
+         * Encoded wire header, null without header.
+         */
+        private final byte[] header;
+        private final boolean delimitedHeader;
+        private final String filters;
+
+        ResolvedCodec(SchemaCodec codec, byte[] header, boolean delimitedHeader, String filters) {
+            super(codec.getId(), codec.getMessageName());
+            this.codec = codec;
+            this.header = header;
+            this.delimitedHeader = delimitedHeader;
+            this.filters = filters;
+        }
+
+        @Override
+        public void encode(InputStream in, OutputStream out) throws IOException {
+            checkRetired();
+
+            CountingInputStream countingIn = new CountingInputStream(in);
+            CountingOutputStream countingOut = new CountingOutputStream(out);
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                encodeMessage(countingIn, countingOut);
+                ok = true;
+            } finally {
+                record(Metrics.ENCODE, getId(), getMessageName(), filters, System.nanoTime() - start,
+                        countingIn.getCount(), countingOut.getCount(), ok);
+            }
+        }
+
+        @Override
+        public void decode(InputStream in, OutputStream out) throws IOException {
+            checkRetired();
+
+            CountingInputStream countingIn = new CountingInputStream(in);
+            CountingOutputStream countingOut = new CountingOutputStream(out);
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                codec.decode(countingIn, countingOut);
+                ok = true;
+            } finally {
+                record(Metrics.DECODE, getId(), getMessageName(), filters, System.nanoTime() - start,
+                        countingIn.getCount(), countingOut.getCount(), ok);
+            }
+        }
+
+        void encodeMessage(InputStream in, OutputStream out) throws IOException {
+            if (header == null) {
+                codec.encode(in, out);
+            } else if (delimitedHeader) {
+                // the length goes before the message, so it's buffered whole
+                ByteArrayOutputStream payload = new BoundedByteArrayOutputStream(MAX_DELIMITED_MESSAGE_SIZE);
+                codec.encode(in, payload);
+
+                out.write(header);
+                WireHeader.writeLength(out, payload.size());
+                payload.writeTo(out);
+            } else {
+                out.write(header);
+                codec.encode(in, out);
+            }
+        }
+
+        private void checkRetired() {
+            if (retired) {
+                throw new IllegalStateException("schema registry generation " + generation
+                        + " is retired, resolve the codec again");
+            }
+        }
+    }
+
+    private static class BoundedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private final int maxSize;
+
+        BoundedByteArrayOutputStream(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(int b) {
+            checkSize(1);
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            checkSize(len);
+            super.write(b, off, len);
+        }
+
+        private void checkSize(int len) {
+            if (len > maxSize - count) {
+                throw new IllegalArgumentException("delimited message is larger than " + maxSize + " bytes");
+            }
+        }
+    }
 }
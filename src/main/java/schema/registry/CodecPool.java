@@ -0,0 +1,132 @@
+package schema.registry;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of reusable compressor or decompressor contexts of one codec
+ * and level. Contexts beyond the bound are created on demand and destroyed
+ * on release, so native memory is freed eagerly instead of by finalizers.
+ */
+public class CodecPool<T> {
+
+    public interface Factory<T> {
+
+        T create();
+
+        /**
+         * Makes a used context ready for next borrower.
+         */
+        void reset(T context);
+
+        void destroy(T context);
+    }
+
+    private final String name;
+    private final Factory<T> factory;
+    private final int maxIdle;
+    private final long estimatedContextSize;
+    private final boolean nativeMemory;
+    private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+
+    /**
+     * @param estimatedContextSize estimated bytes held by each context
+     * @param nativeMemory whether the context holds native memory
+     */
+    public CodecPool(String name, Factory<T> factory, int maxIdle, long estimatedContextSize,
+            boolean nativeMemory) {
+        this.name = name;
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+        this.estimatedContextSize = estimatedContextSize;
+        this.nativeMemory = nativeMemory;
+    }
+
+    public T borrow() {
+        borrowed.incrementAndGet();
+        inUse.incrementAndGet();
+
+        T context = idle.poll();
+        if (context != null) {
+            idleCount.decrementAndGet();
+            return context;
+        }
+
+        created.incrementAndGet();
+        try {
+            return factory.create();
+        } catch (RuntimeException ex) {
+            inUse.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    /**
+     * The context must not be used after released.
+     */
+    public void release(T context) {
+        inUse.decrementAndGet();
+
+        try {
+            factory.reset(context);
+        } catch (RuntimeException ex) {
+            destroy(context);
+            return;
+        }
+
+        // racy bound check, may exceed maxIdle by number of releasing threads
+        if (idleCount.get() < maxIdle) {
+            idleCount.incrementAndGet();
+            idle.offer(context);
+        } else {
+            destroy(context);
+        }
+    }
+
+    private void destroy(T context) {
+        destroyed.incrementAndGet();
+        factory.destroy(context);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getIdle() {
+        return idleCount.get();
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+
+    public long getDestroyed() {
+        return destroyed.get();
+    }
+
+    public boolean isNativeMemory() {
+        return nativeMemory;
+    }
+
+    /**
+     * @return estimated bytes held by idle and borrowed contexts
+     */
+    public long getEstimatedBytes() {
+        return (long) (idleCount.get() + inUse.get()) * estimatedContextSize;
+    }
+}
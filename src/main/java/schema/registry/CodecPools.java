@@ -0,0 +1,195 @@
+package schema.registry;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.ning.compress.lzf.ChunkEncoder;
+import com.ning.compress.lzf.util.ChunkEncoderFactory;
+
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Pools of codec contexts used by FilterStreamUtil, keyed by codec and level.
+ *
+ * Snappy streams of snappy-java 1.1.0 hold only heap buffers that can't be
+ * supplied from outside, LZ4 compressors and LZF decoders are stateless, so
+ * they aren't pooled here.
+ */
+public class CodecPools {
+
+    /**
+     * Same seed as LZ4BlockOutputStream and LZ4BlockInputStream use.
+     */
+    private static final int LZ4_SEED = 0x9747b28c;
+    /**
+     * zlib with default windowBits 15 and memLevel 8, deflate needs about
+     * 256KB plus state, inflate a 32KB window plus state.
+     */
+    private static final long DEFLATER_SIZE = 268 * 1024;
+    private static final long INFLATER_SIZE = 44 * 1024;
+    private static final long XXHASH_SIZE = 64;
+    /**
+     * Hash table and output buffer of an encoder for 64KB chunks.
+     */
+    private static final long LZF_ENCODER_SIZE = 132 * 1024;
+    public static final int LZF_CHUNK_SIZE = 0xFFFF;
+    public static final int DEFAULT_MAX_POOLED = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static volatile int maxPooled = DEFAULT_MAX_POOLED;
+    private static ConcurrentMap<String, CodecPool<?>> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Reads "codec.maxPooled", idle contexts kept for each codec and level.
+     */
+    public static void configure(Properties config) {
+        maxPooled = ConfigUtil.getInt(config, "codec.maxPooled", DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * @param level 0-9 or Deflater.DEFAULT_COMPRESSION
+     * @param nowrap true for raw deflate data as in gzip
+     */
+    public static CodecPool<Deflater> getDeflaterPool(final int level, final boolean nowrap) {
+        String name = (nowrap ? "gzip:" : "deflate:") + level;
+        CodecPool<Deflater> pool = lookup(name);
+        if (pool != null) {
+            return pool;
+        }
+
+        return getPool(name, new CodecPool.Factory<Deflater>() {
+            @Override
+            public Deflater create() {
+                return new Deflater(level, nowrap);
+            }
+
+            @Override
+            public void reset(Deflater context) {
+                context.reset();
+            }
+
+            @Override
+            public void destroy(Deflater context) {
+                context.end();
+            }
+        }, DEFLATER_SIZE, true);
+    }
+
+    /**
+     * @param nowrap true for raw deflate data as in gzip
+     */
+    public static CodecPool<Inflater> getInflaterPool(final boolean nowrap) {
+        String name = nowrap ? "gunzip" : "inflate";
+        CodecPool<Inflater> pool = lookup(name);
+        if (pool != null) {
+            return pool;
+        }
+
+        return getPool(name, new CodecPool.Factory<Inflater>() {
+            @Override
+            public Inflater create() {
+                return new Inflater(nowrap);
+            }
+
+            @Override
+            public void reset(Inflater context) {
+                context.reset();
+            }
+
+            @Override
+            public void destroy(Inflater context) {
+                context.end();
+            }
+        }, INFLATER_SIZE, true);
+    }
+
+    /**
+     * Streaming XXHash32 of the fastest, usually JNI, implementation, for
+     * block checksums of LZ4 streams.
+     */
+    public static CodecPool<Checksum> getLZ4ChecksumPool() {
+        CodecPool<Checksum> pool = lookup("lz4.checksum");
+        if (pool != null) {
+            return pool;
+        }
+
+        return getPool("lz4.checksum", new CodecPool.Factory<Checksum>() {
+            @Override
+            public Checksum create() {
+                return XXHashFactory.fastestInstance().newStreamingHash32(LZ4_SEED).asChecksum();
+            }
+
+            @Override
+            public void reset(Checksum context) {
+                context.reset();
+            }
+
+            @Override
+            public void destroy(Checksum context) {
+            }
+        }, XXHASH_SIZE, true);
+    }
+
+    public static CodecPool<ChunkEncoder> getLZFEncoderPool() {
+        CodecPool<ChunkEncoder> pool = lookup("lzf.encoder");
+        if (pool != null) {
+            return pool;
+        }
+
+        return getPool("lzf.encoder", new CodecPool.Factory<ChunkEncoder>() {
+            @Override
+            public ChunkEncoder create() {
+                // keeps buffers from thread local recycler until closed
+                return ChunkEncoderFactory.optimalInstance(LZF_CHUNK_SIZE);
+            }
+
+            @Override
+            public void reset(ChunkEncoder context) {
+            }
+
+            @Override
+            public void destroy(ChunkEncoder context) {
+                context.close();
+            }
+        }, LZF_ENCODER_SIZE, false);
+    }
+
+    /**
+     * @return pools keyed by codec and level
+     */
+    public static Map<String, CodecPool<?>> getPools() {
+        return new TreeMap<>(pools);
+    }
+
+    /**
+     * @return estimated native memory held by idle and borrowed contexts
+     */
+    public static long getEstimatedNativeBytes() {
+        long n = 0;
+        for (CodecPool<?> pool : pools.values()) {
+            if (pool.isNativeMemory()) {
+                n += pool.getEstimatedBytes();
+            }
+        }
+
+        return n;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CodecPool<T> lookup(String name) {
+        return (CodecPool<T>) pools.get(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CodecPool<T> getPool(String name, CodecPool.Factory<T> factory,
+            long estimatedContextSize, boolean nativeMemory) {
+        CodecPool<T> pool = new CodecPool<>(name, factory, maxPooled, estimatedContextSize, nativeMemory);
+        CodecPool<T> old = (CodecPool<T>) pools.putIfAbsent(name, pool);
+        return old == null ? pool : old;
+    }
+}
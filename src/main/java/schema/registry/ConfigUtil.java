@@ -0,0 +1,39 @@
+package schema.registry;
+
+import java.util.Properties;
+
+public class ConfigUtil {
+
+    public static int getInt(Properties config, String name, int defaultValue) {
+        String value = getValue(config, name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static long getLong(Properties config, String name, long defaultValue) {
+        String value = getValue(config, name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public static double getDouble(Properties config, String name, double defaultValue) {
+        String value = getValue(config, name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public static boolean getBoolean(Properties config, String name, boolean defaultValue) {
+        String value = getValue(config, name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static String getValue(Properties config, String name) {
+        if (config == null) {
+            return null;
+        }
+
+        String value = config.getProperty(name);
+        if (value == null || (value = value.trim()).isEmpty()) {
+            return null;
+        }
+
+        return value;
+    }
+}
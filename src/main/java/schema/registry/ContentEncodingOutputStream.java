@@ -0,0 +1,96 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Buffers output until it exceeds minSize bytes and then compresses it with
+ * the given filter, smaller output is written as is because compressing it
+ * costs more than it saves. flush() is ignored until then.
+ */
+public class ContentEncodingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final String filter;
+    private final int minSize;
+    private byte[] buffer;
+    private int length;
+    private OutputStream target;
+    private boolean closed;
+
+    public ContentEncodingOutputStream(OutputStream out, String filter, int minSize) {
+        this.out = out;
+        this.filter = filter;
+        this.minSize = Math.max(0, minSize);
+        this.buffer = new byte[Math.min(this.minSize, 4096)];
+    }
+
+    /**
+     * Called before the first compressed byte is written, e.g. to set
+     * "Content-Encoding" header.
+     */
+    protected void started() throws IOException {
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+
+        if (target == null) {
+            if (length + len <= minSize) {
+                if (length + len > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.min(minSize, Math.max(length + len, buffer.length * 2)));
+                }
+                System.arraycopy(b, off, buffer, length, len);
+                length += len;
+                return;
+            }
+
+            start();
+        }
+
+        target.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (target != null) {
+            target.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        if (target != null) {
+            target.close();
+            return;
+        }
+
+        try {
+            out.write(buffer, 0, length);
+        } finally {
+            buffer = null;
+            out.close();
+        }
+    }
+
+    private void start() throws IOException {
+        started();
+        target = FilterStreamUtil.filter(out, filter);
+        target.write(buffer, 0, length);
+        buffer = null;
+    }
+}
@@ -1,126 +1,573 @@
 package schema.registry;
 
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.Properties;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
 
 import com.google.common.base.Splitter;
+import com.ning.compress.lzf.ChunkDecoder;
 import com.ning.compress.lzf.LZFInputStream;
-import com.ning.compress.lzf.LZFOutputStream;
+import com.ning.compress.lzf.util.ChunkDecoderFactory;
 
 import net.jpountz.lz4.LZ4BlockInputStream;
 import net.jpountz.lz4.LZ4BlockOutputStream;
-import org.apache.commons.codec.binary.Base64InputStream;
-import org.apache.commons.codec.binary.Base64OutputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.xerial.snappy.SnappyInputStream;
 import org.xerial.snappy.SnappyOutputStream;
 
+/**
+ * Builds filter chains from "f" parameter. Base64 and header skipping work in
+ * bulk on pooled buffers, codecs read and write in bulk too and borrow their
+ * contexts from CodecPools, so streams must be closed to return them.
+ *
+ * Codecs take arguments separated by colon, "gzip:1", "bzip2:9", "lz4:hc:64k".
+ */
 public class FilterStreamUtil {
 
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 256;
+    /**
+     * Codecs allocate their own buffers per stream, larger ones cost more
+     * than they save for small messages.
+     */
+    private static final int MAX_CODEC_BUFFER_SIZE = 8192;
+    /**
+     * Same as defaults of LZ4BlockOutputStream.
+     */
+    private static final int LZ4_BLOCK_SIZE = 1 << 16;
+    /**
+     * Limits of LZ4BlockOutputStream.
+     */
+    private static final int LZ4_MIN_BLOCK_SIZE = 64;
+    private static final int LZ4_MAX_BLOCK_SIZE = 1 << 25;
+    private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4Compressor LZ4_HC_COMPRESSOR = LZ4Factory.fastestInstance().highCompressor();
+    private static final LZ4FastDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+    private static final ChunkDecoder LZF_DECODER = ChunkDecoderFactory.optimalInstance();
+
     private static Splitter splitter = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static volatile BufferPool pool = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+
+    /**
+     * Reads "filter.bufferSize" and "filter.maxPooledBuffers", and settings of
+     * pgzip.
+     */
+    public static void configure(Properties config) {
+        pool = new BufferPool(
+                ConfigUtil.getInt(config, "filter.bufferSize", DEFAULT_BUFFER_SIZE),
+                ConfigUtil.getInt(config, "filter.maxPooledBuffers", DEFAULT_MAX_POOLED_BUFFERS));
+        ParallelGzipOutputStream.configure(config);
+    }
+
+    public static BufferPool getPool() {
+        return pool;
+    }
 
+    /**
+     * Level and block size arguments of codecs are accepted and ignored, the
+     * compressed formats are self-describing.
+     *
+     * If a stage fails, the stages already built are closed without closing
+     * in, so their pooled contexts and buffers are returned.
+     */
     public static InputStream filter(InputStream in, String filters) throws IOException {
         if (filters == null || (filters = filters.trim()).isEmpty()) {
             return in;
         }
 
-        for (String filter : parseFilters(filters)) {
-            String s = filter.toLowerCase();
-            switch (s) {
-                case "base64":
-                    in = new Base64InputStream(in);
-                    break;
-                case "base64raw":
-                    in = new Base64InputStream(in, false, 0, null);
-                    break;
-                case "bzip2":
-                    in = new BZip2CompressorInputStream(in);
-                    break;
-                case "deflate":
-                    in = new InflaterInputStream(in);
-                    break;
-                case "gzip":
-                    in = new GZIPInputStream(in);
-                    break;
-                case "lz4":
-                    in = new LZ4BlockInputStream(in);
-                    break;
-                case "lzf":
-                    in = new LZFInputStream(in);
-                    break;
-                case "snappy":
-                    in = new SnappyInputStream(in);
-                    break;
-                default:
-                    if (s.startsWith("skip")) {
-                        int n = Integer.parseInt(s.substring(4));
-                        if (n > 0) {
-                            for (int i = 0; i < n; ++i) {
-                                in.read();
-                            }
-                        } else if (n == 0) {
-                            while (true) {
-                                int i = in.read();
-                                if (i == 0 || i == -1) {
-                                    break;
-                                }
-                            }
-                        }
+        validate(filters, false, false);
+
+        return build(new DetachableInputStream(in), filters);
+    }
+
+    private static InputStream build(DetachableInputStream base, String filters) throws IOException {
+        InputStream in = base;
+        BufferPool pool = FilterStreamUtil.pool;
+        int size = Math.min(pool.getBufferSize(), MAX_CODEC_BUFFER_SIZE);
+
+        try {
+            for (String filter : parseFilters(filters)) {
+                String[] args = filter.toLowerCase().split(":");
+                switch (args[0]) {
+                    case "identity":
+                        noArguments(filter, args);
+                        break;
+                    case "base64":
+                    case "base64raw":
+                        noArguments(filter, args);
+                        in = new PooledBase64InputStream(in, pool);
+                        break;
+                    case "bzip2":
+                        bzip2BlockSize(filter, args);
+                        // the decoder reads byte by byte, the buffer joins the
+                        // chain before the header is read
+                        in = buffered(in, pool);
+                        in = new BZip2CompressorInputStream(in);
+                        break;
+                    case "deflate":
+                        level(filter, args);
+                        in = new PooledInflaterInputStream(in, CodecPools.getInflaterPool(false), size);
+                        break;
+                    case "gzip":
+                    case "pgzip":
+                        level(filter, args);
+                        in = new PooledGzipInputStream(in, CodecPools.getInflaterPool(true), size);
+                        break;
+                    case "lz4": {
+                        lz4(filter, args);
+                        CodecPool<Checksum> checksums = CodecPools.getLZ4ChecksumPool();
+                        Checksum checksum = checksums.borrow();
+                        in = releaseOnClose(new LZ4BlockInputStream(in, LZ4_DECOMPRESSOR, checksum),
+                                checksums, checksum);
+                        break;
                     }
+                    case "lzf":
+                        noArguments(filter, args);
+                        // buffers come from thread local recycler of compress-lzf
+                        in = new LZFInputStream(LZF_DECODER, in);
+                        break;
+                    case "snappy":
+                        noArguments(filter, args);
+                        in = new SnappyInputStream(in);
+                        break;
+                    default:
+                        if (!args[0].startsWith("skip")) {
+                            throw new IllegalArgumentException("unknown filter " + filter);
+                        }
 
-                    throw new IllegalArgumentException("unknown filter " + filter);
+                        noArguments(filter, args);
+                        PooledBufferedInputStream buffered = buffered(in, pool);
+                        in = buffered;
+                        skip(buffered, args[0]);
+                }
             }
+        } catch (IOException | RuntimeException ex) {
+            base.detach();
+            close(in, ex);
+            throw ex;
         }
 
         return in;
     }
 
     public static OutputStream filter(OutputStream out, String filters) throws IOException {
+        return filter(out, filters, null);
+    }
+
+    /**
+     * @param auto resolves filter "auto", null if it isn't allowed
+     */
+    public static OutputStream filter(OutputStream out, String filters, AdaptiveCompression.Selection auto)
+            throws IOException {
         if (filters == null || (filters = filters.trim()).isEmpty()) {
             return out;
         }
 
+        validate(filters, true, auto != null);
+
+        // a failed stage must not write trailers of the others into out
+        return build(new DetachableOutputStream(out), filters, auto);
+    }
+
+    private static OutputStream build(DetachableOutputStream base, String filters,
+            AdaptiveCompression.Selection auto) throws IOException {
+        OutputStream out = base;
+        BufferPool pool = FilterStreamUtil.pool;
+        int size = Math.min(pool.getBufferSize(), MAX_CODEC_BUFFER_SIZE);
+
+        try {
+            for (String filter : parseFilters(filters)) {
+                String[] args = filter.toLowerCase().split(":");
+                switch (args[0]) {
+                    case "identity":
+                        noArguments(filter, args);
+                        break;
+                    case "auto":
+                        out = auto.wrap(out);
+                        break;
+                    case "base64":
+                        noArguments(filter, args);
+                        out = new PooledBase64OutputStream(out, pool, true);
+                        break;
+                    case "base64raw":
+                        noArguments(filter, args);
+                        out = new PooledBase64OutputStream(out, pool, false);
+                        break;
+                    case "bzip2":
+                        // the encoder writes byte by byte
+                        out = new PooledBufferedOutputStream(out, pool);
+                        out = new BZip2CompressorOutputStream(out, bzip2BlockSize(filter, args));
+                        break;
+                    case "deflate":
+                        out = new PooledDeflaterOutputStream(out,
+                                CodecPools.getDeflaterPool(level(filter, args), false), size);
+                        break;
+                    case "gzip":
+                        out = new PooledGzipOutputStream(out,
+                                CodecPools.getDeflaterPool(level(filter, args), true), size);
+                        break;
+                    case "pgzip":
+                        out = new ParallelGzipOutputStream(out, level(filter, args));
+                        break;
+                    case "lz4": {
+                        int blockSize = lz4(filter, args);
+                        LZ4Compressor compressor = blockSize < 0 ? LZ4_HC_COMPRESSOR : LZ4_COMPRESSOR;
+                        CodecPool<Checksum> checksums = CodecPools.getLZ4ChecksumPool();
+                        Checksum checksum = checksums.borrow();
+                        out = releaseOnClose(new LZ4BlockOutputStream(out, Math.abs(blockSize), compressor,
+                                checksum, false), checksums, checksum);
+                        break;
+                    }
+                    case "lzf":
+                        noArguments(filter, args);
+                        out = new PooledLZFOutputStream(out, CodecPools.getLZFEncoderPool(), pool);
+                        break;
+                    case "snappy":
+                        noArguments(filter, args);
+                        out = new SnappyOutputStream(out);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown filter " + filter);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            base.detach();
+            close(out, ex);
+            throw ex;
+        }
+
+        return out;
+    }
+
+    /**
+     * Protects a stream shared by several consumers from being closed by one
+     * of them.
+     */
+    public static InputStream shield(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
+    /**
+     * Protects a stream shared by several producers from being closed by one
+     * of them, close() only flushes.
+     */
+    public static OutputStream shield(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Checks names and arguments of all filters before any stage borrows a
+     * pooled context, so a bad filter late in the list leaks nothing.
+     *
+     * @param auto whether filter "auto" is allowed
+     */
+    private static void validate(String filters, boolean output, boolean auto) {
         for (String filter : parseFilters(filters)) {
-            switch (filter.toLowerCase()) {
+            String[] args = filter.toLowerCase().split(":");
+            switch (args[0]) {
+                case "identity":
                 case "base64":
-                    out = new Base64OutputStream(out);
-                    break;
                 case "base64raw":
-                    out = new Base64OutputStream(out, true, 0, null);
+                case "lzf":
+                case "snappy":
+                    noArguments(filter, args);
+                    break;
+                case "auto":
+                    noArguments(filter, args);
+                    if (!auto) {
+                        throw new IllegalArgumentException("filter auto isn't supported here");
+                    }
                     break;
                 case "bzip2":
-                    out = new BZip2CompressorOutputStream(out);
+                    bzip2BlockSize(filter, args);
                     break;
                 case "deflate":
-                    out = new DeflaterOutputStream(out);
-                    break;
                 case "gzip":
-                    out = new GZIPOutputStream(out);
+                case "pgzip":
+                    level(filter, args);
                     break;
                 case "lz4":
-                    out = new LZ4BlockOutputStream(out);
-                    break;
-                case "lzf":
-                    out = new LZFOutputStream(out);
-                    break;
-                case "snappy":
-                    out = new SnappyOutputStream(out);
+                    lz4(filter, args);
                     break;
                 default:
-                    throw new IllegalArgumentException("unknown filter " + filter);
+                    if (output || !args[0].startsWith("skip")) {
+                        throw new IllegalArgumentException("unknown filter " + filter);
+                    }
+
+                    noArguments(filter, args);
+                    skipCount(args[0]);
             }
         }
+    }
 
-        return out;
+    /**
+     * Closes a partially built chain, failures are added to the one that
+     * stopped building it.
+     */
+    private static void close(Closeable chain, Exception ex) {
+        try {
+            chain.close();
+        } catch (IOException | RuntimeException suppressed) {
+            ex.addSuppressed(suppressed);
+        }
+    }
+
+    private static int skipCount(String filter) {
+        int n;
+        try {
+            n = Integer.parseInt(filter.substring(4));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+
+        if (n < 0) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+
+        return n;
+    }
+
+    /**
+     * "skipN" skips N bytes, "skip0" skips up to and including the first
+     * zero byte, both are done eagerly.
+     */
+    private static void skip(PooledBufferedInputStream in, String filter) throws IOException {
+        int n = skipCount(filter);
+        if (n > 0) {
+            in.skipFully(n);
+        } else {
+            in.skipPast(0);
+        }
+    }
+
+    private static <T> InputStream releaseOnClose(InputStream in, final CodecPool<T> pool, final T context) {
+        return new FilterInputStream(in) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    pool.release(context);
+                }
+            }
+        };
+    }
+
+    private static <T> OutputStream releaseOnClose(OutputStream out, final CodecPool<T> pool, final T context) {
+        return new FilterOutputStream(out) {
+            private boolean closed;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    pool.release(context);
+                }
+            }
+        };
+    }
+
+    private static void noArguments(String filter, String[] args) {
+        if (args.length > 1) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+    }
+
+    /**
+     * "gzip:N", "deflate:N" and "pgzip:N", N is 0-9.
+     */
+    private static int level(String filter, String[] args) {
+        if (args.length > 2) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+
+        return args.length == 1 ? Deflater.DEFAULT_COMPRESSION : parseInt(filter, args[1], 0, 9);
+    }
+
+    /**
+     * "bzip2:N", N is block size 1-9 in 100KB units.
+     */
+    private static int bzip2BlockSize(String filter, String[] args) {
+        if (args.length > 2) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+
+        return args.length == 1 ? BZip2CompressorOutputStream.MAX_BLOCKSIZE
+                : parseInt(filter, args[1], BZip2CompressorOutputStream.MIN_BLOCKSIZE,
+                        BZip2CompressorOutputStream.MAX_BLOCKSIZE);
+    }
+
+    /**
+     * "lz4:hc", "lz4:SIZE" and "lz4:hc:SIZE", SIZE is block size in bytes
+     * with optional suffix "k" or "m".
+     *
+     * @return block size, negative for the high compression compressor
+     */
+    private static int lz4(String filter, String[] args) {
+        boolean hc = false;
+        int blockSize = LZ4_BLOCK_SIZE;
+        for (int i = 1; i < args.length; ++i) {
+            if (args[i].equals("hc") && !hc) {
+                hc = true;
+            } else if (i == args.length - 1) {
+                blockSize = parseSize(filter, args[i], LZ4_MIN_BLOCK_SIZE, LZ4_MAX_BLOCK_SIZE);
+            } else {
+                throw new IllegalArgumentException("unknown filter " + filter);
+            }
+        }
+
+        return hc ? -blockSize : blockSize;
+    }
+
+    private static int parseSize(String filter, String s, int min, int max) {
+        int unit = 1;
+        if (s.endsWith("k")) {
+            unit = 1024;
+        } else if (s.endsWith("m")) {
+            unit = 1024 * 1024;
+        }
+
+        long n = parseInt(filter, unit == 1 ? s : s.substring(0, s.length() - 1), 1, max);
+        n *= unit;
+        if (n < min || n > max) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+
+        return (int) n;
+    }
+
+    private static int parseInt(String filter, String s, int min, int max) {
+        int n;
+        try {
+            n = Integer.parseInt(s);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+
+        if (n < min || n > max) {
+            throw new IllegalArgumentException("unknown filter " + filter);
+        }
+
+        return n;
+    }
+
+    private static PooledBufferedInputStream buffered(InputStream in, BufferPool pool) {
+        return in instanceof PooledBufferedInputStream
+                ? (PooledBufferedInputStream) in : new PooledBufferedInputStream(in, pool);
     }
 
     private static Iterable<String> parseFilters(String filters) {
         return splitter.split(filters);
     }
+
+    /**
+     * Bottom of a chain, detached from the caller's stream when building the
+     * chain fails.
+     */
+    private static class DetachableInputStream extends FilterInputStream {
+
+        private boolean detached;
+
+        DetachableInputStream(InputStream in) {
+            super(in);
+        }
+
+        void detach() {
+            detached = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!detached) {
+                super.close();
+            }
+        }
+    }
+
+    /**
+     * Bottom of a chain, once detached writes are dropped and the caller's
+     * stream is neither flushed nor closed.
+     */
+    private static class DetachableOutputStream extends FilterOutputStream {
+
+        private boolean detached;
+
+        DetachableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void detach() {
+            detached = true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!detached) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!detached) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!detached) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!detached) {
+                super.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,173 @@
+package schema.registry;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.protobuf.Descriptors;
+import org.apache.avro.Schema;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.meta_data.FieldMetaData;
+import org.apache.thrift.meta_data.StructMetaData;
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * Rough heap estimates of parsed schemas by counting the objects they're
+ * made of, assuming 64-bit JVM without compressed references. Objects shared
+ * by several schemas are counted in each of them.
+ */
+public class FootprintUtil {
+
+    public static final int OBJECT = 16;
+    public static final int REFERENCE = 8;
+    public static final int MAP_ENTRY = 48;
+    /**
+     * A reflected Method with its name, parameter and exception arrays.
+     */
+    public static final int METHOD = 160;
+
+    public static Set<Object> newVisitedSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+
+    public static long string(String s) {
+        return s == null ? 0 : OBJECT * 3 + 2L * s.length();
+    }
+
+    public static long strings(Iterable<String> strings) {
+        long n = 0;
+        for (String s : strings) {
+            n += REFERENCE + string(s);
+        }
+        return n;
+    }
+
+    public static long estimate(Schema schema, Set<Object> visited) {
+        if (!visited.add(schema)) {
+            return 0;
+        }
+
+        long n = OBJECT * 4 + string(schema.getFullName()) + string(schema.getDoc()) + props(schema.getJsonProps());
+        switch (schema.getType()) {
+            case RECORD:
+                n += strings(schema.getAliases());
+                for (Schema.Field field : schema.getFields()) {
+                    n += OBJECT * 4 + MAP_ENTRY + string(field.name()) + string(field.doc())
+                            + (field.defaultValue() == null ? 0 : OBJECT * 2)
+                            + props(field.getJsonProps()) + strings(field.aliases())
+                            + estimate(field.schema(), visited);
+                }
+                break;
+            case ENUM:
+                n += strings(schema.getAliases());
+                n += (long) schema.getEnumSymbols().size() * MAP_ENTRY + strings(schema.getEnumSymbols());
+                break;
+            case FIXED:
+                n += strings(schema.getAliases());
+                break;
+            case ARRAY:
+                n += estimate(schema.getElementType(), visited);
+                break;
+            case MAP:
+                n += estimate(schema.getValueType(), visited);
+                break;
+            case UNION:
+                for (Schema type : schema.getTypes()) {
+                    n += REFERENCE + MAP_ENTRY + estimate(type, visited);
+                }
+                break;
+            default:
+                break;
+        }
+
+        return n;
+    }
+
+    /**
+     * Estimates the whole .proto file of the message and the files it
+     * imports, as they're all kept by the generated classes.
+     */
+    public static long estimate(Descriptors.Descriptor descriptor, Set<Object> visited) {
+        return estimate(descriptor.getFile(), visited);
+    }
+
+    public static long estimate(Descriptors.FileDescriptor file, Set<Object> visited) {
+        if (!visited.add(file)) {
+            return 0;
+        }
+
+        // the FileDescriptorProto behind, its strings dominate the serialized size
+        long n = OBJECT * 4 + 3L * file.toProto().getSerializedSize();
+        for (Descriptors.Descriptor message : file.getMessageTypes()) {
+            n += estimate(message);
+        }
+        for (Descriptors.EnumDescriptor e : file.getEnumTypes()) {
+            n += estimate(e);
+        }
+        for (Descriptors.FileDescriptor dependency : file.getDependencies()) {
+            n += estimate(dependency, visited);
+        }
+        return n;
+    }
+
+    /**
+     * Estimates the struct and the structs in its fields, the static
+     * metadata map of the generated class.
+     */
+    public static long estimate(Class<? extends TBase> c, Set<Object> visited) {
+        if (!visited.add(c)) {
+            return 0;
+        }
+
+        Map<? extends TFieldIdEnum, FieldMetaData> fields = FieldMetaData.getStructMetaDataMap(c);
+        if (fields == null) {
+            return 0;
+        }
+
+        long n = OBJECT * 2;
+        for (FieldMetaData field : fields.values()) {
+            n += MAP_ENTRY + OBJECT * 3 + string(field.fieldName);
+            if (field.valueMetaData instanceof StructMetaData) {
+                n += estimate(((StructMetaData) field.valueMetaData).structClass, visited);
+            }
+        }
+        return n;
+    }
+
+    private static long estimate(Descriptors.Descriptor message) {
+        long n = OBJECT * 4 + string(message.getFullName());
+        for (Descriptors.FieldDescriptor field : message.getFields()) {
+            n += OBJECT * 4 + REFERENCE + string(field.getFullName());
+        }
+        for (Descriptors.Descriptor nested : message.getNestedTypes()) {
+            n += estimate(nested);
+        }
+        for (Descriptors.EnumDescriptor e : message.getEnumTypes()) {
+            n += estimate(e);
+        }
+        return n;
+    }
+
+    private static long estimate(Descriptors.EnumDescriptor e) {
+        long n = OBJECT * 4 + string(e.getFullName());
+        for (Descriptors.EnumValueDescriptor value : e.getValues()) {
+            n += OBJECT * 3 + REFERENCE + string(value.getFullName());
+        }
+        return n;
+    }
+
+    /**
+     * Non-text values are counted by the length of their JSON text.
+     */
+    private static long props(Map<String, JsonNode> props) {
+        long n = 0;
+        for (Map.Entry<String, JsonNode> e : props.entrySet()) {
+            JsonNode value = e.getValue();
+            n += MAP_ENTRY + string(e.getKey()) + OBJECT
+                    + string(value.isTextual() ? value.getTextValue() : value.toString());
+        }
+        return n;
+    }
+}
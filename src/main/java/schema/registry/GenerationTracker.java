@@ -0,0 +1,111 @@
+package schema.registry;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps weak references to every registry generation and its schema class
+ * loaders, so generations still reachable long after a reload show up as
+ * leaks. Reachability is as of the last garbage collection.
+ */
+public class GenerationTracker {
+
+    private static final List<Generation> generations = new ArrayList<>();
+
+    /**
+     * Records a new generation, older generations are retired from now.
+     */
+    public static synchronized void track(long generation, Object registry,
+            Collection<SchemaClassLoader> classLoaders) {
+        long now = System.currentTimeMillis();
+        for (Generation g : generations) {
+            if (g.retiredAt == 0) {
+                g.retiredAt = now;
+            }
+        }
+
+        purge();
+        generations.add(new Generation(generation, registry, classLoaders, now));
+    }
+
+    /**
+     * @return generations whose registry or any class loader is reachable,
+     * oldest first
+     */
+    public static synchronized List<Map<String, Object>> getGenerations() {
+        purge();
+
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Generation g : generations) {
+            int loaders = 0;
+            long classes = 0;
+            long classFileBytes = 0;
+            for (WeakReference<SchemaClassLoader> ref : g.classLoaders) {
+                SchemaClassLoader cl = ref.get();
+                if (cl != null) {
+                    ++loaders;
+                    classes += cl.getClassCount();
+                    classFileBytes += cl.getClassFileBytes();
+                }
+            }
+
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("generation", g.generation);
+            m.put("current", g.retiredAt == 0);
+            m.put("createdAt", g.createdAt);
+            m.put("retiredSeconds", g.retiredAt == 0 ? 0 : (now - g.retiredAt) / 1000);
+            m.put("registryReachable", g.registry.get() != null);
+            m.put("classLoaders", loaders);
+            m.put("classes", classes);
+            m.put("classFileBytes", classFileBytes);
+            result.add(m);
+        }
+
+        return result;
+    }
+
+    private static void purge() {
+        for (Iterator<Generation> it = generations.iterator(); it.hasNext();) {
+            if (!it.next().isReachable()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Generation {
+
+        private final long generation;
+        private final WeakReference<Object> registry;
+        private final List<WeakReference<SchemaClassLoader>> classLoaders = new ArrayList<>();
+        private final long createdAt;
+        private long retiredAt;
+
+        Generation(long generation, Object registry, Collection<SchemaClassLoader> classLoaders, long createdAt) {
+            this.generation = generation;
+            this.registry = new WeakReference<>(registry);
+            for (SchemaClassLoader cl : classLoaders) {
+                this.classLoaders.add(new WeakReference<>(cl));
+            }
+            this.createdAt = createdAt;
+        }
+
+        boolean isReachable() {
+            if (registry.get() != null) {
+                return true;
+            }
+
+            for (WeakReference<SchemaClassLoader> ref : classLoaders) {
+                if (ref.get() != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
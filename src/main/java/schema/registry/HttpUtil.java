@@ -0,0 +1,262 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+
+public class HttpUtil {
+
+    public static final int DEFAULT_MIN_ENCODED_SIZE = 1024;
+
+    private static Splitter splitter = Splitter.on(',').trimResults().omitEmptyStrings();
+    /**
+     * Content codings and their filters, in server preference order.
+     */
+    private static final Map<String, String> CODINGS = new LinkedHashMap<>();
+    /**
+     * Filters whose output is already compressed.
+     */
+    private static final Set<String> COMPRESSORS = new HashSet<>(Arrays.asList(
+            "auto", "bzip2", "deflate", "gzip", "pgzip", "lz4", "lzf", "snappy"));
+
+    static {
+        CODINGS.put("gzip", "gzip");
+        CODINGS.put("x-gzip", "gzip");
+        CODINGS.put("deflate", "deflate");
+        CODINGS.put("lz4", "lz4");
+        CODINGS.put("snappy", "snappy");
+    }
+
+    public static boolean acceptsGzip(String acceptEncoding) {
+        return negotiateEncoding(acceptEncoding, Arrays.asList("gzip", "x-gzip")) != null;
+    }
+
+    /**
+     * @return the supported coding with the highest q value, ties go to the
+     * first one in "Accept-Encoding", "*" stands for the first supported
+     * coding not listed, null if none is acceptable
+     */
+    public static String negotiateEncoding(String acceptEncoding, List<String> supported) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        String best = null;
+        double bestQ = 0;
+        double wildcardQ = 0;
+        Set<String> listed = new HashSet<>();
+        for (String coding : splitter.split(acceptEncoding)) {
+            int i = coding.indexOf(';');
+            String name = (i < 0 ? coding : coding.substring(0, i)).trim().toLowerCase();
+            double q = i < 0 ? 1 : parseQuality(coding.substring(i + 1));
+            listed.add(name);
+
+            if (name.equals("*")) {
+                wildcardQ = q;
+            } else if (supported.contains(name) && q > bestQ) {
+                best = name;
+                bestQ = q;
+            }
+        }
+
+        if (wildcardQ > bestQ) {
+            for (String name : supported) {
+                if (!listed.contains(name)) {
+                    return name;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @return filters decoding a body with the "Content-Encoding", the last
+     * applied coding is decoded first, null if any coding isn't supported
+     */
+    public static String getDecodingFilters(String contentEncoding) {
+        if (contentEncoding == null) {
+            return "";
+        }
+
+        List<String> filters = new ArrayList<>();
+        for (String coding : splitter.split(contentEncoding.toLowerCase())) {
+            if (coding.equals("identity")) {
+                continue;
+            }
+
+            String filter = CODINGS.get(coding);
+            if (filter == null) {
+                return null;
+            }
+            filters.add(filter);
+        }
+
+        Collections.reverse(filters);
+        return Joiner.on(',').join(filters);
+    }
+
+    /**
+     * Decodes the request body by "Content-Encoding", callers should have
+     * checked it with {@link #getDecodingFilters(String)}.
+     */
+    public static InputStream decodeContent(HttpServletRequest request, InputStream in) throws IOException {
+        String filters = getDecodingFilters(request.getHeader("Content-Encoding"));
+        if (filters == null) {
+            throw new IllegalArgumentException("unsupported Content-Encoding");
+        }
+
+        return FilterStreamUtil.filter(in, filters);
+    }
+
+    /**
+     * Compresses the response by "Accept-Encoding" once it exceeds minSize
+     * bytes. Nothing is done if the outermost filter of response filters
+     * already compresses.
+     *
+     * @return out itself if the response isn't compressed
+     */
+    public static OutputStream encodeContent(HttpServletRequest request, final HttpServletResponse response,
+            OutputStream out, String filters, int minSize) {
+        if (isCompressed(filters)) {
+            return out;
+        }
+
+        response.addHeader("Vary", "Accept-Encoding");
+        final String coding = negotiateContentCoding(request.getHeader("Accept-Encoding"));
+        if (coding == null) {
+            return out;
+        }
+
+        return new ContentEncodingOutputStream(out, getCodingFilter(coding), minSize) {
+            @Override
+            protected void started() {
+                response.setHeader("Content-Encoding", coding);
+            }
+        };
+    }
+
+    /**
+     * @return true if the outermost of response filters already compresses,
+     * then the response isn't compressed again by content coding
+     */
+    public static boolean isCompressed(String filters) {
+        if (filters != null) {
+            for (String filter : splitter.split(filters)) {
+                return COMPRESSORS.contains(filter.toLowerCase().split(":")[0]);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the content coding to compress a response with, null if none
+     * is acceptable
+     */
+    public static String negotiateContentCoding(String acceptEncoding) {
+        return negotiateEncoding(acceptEncoding, new ArrayList<>(CODINGS.keySet()));
+    }
+
+    /**
+     * @return the filter of a content coding, null if it isn't supported
+     */
+    public static String getCodingFilter(String coding) {
+        return CODINGS.get(coding);
+    }
+
+    /**
+     * Weak comparison as required for If-None-Match.
+     */
+    public static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String tag : splitter.split(ifNoneMatch)) {
+            if (tag.equals("*") || etag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Parses a single byte range, multiple ranges aren't supported.
+     *
+     * @return {first, last} both inclusive, null if the header is absent,
+     * malformed or has multiple ranges, then the whole entity should be sent,
+     * {-1, -1} if the range isn't satisfiable
+     */
+    public static long[] parseRange(String range, long length) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String spec = range.substring("bytes=".length()).trim();
+        int i = spec.indexOf('-');
+        if (i < 0) {
+            return null;
+        }
+
+        long first;
+        long last;
+        try {
+            if (i == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return new long[]{-1, -1};
+                }
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, i));
+                last = i == spec.length() - 1 ? length - 1
+                        : Math.min(length - 1, Long.parseLong(spec.substring(i + 1)));
+                if (last < first && i < spec.length() - 1 && first < length) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+
+        if (first < 0 || first >= length) {
+            return new long[]{-1, -1};
+        }
+
+        return new long[]{first, last};
+    }
+
+    /**
+     * @return 0 for malformed values so they don't select a coding
+     */
+    private static double parseQuality(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+
+        return 1;
+    }
+}
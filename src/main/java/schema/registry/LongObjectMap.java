@@ -0,0 +1,83 @@
+package schema.registry;
+
+/**
+ * Open addressing hash map with primitive long keys, it's built once and
+ * then only read, so it's safe for concurrent reads once published.
+ */
+public class LongObjectMap<V> {
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * @return the previous value associated with key, or null
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("null value");
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        int i = indexOf(key);
+        @SuppressWarnings("unchecked")
+        V old = (V) values[i];
+        if (old == null) {
+            keys[i] = key;
+            ++size;
+        }
+
+        values[i] = value;
+        return old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[indexOf(key)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+
+        return i;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != null) {
+                int j = indexOf(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,483 @@
+package schema.registry;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock free counters and latency histograms of conversions, keyed by
+ * direction, schema type, schema ID, message and filters, and of HTTP
+ * requests, keyed by endpoint and status.
+ *
+ * Histograms are log-linear like HdrHistogram with 4 sub-buckets per power
+ * of two from 1us to 68s, so quantiles are within 25%. Every series keeps
+ * one row of cells per stripe and threads update the row picked by their
+ * ID, so concurrent updates rarely touch the same cache line.
+ *
+ * Each family holds at most "metrics.maxSeries" series, later label
+ * combinations are counted in a series whose schema ID, message and
+ * filters are "other". With "metrics.jmx=true", the default, every series
+ * is also registered as an MXBean in domain "schema.registry".
+ */
+public class Metrics {
+
+    public static final int DEFAULT_MAX_SERIES = 1000;
+    public static final String OTHER = "other";
+    public static final String ENCODE = "encode";
+    public static final String DECODE = "decode";
+    public static final String JMX_DOMAIN = "schema.registry";
+
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    /**
+     * Bucket 0 counts values below 2^MIN_EXPONENT ns, the last bucket values
+     * from 2^(MAX_EXPONENT + 1) ns.
+     */
+    static final int MIN_EXPONENT = 10;
+    static final int MAX_EXPONENT = 36;
+    static final int SUB_BUCKET_BITS = 2;
+    static final int BUCKETS = 2 + ((MAX_EXPONENT - MIN_EXPONENT + 1) << SUB_BUCKET_BITS);
+    private static final int ERRORS = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int BYTES_IN = BUCKETS + 2;
+    private static final int BYTES_OUT = BUCKETS + 3;
+    /**
+     * Rounded up to whole cache lines of longs.
+     */
+    private static final int STRIDE = (BUCKETS + 4 + 7) & ~7;
+    private static final int STRIPES = Math.min(8,
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+    /**
+     * Status labels, so recording a request doesn't format the status.
+     */
+    private static final String[] STATUS = new String[600];
+
+    static {
+        for (int i = 0; i < STATUS.length; ++i) {
+            STATUS[i] = String.valueOf(i);
+        }
+    }
+
+    private static volatile Metrics instance = new Metrics(DEFAULT_MAX_SERIES, false);
+
+    private final Family conversions;
+    private final Family requests;
+
+    public Metrics(int maxSeries, boolean jmx) {
+        conversions = new Family("Conversion", maxSeries, jmx,
+                "direction", "schemaType", "id", "message", "filters");
+        requests = new Family("Request", maxSeries, jmx, "endpoint", "status");
+    }
+
+    /**
+     * Reads "metrics.maxSeries" and "metrics.jmx", series recorded before
+     * are dropped.
+     */
+    public static void configure(Properties config) {
+        Metrics old = instance;
+        instance = new Metrics(ConfigUtil.getInt(config, "metrics.maxSeries", DEFAULT_MAX_SERIES),
+                ConfigUtil.getBoolean(config, "metrics.jmx", true));
+        old.unregister();
+    }
+
+    public static Metrics get() {
+        return instance;
+    }
+
+    /**
+     * Allocates nothing once the series exists, filters are only copied
+     * when they aren't in lower case already.
+     *
+     * @param direction {@link #ENCODE} or {@link #DECODE}
+     */
+    public void recordConversion(String direction, String type, String id, String message, String filters,
+            long nanos, long bytesIn, long bytesOut, boolean error) {
+        conversions.get(direction, type, id, message == null ? "" : message,
+                filters == null ? "" : filters.toLowerCase()).record(nanos, bytesIn, bytesOut, error);
+    }
+
+    public void recordRequest(String endpoint, int status, long nanos, long bytesIn, long bytesOut) {
+        requests.get(endpoint, status >= 0 && status < STATUS.length ? STATUS[status] : String.valueOf(status))
+                .record(nanos, bytesIn, bytesOut, status >= 500);
+    }
+
+    public Family getConversions() {
+        return conversions;
+    }
+
+    public Family getRequests() {
+        return requests;
+    }
+
+    public void unregister() {
+        conversions.unregister();
+        requests.unregister();
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < (1L << MIN_EXPONENT)) {
+            return 0;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return 1 + ((exponent - MIN_EXPONENT) << SUB_BUCKET_BITS) + sub;
+    }
+
+    /**
+     * @return exclusive upper bound in ns, Long.MAX_VALUE for the last bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket == 0) {
+            return 1L << MIN_EXPONENT;
+        }
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+
+        int exponent = MIN_EXPONENT + ((bucket - 1) >> SUB_BUCKET_BITS);
+        int sub = (bucket - 1) & ((1 << SUB_BUCKET_BITS) - 1);
+        return (1L << exponent) + ((sub + 1L) << (exponent - SUB_BUCKET_BITS));
+    }
+
+    /**
+     * Series with the same label names.
+     */
+    public static class Family {
+
+        private final String name;
+        private final String[] labelNames;
+        private final int maxSeries;
+        private final boolean jmx;
+        private final ConcurrentMap<Key, Series> series = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        /**
+         * Key reused by each thread to look up existing series, it's copied
+         * only when a series is added.
+         */
+        private final ThreadLocal<Key> probes = new ThreadLocal<Key>() {
+            @Override
+            protected Key initialValue() {
+                return new Key(new String[labelNames.length]);
+            }
+        };
+
+        Family(String name, int maxSeries, boolean jmx, String... labelNames) {
+            this.name = name;
+            this.labelNames = labelNames;
+            this.maxSeries = Math.max(1, maxSeries);
+            this.jmx = jmx;
+        }
+
+        public String[] getLabelNames() {
+            return labelNames.clone();
+        }
+
+        /**
+         * @return series sorted by labels
+         */
+        public Map<String, Series> getSeries() {
+            Map<String, Series> sorted = new TreeMap<>();
+            for (Series s : series.values()) {
+                sorted.put(Arrays.toString(s.labels), s);
+            }
+
+            return sorted;
+        }
+
+        Series get(String label0, String label1) {
+            Key probe = probes.get();
+            probe.labels[0] = label0;
+            probe.labels[1] = label1;
+            return get(probe.rehash());
+        }
+
+        Series get(String label0, String label1, String label2, String label3, String label4) {
+            Key probe = probes.get();
+            probe.labels[0] = label0;
+            probe.labels[1] = label1;
+            probe.labels[2] = label2;
+            probe.labels[3] = label3;
+            probe.labels[4] = label4;
+            return get(probe.rehash());
+        }
+
+        private Series get(Key probe) {
+            Series s = series.get(probe);
+            if (s != null) {
+                return s;
+            }
+
+            if (size.get() >= maxSeries) {
+                // keep the leading labels that have few values
+                for (int i = Math.min(2, probe.labels.length); i < probe.labels.length; ++i) {
+                    probe.labels[i] = OTHER;
+                }
+                s = series.get(probe.rehash());
+                if (s != null) {
+                    return s;
+                }
+            }
+
+            Key key = new Key(probe.labels.clone());
+            s = new Series(key.labels, labelNames);
+            Series old = series.putIfAbsent(key, s);
+            if (old != null) {
+                return old;
+            }
+
+            size.incrementAndGet();
+            if (jmx) {
+                register(s);
+            }
+            return s;
+        }
+
+        private void register(Series s) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(s, objectName(s));
+            } catch (JMException ex) {
+                logger.warn("fail to register metrics " + Arrays.toString(s.labels), ex);
+            }
+        }
+
+        void unregister() {
+            if (!jmx) {
+                return;
+            }
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Series s : series.values()) {
+                try {
+                    server.unregisterMBean(objectName(s));
+                } catch (JMException ex) {
+                    // already gone
+                }
+            }
+        }
+
+        private ObjectName objectName(Series s) throws JMException {
+            StringBuilder sb = new StringBuilder(JMX_DOMAIN).append(":type=").append(name);
+            for (int i = 0; i < labelNames.length; ++i) {
+                sb.append(',').append(labelNames[i]).append('=').append(ObjectName.quote(s.labels[i]));
+            }
+
+            return new ObjectName(sb.toString());
+        }
+    }
+
+    public interface SeriesMXBean {
+
+        Map<String, String> getLabels();
+
+        long getCount();
+
+        long getErrors();
+
+        long getBytesIn();
+
+        long getBytesOut();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP99Millis();
+    }
+
+    public static class Series implements SeriesMXBean {
+
+        private final String[] labels;
+        private final String[] labelNames;
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+
+        Series(String[] labels, String[] labelNames) {
+            this.labels = labels;
+            this.labelNames = labelNames;
+        }
+
+        void record(long nanos, long bytesIn, long bytesOut, boolean error) {
+            int base = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIDE;
+            cells.incrementAndGet(base + bucket(nanos));
+            cells.addAndGet(base + SUM, nanos);
+            if (bytesIn != 0) {
+                cells.addAndGet(base + BYTES_IN, bytesIn);
+            }
+            if (bytesOut != 0) {
+                cells.addAndGet(base + BYTES_OUT, bytesOut);
+            }
+            if (error) {
+                cells.incrementAndGet(base + ERRORS);
+            }
+        }
+
+        public String[] getLabelValues() {
+            return labels.clone();
+        }
+
+        @Override
+        public Map<String, String> getLabels() {
+            Map<String, String> m = new TreeMap<>();
+            for (int i = 0; i < labels.length; ++i) {
+                m.put(labelNames[i], labels[i]);
+            }
+            return m;
+        }
+
+        /**
+         * @return bucket counts followed by errors, sum of ns, bytes in and
+         * bytes out, summed over stripes
+         */
+        public long[] snapshot() {
+            long[] sums = new long[BUCKETS + 4];
+            for (int stripe = 0; stripe < STRIPES; ++stripe) {
+                int base = stripe * STRIDE;
+                for (int i = 0; i < sums.length; ++i) {
+                    sums[i] += cells.get(base + i);
+                }
+            }
+            return sums;
+        }
+
+        @Override
+        public long getCount() {
+            return count(snapshot());
+        }
+
+        @Override
+        public long getErrors() {
+            return snapshot()[ERRORS];
+        }
+
+        @Override
+        public long getBytesIn() {
+            return snapshot()[BYTES_IN];
+        }
+
+        @Override
+        public long getBytesOut() {
+            return snapshot()[BYTES_OUT];
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long[] s = snapshot();
+            long count = count(s);
+            return count == 0 ? 0 : s[SUM] / 1e6 / count;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return quantile(snapshot(), 0.5) / 1e6;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return quantile(snapshot(), 0.99) / 1e6;
+        }
+
+        public static long count(long[] snapshot) {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                count += snapshot[i];
+            }
+            return count;
+        }
+
+        public static long sum(long[] snapshot) {
+            return snapshot[SUM];
+        }
+
+        public static long errors(long[] snapshot) {
+            return snapshot[ERRORS];
+        }
+
+        public static long bytesIn(long[] snapshot) {
+            return snapshot[BYTES_IN];
+        }
+
+        public static long bytesOut(long[] snapshot) {
+            return snapshot[BYTES_OUT];
+        }
+
+        /**
+         * @return upper bound in ns of the bucket holding the quantile
+         */
+        public static long quantile(long[] snapshot, double q) {
+            long count = count(snapshot);
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; ++i) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return i == BUCKETS - 1 ? 1L << (MAX_EXPONENT + 1) : upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 2);
+        }
+
+        /**
+         * @return count of values below 2^exponent ns, exponent is between
+         * MIN_EXPONENT and MAX_EXPONENT + 1
+         */
+        public static long countBelow(long[] snapshot, int exponent) {
+            int end = 1 + ((exponent - MIN_EXPONENT) << SUB_BUCKET_BITS);
+            long count = 0;
+            for (int i = 0; i < end; ++i) {
+                count += snapshot[i];
+            }
+            return count;
+        }
+    }
+
+    private static class Key {
+
+        private final String[] labels;
+        private int hash;
+
+        Key(String[] labels) {
+            this.labels = labels;
+            this.hash = Arrays.hashCode(labels);
+        }
+
+        /**
+         * Only for probe keys whose labels are changed in place, keys in the
+         * map never change.
+         */
+        Key rehash() {
+            hash = Arrays.hashCode(labels);
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(labels, ((Key) o).labels);
+        }
+    }
+}
@@ -0,0 +1,923 @@
+package schema.registry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Converts files in process with CentralSchemaRegistry, for bulk jobs that
+ * don't need the web service. Arguments after the direction are name=value
+ * pairs:
+ *
+ * <pre>
+ * OfflineConverter encode|decode schemaList=schemas.json rootDirectory=generated
+ *     id=ID in=FILE_OR_DIRECTORY[,...] out=DIRECTORY
+ *     [m=MessageName] [f=filters] [param.NAME=VALUE ...]
+ *     [threads=CPU count] [window=2 * threads] [unitSize=4194304] [split=true]
+ *     [suffix=] [progressInterval=10]
+ * </pre>
+ *
+ * Files are memory mapped and, where the format allows, split into units of
+ * about unitSize bytes of whole records that are converted in parallel:
+ *
+ * <ul>
+ * <li>Protobuf with param.protobuf.delimited=true: text messages separated
+ * by blank lines to encode, length delimited messages to decode</li>
+ * <li>Avro with param.avro.payload=file: JSON records, one per line, to
+ * encode, blocks of the data file to decode. Encoded units are merged into
+ * one data file with the sync marker of the first unit.</li>
+ * <li>anything else, or with param.header or split=false, is converted as
+ * one unit per file</li>
+ * </ul>
+ *
+ * Output is written in input order and is what /e or /d returns for the
+ * whole file. "f" filters the output of encoding and the input of decoding
+ * like /e and /d do, filtered input of decoding is unfiltered to a spool
+ * file next to the output first as compressed streams can't be split.
+ * Directories are walked recursively, outputs keep the relative paths under
+ * "out" with "suffix" appended. A file that fails is reported and its output
+ * deleted, the others go on. Progress is printed to stderr every
+ * progressInterval seconds, a summary to stdout at the end. Exits with 1 if
+ * any file failed.
+ */
+public class OfflineConverter {
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_MAPPING = 1 << 30;
+    private static final int AVRO_SYNC_SIZE = 16;
+    private static final byte[] AVRO_MAGIC = {'O', 'b', 'j', 1};
+
+    private final boolean encode;
+    private final SchemaCodec codec;
+    private final String filters;
+    private final Framing framing;
+    private final ThreadPoolExecutor executor;
+    private final int window;
+    private final int unitSize;
+    private final long progressInterval;
+    private final Deque<FutureTask<Unit>> pending = new ArrayDeque<>();
+
+    private int files;
+    private int failedFiles;
+    private long units;
+    private long bytesIn;
+    private long bytesOut;
+    private long start;
+    private long lastProgress;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || !(args[0].equals("encode") || args[0].equals("decode"))) {
+            System.err.println("usage: OfflineConverter encode|decode name=value...");
+            System.exit(2);
+        }
+
+        Properties config = new Properties();
+        for (int i = 1; i < args.length; ++i) {
+            int n = args[i].indexOf('=');
+            if (n <= 0) {
+                System.err.println("bad argument, expect name=value: " + args[i]);
+                System.exit(2);
+            }
+            config.setProperty(args[i].substring(0, n), args[i].substring(n + 1));
+        }
+
+        OfflineConverter converter;
+        List<FileJob> jobs;
+        try {
+            CentralSchemaRegistry registry = new CentralSchemaRegistry(new File(require(config, "schemaList")),
+                    new File(require(config, "rootDirectory")));
+            converter = new OfflineConverter(registry, args[0].equals("encode"), config);
+            jobs = listJobs(config);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        boolean ok;
+        try {
+            ok = converter.run(jobs);
+        } finally {
+            converter.shutdown();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Reads id, m, f, param.*, threads, window, unitSize, split and
+     * progressInterval.
+     *
+     * @throws IllegalArgumentException if the schema, message or a
+     * parameter is invalid
+     */
+    public OfflineConverter(CentralSchemaRegistry registry, boolean encode, Properties config)
+            throws IOException {
+        String id = require(config, "id");
+        SchemaInfo schema = registry.getSchemas().get(id);
+        if (schema == null) {
+            throw new IllegalArgumentException("schema ID isn't found: " + id);
+        }
+
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String name : config.stringPropertyNames()) {
+            if (name.startsWith("param.")) {
+                options.put(name.substring("param.".length()), config.getProperty(name));
+            }
+        }
+        filters = config.getProperty("f");
+        if (filters != null) {
+            options.put("f", filters);
+        }
+        Map<String, String[]> parameters = ParameterUtil.toParameters(options);
+
+        this.encode = encode;
+        this.codec = registry.resolve(id, config.getProperty("m"), parameters);
+        this.framing = ConfigUtil.getBoolean(config, "split", true)
+                ? getFraming(schema.getType(), encode, parameters) : null;
+
+        int threads = Math.max(1, ConfigUtil.getInt(config, "threads", CPUS));
+        this.window = Math.max(1, ConfigUtil.getInt(config, "window", threads * 2));
+        this.unitSize = Math.max(1, ConfigUtil.getInt(config, "unitSize", 4 * 1024 * 1024));
+        this.progressInterval = TimeUnit.SECONDS.toNanos(ConfigUtil.getLong(config, "progressInterval", 10));
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger n = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "offline-converter-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Inputs of "in" paired with outputs under "out".
+     *
+     * @throws IllegalArgumentException if an input isn't found or two
+     * inputs map to the same output
+     */
+    public static List<FileJob> listJobs(Properties config) throws IOException {
+        File out = new File(require(config, "out"));
+        String suffix = config.getProperty("suffix", "");
+
+        List<FileJob> jobs = new ArrayList<>();
+        for (String path : Splitter.on(',').trimResults().omitEmptyStrings().split(require(config, "in"))) {
+            File in = new File(path);
+            if (in.isDirectory()) {
+                addDirectory(jobs, in, out, suffix);
+            } else if (in.isFile()) {
+                jobs.add(new FileJob(in, new File(out, in.getName() + suffix)));
+            } else {
+                throw new IllegalArgumentException("input isn't found: " + path);
+            }
+        }
+
+        Set<File> outputs = new HashSet<>();
+        for (FileJob job : jobs) {
+            File output = job.output.getCanonicalFile();
+            if (output.equals(job.input.getCanonicalFile())) {
+                throw new IllegalArgumentException("output would overwrite input " + job.input);
+            }
+            if (!outputs.add(output)) {
+                throw new IllegalArgumentException("inputs map to the same output " + job.output);
+            }
+        }
+
+        return jobs;
+    }
+
+    /**
+     * @return true if all files are converted
+     */
+    public boolean run(List<FileJob> jobs) throws IOException {
+        start = System.nanoTime();
+        lastProgress = start;
+
+        for (FileJob job : jobs) {
+            try {
+                submitUnits(job);
+            } catch (InterruptedIOException ex) {
+                throw ex;
+            } catch (IOException | RuntimeException ex) {
+                if (job.error == null) {
+                    job.error = ex;
+                }
+            }
+
+            Unit end = new Unit(job, 0);
+            end.last = true;
+            submit(end);
+        }
+
+        while (!pending.isEmpty()) {
+            write(pending.poll());
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("files: %d, failed: %d, units: %d", files, failedFiles, units));
+        System.out.println(String.format("read: %.1f MB, written: %.1f MB",
+                bytesIn / 1048576.0, bytesOut / 1048576.0));
+        System.out.println(String.format("seconds: %.1f, throughput: %.1f MB/s, %.1f units/s",
+                seconds, bytesIn / 1048576.0 / seconds, units / seconds));
+
+        return failedFiles == 0;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void submitUnits(FileJob job) throws IOException {
+        File input = job.input;
+        if (framing != null && !encode && filters != null && !filters.trim().isEmpty()) {
+            job.spool = unfilter(job);
+            input = job.spool;
+        }
+
+        long size = input.length();
+        if (framing == null || size == 0) {
+            submitFile(job);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+            long offset = 0;
+            ByteBuffer mapping = map(channel, offset, size);
+            int headerEnd = framing.readHeader(mapping);
+            ByteBuffer header = slice(mapping, 0, headerEnd);
+            int position = headerEnd;
+            int count = 0;
+
+            while (true) {
+                boolean eof = offset + mapping.limit() == size;
+                int end = position == mapping.limit() ? -1 : framing.unitEnd(mapping, position, unitSize, eof);
+
+                if (end < 0) {
+                    if (eof && position == mapping.limit()) {
+                        break;
+                    }
+                    if (eof) {
+                        throw new EOFException("truncated record at offset " + (offset + position));
+                    }
+                    if (position == 0) {
+                        throw new IOException("record at offset " + offset + " is larger than "
+                                + MAX_MAPPING + " bytes");
+                    }
+
+                    // the mapping ends in the middle of a record, map again from it
+                    offset += position;
+                    mapping = map(channel, offset, size);
+                    position = 0;
+                    continue;
+                }
+
+                submitUnit(job, header, slice(mapping, position, end));
+                ++count;
+                position = end;
+            }
+
+            if (count == 0) {
+                // Avro data file without blocks
+                submitUnit(job, header, ByteBuffer.allocate(0));
+            }
+        }
+    }
+
+    private void submitUnit(final FileJob job, final ByteBuffer header, final ByteBuffer input)
+            throws IOException {
+        final Unit unit = new Unit(job, input.remaining());
+        FutureTask<Unit> task = new FutureTask<>(new Callable<Unit>() {
+            @Override
+            public Unit call() {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, unit.size));
+                try (InputStream in = framing.open(header, input)) {
+                    if (encode) {
+                        codec.encode(in, out);
+                    } else {
+                        codec.decode(in, out);
+                    }
+                    unit.converted = out.toByteArray();
+                } catch (IOException | RuntimeException ex) {
+                    unit.error = ex;
+                }
+                return unit;
+            }
+        });
+
+        execute(task);
+    }
+
+    /**
+     * Converts a file as one unit, the output is written by the worker.
+     */
+    private void submitFile(final FileJob job) throws IOException {
+        final Unit unit = new Unit(job, 0);
+        FutureTask<Unit> task = new FutureTask<>(new Callable<Unit>() {
+            @Override
+            public Unit call() {
+                try {
+                    unit.size = convertFile(job);
+                } catch (IOException | RuntimeException ex) {
+                    unit.error = ex;
+                }
+                return unit;
+            }
+        });
+
+        execute(task);
+    }
+
+    private int convertFile(FileJob job) throws IOException {
+        long size = job.input.length();
+        InputStream fileIn;
+        if (size <= MAX_MAPPING) {
+            try (FileChannel channel = FileChannel.open(job.input.toPath(), StandardOpenOption.READ)) {
+                fileIn = SchemaCodec.newInputStream(map(channel, 0, size));
+            }
+        } else {
+            fileIn = new FileInputStream(job.input);
+        }
+
+        try (OutputStream out = open(job)) {
+            if (encode) {
+                codec.encode(fileIn, out);
+            } else {
+                try (InputStream in = FilterStreamUtil.filter(fileIn, filters)) {
+                    codec.decode(in, out);
+                }
+            }
+        } finally {
+            fileIn.close();
+        }
+
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    private File unfilter(FileJob job) throws IOException {
+        mkdirs(job.output.getParentFile());
+        File spool = File.createTempFile(".offline-", ".spool", job.output.getParentFile());
+        try (InputStream in = FilterStreamUtil.filter(new FileInputStream(job.input), filters);
+                OutputStream out = new FileOutputStream(spool)) {
+            ByteStreams.copy(in, out);
+        }
+
+        return spool;
+    }
+
+    private void submit(Unit unit) throws IOException {
+        final Unit done = unit;
+        FutureTask<Unit> task = new FutureTask<>(new Callable<Unit>() {
+            @Override
+            public Unit call() {
+                return done;
+            }
+        });
+
+        task.run();
+        pending.add(task);
+        drain();
+    }
+
+    private void execute(FutureTask<Unit> task) throws IOException {
+        executor.execute(task);
+        pending.add(task);
+        drain();
+    }
+
+    private void drain() throws IOException {
+        while (pending.size() > window) {
+            write(pending.poll());
+        }
+    }
+
+    /**
+     * Runs the unit in caller's thread if no worker picked it up yet.
+     */
+    private void write(FutureTask<Unit> task) throws IOException {
+        task.run();
+
+        Unit unit;
+        try {
+            unit = task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+
+        FileJob job = unit.job;
+        if (unit.last) {
+            finish(job);
+            return;
+        }
+
+        ++units;
+        bytesIn += unit.size;
+        if (job.error == null && unit.error != null) {
+            job.error = unit.error;
+        }
+
+        if (job.error == null && unit.converted != null) {
+            try {
+                if (job.out == null) {
+                    job.out = open(job);
+                }
+                framing.write(job, unit.converted);
+            } catch (IOException | RuntimeException ex) {
+                job.error = ex;
+            }
+        }
+
+        long now = System.nanoTime();
+        if (progressInterval > 0 && now - lastProgress >= progressInterval) {
+            lastProgress = now;
+            System.err.println(String.format("progress: %d files, %d units, %.1f MB read, %.1f MB/s",
+                    files, units, bytesIn / 1048576.0, bytesIn / 1048576.0 / ((now - start) / 1e9)));
+        }
+    }
+
+    private void finish(FileJob job) {
+        ++files;
+        if (job.out != null) {
+            try {
+                job.out.close();
+            } catch (IOException ex) {
+                if (job.error == null) {
+                    job.error = ex;
+                }
+            }
+        }
+
+        if (job.spool != null && !job.spool.delete()) {
+            System.err.println("fail to delete spool file " + job.spool);
+        }
+
+        if (job.error != null) {
+            ++failedFiles;
+            System.err.println("fail to convert " + job.input + ": " + job.error);
+            if (job.output.exists() && !job.output.delete()) {
+                System.err.println("fail to delete " + job.output);
+            }
+        } else {
+            bytesOut += job.output.length();
+        }
+    }
+
+    /**
+     * Output filters apply to encoded output, decoded input is unfiltered
+     * before it's split.
+     */
+    private OutputStream open(FileJob job) throws IOException {
+        mkdirs(job.output.getParentFile());
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(job.output),
+                FilterStreamUtil.DEFAULT_BUFFER_SIZE);
+        return encode ? FilterStreamUtil.filter(out, filters) : out;
+    }
+
+    private static Framing getFraming(String type, boolean encode, Map<String, String[]> parameters) {
+        String header = ParameterUtil.getParameter(parameters, "header");
+        if (header != null && !header.isEmpty()) {
+            // the wire header is written once per request
+            return null;
+        }
+
+        if (ProtobufSchemaRegistry.TYPE.equals(type)
+                && "true".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "protobuf.delimited"))) {
+            return encode ? new TextMessages() : new DelimitedMessages();
+        }
+
+        if (AvroSchemaRegistry.TYPE.equals(type)
+                && "file".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "avro.payload"))
+                && ParameterUtil.getParameter(parameters, "avro.offset") == null
+                && ParameterUtil.getParameter(parameters, "avro.limit") == null) {
+            return encode ? new JsonLines() : new DataFileBlocks();
+        }
+
+        return null;
+    }
+
+    private static void addDirectory(List<FileJob> jobs, File dir, File out, String suffix) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException("directory isn't readable: " + dir);
+        }
+
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                addDirectory(jobs, f, new File(out, f.getName()), suffix);
+            } else if (f.isFile()) {
+                jobs.add(new FileJob(f, new File(out, f.getName() + suffix)));
+            }
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, MAX_MAPPING));
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer b = buffer.duplicate();
+        b.limit(to);
+        b.position(from);
+        return b.slice();
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("fail to create directory " + dir);
+        }
+    }
+
+    private static String require(Properties config, String name) {
+        String value = config.getProperty(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("missing argument " + name);
+        }
+        return value;
+    }
+
+    /**
+     * @return bytes of the varint at position, -1 if it doesn't end before
+     * limit
+     */
+    private static int varintSize(ByteBuffer b, int position) throws IOException {
+        for (int i = 0; i < 10; ++i) {
+            if (position + i >= b.limit()) {
+                return -1;
+            }
+            if (b.get(position + i) >= 0) {
+                return i + 1;
+            }
+        }
+
+        throw new IOException("malformed varint at " + position);
+    }
+
+    private static long varint(ByteBuffer b, int position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte x = b.get(position++);
+            value |= (long) (x & 0x7f) << shift;
+            if (x >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long zigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    public static class FileJob {
+
+        private final File input;
+        private final File output;
+        private File spool;
+        private OutputStream out;
+        private Exception error;
+        private boolean started;
+        private byte[] sync;
+
+        public FileJob(File input, File output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public File getInput() {
+            return input;
+        }
+
+        public File getOutput() {
+            return output;
+        }
+    }
+
+    private static class Unit {
+
+        private final FileJob job;
+        private int size;
+        private boolean last;
+        private byte[] converted;
+        private Exception error;
+
+        Unit(FileJob job, int size) {
+            this.job = job;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Splits a file into units of whole records and joins their conversions.
+     */
+    private abstract static class Framing {
+
+        /**
+         * @return end of the file header, records start there
+         */
+        int readHeader(ByteBuffer file) throws IOException {
+            return 0;
+        }
+
+        /**
+         * @return end of the unit of whole records starting at start, about
+         * unitSize bytes long, or -1 if the first record doesn't end before
+         * the mapping does
+         */
+        abstract int unitEnd(ByteBuffer mapping, int start, int unitSize, boolean eof) throws IOException;
+
+        InputStream open(ByteBuffer header, ByteBuffer unit) {
+            return SchemaCodec.newInputStream(unit);
+        }
+
+        void write(FileJob job, byte[] converted) throws IOException {
+            job.out.write(converted);
+        }
+    }
+
+    /**
+     * Records with a length prefix, units end at record boundaries.
+     */
+    private abstract static class LengthPrefixed extends Framing {
+
+        /**
+         * @return end of the record at position, -1 or beyond limit if it
+         * doesn't end before limit
+         */
+        abstract long recordEnd(ByteBuffer mapping, int position) throws IOException;
+
+        @Override
+        int unitEnd(ByteBuffer mapping, int start, int unitSize, boolean eof) throws IOException {
+            int end = start;
+            while (end < mapping.limit() && end - start < unitSize) {
+                long next = recordEnd(mapping, end);
+                if (next < 0 || next > mapping.limit()) {
+                    break;
+                }
+                end = (int) next;
+            }
+
+            return end == start ? -1 : end;
+        }
+    }
+
+    /**
+     * Records separated by a delimiter, units end after the first delimiter
+     * past unitSize.
+     */
+    private abstract static class Delimited extends Framing {
+
+        /**
+         * @return end of the first delimiter at or after from, -1 if none
+         */
+        abstract int delimiterEnd(ByteBuffer mapping, int from);
+
+        @Override
+        int unitEnd(ByteBuffer mapping, int start, int unitSize, boolean eof) {
+            int target = (int) Math.min((long) start + unitSize, mapping.limit());
+            int end = delimiterEnd(mapping, Math.max(start, target - 1));
+            if (end >= 0 || eof) {
+                return end >= 0 ? end : mapping.limit();
+            }
+
+            // no delimiter after target, end at the last one before it
+            int last = -1;
+            for (int p = start; (p = delimiterEnd(mapping, p)) >= 0; ) {
+                last = p;
+            }
+            return last;
+        }
+    }
+
+    /**
+     * Input of /d with protobuf.delimited=true, decoded units are
+     * concatenated.
+     */
+    private static class DelimitedMessages extends LengthPrefixed {
+
+        @Override
+        long recordEnd(ByteBuffer mapping, int position) throws IOException {
+            int n = varintSize(mapping, position);
+            if (n < 0) {
+                return -1;
+            }
+
+            long length = varint(mapping, position);
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("bad message length " + length + " at " + position);
+            }
+            return position + n + length;
+        }
+    }
+
+    /**
+     * Input of /e with protobuf.delimited=true, messages are separated by
+     * blank lines and encoded units are concatenated.
+     */
+    private static class TextMessages extends Delimited {
+
+        @Override
+        int delimiterEnd(ByteBuffer mapping, int from) {
+            int limit = mapping.limit();
+            for (int i = from; i < limit; ++i) {
+                if (mapping.get(i) != '\n') {
+                    continue;
+                }
+
+                // same as String.trim() of the next line
+                int j = i + 1;
+                while (j < limit && mapping.get(j) >= 0 && mapping.get(j) <= ' ' && mapping.get(j) != '\n') {
+                    ++j;
+                }
+                if (j < limit && mapping.get(j) == '\n') {
+                    return j + 1;
+                }
+                i = j - 1;
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Input of /e with avro.payload=file, one JSON record per line. Every
+     * unit is encoded into a data file, the first is written as is and the
+     * blocks of the others are appended with its sync marker.
+     */
+    private static class JsonLines extends Delimited {
+
+        @Override
+        int delimiterEnd(ByteBuffer mapping, int from) {
+            for (int i = from; i < mapping.limit(); ++i) {
+                if (mapping.get(i) == '\n') {
+                    return i + 1;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        void write(FileJob job, byte[] converted) throws IOException {
+            ByteBuffer file = ByteBuffer.wrap(converted);
+            int position = readDataFileHeader(file);
+            if (job.sync == null) {
+                job.sync = Arrays.copyOfRange(converted, position - AVRO_SYNC_SIZE, position);
+                job.out.write(converted);
+                return;
+            }
+
+            while (position < converted.length) {
+                long end = dataFileBlockEnd(file, position);
+                if (end < 0 || end > converted.length) {
+                    throw new IOException("truncated block in encoded data file");
+                }
+
+                job.out.write(converted, position, (int) end - AVRO_SYNC_SIZE - position);
+                job.out.write(job.sync);
+                position = (int) end;
+            }
+        }
+    }
+
+    /**
+     * Input of /d with avro.payload=file, every unit is the header followed
+     * by some blocks. Decoded records are separated by new lines like a
+     * JSON encoder does.
+     */
+    private static class DataFileBlocks extends LengthPrefixed {
+
+        @Override
+        int readHeader(ByteBuffer file) throws IOException {
+            return readDataFileHeader(file);
+        }
+
+        @Override
+        long recordEnd(ByteBuffer mapping, int position) throws IOException {
+            return dataFileBlockEnd(mapping, position);
+        }
+
+        @Override
+        InputStream open(ByteBuffer header, ByteBuffer unit) {
+            return new SequenceInputStream(SchemaCodec.newInputStream(header.duplicate()),
+                    SchemaCodec.newInputStream(unit));
+        }
+
+        @Override
+        void write(FileJob job, byte[] converted) throws IOException {
+            if (converted.length == 0) {
+                return;
+            }
+
+            if (job.started) {
+                job.out.write('\n');
+            }
+            job.out.write(converted);
+            job.started = true;
+        }
+    }
+
+    /**
+     * @return end of magic, metadata and sync marker
+     */
+    private static int readDataFileHeader(ByteBuffer file) throws IOException {
+        for (int i = 0; i < AVRO_MAGIC.length; ++i) {
+            if (i >= file.limit() || file.get(i) != AVRO_MAGIC[i]) {
+                throw new IOException("not an Avro data file");
+            }
+        }
+
+        // metadata is a map of string to bytes, both prefixed by length
+        long position = AVRO_MAGIC.length;
+        while (true) {
+            long count = readLong(file, position);
+            position += varintSize(file, (int) position);
+            if (count == 0) {
+                break;
+            }
+            if (count < 0) {
+                count = -count;
+                readLong(file, position);
+                position += varintSize(file, (int) position);
+            }
+
+            for (long i = 0; i < count * 2; ++i) {
+                long length = readLong(file, position);
+                position += varintSize(file, (int) position) + length;
+            }
+        }
+
+        position += AVRO_SYNC_SIZE;
+        if (position > file.limit()) {
+            throw new IOException("truncated Avro data file header");
+        }
+        return (int) position;
+    }
+
+    /**
+     * A block is its record count, byte size, records and sync marker.
+     *
+     * @return -1 or beyond limit if the block doesn't end before limit
+     */
+    private static long dataFileBlockEnd(ByteBuffer mapping, int position) throws IOException {
+        int n = varintSize(mapping, position);
+        if (n < 0) {
+            return -1;
+        }
+
+        int m = varintSize(mapping, position + n);
+        if (m < 0) {
+            return -1;
+        }
+
+        long count = zigzag(varint(mapping, position));
+        long size = zigzag(varint(mapping, position + n));
+        if (count < 0 || size < 0) {
+            throw new IOException("malformed block at " + position);
+        }
+        return position + n + m + size + AVRO_SYNC_SIZE;
+    }
+
+    private static long readLong(ByteBuffer file, long position) throws IOException {
+        if (position >= file.limit() || varintSize(file, (int) position) < 0) {
+            throw new IOException("truncated Avro data file header");
+        }
+        return zigzag(varint(file, (int) position));
+    }
+}
@@ -0,0 +1,267 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses chunks in parallel into a single standard gzip member like pigz.
+ * Each chunk is primed with the last 32KB of previous chunk as dictionary
+ * and ends with a sync flush so the raw deflate outputs can be concatenated,
+ * the last chunk finishes the deflate stream.
+ *
+ * At most twice the thread count chunks are in memory per stream, chunks
+ * are compressed in caller's thread when the pool is saturated.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+    private static final int MIN_CHUNK_SIZE = 32 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    private static volatile ThreadPoolExecutor defaultExecutor = newExecutor(CPUS);
+    private static volatile int defaultChunkSize = DEFAULT_CHUNK_SIZE;
+
+    private final OutputStream out;
+    private final int level;
+    private final int chunkSize;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final CRC32 crc = new CRC32();
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] chunk;
+    private int length;
+    private byte[] dictionary;
+    private long size;
+    private boolean closed;
+
+    /**
+     * Uses executor and chunk size from {@link #configure(Properties)}.
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level) throws IOException {
+        this(out, level, defaultChunkSize, defaultExecutor, defaultExecutor.getMaximumPoolSize() * 2);
+    }
+
+    /**
+     * @param maxInFlight chunks being compressed or waiting to be written
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level, int chunkSize, Executor executor,
+            int maxInFlight) throws IOException {
+        this.out = out;
+        this.level = level;
+        this.chunkSize = Math.max(chunkSize, MIN_CHUNK_SIZE);
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.chunk = new byte[this.chunkSize];
+
+        out.write(HEADER);
+    }
+
+    /**
+     * Reads "pgzip.threads" and "pgzip.chunkSize".
+     */
+    public static void configure(Properties config) {
+        ThreadPoolExecutor old = defaultExecutor;
+        defaultExecutor = newExecutor(ConfigUtil.getInt(config, "pgzip.threads", CPUS));
+        defaultChunkSize = ConfigUtil.getInt(config, "pgzip.chunkSize", DEFAULT_CHUNK_SIZE);
+        old.shutdown();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+
+        crc.update(b, off, len);
+        size += len;
+
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - length);
+            System.arraycopy(b, off, chunk, length, n);
+            length += n;
+            off += n;
+            len -= n;
+
+            if (length == chunkSize) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Ends current chunk and writes out all compressed chunks.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        if (length > 0) {
+            submit(false);
+        }
+
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+
+            byte[] trailer = new byte[8];
+            writeInt(trailer, 0, crc.getValue());
+            writeInt(trailer, 4, size);
+            out.write(trailer);
+        } finally {
+            closed = true;
+            for (Future<byte[]> f : pending) {
+                f.cancel(false);
+            }
+            pending.clear();
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        final byte[] input = chunk;
+        final int inputLength = length;
+        final byte[] dict = dictionary;
+        final boolean finish = last;
+
+        if (!last) {
+            int n = Math.min(DICTIONARY_SIZE, inputLength);
+            dictionary = Arrays.copyOfRange(input, inputLength - n, inputLength);
+            chunk = new byte[chunkSize];
+            length = 0;
+        }
+
+        FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return compress(input, inputLength, dict, finish);
+            }
+        });
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            task.run();
+        }
+
+        pending.add(task);
+        while (pending.size() > maxInFlight) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pending.poll().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("fail to compress", ex.getCause());
+        }
+
+        out.write(compressed);
+    }
+
+    private byte[] compress(byte[] input, int inputLength, byte[] dict, boolean finish) {
+        CodecPool<Deflater> pool = CodecPools.getDeflaterPool(level, true);
+        Deflater deflater = pool.borrow();
+        try {
+            if (dict != null) {
+                deflater.setDictionary(dict);
+            }
+            deflater.setInput(input, 0, inputLength);
+
+            byte[] output = new byte[inputLength + inputLength / 1000 + 64];
+            int n = 0;
+            while (true) {
+                if (n == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+
+                if (finish) {
+                    deflater.finish();
+                    n += deflater.deflate(output, n, output.length - n);
+                    if (deflater.finished()) {
+                        break;
+                    }
+                } else {
+                    // sync flush is complete when output isn't filled up
+                    n += deflater.deflate(output, n, output.length - n, Deflater.SYNC_FLUSH);
+                    if (n < output.length) {
+                        break;
+                    }
+                }
+            }
+
+            return n == output.length ? output : Arrays.copyOf(output, n);
+        } finally {
+            pool.release(deflater);
+        }
+    }
+
+    private static void writeInt(byte[] b, int off, long v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >> 8);
+        b[off + 2] = (byte) (v >> 16);
+        b[off + 3] = (byte) (v >> 24);
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 16),
+                new ThreadFactory() {
+                    private final AtomicInteger n = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "pgzip-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
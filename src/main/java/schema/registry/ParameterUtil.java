@@ -1,5 +1,6 @@
 package schema.registry;
 
+import java.util.HashMap;
 import java.util.Map;
 
 public class ParameterUtil {
@@ -12,4 +13,17 @@ public class ParameterUtil {
             return values[0];
         }
     }
+
+    /**
+     * @return single valued options in the form request parameters have, for
+     * callers outside of servlets
+     */
+    public static Map<String, String[]> toParameters(Map<String, String> options) {
+        Map<String, String[]> parameters = new HashMap<>();
+        for (Map.Entry<String, String> e : options.entrySet()) {
+            parameters.put(e.getKey(), new String[] { e.getValue() });
+        }
+
+        return parameters;
+    }
 }
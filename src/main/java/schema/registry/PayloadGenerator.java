@@ -0,0 +1,597 @@
+package schema.registry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.TextFormat;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TEnum;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.TFieldRequirementType;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.meta_data.EnumMetaData;
+import org.apache.thrift.meta_data.FieldMetaData;
+import org.apache.thrift.meta_data.FieldValueMetaData;
+import org.apache.thrift.meta_data.ListMetaData;
+import org.apache.thrift.meta_data.MapMetaData;
+import org.apache.thrift.meta_data.SetMetaData;
+import org.apache.thrift.meta_data.StructMetaData;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.apache.thrift.protocol.TType;
+
+/**
+ * Generates random but valid messages for registered schemas by walking
+ * Avro schemas, protobuf descriptors of generated classes and Thrift field
+ * metadata. Each payload comes in the text format serialize() reads and the
+ * binary format it writes, following the same parameters: "avro.payload",
+ * "protobuf.delimited" and "thrift.protocol".
+ *
+ * Sizes are drawn from [min, max] as min + (max - min + 1) * u^skew with u
+ * uniform in [0, 1), skew 1 is uniform, larger skews favor small sizes with
+ * a long tail. Optional fields and non-null union branches are filled with
+ * probability fillRate. Nesting deeper than maxDepth or beyond maxElements
+ * records, messages, structs and collection items per payload only fills
+ * what's required, so self referencing schemas stay bounded. Not thread
+ * safe.
+ */
+public class PayloadGenerator {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 _-.\u00e9\u4e2d";
+    /**
+     * Required fields of recursive schemas can't be satisfied beyond this.
+     */
+    private static final int MAX_REQUIRED_DEPTH = 64;
+
+    private final CentralSchemaRegistry registry;
+    private final Options options;
+    private final Random random;
+    private int elements;
+
+    public PayloadGenerator(CentralSchemaRegistry registry, Options options, long seed) {
+        this.registry = registry;
+        this.options = options;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates count payloads for every message of every schema, Avro
+     * schemas have one unnamed message.
+     */
+    public List<Payload> generateAll(int count, Map<String, String[]> parameters) throws IOException {
+        List<Payload> payloads = new ArrayList<>();
+        for (Map.Entry<String, SchemaInfo> e : registry.getSchemas().entrySet()) {
+            List<String> messages = new ArrayList<>(e.getValue().getMessages());
+            Collections.sort(messages);
+            if (messages.isEmpty()) {
+                messages.add(null);
+            }
+
+            for (String messageName : messages) {
+                for (int i = 0; i < count; ++i) {
+                    payloads.add(generate(e.getKey(), messageName, parameters));
+                }
+            }
+        }
+
+        return payloads;
+    }
+
+    /**
+     * @param messageName null or empty for the default message of the schema
+     * @throws IllegalArgumentException if the schema or message is unknown
+     */
+    public Payload generate(String id, String messageName, Map<String, String[]> parameters)
+            throws IOException {
+        elements = 0;
+        SchemaRegistry r = registry.getRegistry(id);
+        if (r instanceof AvroSchemaRegistry) {
+            return generateAvro(id, ((AvroSchemaRegistry) r).getSchema(id), parameters);
+        } else if (r instanceof ProtobufSchemaRegistry) {
+            return generateProtobuf(id, messageName,
+                    ((ProtobufSchemaRegistry) r).getBuilder(id, messageName), parameters);
+        } else if (r instanceof ThriftSchemaRegistry) {
+            return generateThrift(id, messageName,
+                    ((ThriftSchemaRegistry) r).getThriftClass(id, messageName), parameters);
+        } else {
+            throw new IllegalArgumentException("unsupported schema type");
+        }
+    }
+
+    private Payload generateAvro(String id, Schema schema, Map<String, String[]> parameters)
+            throws IOException {
+        Object record = avro(schema, 0);
+        GenericDatumWriter<Object> writer = new GenericDatumWriter<>(schema);
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        Encoder encoder = EncoderFactory.get().jsonEncoder(schema, text);
+        writer.write(record, encoder);
+        encoder.flush();
+        text.write('\n');
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        if ("file".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "avro.payload"))) {
+            try (DataFileWriter<Object> fout = new DataFileWriter<>(writer).create(schema, binary)) {
+                fout.append(record);
+            }
+        } else {
+            encoder = EncoderFactory.get().binaryEncoder(binary, null);
+            writer.write(record, encoder);
+            encoder.flush();
+        }
+
+        return new Payload(id, null, text.toByteArray(), binary.toByteArray());
+    }
+
+    private Object avro(Schema schema, int depth) {
+        switch (schema.getType()) {
+            case RECORD: {
+                enter(depth);
+                GenericData.Record record = new GenericData.Record(schema);
+                for (Schema.Field field : schema.getFields()) {
+                    record.put(field.pos(), avro(field.schema(), depth + 1));
+                }
+                return record;
+            }
+            case ENUM: {
+                List<String> symbols = schema.getEnumSymbols();
+                return new GenericData.EnumSymbol(schema, symbols.get(random.nextInt(symbols.size())));
+            }
+            case ARRAY: {
+                int n = items(depth);
+                GenericData.Array<Object> array = new GenericData.Array<>(n, schema);
+                for (int i = 0; i < n; ++i) {
+                    array.add(avro(schema.getElementType(), depth + 1));
+                }
+                return array;
+            }
+            case MAP: {
+                int n = items(depth);
+                Map<String, Object> map = new HashMap<>();
+                for (int i = 0; i < n; ++i) {
+                    map.put(string(), avro(schema.getValueType(), depth + 1));
+                }
+                return map;
+            }
+            case UNION: {
+                List<Schema> branches = new ArrayList<>();
+                Schema nullBranch = null;
+                for (Schema s : schema.getTypes()) {
+                    if (s.getType() == Schema.Type.NULL) {
+                        nullBranch = s;
+                    } else {
+                        branches.add(s);
+                    }
+                }
+                if (branches.isEmpty() || (nullBranch != null && !fill(depth))) {
+                    return null;
+                }
+                return avro(branches.get(random.nextInt(branches.size())), depth);
+            }
+            case FIXED:
+                return new GenericData.Fixed(schema, bytes(schema.getFixedSize()));
+            case STRING:
+                return string();
+            case BYTES:
+                return ByteBuffer.wrap(bytes(length()));
+            case INT:
+                return random.nextInt();
+            case LONG:
+                return random.nextLong();
+            case FLOAT:
+                return random.nextFloat();
+            case DOUBLE:
+                return random.nextDouble();
+            case BOOLEAN:
+                return random.nextBoolean();
+            default:
+                return null;
+        }
+    }
+
+    private Payload generateProtobuf(String id, String messageName, Message.Builder builder,
+            Map<String, String[]> parameters) throws IOException {
+        Message message = protobuf(builder, 0).build();
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        if ("true".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "protobuf.delimited"))) {
+            // delimited text separates messages by blank lines, an empty message is no message
+            if (message.getSerializedSize() > 0) {
+                message.writeDelimitedTo(binary);
+            }
+        } else {
+            message.writeTo(binary);
+        }
+
+        return new Payload(id, messageName,
+                TextFormat.printToString(message).getBytes(StandardCharsets.UTF_8), binary.toByteArray());
+    }
+
+    private Message.Builder protobuf(Message.Builder builder, int depth) {
+        enter(depth);
+
+        for (Descriptors.FieldDescriptor field : builder.getDescriptorForType().getFields()) {
+            if (field.isRepeated()) {
+                int n = items(depth);
+                for (int i = 0; i < n; ++i) {
+                    builder.addRepeatedField(field, protobuf(builder, field, depth));
+                }
+            } else if (field.isRequired() || fill(depth)) {
+                builder.setField(field, protobuf(builder, field, depth));
+            }
+        }
+
+        return builder;
+    }
+
+    private Object protobuf(Message.Builder builder, Descriptors.FieldDescriptor field, int depth) {
+        switch (field.getJavaType()) {
+            case INT:
+                return random.nextInt();
+            case LONG:
+                return random.nextLong();
+            case FLOAT:
+                return random.nextFloat();
+            case DOUBLE:
+                return random.nextDouble();
+            case BOOLEAN:
+                return random.nextBoolean();
+            case STRING:
+                return string();
+            case BYTE_STRING:
+                return ByteString.copyFrom(bytes(length()));
+            case ENUM: {
+                List<Descriptors.EnumValueDescriptor> values = field.getEnumType().getValues();
+                return values.get(random.nextInt(values.size()));
+            }
+            default:
+                return protobuf(builder.newBuilderForField(field), depth + 1).build();
+        }
+    }
+
+    private Payload generateThrift(String id, String messageName, Class<? extends TBase> c,
+            Map<String, String[]> parameters) throws IOException {
+        try {
+            TBase message = thrift(c, 0);
+            TSerializer binary = "compact".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "thrift.protocol"))
+                    ? new TSerializer(new TCompactProtocol.Factory())
+                    : new TSerializer(new TBinaryProtocol.Factory());
+
+            return new Payload(id, messageName,
+                    new TSerializer(new TJSONProtocol.Factory()).serialize(message),
+                    binary.serialize(message));
+        } catch (TException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private TBase thrift(Class<? extends TBase> c, int depth) {
+        enter(depth);
+
+        TBase message;
+        try {
+            message = c.getConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalArgumentException("can't instantiate thrift class " + c.getName(), ex);
+        }
+
+        Map<? extends TFieldIdEnum, FieldMetaData> fields = FieldMetaData.getStructMetaDataMap(c);
+        for (Map.Entry<? extends TFieldIdEnum, FieldMetaData> e : fields.entrySet()) {
+            FieldMetaData field = e.getValue();
+            if (field.requirementType != TFieldRequirementType.REQUIRED && !fill(depth)) {
+                continue;
+            }
+
+            FieldValueMetaData meta = field.valueMetaData;
+            Object value;
+            if (meta.type == TType.STRUCT && !(meta instanceof StructMetaData)) {
+                // typedef of a struct, only the declared field type tells the class
+                value = thrift(thriftFieldClass(c, field.fieldName), depth + 1);
+            } else {
+                value = thrift(meta, depth);
+            }
+
+            if (value != null) {
+                message.setFieldValue(e.getKey(), value);
+            }
+        }
+
+        return message;
+    }
+
+    /**
+     * @return null for struct typedefs inside containers, their classes are
+     * unknown
+     */
+    private Object thrift(FieldValueMetaData meta, int depth) {
+        switch (meta.type) {
+            case TType.BOOL:
+                return random.nextBoolean();
+            case TType.BYTE:
+                return (byte) random.nextInt();
+            case TType.I16:
+                return (short) random.nextInt();
+            case TType.I32:
+                return random.nextInt();
+            case TType.I64:
+                return random.nextLong();
+            case TType.DOUBLE:
+                return random.nextDouble();
+            case TType.STRING:
+                return meta.isBinary() ? ByteBuffer.wrap(bytes(length())) : string();
+            case TType.ENUM: {
+                TEnum[] values = ((EnumMetaData) meta).enumClass.getEnumConstants();
+                return values[random.nextInt(values.length)];
+            }
+            case TType.STRUCT:
+                return meta instanceof StructMetaData
+                        ? thrift(((StructMetaData) meta).structClass, depth + 1) : null;
+            case TType.LIST: {
+                int n = items(depth);
+                List<Object> list = new ArrayList<>(n);
+                for (int i = 0; i < n; ++i) {
+                    add(list, thrift(((ListMetaData) meta).elemMetaData, depth + 1));
+                }
+                return list;
+            }
+            case TType.SET: {
+                int n = items(depth);
+                Set<Object> set = new HashSet<>();
+                for (int i = 0; i < n; ++i) {
+                    add(set, thrift(((SetMetaData) meta).elemMetaData, depth + 1));
+                }
+                return set;
+            }
+            case TType.MAP: {
+                int n = items(depth);
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < n; ++i) {
+                    Object key = thrift(((MapMetaData) meta).keyMetaData, depth + 1);
+                    Object value = thrift(((MapMetaData) meta).valueMetaData, depth + 1);
+                    if (key != null && value != null) {
+                        map.put(key, value);
+                    }
+                }
+                return map;
+            }
+            default:
+                return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends TBase> thriftFieldClass(Class<? extends TBase> c, String fieldName) {
+        try {
+            Field f = c.getField(fieldName);
+            if (TBase.class.isAssignableFrom(f.getType())) {
+                return (Class<? extends TBase>) f.getType();
+            }
+        } catch (NoSuchFieldException ex) {
+            // fall through
+        }
+        throw new IllegalArgumentException("can't find struct class of field " + fieldName
+                + " in " + c.getName());
+    }
+
+    private static void add(Collection<Object> c, Object value) {
+        if (value != null) {
+            c.add(value);
+        }
+    }
+
+    private void enter(int depth) {
+        ++elements;
+        if (depth > MAX_REQUIRED_DEPTH) {
+            throw new IllegalArgumentException("schema nests required fields deeper than "
+                    + MAX_REQUIRED_DEPTH);
+        }
+    }
+
+    private boolean fill(int depth) {
+        return isExpandable(depth) && random.nextDouble() < options.getFillRate();
+    }
+
+    private int items(int depth) {
+        if (!isExpandable(depth)) {
+            return 0;
+        }
+
+        int n = Math.min(size(options.getMinItems(), options.getMaxItems()),
+                options.getMaxElements() - elements);
+        elements += n;
+        return n;
+    }
+
+    private boolean isExpandable(int depth) {
+        return depth < options.getMaxDepth() && elements < options.getMaxElements();
+    }
+
+    private int length() {
+        return size(options.getMinStringLength(), options.getMaxStringLength());
+    }
+
+    private int size(int min, int max) {
+        if (max <= min) {
+            return min;
+        }
+        int n = min + (int) ((max - min + 1) * Math.pow(random.nextDouble(), options.getSkew()));
+        return Math.min(n, max);
+    }
+
+    private String string() {
+        int n = length();
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; ++i) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    /**
+     * Size distribution of generated messages.
+     */
+    public static class Options {
+
+        private int minStringLength = 0;
+        private int maxStringLength = 32;
+        private int minItems = 0;
+        private int maxItems = 8;
+        private double skew = 1;
+        private double fillRate = 0.5;
+        private int maxDepth = 8;
+        private int maxElements = 1000;
+
+        /**
+         * Reads generator.minStringLength, generator.maxStringLength,
+         * generator.minItems, generator.maxItems, generator.skew,
+         * generator.fillRate, generator.maxDepth and generator.maxElements.
+         */
+        public static Options fromProperties(Properties config) {
+            Options options = new Options();
+            options.setMinStringLength(ConfigUtil.getInt(config, "generator.minStringLength",
+                    options.minStringLength));
+            options.setMaxStringLength(ConfigUtil.getInt(config, "generator.maxStringLength",
+                    options.maxStringLength));
+            options.setMinItems(ConfigUtil.getInt(config, "generator.minItems", options.minItems));
+            options.setMaxItems(ConfigUtil.getInt(config, "generator.maxItems", options.maxItems));
+            options.setSkew(ConfigUtil.getDouble(config, "generator.skew", options.skew));
+            options.setFillRate(ConfigUtil.getDouble(config, "generator.fillRate", options.fillRate));
+            options.setMaxDepth(ConfigUtil.getInt(config, "generator.maxDepth", options.maxDepth));
+            options.setMaxElements(ConfigUtil.getInt(config, "generator.maxElements", options.maxElements));
+            return options;
+        }
+
+        public int getMinStringLength() {
+            return minStringLength;
+        }
+
+        public void setMinStringLength(int minStringLength) {
+            this.minStringLength = minStringLength;
+        }
+
+        public int getMaxStringLength() {
+            return maxStringLength;
+        }
+
+        public void setMaxStringLength(int maxStringLength) {
+            this.maxStringLength = maxStringLength;
+        }
+
+        public int getMinItems() {
+            return minItems;
+        }
+
+        public void setMinItems(int minItems) {
+            this.minItems = minItems;
+        }
+
+        public int getMaxItems() {
+            return maxItems;
+        }
+
+        public void setMaxItems(int maxItems) {
+            this.maxItems = maxItems;
+        }
+
+        public double getSkew() {
+            return skew;
+        }
+
+        public void setSkew(double skew) {
+            this.skew = skew;
+        }
+
+        public double getFillRate() {
+            return fillRate;
+        }
+
+        public void setFillRate(double fillRate) {
+            this.fillRate = fillRate;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public void setMaxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        public int getMaxElements() {
+            return maxElements;
+        }
+
+        public void setMaxElements(int maxElements) {
+            this.maxElements = maxElements;
+        }
+    }
+
+    /**
+     * One generated message, text is what serialize() reads and deserialize()
+     * writes, binary is the other way around.
+     */
+    public static class Payload {
+
+        private final String id;
+        private final String messageName;
+        private final byte[] text;
+        private final byte[] binary;
+
+        public Payload(String id, String messageName, byte[] text, byte[] binary) {
+            this.id = id;
+            this.messageName = messageName;
+            this.text = text;
+            this.binary = binary;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return null for the default message of the schema
+         */
+        public String getMessageName() {
+            return messageName;
+        }
+
+        public byte[] getText() {
+            return text;
+        }
+
+        public byte[] getBinary() {
+            return binary;
+        }
+    }
+}
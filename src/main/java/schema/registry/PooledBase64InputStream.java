@@ -0,0 +1,147 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes base64 in bulk from pooled buffers, accepts both standard and URL
+ * safe alphabets and ignores characters out of them like line breaks, stops
+ * at the first padding character, same as commons-codec's Base64InputStream.
+ */
+public class PooledBase64InputStream extends InputStream {
+
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); ++i) {
+            DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+
+        DECODE_TABLE['+'] = DECODE_TABLE['-'] = 62;
+        DECODE_TABLE['/'] = DECODE_TABLE['_'] = 63;
+    }
+
+    private final InputStream in;
+    private final BufferPool pool;
+    private ByteBuffer encoded;
+    private ByteBuffer decoded;
+    private int bits;
+    private int modulus;
+    private boolean eof;
+
+    public PooledBase64InputStream(InputStream in, BufferPool pool) {
+        this.in = in;
+        this.pool = pool;
+        this.encoded = pool.acquire();
+        this.decoded = pool.acquire();
+        this.decoded.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (!decoded.hasRemaining()) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+
+        return decoded.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (!decoded.hasRemaining()) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+
+        int n = Math.min(len, decoded.remaining());
+        decoded.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return decoded.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (encoded != null) {
+            pool.release(encoded);
+            pool.release(decoded);
+            encoded = null;
+            decoded = ByteBuffer.allocate(0);
+            eof = true;
+        }
+
+        in.close();
+    }
+
+    /**
+     * The decoded buffer is as large as the encoded one, every 4 characters
+     * produce at most 3 bytes, leftover sextets at most 2 bytes.
+     */
+    private void fill() throws IOException {
+        byte[] src = encoded.array();
+        byte[] dst = decoded.array();
+        int n = in.read(src, 0, src.length - 4);
+        int acc = bits;
+        int m = modulus;
+        int p = 0;
+
+        for (int i = 0; i < n; ++i) {
+            int c = src[i];
+            if (c == '=') {
+                eof = true;
+                break;
+            }
+
+            int v = c >= 0 ? DECODE_TABLE[c] : -1;
+            if (v < 0) {
+                continue;
+            }
+
+            acc = (acc << 6) | v;
+            if (++m == 4) {
+                dst[p++] = (byte) (acc >> 16);
+                dst[p++] = (byte) (acc >> 8);
+                dst[p++] = (byte) acc;
+                acc = 0;
+                m = 0;
+            }
+        }
+
+        if (n < 0) {
+            eof = true;
+        }
+
+        if (eof) {
+            if (m == 2) {
+                dst[p++] = (byte) (acc >> 4);
+            } else if (m == 3) {
+                dst[p++] = (byte) (acc >> 10);
+                dst[p++] = (byte) (acc >> 2);
+            }
+            acc = 0;
+            m = 0;
+        }
+
+        bits = acc;
+        modulus = m;
+        decoded.position(0);
+        decoded.limit(p);
+    }
+}
@@ -0,0 +1,153 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes base64 in bulk into a pooled buffer, the output is identical to
+ * commons-codec's Base64OutputStream: standard alphabet with padding,
+ * chunked into lines of 76 characters ended by CRLF if requested.
+ */
+public class PooledBase64OutputStream extends OutputStream {
+
+    private static final int LINE_LENGTH = 76;
+    private static final byte[] ENCODE_TABLE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+
+    private final OutputStream out;
+    private final BufferPool pool;
+    private final boolean chunked;
+    private ByteBuffer buffer;
+    private final byte[] pending = new byte[3];
+    private int pendingLength;
+    private int position;
+    private int linePosition;
+
+    public PooledBase64OutputStream(OutputStream out, BufferPool pool, boolean chunked) {
+        this.out = out;
+        this.pool = pool;
+        this.chunked = chunked;
+        this.buffer = pool.acquire();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        pending[pendingLength++] = (byte) b;
+        if (pendingLength == 3) {
+            encode(pending, 0, 3);
+            pendingLength = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (buffer == null) {
+            throw new IOException("stream is closed");
+        }
+
+        while (pendingLength > 0 && len > 0) {
+            write(b[off++]);
+            --len;
+        }
+
+        int whole = len - len % 3;
+        encode(b, off, whole);
+
+        for (int i = whole; i < len; ++i) {
+            pending[pendingLength++] = b[off + i];
+        }
+    }
+
+    /**
+     * Writes all complete groups, up to 2 pending bytes are kept until
+     * more bytes are written or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (buffer != null) {
+            drain();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            byte[] dst = buffer.array();
+            if (dst.length - position < 6) {
+                drain();
+            }
+
+            if (pendingLength > 0) {
+                int acc = (pending[0] & 0xff) << 16;
+                if (pendingLength == 2) {
+                    acc |= (pending[1] & 0xff) << 8;
+                }
+
+                dst[position++] = ENCODE_TABLE[(acc >> 18) & 0x3f];
+                dst[position++] = ENCODE_TABLE[(acc >> 12) & 0x3f];
+                dst[position++] = pendingLength == 2 ? ENCODE_TABLE[(acc >> 6) & 0x3f] : (byte) '=';
+                dst[position++] = '=';
+                linePosition += 4;
+                pendingLength = 0;
+            }
+
+            if (chunked && linePosition > 0) {
+                dst[position++] = '\r';
+                dst[position++] = '\n';
+            }
+
+            drain();
+        } finally {
+            pool.release(buffer);
+            buffer = null;
+            out.close();
+        }
+    }
+
+    /**
+     * @param len must be multiple of 3
+     */
+    private void encode(byte[] src, int off, int len) throws IOException {
+        byte[] dst = buffer.array();
+        int p = position;
+        int line = linePosition;
+        int end = off + len;
+
+        for (int i = off; i < end; i += 3) {
+            if (dst.length - p < 6) {
+                position = p;
+                drain();
+                p = 0;
+            }
+
+            int acc = ((src[i] & 0xff) << 16) | ((src[i + 1] & 0xff) << 8) | (src[i + 2] & 0xff);
+            dst[p++] = ENCODE_TABLE[(acc >> 18) & 0x3f];
+            dst[p++] = ENCODE_TABLE[(acc >> 12) & 0x3f];
+            dst[p++] = ENCODE_TABLE[(acc >> 6) & 0x3f];
+            dst[p++] = ENCODE_TABLE[acc & 0x3f];
+
+            line += 4;
+            if (chunked && line >= LINE_LENGTH) {
+                dst[p++] = '\r';
+                dst[p++] = '\n';
+                line = 0;
+            }
+        }
+
+        position = p;
+        linePosition = line;
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer.array(), 0, position);
+            position = 0;
+        }
+    }
+}
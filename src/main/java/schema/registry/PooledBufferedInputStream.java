@@ -0,0 +1,144 @@
+package schema.registry;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Buffered input stream with a pooled buffer, it also strips headers in bulk.
+ */
+public class PooledBufferedInputStream extends InputStream {
+
+    private final InputStream in;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+
+    public PooledBufferedInputStream(InputStream in, BufferPool pool) {
+        this.in = in;
+        this.pool = pool;
+        this.buffer = pool.acquire();
+        this.buffer.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!buffer.hasRemaining()) {
+            // large reads bypass the buffer
+            if (len >= buffer.capacity()) {
+                return in.read(b, off, len);
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        int buffered = buffer.remaining();
+        if (buffered >= n) {
+            buffer.position(buffer.position() + (int) n);
+            return n;
+        }
+
+        buffer.position(buffer.limit());
+        return buffered + in.skip(n - buffered);
+    }
+
+    /**
+     * Skips exactly n bytes.
+     */
+    public void skipFully(long n) throws IOException {
+        while (n > 0) {
+            long skipped = skip(n);
+            if (skipped <= 0) {
+                // skip() may return 0 before end of stream
+                if (read() < 0) {
+                    throw new EOFException("end of stream while skipping");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * Skips bytes up to and including the first occurrence of b.
+     *
+     * @return false if end of stream is reached before b
+     */
+    public boolean skipPast(int b) throws IOException {
+        byte target = (byte) b;
+        while (buffer.hasRemaining() || fill()) {
+            byte[] a = buffer.array();
+            for (int i = buffer.position(), end = buffer.limit(); i < end; ++i) {
+                if (a[i] == target) {
+                    buffer.position(i + 1);
+                    return true;
+                }
+            }
+            buffer.position(buffer.limit());
+        }
+
+        return false;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffer.remaining() + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer.capacity() > 0) {
+            pool.release(buffer);
+            buffer = ByteBuffer.allocate(0);
+        }
+
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        byte[] a = buffer.array();
+        if (a.length == 0) {
+            throw new IOException("stream is closed");
+        }
+
+        int n;
+        do {
+            n = in.read(a, 0, a.length);
+        } while (n == 0);
+
+        if (n < 0) {
+            buffer.limit(0);
+            return false;
+        }
+
+        buffer.position(0);
+        buffer.limit(n);
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Buffered output stream with a pooled buffer, for encoders writing byte by
+ * byte.
+ */
+public class PooledBufferedOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+
+    public PooledBufferedOutputStream(OutputStream out, BufferPool pool) {
+        this.out = out;
+        this.pool = pool;
+        this.buffer = pool.acquire();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > buffer.remaining()) {
+            drain();
+
+            // large writes bypass the buffer
+            if (len >= buffer.capacity()) {
+                out.write(b, off, len);
+                return;
+            }
+        }
+
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            drain();
+        } finally {
+            pool.release(buffer);
+            buffer = null;
+            out.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (buffer.position() > 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * DeflaterOutputStream with a Deflater borrowed from a pool and returned on
+ * close.
+ */
+public class PooledDeflaterOutputStream extends DeflaterOutputStream {
+
+    private final CodecPool<Deflater> pool;
+    private boolean closed;
+
+    public PooledDeflaterOutputStream(OutputStream out, CodecPool<Deflater> pool, int size) {
+        super(out, pool.borrow(), size);
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+
+        super.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            pool.release(def);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * GZIP reader on a pooled raw Inflater, accepts the same input as
+ * GZIPInputStream including concatenated members.
+ */
+public class PooledGzipInputStream extends PooledInflaterInputStream {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final CRC32 crc = new CRC32();
+    private boolean eos;
+
+    /**
+     * @param pool of Inflaters with nowrap true
+     */
+    public PooledGzipInputStream(InputStream in, CodecPool<Inflater> pool, int size) throws IOException {
+        super(in, pool, size);
+
+        try {
+            readHeader(in);
+        } catch (IOException ex) {
+            closed = true;
+            pool.release(inf);
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        while (!eos) {
+            int n = super.read(b, off, len);
+            if (n >= 0) {
+                crc.update(b, off, n);
+                return n;
+            }
+
+            eos = readTrailer();
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return true at end of stream, false if another member follows
+     */
+    private boolean readTrailer() throws IOException {
+        InputStream trailerIn = in;
+        int remaining = inf.getRemaining();
+        if (remaining > 0) {
+            trailerIn = new SequenceInputStream(
+                    new ByteArrayInputStream(buf, len - remaining, remaining),
+                    FilterStreamUtil.shield(in));
+        }
+
+        if (readUInt(trailerIn) != crc.getValue()
+                || readUInt(trailerIn) != (inf.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+
+        // same heuristic as GZIPInputStream for concatenated members
+        if (in.available() > 0 || remaining > 26) {
+            int headerLength;
+            try {
+                headerLength = 8 + readHeader(trailerIn);
+            } catch (IOException ex) {
+                return true;
+            }
+
+            inf.reset();
+            if (remaining > headerLength) {
+                inf.setInput(buf, len - remaining + headerLength, remaining - headerLength);
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return header length
+     */
+    private int readHeader(InputStream headerIn) throws IOException {
+        // header bytes are covered by CRC for FHCRC check
+        CheckedInputStream in = new CheckedInputStream(headerIn, crc);
+        crc.reset();
+
+        if (readUShort(in) != 0x8b1f) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readUByte(in) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+
+        int flags = readUByte(in);
+        // modification time, extra flags and OS
+        for (int i = 0; i < 6; ++i) {
+            readUByte(in);
+        }
+        int n = 10;
+
+        if ((flags & FEXTRA) != 0) {
+            int m = readUShort(in);
+            for (int i = 0; i < m; ++i) {
+                readUByte(in);
+            }
+            n += m + 2;
+        }
+
+        if ((flags & FNAME) != 0) {
+            do {
+                ++n;
+            } while (readUByte(in) != 0);
+        }
+
+        if ((flags & FCOMMENT) != 0) {
+            do {
+                ++n;
+            } while (readUByte(in) != 0);
+        }
+
+        if ((flags & FHCRC) != 0) {
+            int v = (int) crc.getValue() & 0xffff;
+            if (readUShort(in) != v) {
+                throw new ZipException("Corrupt GZIP header");
+            }
+            n += 2;
+        }
+
+        crc.reset();
+        return n;
+    }
+
+    private long readUInt(InputStream in) throws IOException {
+        long s = readUShort(in);
+        return ((long) readUShort(in) << 16) | s;
+    }
+
+    private int readUShort(InputStream in) throws IOException {
+        int b = readUByte(in);
+        return (readUByte(in) << 8) | b;
+    }
+
+    private int readUByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+
+        return b;
+    }
+}
@@ -0,0 +1,65 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * GZIP writer on a pooled raw Deflater, same output as GZIPOutputStream.
+ */
+public class PooledGzipOutputStream extends PooledDeflaterOutputStream {
+
+    /**
+     * Magic, deflate method, no flags, no modification time, no extra flags,
+     * OS 0, same as GZIPOutputStream of Java 7 and 8.
+     */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * @param pool of Deflaters with nowrap true
+     */
+    public PooledGzipOutputStream(OutputStream out, CodecPool<Deflater> pool, int size) throws IOException {
+        super(out, pool, size);
+
+        try {
+            out.write(HEADER);
+        } catch (IOException ex) {
+            pool.release(def);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        crc.update(b, off, len);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (def.finished()) {
+            return;
+        }
+
+        def.finish();
+        while (!def.finished()) {
+            deflate();
+        }
+
+        long size = def.getBytesRead();
+        byte[] trailer = new byte[8];
+        writeInt(trailer, 0, crc.getValue());
+        writeInt(trailer, 4, size);
+        out.write(trailer);
+    }
+
+    private static void writeInt(byte[] b, int off, long v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >> 8);
+        b[off + 2] = (byte) (v >> 16);
+        b[off + 3] = (byte) (v >> 24);
+    }
+}
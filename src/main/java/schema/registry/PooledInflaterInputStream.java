@@ -0,0 +1,44 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * InflaterInputStream with an Inflater borrowed from a pool and returned on
+ * close.
+ */
+public class PooledInflaterInputStream extends InflaterInputStream {
+
+    private final CodecPool<Inflater> pool;
+    protected boolean closed;
+
+    public PooledInflaterInputStream(InputStream in, CodecPool<Inflater> pool, int size) {
+        super(in, pool.borrow(), size);
+        this.pool = pool;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+
+        return super.read(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            pool.release(inf);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.ning.compress.lzf.ChunkEncoder;
+
+/**
+ * LZF writer on a pooled ChunkEncoder and a pooled chunk buffer, the output
+ * is readable by LZFInputStream.
+ */
+public class PooledLZFOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final CodecPool<ChunkEncoder> encoders;
+    private final BufferPool buffers;
+    private ChunkEncoder encoder;
+    private ByteBuffer buffer;
+    private final int chunkSize;
+
+    public PooledLZFOutputStream(OutputStream out, CodecPool<ChunkEncoder> encoders, BufferPool buffers) {
+        this.out = out;
+        this.encoders = encoders;
+        this.buffers = buffers;
+        this.encoder = encoders.borrow();
+        this.buffer = buffers.acquire();
+        this.chunkSize = Math.min(buffer.capacity(), CodecPools.LZF_CHUNK_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (buffer.position() == chunkSize) {
+            writeChunk();
+        }
+
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (encoder == null) {
+            throw new IOException("stream is closed");
+        }
+
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - buffer.position());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+
+            if (buffer.position() == chunkSize) {
+                writeChunk();
+            }
+        }
+    }
+
+    /**
+     * Ends current chunk, like LZFOutputStream with finishBlockOnFlush.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeChunk();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (encoder == null) {
+            return;
+        }
+
+        try {
+            writeChunk();
+            out.close();
+        } finally {
+            encoders.release(encoder);
+            buffers.release(buffer);
+            encoder = null;
+            buffer = null;
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (buffer.position() > 0) {
+            encoder.encodeAndWriteChunk(buffer.array(), 0, buffer.position(), out);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package schema.registry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes metrics in Prometheus text exposition format 0.0.4.
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * Histogram buckets exported, every power of 4 ns from 1us to 68s.
+     */
+    private static final int BUCKET_EXPONENT_STEP = 2;
+
+    private final Writer out;
+
+    public PrometheusWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void header(String name, String type, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    /**
+     * @param labels alternating label names and values
+     */
+    public void sample(String name, double value, String... labels) throws IOException {
+        out.write(name);
+        if (labels.length > 0) {
+            out.write('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(labels[i]);
+                out.write("=\"");
+                out.write(escape(labels[i + 1]));
+                out.write('"');
+            }
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(format(value));
+        out.write('\n');
+    }
+
+    /**
+     * Writes latency histograms in seconds and counters of errors, bytes in
+     * and bytes out of every series.
+     */
+    public void family(String prefix, String help, Metrics.Family family) throws IOException {
+        String[] names = family.getLabelNames();
+        Map<String, Metrics.Series> series = family.getSeries();
+        long[][] snapshots = new long[series.size()][];
+        String[][] labels = new String[series.size()][];
+        int n = 0;
+        for (Metrics.Series s : series.values()) {
+            snapshots[n] = s.snapshot();
+            String[] values = s.getLabelValues();
+            labels[n] = new String[names.length * 2];
+            for (int i = 0; i < names.length; ++i) {
+                labels[n][i * 2] = names[i];
+                labels[n][i * 2 + 1] = values[i];
+            }
+            ++n;
+        }
+
+        header(prefix + "_seconds", "histogram", help);
+        for (int i = 0; i < n; ++i) {
+            for (int e = Metrics.MIN_EXPONENT; e <= Metrics.MAX_EXPONENT + 1; e += BUCKET_EXPONENT_STEP) {
+                sample(prefix + "_seconds_bucket", Metrics.Series.countBelow(snapshots[i], e),
+                        append(labels[i], "le", format((1L << e) / 1e9)));
+            }
+            sample(prefix + "_seconds_bucket", Metrics.Series.count(snapshots[i]), append(labels[i], "le", "+Inf"));
+            sample(prefix + "_seconds_sum", Metrics.Series.sum(snapshots[i]) / 1e9, labels[i]);
+            sample(prefix + "_seconds_count", Metrics.Series.count(snapshots[i]), labels[i]);
+        }
+
+        header(prefix + "_errors_total", "counter", "failures of " + help.toLowerCase());
+        for (int i = 0; i < n; ++i) {
+            sample(prefix + "_errors_total", Metrics.Series.errors(snapshots[i]), labels[i]);
+        }
+
+        header(prefix + "_bytes_in_total", "counter", "bytes read by " + help.toLowerCase());
+        for (int i = 0; i < n; ++i) {
+            sample(prefix + "_bytes_in_total", Metrics.Series.bytesIn(snapshots[i]), labels[i]);
+        }
+
+        header(prefix + "_bytes_out_total", "counter", "bytes written by " + help.toLowerCase());
+        for (int i = 0; i < n; ++i) {
+            sample(prefix + "_bytes_out_total", Metrics.Series.bytesOut(snapshots[i]), labels[i]);
+        }
+    }
+
+    private static String[] append(String[] labels, String name, String value) {
+        String[] result = new String[labels.length + 2];
+        System.arraycopy(labels, 0, result, 0, labels.length);
+        result[labels.length] = name;
+        result[labels.length + 1] = value;
+        return result;
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
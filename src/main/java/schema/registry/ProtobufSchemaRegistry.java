@@ -12,11 +12,13 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import com.google.common.base.Joiner;
 import com.google.protobuf.Message;
@@ -41,6 +43,7 @@ public class ProtobufSchemaRegistry extends AbstractSchemaRegistry {
     public static String TYPE = "protobuf";
     private static Logger logger = LoggerFactory.getLogger(ProtobufSchemaRegistry.class);
     private Map<String, Map<String, Method>> newBuilderMethods = new HashMap<>();
+    private Map<String, SchemaClassLoader> classLoaders = new HashMap<>();
 
     static {
         try {
@@ -69,56 +72,57 @@ public class ProtobufSchemaRegistry extends AbstractSchemaRegistry {
     @Override
     public void serialize(String id, String messageName, InputStream in, OutputStream out,
             Map<String, String[]> parameters) throws IOException {
-        Message.Builder builder = getBuilder(id, messageName);
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-            if (isDelimitedMessages(parameters)) {
-                StringBuilder sb = new StringBuilder();
-                String s;
-
-                while (null != (s = reader.readLine())) {
-                    s = s.trim();
-                    if (s.isEmpty()) {
-                        if (sb.length() > 0) {
-                            TextFormat.merge(sb, builder);
-                            builder.build().writeDelimitedTo(out);
-                            builder.clear();
-                            sb = new StringBuilder();
-                        }
-                    } else {
-                        sb.append(s).append('\n');
-                    }
-                }
-
-                if (sb.length() > 0) {
-                    TextFormat.merge(sb, builder);
-                    builder.build().writeDelimitedTo(out);
-                }
-            } else {
-                TextFormat.merge(reader, builder);
-                builder.build().writeTo(out);
-            }
-        }
+        resolve(id, messageName, parameters).encode(in, out);
     }
 
     @Override
     public void deserialize(String id, String messageName, InputStream in, OutputStream out,
             Map<String, String[]> parameters) throws IOException {
-        Message.Builder builder = getBuilder(id, messageName);
+        resolve(id, messageName, parameters).decode(in, out);
+    }
 
-        try (OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
-            if (isDelimitedMessages(parameters)) {
-                while (builder.mergeDelimitedFrom(in)) {
-                    Message msg = builder.build();
-                    builder.clear();
-                    TextFormat.print(msg, writer);
-                    writer.append('\n');
+    @Override
+    public SchemaCodec resolve(String id, String messageName, Map<String, String[]> parameters)
+            throws IOException {
+        Message prototype = getBuilder(id, messageName).getDefaultInstanceForType();
+        if (messageName == null || messageName.isEmpty()) {
+            messageName = schemas.get(id).getDefaultMessage();
+        }
+
+        return new MessageCodec(id, messageName, prototype, isDelimitedMessages(parameters));
+    }
+
+    @Override
+    public Map<String, SchemaFootprint> getFootprints() {
+        Map<String, SchemaFootprint> footprints = new TreeMap<>();
+        for (Map.Entry<String, SchemaClassLoader> e : classLoaders.entrySet()) {
+            String id = e.getKey();
+            Map<String, Method> methods = newBuilderMethods.get(id);
+            Set<Object> visited = FootprintUtil.newVisitedSet();
+            long schemaBytes = 0;
+            int codecs = 0;
+            if (methods != null) {
+                codecs = methods.size();
+                for (Method m : methods.values()) {
+                    try {
+                        schemaBytes += FootprintUtil.estimate(
+                                ((Message.Builder) m.invoke(null)).getDescriptorForType(), visited);
+                    } catch (ReflectiveOperationException ex) {
+                        logger.warn("fail to get protobuf descriptor of schema " + id, ex);
+                    }
                 }
-            } else {
-                Message msg = builder.mergeFrom(in).build();
-                TextFormat.print(msg, writer);
             }
+
+            footprints.put(id, new SchemaFootprint(id, TYPE, e.getValue(), schemaBytes,
+                    codecs, (long) codecs * (FootprintUtil.METHOD + FootprintUtil.MAP_ENTRY)));
         }
+
+        return footprints;
+    }
+
+    @Override
+    public Collection<SchemaClassLoader> getClassLoaders() {
+        return classLoaders.values();
     }
 
     private void loadClasses() throws IOException, ClassNotFoundException {
@@ -140,7 +144,8 @@ public class ProtobufSchemaRegistry extends AbstractSchemaRegistry {
             urls[i + 1] = getSchemaDirectory(dependencies.get(i));
         }
 
-        URLClassLoader cl = new URLClassLoader(urls, getClass().getClassLoader());
+        SchemaClassLoader cl = new SchemaClassLoader(id, urls, getClass().getClassLoader());
+        classLoaders.put(id, cl);
 
         File f = new File(rootDirectory, id + "/CLASSNAME");
         try (FileInputStream in = new FileInputStream(f);
@@ -211,7 +216,11 @@ public class ProtobufSchemaRegistry extends AbstractSchemaRegistry {
         }
     }
 
-    private Message.Builder getBuilder(String id, String messageName) throws IOException {
+    /**
+     * @param messageName null or empty for the default message of the schema
+     * @throws IllegalArgumentException if the schema or message is unknown
+     */
+    public Message.Builder getBuilder(String id, String messageName) throws IOException {
         Map<String, Method> methods = newBuilderMethods.get(id);
         if (methods == null) {
             throw new IllegalArgumentException("unknown schema");
@@ -244,4 +253,73 @@ public class ProtobufSchemaRegistry extends AbstractSchemaRegistry {
     private boolean isDelimitedMessages(Map<String, String[]> parameters) {
         return "true".equalsIgnoreCase(ParameterUtil.getParameter(parameters, "protobuf.delimited"));
     }
+
+    /**
+     * Builders aren't thread safe, each call gets its own from the default
+     * instance of the message.
+     */
+    private static class MessageCodec extends SchemaCodec {
+
+        private final Message prototype;
+        private final boolean delimited;
+
+        MessageCodec(String id, String messageName, Message prototype, boolean delimited) {
+            super(id, messageName);
+            this.prototype = prototype;
+            this.delimited = delimited;
+        }
+
+        @Override
+        public void encode(InputStream in, OutputStream out) throws IOException {
+            Message.Builder builder = prototype.newBuilderForType();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+            if (delimited) {
+                StringBuilder sb = new StringBuilder();
+                String s;
+
+                while (null != (s = reader.readLine())) {
+                    s = s.trim();
+                    if (s.isEmpty()) {
+                        if (sb.length() > 0) {
+                            TextFormat.merge(sb, builder);
+                            builder.build().writeDelimitedTo(out);
+                            builder.clear();
+                            sb = new StringBuilder();
+                        }
+                    } else {
+                        sb.append(s).append('\n');
+                    }
+                }
+
+                if (sb.length() > 0) {
+                    TextFormat.merge(sb, builder);
+                    builder.build().writeDelimitedTo(out);
+                }
+            } else {
+                TextFormat.merge(reader, builder);
+                builder.build().writeTo(out);
+            }
+        }
+
+        @Override
+        public void decode(InputStream in, OutputStream out) throws IOException {
+            Message.Builder builder = prototype.newBuilderForType();
+            OutputStreamWriter writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+
+            if (delimited) {
+                while (builder.mergeDelimitedFrom(in)) {
+                    Message msg = builder.build();
+                    builder.clear();
+                    TextFormat.print(msg, writer);
+                    writer.append('\n');
+                }
+            } else {
+                Message msg = builder.mergeFrom(in).build();
+                TextFormat.print(msg, writer);
+            }
+
+            writer.flush();
+        }
+    }
 }
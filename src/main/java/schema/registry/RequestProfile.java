@@ -0,0 +1,298 @@
+package schema.registry;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Nanoseconds a request spends in each stage of a conversion. Stages are
+ * exclusive, time spent in a timed stream is taken from the stage calling
+ * it, e.g. "decode" doesn't include "read" of the compressed body.
+ *
+ * Parsing and encoding alternate per message inside the registries, they're
+ * both in "convert", while "encode" is the filters and content coding of the
+ * output. Not thread safe, a profile belongs to the thread running the
+ * request.
+ */
+public class RequestProfile {
+
+    /**
+     * Request attribute holding System.nanoTime() of dispatching to a
+     * conversion executor.
+     */
+    public static final String DISPATCHED_ATTRIBUTE = "schema.registry.dispatched";
+    public static final String HEADER = "Server-Timing";
+
+    public enum Stage {
+        QUEUE, READ, DECODE, CONVERT, ENCODE, WRITE, OTHER;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final boolean enabled;
+    private final boolean serverTiming;
+    private final long start;
+    private final long[] nanos = new long[STAGES.length];
+    private final Stage[] stack = new Stage[STAGES.length * 2];
+    private int depth;
+    private Stage current = Stage.OTHER;
+    private long mark;
+    private long total = -1;
+
+    /**
+     * @param enabled if false, nothing is timed
+     * @param serverTiming whether to send "Server-Timing" header
+     * @param dispatched System.nanoTime() the request was queued, or -1
+     */
+    public RequestProfile(boolean enabled, boolean serverTiming, long dispatched) {
+        this.enabled = enabled || serverTiming;
+        this.serverTiming = serverTiming;
+        this.mark = System.nanoTime();
+        if (dispatched >= 0 && dispatched <= mark) {
+            this.start = dispatched;
+            nanos[Stage.QUEUE.ordinal()] = mark - dispatched;
+        } else {
+            this.start = mark;
+        }
+    }
+
+    /**
+     * Profiles if "timing=true" is given or {@link SlowRequestLog} is
+     * enabled.
+     */
+    public static RequestProfile start(HttpServletRequest request) {
+        Long dispatched = (Long) request.getAttribute(DISPATCHED_ATTRIBUTE);
+        return new RequestProfile(SlowRequestLog.isEnabled(), "true".equals(request.getParameter("timing")),
+                dispatched == null ? -1 : dispatched);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void enter(Stage stage) {
+        if (!enabled) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        nanos[current.ordinal()] += now - mark;
+        mark = now;
+        if (depth < stack.length) {
+            stack[depth] = current;
+        }
+        ++depth;
+        current = stage;
+    }
+
+    public void exit() {
+        if (!enabled || depth == 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        nanos[current.ordinal()] += now - mark;
+        mark = now;
+        --depth;
+        // stages nested deeper than the stack are attributed to the deepest kept one
+        current = depth < stack.length ? stack[depth] : current;
+    }
+
+    /**
+     * Stops the clock, later calls return the same total.
+     */
+    public long finish() {
+        if (total < 0) {
+            long now = System.nanoTime();
+            if (enabled) {
+                nanos[current.ordinal()] += now - mark;
+                mark = now;
+            }
+            total = now - start;
+        }
+        return total;
+    }
+
+    public long getNanos(Stage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    /**
+     * @return total so far if not finished
+     */
+    public long getTotalNanos() {
+        return total >= 0 ? total : System.nanoTime() - start;
+    }
+
+    public InputStream time(InputStream in, final Stage stage) {
+        if (!enabled) {
+            return in;
+        }
+
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                enter(stage);
+                try {
+                    return super.read();
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                enter(stage);
+                try {
+                    return super.read(b, off, len);
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                enter(stage);
+                try {
+                    return super.skip(n);
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                enter(stage);
+                try {
+                    super.close();
+                } finally {
+                    exit();
+                }
+            }
+        };
+    }
+
+    public OutputStream time(OutputStream out, Stage stage) {
+        return enabled ? new TimedOutputStream(out, stage) : out;
+    }
+
+    /**
+     * Times writing the response, "Server-Timing" header is set before the
+     * first byte if asked for, so it covers the stages up to then.
+     */
+    public OutputStream timeResponse(final HttpServletResponse response, OutputStream out) {
+        if (!enabled) {
+            return out;
+        }
+
+        return new TimedOutputStream(out, Stage.WRITE) {
+            private boolean started;
+
+            @Override
+            protected void starting() {
+                if (!started) {
+                    started = true;
+                    if (serverTiming && !response.isCommitted()) {
+                        response.setHeader(HEADER, toServerTiming());
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return e.g. "read;dur=0.123, convert;dur=4.5, total;dur=4.7" in
+     * milliseconds, stages taking no time are left out
+     */
+    public String toServerTiming() {
+        StringBuilder sb = new StringBuilder();
+        long now = System.nanoTime();
+        for (Stage stage : STAGES) {
+            long n = nanos[stage.ordinal()] + (enabled && stage == current && total < 0 ? now - mark : 0);
+            if (n > 0) {
+                sb.append(stage.getName()).append(";dur=").append(formatMillis(n)).append(", ");
+            }
+        }
+        sb.append("total;dur=").append(formatMillis(total >= 0 ? total : now - start));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("total=").append(formatMillis(getTotalNanos())).append("ms");
+        for (Stage stage : STAGES) {
+            sb.append(' ').append(stage.getName()).append('=').append(formatMillis(getNanos(stage))).append("ms");
+        }
+        return sb.toString();
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private class TimedOutputStream extends FilterOutputStream {
+
+        private final Stage stage;
+
+        TimedOutputStream(OutputStream out, Stage stage) {
+            super(out);
+            this.stage = stage;
+        }
+
+        protected void starting() {
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            starting();
+            enter(stage);
+            try {
+                out.write(b);
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            starting();
+            enter(stage);
+            try {
+                out.write(b, off, len);
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            starting();
+            enter(stage);
+            try {
+                out.flush();
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            starting();
+            enter(stage);
+            try {
+                out.close();
+            } finally {
+                exit();
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches whole responses of /e and /d keyed by request path, content version
+ * of the schema and its dependencies, parameters, request content coding,
+ * negotiated response content coding and SHA-1 of the request body, so
+ * replaying the same blob skips the conversion.
+ * Parameters "stream" and "timing" aren't part of the key.
+ *
+ * The content version is the sha1sum of the schema and all its dependencies,
+ * so a reload changing any of them makes old entries unreachable, they are
+ * also dropped eagerly by {@link #invalidate(Map, Map)}. Concurrent
+ * identical requests wait for one conversion. Bodies larger than
+ * "responseCache.maxBodySize" and responses larger than
+ * "responseCache.maxEntrySize" aren't cached, responses larger than
+ * "responseCache.offHeapThreshold" are kept in direct buffers.
+ *
+ * Only representation headers, {@link #REPLAYED_HEADERS} and Content-Type,
+ * are cached with the body. Per-request headers such as Content-Disposition
+ * must be set by the caller before serve(), for hits and misses alike.
+ *
+ * Eviction is LRU per segment of Guava cache, bounded by
+ * "responseCache.maxBytes".
+ */
+public class ResponseCache {
+
+    public static final String ATTRIBUTE = "responseCache";
+    public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_OFF_HEAP_THRESHOLD = 16 * 1024;
+    /**
+     * Headers that describe the cached body rather than one request.
+     */
+    public static final List<String> REPLAYED_HEADERS = Collections.unmodifiableList(Arrays.asList(
+            "Content-Encoding", "Vary", AdaptiveCompression.HEADER));
+    /**
+     * Rough bytes of key, headers and bookkeeping per entry.
+     */
+    private static final int ENTRY_OVERHEAD = 512;
+
+    private final Cache<String, Entry> cache;
+    private final int maxBodySize;
+    private final int maxEntrySize;
+    private final int offHeapThreshold;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong offHeapBytes = new AtomicLong();
+
+    public ResponseCache(long maxBytes, int maxBodySize, int maxEntrySize, int offHeapThreshold, long ttl) {
+        this.maxBodySize = maxBodySize;
+        this.maxEntrySize = maxEntrySize;
+        this.offHeapThreshold = offHeapThreshold;
+
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .recordStats();
+        if (ttl > 0) {
+            builder.expireAfterWrite(ttl, TimeUnit.SECONDS);
+        }
+        cache = builder
+                .weigher(new Weigher<String, Entry>() {
+                    @Override
+                    public int weigh(String key, Entry entry) {
+                        return entry.size + key.length() * 2 + ENTRY_OVERHEAD;
+                    }
+                })
+                .removalListener(new RemovalListener<String, Entry>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, Entry> notification) {
+                        account(notification.getValue(), -1);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Reads "responseCache.maxBytes", "responseCache.maxBodySize",
+     * "responseCache.maxEntrySize", "responseCache.offHeapThreshold" and
+     * "responseCache.ttl".
+     *
+     * @return null if "responseCache.maxBytes" isn't positive
+     */
+    public static ResponseCache create(Properties config) {
+        long maxBytes = ConfigUtil.getLong(config, "responseCache.maxBytes", 0);
+        if (maxBytes <= 0) {
+            return null;
+        }
+
+        return new ResponseCache(maxBytes,
+                ConfigUtil.getInt(config, "responseCache.maxBodySize", DEFAULT_MAX_BODY_SIZE),
+                ConfigUtil.getInt(config, "responseCache.maxEntrySize", DEFAULT_MAX_ENTRY_SIZE),
+                ConfigUtil.getInt(config, "responseCache.offHeapThreshold", DEFAULT_OFF_HEAP_THRESHOLD),
+                ConfigUtil.getLong(config, "responseCache.ttl", 0));
+    }
+
+    /**
+     * @return sha1sums of the schema and all its dependencies, null if the
+     * schema isn't found
+     */
+    public static String getVersion(Map<String, SchemaInfo> schemas, String id) {
+        Set<String> ids = new TreeSet<>();
+        collect(schemas, id, ids);
+
+        StringBuilder sb = new StringBuilder();
+        for (String s : ids) {
+            SchemaInfo schema = schemas.get(s);
+            if (schema == null) {
+                return null;
+            }
+            sb.append(s).append('=').append(schema.getSha1sum()).append(';');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Converts the request body into the spool and sends it, or sends a
+     * cached response of an identical request.
+     *
+     * @param id schema ID
+     * @param version from {@link #getVersion(Map, String)}
+     * @param filters response filters as passed to
+     * {@link HttpUtil#encodeContent}, null if the response has none
+     */
+    public void serve(final HttpServletRequest request, final HttpServletResponse response, OutputStream out,
+            final String id, String version, String filters, InputStream in, final ResponseSpool spool,
+            final Conversion conversion) throws Exception {
+        final byte[] body = readBody(in);
+        if (body.length > maxBodySize) {
+            bypasses.incrementAndGet();
+            conversion.convert(new SequenceInputStream(new ByteArrayInputStream(body), in), spool);
+            spool.commit(response, out);
+            return;
+        }
+
+        String key = getKey(request, id, version, filters, body);
+        final boolean[] loaded = {false};
+        Entry entry;
+        try {
+            entry = cache.get(key, new Callable<Entry>() {
+                @Override
+                public Entry call() throws Exception {
+                    loaded[0] = true;
+                    misses.incrementAndGet();
+                    conversion.convert(new ByteArrayInputStream(body), spool);
+                    if (spool.size() > maxEntrySize) {
+                        throw new UncacheableException();
+                    }
+
+                    Entry entry = new Entry(id, response, spool, spool.size() > offHeapThreshold);
+                    account(entry, 1);
+                    return entry;
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            if (!(ex.getCause() instanceof UncacheableException)) {
+                throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+            }
+
+            bypasses.incrementAndGet();
+            if (!loaded[0]) {
+                // waited for an identical request whose response is too large
+                conversion.convert(new ByteArrayInputStream(body), spool);
+            }
+            spool.commit(response, out);
+            return;
+        }
+
+        if (!loaded[0]) {
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(entry.size);
+        }
+        entry.replay(response, out);
+    }
+
+    /**
+     * Drops entries of schemas whose sha1sum or dependencies changed.
+     */
+    public void invalidate(Map<String, SchemaInfo> oldSchemas, Map<String, SchemaInfo> newSchemas) {
+        Set<String> changed = new HashSet<>();
+        for (String id : oldSchemas.keySet()) {
+            String version = getVersion(newSchemas, id);
+            if (version == null || !version.equals(getVersion(oldSchemas, id))) {
+                changed.add(id);
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        for (Iterator<Entry> it = cache.asMap().values().iterator(); it.hasNext();) {
+            if (changed.contains(it.next().id)) {
+                it.remove();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long h = hits.get();
+        long m = misses.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.put("entries", cache.size());
+        stats.put("bytes", bytes.get());
+        stats.put("offHeapBytes", offHeapBytes.get());
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("bypasses", bypasses.get());
+        stats.put("hitRatio", h + m == 0 ? 0 : (double) h / (h + m));
+        stats.put("bytesSaved", bytesSaved.get());
+        stats.put("evictions", cache.stats().evictionCount());
+        return stats;
+    }
+
+    private void account(Entry entry, int sign) {
+        bytes.addAndGet(sign * entry.size);
+        if (entry.offHeap != null) {
+            offHeapBytes.addAndGet(sign * entry.size);
+        }
+    }
+
+    /**
+     * @return at most maxBodySize + 1 bytes
+     */
+    private byte[] readBody(InputStream in) throws IOException {
+        return ByteStreams.toByteArray(ByteStreams.limit(in, maxBodySize + 1L));
+    }
+
+    /**
+     * Keys on the negotiated response coding rather than "Accept-Encoding",
+     * which clients spell in many equivalent ways.
+     */
+    private static String getKey(HttpServletRequest request, String id, String version, String filters,
+            byte[] body) {
+        Map<String, List<String>> parameters = new TreeMap<>();
+        for (Map.Entry<String, String[]> e : request.getParameterMap().entrySet()) {
+            if (!e.getKey().equals("stream") && !e.getKey().equals("timing")) {
+                parameters.put(e.getKey(), Arrays.asList(e.getValue()));
+            }
+        }
+
+        return request.getServletPath() + "/" + id
+                + "\n" + version
+                + "\n" + parameters
+                + "\n" + request.getHeader("Content-Encoding")
+                + "\n" + (HttpUtil.isCompressed(filters)
+                        ? null : HttpUtil.negotiateContentCoding(request.getHeader("Accept-Encoding")))
+                + "\n" + Hashing.sha1().hashBytes(body);
+    }
+
+    private static void collect(Map<String, SchemaInfo> schemas, String id, Set<String> ids) {
+        if (!ids.add(id)) {
+            return;
+        }
+
+        SchemaInfo schema = schemas.get(id);
+        if (schema != null && schema.getDependencies() != null) {
+            for (String d : schema.getDependencies()) {
+                collect(schemas, d, ids);
+            }
+        }
+    }
+
+    public interface Conversion {
+
+        /**
+         * Converts the body and closes all filters, the response headers of
+         * {@link #REPLAYED_HEADERS} set on the way are cached along with the
+         * output.
+         */
+        void convert(InputStream in, OutputStream out) throws Exception;
+    }
+
+    private static class UncacheableException extends Exception {
+    }
+
+    private static class Entry {
+
+        private final String id;
+        private final String contentType;
+        private final Map<String, List<String>> headers = new LinkedHashMap<>();
+        private final int size;
+        private final byte[] heap;
+        private final ByteBuffer offHeap;
+
+        Entry(String id, HttpServletResponse response, ResponseSpool spool, boolean offHeap) throws IOException {
+            this.id = id;
+            this.contentType = response.getContentType();
+            for (String name : REPLAYED_HEADERS) {
+                Collection<String> values = response.getHeaders(name);
+                if (values != null && !values.isEmpty()) {
+                    headers.put(name, new ArrayList<>(values));
+                }
+            }
+
+            this.size = (int) spool.size();
+            if (offHeap) {
+                final ByteBuffer b = ByteBuffer.allocateDirect(size);
+                spool.writeTo(new OutputStream() {
+                    @Override
+                    public void write(int v) {
+                        b.put((byte) v);
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int off, int len) {
+                        b.put(bytes, off, len);
+                    }
+                });
+                b.flip();
+                this.heap = null;
+                this.offHeap = b;
+            } else {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+                spool.writeTo(bytes);
+                this.heap = bytes.toByteArray();
+                this.offHeap = null;
+            }
+        }
+
+        void replay(HttpServletResponse response, OutputStream out) throws IOException {
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+                boolean first = true;
+                for (String value : e.getValue()) {
+                    if (first) {
+                        response.setHeader(e.getKey(), value);
+                        first = false;
+                    } else {
+                        response.addHeader(e.getKey(), value);
+                    }
+                }
+            }
+            response.setContentLength(size);
+
+            if (heap != null) {
+                out.write(heap);
+            } else {
+                WritableByteChannel channel = Channels.newChannel(out);
+                ByteBuffer b = offHeap.duplicate();
+                while (b.hasRemaining()) {
+                    channel.write(b);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package schema.registry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Holds a whole response so status and Content-Length are known before
+ * anything is committed. Output goes to pooled direct buffers up to
+ * "spool.memoryThreshold" bytes, the rest goes to a temporary file in
+ * "spool.directory" through one more pooled buffer, and is sent from the file
+ * with transferTo().
+ *
+ * close() ends writing, release() must be called to return the buffers and
+ * delete the file. The file isn't mapped, so its disk space is freed as soon
+ * as it's released, not when a mapping is garbage collected.
+ */
+public class ResponseSpool extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+    public static final long DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+    private static volatile BufferPool pool = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS, true);
+    private static volatile long memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+    private static volatile long maxSize = DEFAULT_MAX_SIZE;
+    private static volatile File directory;
+    private static final AtomicLong spooled = new AtomicLong();
+    private static final AtomicLong spilled = new AtomicLong();
+
+    private final BufferPool buffers = pool;
+    private final List<ByteBuffer> memory = new ArrayList<>();
+    private ByteBuffer current;
+    private long size;
+    private File file;
+    private FileChannel channel;
+    /**
+     * Collects writes to the file, current once the spool spilled.
+     */
+    private ByteBuffer staging;
+    private long fileSize;
+    private boolean closed;
+    private boolean released;
+
+    public ResponseSpool() {
+        spooled.incrementAndGet();
+    }
+
+    /**
+     * Reads "spool.bufferSize", "spool.maxPooledBuffers",
+     * "spool.memoryThreshold", "spool.maxSize" and "spool.directory".
+     */
+    public static void configure(Properties config) {
+        pool = new BufferPool(
+                ConfigUtil.getInt(config, "spool.bufferSize", DEFAULT_BUFFER_SIZE),
+                ConfigUtil.getInt(config, "spool.maxPooledBuffers", DEFAULT_MAX_POOLED_BUFFERS),
+                true);
+        memoryThreshold = ConfigUtil.getLong(config, "spool.memoryThreshold", DEFAULT_MEMORY_THRESHOLD);
+        maxSize = ConfigUtil.getLong(config, "spool.maxSize", DEFAULT_MAX_SIZE);
+        String dir = config.getProperty("spool.directory");
+        directory = dir == null || dir.isEmpty() ? null : new File(dir);
+    }
+
+    public static BufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return responses spooled so far
+     */
+    public static long getSpooled() {
+        return spooled.get();
+    }
+
+    /**
+     * @return responses that spilled to a temporary file so far
+     */
+    public static long getSpilled() {
+        return spilled.get();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream is closed");
+        }
+
+        if (size + len > maxSize) {
+            throw new IOException("response is larger than " + maxSize + " bytes, retry with stream=true");
+        }
+
+        size += len;
+        while (len > 0) {
+            if (current == null || !current.hasRemaining()) {
+                next();
+            }
+
+            int n = Math.min(len, current.remaining());
+            current.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Ends writing, bytes not written to the file yet are written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            flushStaging();
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Sets Content-Length and sends the spooled bytes.
+     */
+    public void commit(HttpServletResponse response, OutputStream out) throws IOException {
+        if (size <= Integer.MAX_VALUE) {
+            response.setContentLength((int) size);
+        } else {
+            response.setHeader("Content-Length", String.valueOf(size));
+        }
+
+        writeTo(out);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (released) {
+            throw new IOException("spool is released");
+        }
+
+        close();
+        WritableByteChannel target = Channels.newChannel(out);
+        for (ByteBuffer b : memory) {
+            write(b, target);
+        }
+        for (long position = 0; position < fileSize; ) {
+            position += channel.transferTo(position, fileSize - position, target);
+        }
+    }
+
+    /**
+     * @return read-only views of the bytes held in memory in order, for
+     * gathering writes to a channel, followed by {@link #getFileSize} bytes of
+     * {@link #getFile}, valid after close() until release()
+     */
+    public ByteBuffer[] getBuffers() {
+        ByteBuffer[] views = new ByteBuffer[memory.size()];
+        int i = 0;
+        for (ByteBuffer b : memory) {
+            views[i++] = view(b);
+        }
+
+        return views;
+    }
+
+    /**
+     * @return the temporary file with the bytes past the memory threshold,
+     * null if the spool didn't spill
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void release() {
+        if (released) {
+            return;
+        }
+
+        released = true;
+        closed = true;
+        for (ByteBuffer b : memory) {
+            buffers.release(b);
+        }
+        memory.clear();
+        if (staging != null) {
+            buffers.release(staging);
+            staging = null;
+        }
+        current = null;
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // nothing to do, the file is deleted anyway
+            }
+        }
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void next() throws IOException {
+        if (channel == null && (memory.size() + 1L) * buffers.getBufferSize() <= memoryThreshold) {
+            current = buffers.acquire();
+            memory.add(current);
+            return;
+        }
+
+        if (channel == null) {
+            spilled.incrementAndGet();
+            file = File.createTempFile("spool-", ".tmp", directory);
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            staging = buffers.acquire();
+            current = staging;
+            return;
+        }
+
+        flushStaging();
+    }
+
+    private void flushStaging() throws IOException {
+        if (staging == null || staging.position() == 0) {
+            return;
+        }
+
+        staging.flip();
+        while (staging.hasRemaining()) {
+            fileSize += channel.write(staging, fileSize);
+        }
+        staging.clear();
+    }
+
+    private static ByteBuffer view(ByteBuffer b) {
+        ByteBuffer data = b.asReadOnlyBuffer();
+        data.flip();
+        return data;
+    }
+
+    private static void write(ByteBuffer b, WritableByteChannel target) throws IOException {
+        ByteBuffer data = b.duplicate();
+        data.flip();
+        while (data.hasRemaining()) {
+            target.write(data);
+        }
+    }
+}
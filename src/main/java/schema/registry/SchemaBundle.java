@@ -0,0 +1,143 @@
+package schema.registry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Zip archive of the generated directories of a schema and its dependencies,
+ * so clients can convert in process with the same files the service loads.
+ * Entry names are "{ID}/{path in the schema directory}".
+ */
+public class SchemaBundle {
+
+    /**
+     * @return the schema ID followed by all its dependencies
+     * @throws IllegalArgumentException if the schema ID isn't found
+     */
+    public static List<String> getIds(CentralSchemaRegistry registry, String id) {
+        if (!registry.getSchemas().containsKey(id)) {
+            throw new IllegalArgumentException("schema ID isn't found");
+        }
+
+        List<String> ids = new ArrayList<>();
+        ids.add(id);
+        ids.addAll(registry.getAllDependencies(id));
+        return ids;
+    }
+
+    /**
+     * Derived from catalog ETags of the schemas, generated directories only
+     * change with what the catalog covers.
+     *
+     * @return strong ETag including the double quotes
+     */
+    public static String getEtag(SchemaCatalog catalog, List<String> ids) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (String id : ids) {
+            hasher.putString(id, StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putString(catalog.get(id).getEtag(), StandardCharsets.UTF_8)
+                    .putByte((byte) 0);
+        }
+
+        return "\"" + hasher.hash().toString() + "\"";
+    }
+
+    public static void write(File rootDirectory, List<String> ids, OutputStream out) throws IOException {
+        ZipOutputStream zout = new ZipOutputStream(FilterStreamUtil.shield(out));
+        for (String id : ids) {
+            writeDirectory(zout, new File(rootDirectory, id), id + "/");
+        }
+
+        zout.finish();
+        zout.flush();
+    }
+
+    /**
+     * Rejects entries outside of schema directories.
+     *
+     * @return IDs of extracted schema directories in bundle order
+     */
+    public static List<String> extract(InputStream in, File rootDirectory) throws IOException {
+        Set<String> ids = new LinkedHashSet<>();
+        String root = rootDirectory.getCanonicalPath() + File.separator;
+
+        ZipInputStream zin = new ZipInputStream(in);
+        ZipEntry entry;
+        while (null != (entry = zin.getNextEntry())) {
+            String name = entry.getName();
+            int slash = name.indexOf('/');
+            File f = new File(rootDirectory, name);
+            if (slash <= 0 || !f.getCanonicalPath().startsWith(root)) {
+                throw new IOException("bad bundle entry " + name);
+            }
+
+            ids.add(name.substring(0, slash));
+            if (entry.isDirectory()) {
+                mkdirs(f);
+                continue;
+            }
+
+            mkdirs(f.getParentFile());
+            try (FileOutputStream fout = new FileOutputStream(f)) {
+                ByteStreams.copy(zin, fout);
+            }
+            if (entry.getTime() > 0 && !f.setLastModified(entry.getTime())) {
+                throw new IOException("fail to set modification time of " + f);
+            }
+        }
+
+        return new ArrayList<>(ids);
+    }
+
+    private static void writeDirectory(ZipOutputStream zout, File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("schema directory " + dir + " isn't readable");
+        }
+
+        Arrays.sort(files);
+        ZipEntry dirEntry = new ZipEntry(prefix);
+        dirEntry.setTime(dir.lastModified());
+        zout.putNextEntry(dirEntry);
+        zout.closeEntry();
+
+        for (File f : files) {
+            if (f.isDirectory()) {
+                writeDirectory(zout, f, prefix + f.getName() + "/");
+                continue;
+            }
+
+            ZipEntry entry = new ZipEntry(prefix + f.getName());
+            entry.setTime(f.lastModified());
+            zout.putNextEntry(entry);
+            try (InputStream fin = new FileInputStream(f)) {
+                ByteStreams.copy(fin, zout);
+            }
+            zout.closeEntry();
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("fail to create directory " + dir);
+        }
+    }
+}
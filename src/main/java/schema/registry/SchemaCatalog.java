@@ -0,0 +1,145 @@
+package schema.registry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+
+/**
+ * Immutable JSON snapshots of all schema infos and of each schema info,
+ * built once when a registry is created, so serving the catalog doesn't
+ * touch Jackson.
+ */
+public class SchemaCatalog {
+
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    private final Snapshot all;
+    private final Map<String, Snapshot> snapshots;
+
+    private SchemaCatalog(Snapshot all, Map<String, Snapshot> snapshots) {
+        this.all = all;
+        this.snapshots = snapshots;
+    }
+
+    public static SchemaCatalog build(Map<String, SchemaInfo> schemas) throws IOException {
+        Map<String, Snapshot> snapshots = new HashMap<>();
+        for (Map.Entry<String, SchemaInfo> e : schemas.entrySet()) {
+            snapshots.put(e.getKey(), new Snapshot(mapper.writeValueAsBytes(e.getValue())));
+        }
+
+        return new SchemaCatalog(new Snapshot(mapper.writeValueAsBytes(schemas)), snapshots);
+    }
+
+    public Snapshot getAll() {
+        return all;
+    }
+
+    /**
+     * @return null if the schema ID isn't found
+     */
+    public Snapshot get(String id) {
+        return snapshots.get(id);
+    }
+
+    /**
+     * Writes a query result as {"items":{ID:info,...},"next":cursor}, or
+     * {"items":[ID,...],"next":cursor} if idsOnly is true. Infos are copied
+     * from prebuilt snapshots. "next" is null on the last page.
+     */
+    public void writePage(OutputStream out, SchemaIndex.Page page, boolean idsOnly) throws IOException {
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+
+        out.write(idsOnly ? "{\"items\":[".getBytes(StandardCharsets.UTF_8)
+                : "{\"items\":{".getBytes(StandardCharsets.UTF_8));
+
+        boolean first = true;
+        for (String id : page.getIds()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+
+            out.write('"');
+            out.write(encoder.quoteAsUTF8(id));
+            out.write('"');
+            if (!idsOnly) {
+                out.write(':');
+                out.write(snapshots.get(id).getBytes());
+            }
+        }
+
+        out.write(idsOnly ? ']' : '}');
+        out.write(",\"next\":".getBytes(StandardCharsets.UTF_8));
+        if (page.getNext() == null) {
+            out.write("null".getBytes(StandardCharsets.UTF_8));
+        } else {
+            out.write('"');
+            out.write(page.getNext().getBytes(StandardCharsets.UTF_8));
+            out.write('"');
+        }
+        out.write('}');
+    }
+
+    public static class Snapshot {
+
+        private final byte[] bytes;
+        private final byte[] gzipped;
+        private final String etag;
+        private final String gzippedEtag;
+
+        /**
+         * The ETag is the SHA-1 of the JSON, which covers everything that
+         * can change with a registry generation: sha1sums from schema list,
+         * numbers, fingerprints and message names from generated classes.
+         * So an unchanged schema keeps its ETag across reloads and restarts.
+         * The gzipped body is a different representation with its own ETag.
+         */
+        Snapshot(byte[] bytes) throws IOException {
+            this.bytes = bytes;
+            this.gzipped = gzip(bytes);
+            String sha1 = Hashing.sha1().hashBytes(bytes).toString();
+            this.etag = "\"" + sha1 + "\"";
+            this.gzippedEtag = "\"" + sha1 + "-gzip\"";
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        /**
+         * @return strong ETag including the double quotes
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return strong ETag of {@link #getGzipped()} including the double
+         * quotes
+         */
+        public String getGzippedEtag() {
+            return gzippedEtag;
+        }
+
+        private static byte[] gzip(byte[] bytes) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(bytes);
+            }
+
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package schema.registry;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class loader of one schema's generated classes, counts the classes it
+ * defines and the size of their class files, which is a rough lower bound
+ * of the metaspace they take.
+ */
+public class SchemaClassLoader extends URLClassLoader {
+
+    private final String id;
+    private final AtomicInteger classes = new AtomicInteger();
+    private final AtomicLong classFileBytes = new AtomicLong();
+
+    public SchemaClassLoader(String id, URL[] urls, ClassLoader parent) {
+        super(urls, parent);
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getClassCount() {
+        return classes.get();
+    }
+
+    public long getClassFileBytes() {
+        return classFileBytes.get();
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> c = super.findClass(name);
+        classes.incrementAndGet();
+
+        URL resource = findResource(name.replace('.', '/') + ".class");
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            try {
+                classFileBytes.addAndGet(new File(resource.toURI()).length());
+            } catch (URISyntaxException | IllegalArgumentException ex) {
+                // unusual file URL, the class is still counted
+            }
+        }
+
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)) + "[" + id + "]";
+    }
+}
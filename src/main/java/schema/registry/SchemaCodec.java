@@ -0,0 +1,116 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Conversion between text and binary encoding of one message of a schema,
+ * with schema, message class and options looked up once by
+ * SchemaRegistry.resolve(). Codecs are immutable and thread safe, each call
+ * creates its own decoder and encoder state.
+ *
+ * Text is JSON for Avro and Thrift, text format for Protobuf. Streams passed
+ * in aren't closed.
+ */
+public abstract class SchemaCodec {
+
+    private final String id;
+    private final String messageName;
+
+    protected SchemaCodec(String id, String messageName) {
+        this.id = id;
+        this.messageName = messageName;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the message name after default message lookup, null for Avro
+     */
+    public String getMessageName() {
+        return messageName;
+    }
+
+    public abstract void encode(InputStream in, OutputStream out) throws IOException;
+
+    public abstract void decode(InputStream in, OutputStream out) throws IOException;
+
+    public byte[] encode(byte[] text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length);
+        encode(new ByteArrayInputStream(text), out);
+        return out.toByteArray();
+    }
+
+    public byte[] decode(byte[] binary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(binary.length * 2);
+        decode(new ByteArrayInputStream(binary), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Consumes the remaining bytes of text.
+     *
+     * @return a heap buffer ready to be read
+     */
+    public ByteBuffer encode(ByteBuffer text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.remaining());
+        encode(newInputStream(text), out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * Consumes the remaining bytes of binary.
+     *
+     * @return a heap buffer ready to be read
+     */
+    public ByteBuffer decode(ByteBuffer binary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(binary.remaining() * 2);
+        decode(newInputStream(binary), out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * Heap buffers are read in place, direct buffers through a stream that
+     * advances the buffer position.
+     */
+    static InputStream newInputStream(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            InputStream in = new ByteArrayInputStream(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return in;
+        }
+
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+
+                len = Math.min(len, buffer.remaining());
+                buffer.get(b, off, len);
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+}
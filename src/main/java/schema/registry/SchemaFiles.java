@@ -0,0 +1,97 @@
+package schema.registry;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Schema file locations resolved once when a registry is created, so serving
+ * /s/{ID} doesn't probe the file system.
+ */
+public class SchemaFiles {
+
+    private final Map<String, SchemaFile> files;
+
+    private SchemaFiles(Map<String, SchemaFile> files) {
+        this.files = files;
+    }
+
+    /**
+     * The original downloaded file "{filename}.orig" is preferred, it's
+     * present when the downloaded file was patched before compilation.
+     */
+    public static SchemaFiles build(Map<String, SchemaInfo> schemas, File rootDirectory) {
+        Map<String, SchemaFile> files = new HashMap<>();
+        for (Map.Entry<String, SchemaInfo> e : schemas.entrySet()) {
+            String id = e.getKey();
+            SchemaInfo info = e.getValue();
+
+            File f = new File(rootDirectory, id + "/" + info.getFilename() + ".orig");
+            if (!f.exists()) {
+                f = new File(rootDirectory, id + "/" + info.getFilename());
+            }
+
+            files.put(id, new SchemaFile(f, info));
+        }
+
+        return new SchemaFiles(files);
+    }
+
+    /**
+     * @return null if the schema ID isn't found
+     */
+    public SchemaFile get(String id) {
+        return files.get(id);
+    }
+
+    public static class SchemaFile {
+
+        private final File file;
+        private final boolean exists;
+        private final boolean readable;
+        private final long length;
+        private final long lastModified;
+        private final String etag;
+
+        SchemaFile(File file, SchemaInfo info) {
+            this.file = file;
+            this.exists = file.exists();
+            this.readable = exists && file.canRead();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+
+            // downloaded files are verified against sha1sum by generated Makefile
+            String sha1sum = info.getSha1sum();
+            this.etag = "\"" + (sha1sum == null || sha1sum.isEmpty()
+                    ? Long.toHexString(length) + "-" + Long.toHexString(lastModified)
+                    : sha1sum) + "\"";
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean exists() {
+            return exists;
+        }
+
+        public boolean canRead() {
+            return readable;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return strong ETag including the double quotes
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
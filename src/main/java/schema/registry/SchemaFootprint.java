@@ -0,0 +1,91 @@
+package schema.registry;
+
+import java.util.Comparator;
+
+/**
+ * Memory a schema takes in one registry generation: classes defined by its
+ * class loader, estimated heap of its parsed schema objects and of codecs
+ * cached for it. Estimates are meant for ranking schemas, not exact sizes.
+ */
+public class SchemaFootprint {
+
+    /**
+     * Largest estimated bytes first.
+     */
+    public static final Comparator<SchemaFootprint> BY_ESTIMATED_BYTES = new Comparator<SchemaFootprint>() {
+        @Override
+        public int compare(SchemaFootprint a, SchemaFootprint b) {
+            int c = Long.compare(b.getEstimatedBytes(), a.getEstimatedBytes());
+            return c != 0 ? c : a.id.compareTo(b.id);
+        }
+    };
+
+    private final String id;
+    private final String type;
+    private long generation;
+    private final String classLoader;
+    private final int classes;
+    private final long classFileBytes;
+    private final long schemaBytes;
+    private final int codecs;
+    private final long codecBytes;
+
+    /**
+     * @param loader null if the schema has no generated classes
+     */
+    public SchemaFootprint(String id, String type, SchemaClassLoader loader, long schemaBytes,
+            int codecs, long codecBytes) {
+        this.id = id;
+        this.type = type;
+        this.classLoader = loader == null ? null : loader.toString();
+        this.classes = loader == null ? 0 : loader.getClassCount();
+        this.classFileBytes = loader == null ? 0 : loader.getClassFileBytes();
+        this.schemaBytes = schemaBytes;
+        this.codecs = codecs;
+        this.codecBytes = codecBytes;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public String getClassLoader() {
+        return classLoader;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    public long getClassFileBytes() {
+        return classFileBytes;
+    }
+
+    public long getSchemaBytes() {
+        return schemaBytes;
+    }
+
+    public int getCodecs() {
+        return codecs;
+    }
+
+    public long getCodecBytes() {
+        return codecBytes;
+    }
+
+    public long getEstimatedBytes() {
+        return classFileBytes + schemaBytes + codecBytes;
+    }
+}
@@ -0,0 +1,239 @@
+package schema.registry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * In-memory index of schema infos built once per registry generation, it
+ * answers catalog queries by type, message name, ID prefix, custodian and
+ * dependency with cursor pagination.
+ *
+ * Every posting list is a sorted array of positions in the sorted schema ID
+ * array, the cursor is the last returned schema ID so it stays valid across
+ * reloads.
+ */
+public class SchemaIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static BaseEncoding cursorEncoding = BaseEncoding.base64Url().omitPadding();
+
+    private final String[] ids;
+    private final Map<String, int[]> byType;
+    private final Map<String, int[]> byCustodian;
+    private final Map<String, int[]> byMessage;
+    private final Map<String, int[]> byDependency;
+
+    private SchemaIndex(String[] ids, Map<String, int[]> byType, Map<String, int[]> byCustodian,
+            Map<String, int[]> byMessage, Map<String, int[]> byDependency) {
+        this.ids = ids;
+        this.byType = byType;
+        this.byCustodian = byCustodian;
+        this.byMessage = byMessage;
+        this.byDependency = byDependency;
+    }
+
+    public static SchemaIndex build(Map<String, SchemaInfo> schemas) {
+        String[] ids = new TreeSet<>(schemas.keySet()).toArray(new String[0]);
+        Map<String, List<Integer>> byType = new HashMap<>();
+        Map<String, List<Integer>> byCustodian = new HashMap<>();
+        Map<String, List<Integer>> byMessage = new HashMap<>();
+        Map<String, List<Integer>> byDependency = new HashMap<>();
+
+        for (int i = 0; i < ids.length; ++i) {
+            SchemaInfo schema = schemas.get(ids[i]);
+
+            add(byType, schema.getType(), i);
+            add(byCustodian, schema.getCustodian(), i);
+
+            Set<String> messages = new TreeSet<>(schema.getMessages());
+            if (schema.getDefaultMessage() != null && !schema.getDefaultMessage().isEmpty()) {
+                messages.add(schema.getDefaultMessage());
+            }
+            for (String m : messages) {
+                add(byMessage, m, i);
+            }
+
+            for (String d : new TreeSet<>(schema.getDependencies())) {
+                add(byDependency, d, i);
+            }
+        }
+
+        return new SchemaIndex(ids, toArrays(byType), toArrays(byCustodian),
+                toArrays(byMessage), toArrays(byDependency));
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * All conditions are optional and combined with AND.
+     *
+     * @param dependsOn matches schemas that directly depend on this schema
+     * @param cursor from {@link Page#getNext()} of previous page, null for
+     * the first page
+     */
+    public Page query(String type, String message, String prefix, String custodian,
+            String dependsOn, int limit, String cursor) {
+        List<int[]> postings = new ArrayList<>(4);
+        if (type != null) {
+            postings.add(get(byType, type));
+        }
+        if (message != null) {
+            postings.add(get(byMessage, message));
+        }
+        if (custodian != null) {
+            postings.add(get(byCustodian, custodian));
+        }
+        if (dependsOn != null) {
+            postings.add(get(byDependency, dependsOn));
+        }
+
+        int from = 0;
+        int to = ids.length;
+        if (prefix != null && !prefix.isEmpty()) {
+            from = lowerBound(prefix);
+            to = lowerBound(prefix + Character.MAX_VALUE);
+        }
+
+        if (cursor != null && !cursor.isEmpty()) {
+            String last = decodeCursor(cursor);
+            int i = lowerBound(last);
+            from = Math.max(from, i < ids.length && ids[i].equals(last) ? i + 1 : i);
+        }
+
+        // drive iteration by the shortest posting list
+        int[] driver = null;
+        for (int[] p : postings) {
+            if (driver == null || p.length < driver.length) {
+                driver = p;
+            }
+        }
+
+        List<String> result = new ArrayList<>(Math.min(limit, 256));
+        int last = -1;
+        boolean more = false;
+
+        if (driver == null) {
+            for (int i = from; i < to; ++i) {
+                if (result.size() == limit) {
+                    more = true;
+                    break;
+                }
+                result.add(ids[i]);
+                last = i;
+            }
+        } else {
+            int k = Arrays.binarySearch(driver, from);
+            for (k = k < 0 ? -k - 1 : k; k < driver.length && driver[k] < to; ++k) {
+                int i = driver[k];
+                if (!matchesAll(postings, driver, i)) {
+                    continue;
+                }
+
+                if (result.size() == limit) {
+                    more = true;
+                    break;
+                }
+                result.add(ids[i]);
+                last = i;
+            }
+        }
+
+        return new Page(result, more ? encodeCursor(ids[last]) : null);
+    }
+
+    private static boolean matchesAll(List<int[]> postings, int[] driver, int i) {
+        for (int[] p : postings) {
+            if (p != driver && Arrays.binarySearch(p, i) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int lowerBound(String id) {
+        int i = Arrays.binarySearch(ids, id);
+        return i < 0 ? -i - 1 : i;
+    }
+
+    private static int[] get(Map<String, int[]> postings, String key) {
+        int[] p = postings.get(key);
+        return p == null ? EMPTY : p;
+    }
+
+    private static void add(Map<String, List<Integer>> postings, String key, int i) {
+        if (key == null) {
+            return;
+        }
+
+        List<Integer> list = postings.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            postings.put(key, list);
+        }
+
+        list.add(i);
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, List<Integer>> postings) {
+        Map<String, int[]> result = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : postings.entrySet()) {
+            List<Integer> list = e.getValue();
+            int[] a = new int[list.size()];
+            for (int i = 0; i < a.length; ++i) {
+                a[i] = list.get(i);
+            }
+
+            result.put(e.getKey(), a);
+        }
+
+        return result;
+    }
+
+    private static String encodeCursor(String id) {
+        return cursorEncoding.encode(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(cursorEncoding.decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("bad cursor " + cursor);
+        }
+    }
+
+    public static class Page {
+
+        private final List<String> ids;
+        private final String next;
+
+        public Page(List<String> ids, String next) {
+            this.ids = ids;
+            this.next = next;
+        }
+
+        /**
+         * @return schema IDs in ascending order
+         */
+        public List<String> getIds() {
+            return ids;
+        }
+
+        /**
+         * @return cursor of next page, null if this is the last page
+         */
+        public String getNext() {
+            return next;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.TreeSet;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -20,6 +21,25 @@ public class SchemaInfo {
     private List<String> dependencies = Collections.emptyList();
     private String description = "";
     private String custodian = "";
+    /**
+     * Stable numeric ID used in wire headers, derived from schema ID if not
+     * specified in schema list.
+     */
+    private Integer number;
+    /**
+     * Maximum concurrent conversions, null or zero means unlimited.
+     */
+    private Integer maxConcurrency;
+    /**
+     * Maximum request bytes per second, null or zero means unlimited.
+     */
+    private Long maxBytesPerSecond;
+    /**
+     * Avro CRC-64-AVRO fingerprint of parsing canonical form, only for Avro
+     * schemas.
+     */
+    @JsonIgnore
+    private Long fingerprint;
     /**
      * Message names defined in a single schema file.
      */
@@ -88,6 +108,42 @@ public class SchemaInfo {
         this.custodian = custodian;
     }
 
+    public Integer getNumber() {
+        return number;
+    }
+
+    public void setNumber(Integer number) {
+        this.number = number;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(Integer maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    public void setMaxBytesPerSecond(Long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(Long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     @JsonProperty
     public Set<String> getMessages() {
         return messages;
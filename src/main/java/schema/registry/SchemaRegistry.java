@@ -14,6 +14,18 @@ public interface SchemaRegistry {
     public void deserialize(String id, String messageName, InputStream in, OutputStream out,
             Map<String, String[]> parameters) throws IOException;
 
+    /**
+     * Looks up the schema, message and options once for repeated conversions
+     * of the same kind, serialize() and deserialize() with the same
+     * arguments behave the same as the returned codec.
+     *
+     * @param messageName null or empty for the default message of the schema
+     * @throws IllegalArgumentException if the schema, message or an option is
+     * unknown or invalid
+     */
+    public SchemaCodec resolve(String id, String messageName, Map<String, String[]> parameters)
+            throws IOException;
+
     public File getRootDirectory();
 
     public Map<String, SchemaInfo> getSchemas();
@@ -0,0 +1,94 @@
+package schema.registry;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Logs requests slower than "slowLog.threshold" milliseconds with their
+ * stage breakdown to logger "schema.registry.SlowRequests", at most
+ * "slowLog.rate" lines per second, and a "slowLog.sampleRate" fraction of
+ * the other requests to logger "schema.registry.SampledRequests" for trends.
+ */
+public class SlowRequestLog {
+
+    public static final long DEFAULT_THRESHOLD = 1000;
+    public static final double DEFAULT_RATE = 10;
+
+    private static final Logger slowLogger = LoggerFactory.getLogger("schema.registry.SlowRequests");
+    private static final Logger sampledLogger = LoggerFactory.getLogger("schema.registry.SampledRequests");
+
+    private static volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD);
+    private static volatile double sampleRate;
+    private static volatile RateLimiter limiter = RateLimiter.create(DEFAULT_RATE);
+    private static final AtomicLong slow = new AtomicLong();
+    private static final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Reads "slowLog.threshold", "slowLog.rate" and "slowLog.sampleRate",
+     * a threshold of 0 disables the slow log.
+     */
+    public static void configure(Properties config) {
+        long threshold = ConfigUtil.getLong(config, "slowLog.threshold", DEFAULT_THRESHOLD);
+        thresholdNanos = threshold > 0 ? TimeUnit.MILLISECONDS.toNanos(threshold) : Long.MAX_VALUE;
+        limiter = RateLimiter.create(Math.max(0.001, ConfigUtil.getDouble(config, "slowLog.rate", DEFAULT_RATE)));
+        sampleRate = Math.max(0, Math.min(1, ConfigUtil.getDouble(config, "slowLog.sampleRate", 0)));
+    }
+
+    public static boolean isEnabled() {
+        return thresholdNanos != Long.MAX_VALUE || sampleRate > 0;
+    }
+
+    /**
+     * @return requests slower than the threshold so far, logged or not
+     */
+    public static long getSlow() {
+        return slow.get();
+    }
+
+    /**
+     * Finishes the profile and logs it if slow or sampled.
+     *
+     * @param id schema ID, null if looked up by wire header
+     * @param bytesOut -1 if unknown
+     */
+    public static void record(RequestProfile profile, HttpServletRequest request, HttpServletResponse response,
+            String id, long bytesIn, long bytesOut) {
+        long total = profile.finish();
+        if (!profile.isEnabled()) {
+            return;
+        }
+
+        if (total >= thresholdNanos) {
+            slow.incrementAndGet();
+            if (!limiter.tryAcquire()) {
+                suppressed.incrementAndGet();
+                return;
+            }
+
+            long n = suppressed.getAndSet(0);
+            slowLogger.warn("{} {}{}", describe(request, response, id, bytesIn, bytesOut), profile,
+                    n > 0 ? " (" + n + " slow requests not logged)" : "");
+        } else if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            sampledLogger.info("{} {}", describe(request, response, id, bytesIn, bytesOut), profile);
+        }
+    }
+
+    private static String describe(HttpServletRequest request, HttpServletResponse response,
+            String id, long bytesIn, long bytesOut) {
+        return request.getServletPath() + " id=" + id
+                + " m=" + request.getParameter("m")
+                + " f=" + request.getParameter("f")
+                + " status=" + response.getStatus()
+                + " bytesIn=" + bytesIn
+                + " bytesOut=" + bytesOut;
+    }
+}
@@ -10,10 +10,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
-import java.net.URLClassLoader;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
@@ -34,6 +36,11 @@ public class ThriftSchemaRegistry extends AbstractSchemaRegistry {
     private static Logger logger = LoggerFactory.getLogger(ThriftSchemaRegistry.class);
     private static MappingJsonFactory jsonFactory = new MappingJsonFactory();
     private Map<String, Map<String, Class<? extends TBase>>> thriftClasses = new HashMap<>();
+    private Map<String, SchemaClassLoader> classLoaders = new HashMap<>();
+
+    static {
+        jsonFactory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
 
     public ThriftSchemaRegistry(Map<String, SchemaInfo> schemas, File rootDirectory)
             throws IOException, ClassNotFoundException {
@@ -45,31 +52,48 @@ public class ThriftSchemaRegistry extends AbstractSchemaRegistry {
     @Override
     public void serialize(String id, String messageName, InputStream in, OutputStream out,
             Map<String, String[]> parameters) throws IOException {
-        // thrift's TJsonProtocol is very picky on JSON data
-        ByteArrayOutputStream compactJsonOut = new ByteArrayOutputStream();
-
-        try (JsonParser parser = jsonFactory.createParser(in);
-                JsonGenerator generator = jsonFactory.createGenerator(compactJsonOut)) {
-            generator.writeTree(parser.readValueAsTree());
-        }
+        resolve(id, messageName, parameters).encode(in, out);
+    }
 
-        in = new ByteArrayInputStream(compactJsonOut.toByteArray());
+    @Override
+    public void deserialize(String id, String messageName, InputStream in, OutputStream out,
+            Map<String, String[]> parameters) throws IOException {
+        resolve(id, messageName, parameters).decode(in, out);
+    }
 
+    @Override
+    public SchemaCodec resolve(String id, String messageName, Map<String, String[]> parameters) {
         Class<? extends TBase> c = getThriftClass(id, messageName);
 
-        ThriftCodec jsonDecoder = ThriftCodec.create(c, ThriftCodec.JSON_PROTOCOL);
-        ThriftCodec binaryEncoder = ThriftCodec.create(c, getBinaryCodec(parameters));
-        binaryEncoder.serialize(jsonDecoder.deserialize(in), out);
+        return new StructCodec(id, c.getSimpleName(), c, getBinaryCodec(parameters));
     }
 
+    /**
+     * Codecs aren't cached, they're created per request.
+     */
     @Override
-    public void deserialize(String id, String messageName, InputStream in, OutputStream out,
-            Map<String, String[]> parameters) throws IOException {
-        Class<? extends TBase> c = getThriftClass(id, messageName);
+    public Map<String, SchemaFootprint> getFootprints() {
+        Map<String, SchemaFootprint> footprints = new TreeMap<>();
+        for (Map.Entry<String, SchemaClassLoader> e : classLoaders.entrySet()) {
+            String id = e.getKey();
+            Map<String, Class<? extends TBase>> classes = thriftClasses.get(id);
+            Set<Object> visited = FootprintUtil.newVisitedSet();
+            long schemaBytes = 0;
+            if (classes != null) {
+                for (Class<? extends TBase> c : classes.values()) {
+                    schemaBytes += FootprintUtil.MAP_ENTRY + FootprintUtil.estimate(c, visited);
+                }
+            }
+
+            footprints.put(id, new SchemaFootprint(id, TYPE, e.getValue(), schemaBytes, 0, 0));
+        }
 
-        ThriftCodec binaryDecoder = ThriftCodec.create(c, getBinaryCodec(parameters));
-        ThriftCodec jsonEncoder = ThriftCodec.create(c, ThriftCodec.JSON_PROTOCOL);
-        jsonEncoder.serialize(binaryDecoder.deserialize(in), out);
+        return footprints;
+    }
+
+    @Override
+    public Collection<SchemaClassLoader> getClassLoaders() {
+        return classLoaders.values();
     }
 
     private void loadClasses() throws IOException, ClassNotFoundException {
@@ -97,7 +121,8 @@ public class ThriftSchemaRegistry extends AbstractSchemaRegistry {
             urls[i + 1] = getSchemaDirectory(dependencies.get(i));
         }
 
-        URLClassLoader cl = new URLClassLoader(urls, getClass().getClassLoader());
+        SchemaClassLoader cl = new SchemaClassLoader(id, urls, getClass().getClassLoader());
+        classLoaders.put(id, cl);
 
         File f = new File(rootDirectory, id + "/CLASSNAME");
         try (FileInputStream in = new FileInputStream(f);
@@ -149,7 +174,11 @@ public class ThriftSchemaRegistry extends AbstractSchemaRegistry {
         }
     }
 
-    private Class<? extends TBase> getThriftClass(String id, String messageName) {
+    /**
+     * @param messageName null or empty for the default message of the schema
+     * @throws IllegalArgumentException if the schema or message is unknown
+     */
+    public Class<? extends TBase> getThriftClass(String id, String messageName) {
         Map<String, Class<? extends TBase>> classes = thriftClasses.get(id);
         if (classes == null) {
             throw new IllegalArgumentException("unknown schema");
@@ -179,4 +208,44 @@ public class ThriftSchemaRegistry extends AbstractSchemaRegistry {
                 ? ThriftCodec.COMPACT_PROTOCOL
                 : ThriftCodec.BINARY_PROTOCOL;
     }
+
+    /**
+     * ThriftCodec isn't documented as thread safe, so it's created per call.
+     */
+    private static class StructCodec extends SchemaCodec {
+
+        private final Class<? extends TBase> c;
+        private final Function<TTransport, TProtocol> binaryProtocol;
+
+        StructCodec(String id, String messageName, Class<? extends TBase> c,
+                Function<TTransport, TProtocol> binaryProtocol) {
+            super(id, messageName);
+            this.c = c;
+            this.binaryProtocol = binaryProtocol;
+        }
+
+        @Override
+        public void encode(InputStream in, OutputStream out) throws IOException {
+            // thrift's TJsonProtocol is very picky on JSON data
+            ByteArrayOutputStream compactJsonOut = new ByteArrayOutputStream();
+
+            try (JsonParser parser = jsonFactory.createParser(in);
+                    JsonGenerator generator = jsonFactory.createGenerator(compactJsonOut)) {
+                generator.writeTree(parser.readValueAsTree());
+            }
+
+            in = new ByteArrayInputStream(compactJsonOut.toByteArray());
+
+            ThriftCodec jsonDecoder = ThriftCodec.create(c, ThriftCodec.JSON_PROTOCOL);
+            ThriftCodec binaryEncoder = ThriftCodec.create(c, binaryProtocol);
+            binaryEncoder.serialize(jsonDecoder.deserialize(in), out);
+        }
+
+        @Override
+        public void decode(InputStream in, OutputStream out) throws IOException {
+            ThriftCodec binaryDecoder = ThriftCodec.create(c, binaryProtocol);
+            ThriftCodec jsonEncoder = ThriftCodec.create(c, ThriftCodec.JSON_PROTOCOL);
+            jsonEncoder.serialize(binaryDecoder.deserialize(in), out);
+        }
+    }
 }
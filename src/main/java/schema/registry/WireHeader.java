@@ -0,0 +1,124 @@
+package schema.registry;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Schema reference embedded before a message, two formats are supported:
+ * <ul>
+ * <li>"id": magic byte 0x00, then the 4 bytes big endian schema number</li>
+ * <li>"fingerprint": Avro single object encoding marker 0xC3 0x01, then the
+ * 8 bytes little endian CRC-64-AVRO fingerprint</li>
+ * </ul>
+ */
+public class WireHeader {
+
+    public static final String ID = "id";
+    public static final String FINGERPRINT = "fingerprint";
+    public static final int ID_MAGIC = 0x00;
+    public static final int FINGERPRINT_MAGIC = 0xC3;
+    public static final int FINGERPRINT_VERSION = 0x01;
+
+    private final boolean fingerprint;
+    private final long value;
+
+    private WireHeader(boolean fingerprint, long value) {
+        this.fingerprint = fingerprint;
+        this.value = value;
+    }
+
+    public boolean isFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return schema number, or Avro fingerprint if {@link #isFingerprint()}
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * @return null if the stream is at its end before the header
+     */
+    public static WireHeader read(InputStream in) throws IOException {
+        int magic = in.read();
+        if (magic == -1) {
+            return null;
+        }
+
+        switch (magic) {
+            case ID_MAGIC:
+                return new WireHeader(false, readBigEndian(in, 4));
+            case FINGERPRINT_MAGIC:
+                int version = readByte(in);
+                if (version != FINGERPRINT_VERSION) {
+                    throw new IllegalArgumentException("unknown header version " + version);
+                }
+                return new WireHeader(true, Long.reverseBytes(readBigEndian(in, 8)));
+            default:
+                throw new IllegalArgumentException("unknown header magic byte " + magic);
+        }
+    }
+
+    public static void write(OutputStream out, SchemaInfo schema, String format) throws IOException {
+        if (ID.equalsIgnoreCase(format)) {
+            if (schema.getNumber() == null) {
+                throw new IllegalArgumentException("schema has no number");
+            }
+
+            out.write(ID_MAGIC);
+            writeBigEndian(out, schema.getNumber(), 4);
+        } else if (FINGERPRINT.equalsIgnoreCase(format)) {
+            if (schema.getFingerprint() == null) {
+                throw new IllegalArgumentException("schema has no fingerprint, only Avro schemas have");
+            }
+
+            out.write(FINGERPRINT_MAGIC);
+            out.write(FINGERPRINT_VERSION);
+            writeBigEndian(out, Long.reverseBytes(schema.getFingerprint()), 8);
+        } else {
+            throw new IllegalArgumentException("unknown header format " + format
+                    + ", known formats are: " + ID + ", " + FINGERPRINT);
+        }
+    }
+
+    public static int readLength(InputStream in) throws IOException {
+        long n = readBigEndian(in, 4);
+        if (n < 0 || n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("bad frame length " + n);
+        }
+
+        return (int) n;
+    }
+
+    public static void writeLength(OutputStream out, int length) throws IOException {
+        writeBigEndian(out, length & 0xffffffffL, 4);
+    }
+
+    private static long readBigEndian(InputStream in, int n) throws IOException {
+        long v = 0;
+        for (int i = 0; i < n; ++i) {
+            v = (v << 8) | readByte(in);
+        }
+
+        return v;
+    }
+
+    private static void writeBigEndian(OutputStream out, long v, int n) throws IOException {
+        for (int i = n - 1; i >= 0; --i) {
+            out.write((int) (v >>> (i * 8)) & 0xff);
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("truncated header");
+        }
+
+        return b;
+    }
+}
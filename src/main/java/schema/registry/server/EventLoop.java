@@ -0,0 +1,214 @@
+package schema.registry.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A selector thread owning its connections, all their state is only
+ * touched by this thread. Other threads hand over work with execute().
+ * The first loop also accepts connections and spreads them round-robin.
+ */
+class EventLoop implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(EventLoop.class);
+
+    private final StandaloneServer server;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * Shared by all connections of the loop, whatever a connection doesn't
+     * consume right away is copied out before the next read.
+     */
+    private final ByteBuffer readBuffer;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long dateSecond = -1;
+    private String date;
+    private long lastIdleCheck;
+
+    EventLoop(StandaloneServer server, String name, int readBufferSize) throws IOException {
+        this.server = server;
+        selector = Selector.open();
+        readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        // not a daemon, the loops keep the process alive until close()
+        thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Runs task in the loop thread, safe to call from any thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void accept(final ServerSocketChannel channel) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    channel.register(selector, SelectionKey.OP_ACCEPT);
+                } catch (IOException ex) {
+                    logger.error("fail to accept on " + channel, ex);
+                }
+            }
+        });
+    }
+
+    void register(final SocketChannel channel) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new HttpConnection(server, EventLoop.this, channel, key));
+                } catch (IOException ex) {
+                    logger.warn("fail to register connection", ex);
+                    close(channel);
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    void join() throws InterruptedException {
+        thread.join();
+    }
+
+    Thread getThread() {
+        return thread;
+    }
+
+    ByteBuffer getReadBuffer() {
+        return readBuffer;
+    }
+
+    /**
+     * @return the current time for "Date" headers, formatted once a second
+     */
+    String getDate() {
+        long now = System.currentTimeMillis();
+        if (now / 1000 != dateSecond) {
+            dateSecond = now / 1000;
+            date = dateFormat.format(new Date(now));
+        }
+
+        return date;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(1000);
+                runTasks();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    process(key);
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= 1000) {
+                    lastIdleCheck = now;
+                    closeIdle(now);
+                }
+            } catch (IOException | RuntimeException ex) {
+                logger.error("unexpected error in " + thread.getName(), ex);
+            }
+        }
+
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (key.attachment() instanceof HttpConnection) {
+                ((HttpConnection) key.attachment()).close();
+            } else {
+                close(key.channel());
+            }
+        }
+        close(selector);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while (null != (task = tasks.poll())) {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.error("unexpected error in " + thread.getName(), ex);
+            }
+        }
+    }
+
+    private void process(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (key.isAcceptable()) {
+            SocketChannel channel;
+            try {
+                while (null != (channel = ((ServerSocketChannel) key.channel()).accept())) {
+                    server.nextLoop().register(channel);
+                }
+            } catch (IOException ex) {
+                // e.g. too many open files, retried on the next select
+                logger.warn("fail to accept connection", ex);
+            }
+            return;
+        }
+
+        HttpConnection connection = (HttpConnection) key.attachment();
+        if (key.isReadable()) {
+            connection.onReadable();
+        }
+        if (key.isValid() && key.isWritable()) {
+            connection.onWritable();
+        }
+    }
+
+    private void closeIdle(long now) {
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (key.attachment() instanceof HttpConnection) {
+                ((HttpConnection) key.attachment()).closeIfIdle(now);
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            // nothing to do, it's gone anyway
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package schema.registry.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import schema.registry.BufferPool;
+
+/**
+ * One keep-alive connection, owned by its event loop. Pipelined requests
+ * are parsed ahead while earlier ones are still being handled, up to
+ * "server.maxPipelined", responses are written strictly in request order.
+ * Reading is paused while that many requests are in flight, so a client
+ * can't queue unbounded work.
+ */
+class HttpConnection {
+
+    private static final ByteBuffer[] EMPTY = new ByteBuffer[0];
+    private static final Map<Integer, String> REASONS = new HashMap<>();
+
+    static {
+        REASONS.put(100, "Continue");
+        REASONS.put(200, "OK");
+        REASONS.put(206, "Partial Content");
+        REASONS.put(304, "Not Modified");
+        REASONS.put(400, "Bad Request");
+        REASONS.put(403, "Forbidden");
+        REASONS.put(404, "Not Found");
+        REASONS.put(405, "Method Not Allowed");
+        REASONS.put(413, "Payload Too Large");
+        REASONS.put(415, "Unsupported Media Type");
+        REASONS.put(416, "Range Not Satisfiable");
+        REASONS.put(429, "Too Many Requests");
+        REASONS.put(431, "Request Header Fields Too Large");
+        REASONS.put(500, "Internal Server Error");
+        REASONS.put(501, "Not Implemented");
+        REASONS.put(503, "Service Unavailable");
+        REASONS.put(505, "HTTP Version Not Supported");
+    }
+
+    private final StandaloneServer server;
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final HttpParser parser;
+    private final Deque<Exchange> exchanges = new ArrayDeque<>();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Input left over when reading is paused, parsed before reading again.
+     */
+    private ByteBuffer stash;
+    private ByteBuffer header;
+    private ByteBuffer[] out;
+    private int outIndex;
+    private FileChannel file;
+    private long filePosition;
+    private long fileEnd;
+
+    private long lastActivity = System.currentTimeMillis();
+    private boolean inputClosed;
+    private boolean closing;
+    private boolean closed;
+    private boolean flushing;
+    private boolean flushAgain;
+    private boolean writeWaiting;
+    private boolean continuePending;
+
+    /**
+     * A request and its response once handled, the response is set by
+     * whichever thread handled it.
+     */
+    static class Exchange {
+
+        final HttpRequest request;
+        final long start = System.nanoTime();
+        final boolean close;
+        volatile HttpResponse response;
+        String endpoint;
+
+        Exchange(HttpRequest request, boolean close) {
+            this.request = request;
+            this.close = close;
+        }
+    }
+
+    HttpConnection(StandaloneServer server, EventLoop loop, SocketChannel channel, SelectionKey key) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        parser = new HttpParser(server.getBuffers(), server.getMaxHeaderSize(), server.getMaxRequestSize());
+    }
+
+    /**
+     * Completes an exchange, safe to call from any thread.
+     */
+    void complete(Exchange exchange, HttpResponse response) {
+        exchange.response = response;
+        if (Thread.currentThread() == loop.getThread()) {
+            flush();
+        } else {
+            loop.execute(flushTask);
+        }
+    }
+
+    void onReadable() {
+        ByteBuffer buffer = loop.getReadBuffer();
+        buffer.clear();
+        int n;
+        try {
+            n = channel.read(buffer);
+        } catch (IOException ex) {
+            close();
+            return;
+        }
+
+        if (n < 0) {
+            // the client may half-close after pipelining its requests
+            inputClosed = true;
+            parser.release();
+            if (exchanges.isEmpty()) {
+                close();
+            } else {
+                updateInterest();
+            }
+            return;
+        }
+
+        lastActivity = System.currentTimeMillis();
+        buffer.flip();
+        process(buffer);
+
+        if (!closed && !closing && buffer.hasRemaining()) {
+            stash = server.getBuffers().acquire();
+            stash.put(buffer);
+            stash.flip();
+        }
+        if (!closed) {
+            updateInterest();
+        }
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    void closeIfIdle(long now) {
+        if ((exchanges.isEmpty() || writeWaiting) && now - lastActivity > server.getIdleTimeout()) {
+            close();
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // nothing to do, it's gone anyway
+        }
+
+        parser.release();
+        if (stash != null) {
+            server.getBuffers().release(stash);
+            stash = null;
+        }
+        endWrite();
+        releaseResponses();
+    }
+
+    private void process(ByteBuffer in) {
+        while (!closed && !closing && in.hasRemaining() && exchanges.size() < server.getMaxPipelined()) {
+            HttpRequest request;
+            try {
+                request = parser.parse(in);
+            } catch (HttpParser.ParseException ex) {
+                parser.release();
+                in.position(in.limit());
+                Exchange exchange = new Exchange(null, true);
+                closing = true;
+                exchanges.add(exchange);
+                complete(exchange, HttpResponse.text(ex.getStatus(), ex.getMessage()));
+                return;
+            }
+
+            if (request == null) {
+                continuePending = parser.takeContinue();
+                if (continuePending && exchanges.isEmpty()) {
+                    writeContinue();
+                }
+                return;
+            }
+
+            Exchange exchange = new Exchange(request, !request.isKeepAlive());
+            closing = exchange.close;
+            exchanges.add(exchange);
+            server.dispatch(this, exchange);
+        }
+    }
+
+    private void flush() {
+        if (closed) {
+            releaseResponses();
+            return;
+        }
+        if (flushing) {
+            // called back from a request handled inline while flushing
+            flushAgain = true;
+            return;
+        }
+
+        flushing = true;
+        try {
+            do {
+                flushAgain = false;
+                if (!writeResponses()) {
+                    break;
+                }
+                resume();
+            } while (flushAgain && !closed);
+        } catch (IOException ex) {
+            close();
+        } finally {
+            flushing = false;
+        }
+
+        if (!closed) {
+            updateInterest();
+        }
+    }
+
+    /**
+     * @return false if the socket can't take more or the connection is
+     * closed
+     */
+    private boolean writeResponses() throws IOException {
+        while (!exchanges.isEmpty()) {
+            Exchange head = exchanges.peek();
+            if (head.response == null) {
+                return true;
+            }
+
+            if (!write(head)) {
+                writeWaiting = true;
+                return false;
+            }
+
+            writeWaiting = false;
+            exchanges.poll();
+            endWrite();
+            head.response.release();
+            server.completed(head);
+            if (head.close) {
+                close();
+                return false;
+            }
+        }
+
+        if (continuePending) {
+            writeContinue();
+        }
+        return true;
+    }
+
+    /**
+     * Parses input held back while reading was paused.
+     */
+    private void resume() {
+        if (stash != null) {
+            process(stash);
+            if (!stash.hasRemaining() || closing) {
+                server.getBuffers().release(stash);
+                stash = null;
+            }
+        }
+
+        if (inputClosed && exchanges.isEmpty()) {
+            close();
+        }
+    }
+
+    /**
+     * @return true once the response is completely written
+     */
+    private boolean write(Exchange exchange) throws IOException {
+        HttpResponse response = exchange.response;
+        if (out == null) {
+            header = encodeHeader(exchange);
+            ByteBuffer[] body = response.isHeadOnly() ? EMPTY : response.getBody();
+            out = new ByteBuffer[body.length + 1];
+            out[0] = header;
+            System.arraycopy(body, 0, out, 1, body.length);
+            outIndex = 0;
+
+            if (!response.isHeadOnly() && response.getFile() != null && response.getFileLength() > 0) {
+                file = FileChannel.open(response.getFile().toPath(), StandardOpenOption.READ);
+                filePosition = response.getFilePosition();
+                fileEnd = filePosition + response.getFileLength();
+            }
+        }
+
+        while (outIndex < out.length) {
+            if (!out[outIndex].hasRemaining()) {
+                outIndex++;
+                continue;
+            }
+            if (channel.write(out, outIndex, out.length - outIndex) == 0) {
+                return false;
+            }
+            lastActivity = System.currentTimeMillis();
+        }
+
+        while (file != null && filePosition < fileEnd) {
+            long n = file.transferTo(filePosition, fileEnd - filePosition, channel);
+            if (n == 0) {
+                if (filePosition >= file.size()) {
+                    throw new IOException("file is truncated: " + response.getFile());
+                }
+                return false;
+            }
+            filePosition += n;
+            lastActivity = System.currentTimeMillis();
+        }
+
+        return true;
+    }
+
+    private void endWrite() {
+        if (header != null) {
+            server.getHeaderBuffers().release(header);
+            header = null;
+        }
+        out = null;
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ex) {
+                // nothing to do, it was only read
+            }
+            file = null;
+        }
+    }
+
+    private ByteBuffer encodeHeader(Exchange exchange) {
+        HttpResponse response = exchange.response;
+        int status = response.getStatus();
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("HTTP/1.1 ").append(status).append(' ');
+        String reason = REASONS.get(status);
+        sb.append(reason == null ? "Unknown" : reason).append("\r\n");
+        sb.append("Date: ").append(loop.getDate()).append("\r\n");
+        for (Map.Entry<String, String> e : response.getHeaders().entrySet()) {
+            sb.append(e.getKey()).append(": ").append(e.getValue()).append("\r\n");
+        }
+        if (status != 304) {
+            sb.append("Content-Length: ").append(response.getContentLength()).append("\r\n");
+        }
+        if (exchange.close) {
+            sb.append("Connection: close\r\n");
+        } else if (!exchange.request.isHttp11()) {
+            sb.append("Connection: keep-alive\r\n");
+        }
+        sb.append("\r\n");
+
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+        BufferPool pool = server.getHeaderBuffers();
+        ByteBuffer b = bytes.length <= pool.getBufferSize() ? pool.acquire() : ByteBuffer.allocate(bytes.length);
+        b.put(bytes);
+        b.flip();
+        return b;
+    }
+
+    /**
+     * Asks a client waiting on "Expect: 100-continue" for the body, only
+     * when no response is due before it.
+     */
+    private void writeContinue() {
+        if (!exchanges.isEmpty()) {
+            return;
+        }
+
+        continuePending = false;
+        ByteBuffer b = ByteBuffer.wrap("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        try {
+            channel.write(b);
+        } catch (IOException ex) {
+            close();
+            return;
+        }
+        if (b.hasRemaining()) {
+            // an empty send buffer can't be full, the client is gone
+            close();
+        }
+    }
+
+    private void releaseResponses() {
+        for (Iterator<Exchange> it = exchanges.iterator(); it.hasNext();) {
+            Exchange exchange = it.next();
+            HttpResponse response = exchange.response;
+            if (response != null) {
+                response.release();
+                it.remove();
+            }
+        }
+    }
+
+    private void updateInterest() {
+        int ops = 0;
+        if (!inputClosed && !closing && stash == null && exchanges.size() < server.getMaxPipelined()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (writeWaiting) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (key.isValid() && key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package schema.registry.server;
+
+import java.nio.ByteBuffer;
+
+import schema.registry.BufferPool;
+
+/**
+ * Incremental HTTP/1.x request parser, fed with whatever the socket
+ * delivered. Bodies of Content-Length or chunked requests are copied into
+ * pooled direct buffers as they arrive, so a request is only handed out
+ * once complete and handlers never block on the socket.
+ */
+class HttpParser {
+
+    private static final int REQUEST_LINE = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNK_DATA = 4;
+    private static final int CHUNK_END = 5;
+    private static final int TRAILERS = 6;
+
+    private final BufferPool pool;
+    private final int maxHeaderSize;
+    private final long maxRequestSize;
+    private final StringBuilder line = new StringBuilder();
+    private int state = REQUEST_LINE;
+    private int headerSize;
+    private String lastHeader;
+    private HttpRequest request;
+    private long remaining;
+    private boolean expectsContinue;
+
+    /**
+     * Malformed or too large requests, the connection can't be reused.
+     */
+    static class ParseException extends Exception {
+
+        private final int status;
+
+        ParseException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+    }
+
+    HttpParser(BufferPool pool, int maxHeaderSize, long maxRequestSize) {
+        this.pool = pool;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * Consumes in up to the end of the next request.
+     *
+     * @return the complete request, null if in is exhausted before
+     */
+    HttpRequest parse(ByteBuffer in) throws ParseException {
+        while (in.hasRemaining()) {
+            if (state == BODY || state == CHUNK_DATA) {
+                copyBody(in);
+                if (remaining > 0) {
+                    return null;
+                }
+                if (state == BODY) {
+                    return complete();
+                }
+                state = CHUNK_END;
+                continue;
+            }
+
+            if (!readLine(in)) {
+                return null;
+            }
+
+            String s = line.toString();
+            line.setLength(0);
+            if (onLine(s)) {
+                return complete();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true once, when headers asked for "100-continue" and the
+     * body is being waited for
+     */
+    boolean takeContinue() {
+        boolean b = expectsContinue && (state == BODY || state == CHUNK_SIZE);
+        expectsContinue = false;
+        return b;
+    }
+
+    /**
+     * Returns buffers of a partially received request to the pool.
+     */
+    void release() {
+        if (request != null) {
+            request.release();
+            request = null;
+        }
+    }
+
+    private boolean readLine(ByteBuffer in) throws ParseException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (++headerSize > maxHeaderSize) {
+                throw new ParseException(431, "request header is too large");
+            }
+
+            if (b == '\n') {
+                int last = line.length() - 1;
+                if (last >= 0 && line.charAt(last) == '\r') {
+                    line.setLength(last);
+                }
+                if (state >= CHUNK_SIZE) {
+                    // chunk lines are limited one by one, not for the whole body
+                    headerSize = 0;
+                }
+                return true;
+            }
+            line.append((char) (b & 0xff));
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the request is complete
+     */
+    private boolean onLine(String s) throws ParseException {
+        switch (state) {
+            case REQUEST_LINE:
+                // empty lines before a request line are ignored
+                if (!s.isEmpty()) {
+                    onRequestLine(s);
+                }
+                return false;
+
+            case HEADERS:
+                if (!s.isEmpty()) {
+                    onHeader(s);
+                    return false;
+                }
+                return onHeadersEnd();
+
+            case CHUNK_SIZE:
+                int i = s.indexOf(';');
+                long size;
+                try {
+                    size = Long.parseLong((i < 0 ? s : s.substring(0, i)).trim(), 16);
+                } catch (NumberFormatException ex) {
+                    throw new ParseException(400, "bad chunk size " + s);
+                }
+                // subtracted, a huge size can't overflow the sum
+                if (size < 0 || size > maxRequestSize - request.getBodySize()) {
+                    throw new ParseException(413, "request body is larger than " + maxRequestSize + " bytes");
+                }
+
+                remaining = size;
+                state = size == 0 ? TRAILERS : CHUNK_DATA;
+                return false;
+
+            case CHUNK_END:
+                if (!s.isEmpty()) {
+                    throw new ParseException(400, "chunk isn't terminated by CRLF");
+                }
+                state = CHUNK_SIZE;
+                return false;
+
+            case TRAILERS:
+                return s.isEmpty();
+
+            default:
+                throw new IllegalStateException("unexpected state " + state);
+        }
+    }
+
+    private void onRequestLine(String s) throws ParseException {
+        String[] parts = s.split(" ");
+        if (parts.length == 3 && (parts[1].startsWith("http://") || parts[1].startsWith("https://"))) {
+            // absolute form, the authority isn't checked
+            int slash = parts[1].indexOf('/', parts[1].indexOf("//") + 2);
+            parts[1] = slash < 0 ? "/" : parts[1].substring(slash);
+        }
+        if (parts.length != 3 || parts[0].isEmpty() || !parts[1].startsWith("/")) {
+            throw new ParseException(400, "bad request line");
+        }
+        if (!parts[2].startsWith("HTTP/1.")) {
+            throw new ParseException(505, "HTTP version isn't supported");
+        }
+
+        request = new HttpRequest(parts[0], parts[1], !parts[2].equals("HTTP/1.0"), pool);
+        state = HEADERS;
+    }
+
+    private void onHeader(String s) throws ParseException {
+        if (s.charAt(0) == ' ' || s.charAt(0) == '\t') {
+            // obsolete line folding continues the previous header
+            if (lastHeader == null) {
+                throw new ParseException(400, "bad header line");
+            }
+            request.addHeader(lastHeader, s.trim());
+            return;
+        }
+
+        int i = s.indexOf(':');
+        if (i <= 0) {
+            throw new ParseException(400, "bad header line");
+        }
+
+        lastHeader = s.substring(0, i).trim();
+        request.addHeader(lastHeader, s.substring(i + 1).trim());
+    }
+
+    private boolean onHeadersEnd() throws ParseException {
+        lastHeader = null;
+        String transferEncoding = request.getHeader("Transfer-Encoding");
+        String contentLength = request.getHeader("Content-Length");
+        expectsContinue = "100-continue".equalsIgnoreCase(request.getHeader("Expect"));
+
+        if (transferEncoding != null) {
+            // both framings in one request are a smuggling attempt, RFC 7230 section 3.3.3
+            if (contentLength != null) {
+                throw new ParseException(400, "both Transfer-Encoding and Content-Length");
+            }
+            if (!transferEncoding.trim().equalsIgnoreCase("chunked")) {
+                throw new ParseException(501, "unsupported Transfer-Encoding " + transferEncoding);
+            }
+            state = CHUNK_SIZE;
+            return false;
+        }
+
+        if (contentLength == null) {
+            return true;
+        }
+
+        long length = parseContentLength(contentLength);
+        if (length > maxRequestSize) {
+            throw new ParseException(413, "request body is larger than " + maxRequestSize + " bytes");
+        }
+
+        remaining = length;
+        state = BODY;
+        return length == 0;
+    }
+
+    /**
+     * Repeated Content-Length headers are joined with ", ", they are only
+     * accepted if all values are the same.
+     */
+    private static long parseContentLength(String contentLength) throws ParseException {
+        long length = -1;
+        for (String value : contentLength.split(",", -1)) {
+            long l;
+            try {
+                l = Long.parseLong(value.trim());
+            } catch (NumberFormatException ex) {
+                throw new ParseException(400, "bad Content-Length " + contentLength);
+            }
+            if (l < 0 || (length >= 0 && l != length)) {
+                throw new ParseException(400, "bad Content-Length " + contentLength);
+            }
+            length = l;
+        }
+
+        return length;
+    }
+
+    private void copyBody(ByteBuffer in) {
+        while (remaining > 0 && in.hasRemaining()) {
+            ByteBuffer target = request.appendable();
+            int n = (int) Math.min(remaining, Math.min(in.remaining(), target.remaining()));
+            ByteBuffer src = in.duplicate();
+            src.limit(src.position() + n);
+            target.put(src);
+            in.position(in.position() + n);
+            request.appended(n);
+            remaining -= n;
+        }
+    }
+
+    private HttpRequest complete() {
+        HttpRequest r = request;
+        r.complete();
+        request = null;
+        state = REQUEST_LINE;
+        headerSize = 0;
+        expectsContinue = false;
+        return r;
+    }
+}
@@ -0,0 +1,280 @@
+package schema.registry.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import schema.registry.BufferPool;
+import schema.registry.Bulkheads;
+
+/**
+ * A parsed request, the body is held in pooled direct buffers until
+ * release().
+ */
+public class HttpRequest {
+
+    private final String method;
+    private final String uri;
+    private final boolean http11;
+    private final Map<String, String> headers = new HashMap<>();
+    private final List<ByteBuffer> body = new ArrayList<>();
+    private final BufferPool pool;
+    private long bodySize;
+    private String path;
+    private Map<String, String[]> parameters;
+    private Bulkheads.Permit permit;
+
+    HttpRequest(String method, String uri, boolean http11, BufferPool pool) {
+        this.method = method;
+        this.uri = uri;
+        this.http11 = http11;
+        this.pool = pool;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public boolean isHttp11() {
+        return http11;
+    }
+
+    /**
+     * @return the first value, or all values joined with ", " if the header
+     * is repeated, null if absent
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    void addHeader(String name, String value) {
+        String key = name.toLowerCase();
+        String previous = headers.get(key);
+        headers.put(key, previous == null ? value : previous + ", " + value);
+    }
+
+    /**
+     * HTTP/1.1 connections persist unless "Connection: close", HTTP/1.0
+     * ones only with "Connection: keep-alive".
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+        if (connection != null) {
+            for (String token : connection.toLowerCase().split(",")) {
+                token = token.trim();
+                if (token.equals("close")) {
+                    return false;
+                }
+                if (token.equals("keep-alive")) {
+                    return true;
+                }
+            }
+        }
+
+        return http11;
+    }
+
+    /**
+     * @return the decoded path without query string
+     * @throws IllegalArgumentException if the path is malformed
+     */
+    public String getPath() {
+        if (path == null) {
+            int i = uri.indexOf('?');
+            path = decodePath(i < 0 ? uri : uri.substring(0, i));
+        }
+
+        return path;
+    }
+
+    /**
+     * Only the query string is parsed, bodies are never taken as forms.
+     *
+     * @throws IllegalArgumentException if the query string is malformed
+     */
+    public Map<String, String[]> getParameterMap() {
+        if (parameters == null) {
+            parameters = parseQuery(uri);
+        }
+
+        return parameters;
+    }
+
+    public String getParameter(String name) {
+        String[] values = getParameterMap().get(name);
+        return values == null ? null : values[0];
+    }
+
+    public long getBodySize() {
+        return bodySize;
+    }
+
+    public InputStream getInputStream() {
+        return new BodyInputStream(body);
+    }
+
+    /**
+     * Returns body buffers to the pool and releases the bulkhead permit, if
+     * any, the body must not be read after.
+     */
+    public void release() {
+        for (ByteBuffer b : body) {
+            pool.release(b);
+        }
+        body.clear();
+
+        if (permit != null) {
+            permit.release(bodySize);
+            permit = null;
+        }
+    }
+
+    /**
+     * The permit taken before the request is queued for a worker.
+     */
+    void setPermit(Bulkheads.Permit permit) {
+        this.permit = permit;
+    }
+
+    /**
+     * @return the buffer to append body bytes to, a new one from the pool
+     * if the last is full
+     */
+    ByteBuffer appendable() {
+        ByteBuffer last = body.isEmpty() ? null : body.get(body.size() - 1);
+        if (last == null || !last.hasRemaining()) {
+            last = pool.acquire();
+            body.add(last);
+        }
+
+        return last;
+    }
+
+    void appended(int n) {
+        bodySize += n;
+    }
+
+    /**
+     * Flips body buffers for reading once the whole body is received.
+     */
+    void complete() {
+        for (ByteBuffer b : body) {
+            b.flip();
+        }
+    }
+
+    private static String decodePath(String raw) {
+        if (raw.indexOf('%') < 0) {
+            return raw;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '%') {
+                out.write(c);
+                continue;
+            }
+
+            if (i + 2 >= raw.length()) {
+                throw new IllegalArgumentException("malformed path " + raw);
+            }
+            int hi = Character.digit(raw.charAt(i + 1), 16);
+            int lo = Character.digit(raw.charAt(i + 2), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("malformed path " + raw);
+            }
+            out.write(hi << 4 | lo);
+            i += 2;
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String[]> parseQuery(String uri) {
+        Map<String, String[]> map = new LinkedHashMap<>();
+        int i = uri.indexOf('?');
+        if (i < 0) {
+            return map;
+        }
+
+        try {
+            for (String pair : uri.substring(i + 1).split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                String[] values = map.get(name);
+                if (values == null) {
+                    values = new String[]{value};
+                } else {
+                    values = Arrays.copyOf(values, values.length + 1);
+                    values[values.length - 1] = value;
+                }
+                map.put(name, values);
+            }
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        return map;
+    }
+
+    private static class BodyInputStream extends InputStream {
+
+        private final List<ByteBuffer> buffers;
+        private int index;
+        private ByteBuffer current;
+
+        BodyInputStream(List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (current == null || !current.hasRemaining()) {
+                if (index >= buffers.size()) {
+                    return -1;
+                }
+                // a view, so the body can be read more than once
+                current = buffers.get(index++).duplicate();
+            }
+
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.remaining();
+        }
+    }
+}
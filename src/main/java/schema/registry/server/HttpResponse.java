@@ -0,0 +1,144 @@
+package schema.registry.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import schema.registry.ResponseSpool;
+
+/**
+ * A complete response, the body is either buffers, typically views of a
+ * {@link ResponseSpool} or of cached direct buffers, or a region of a file
+ * transferred to the socket.
+ */
+public class HttpResponse {
+
+    private static final ByteBuffer[] EMPTY = new ByteBuffer[0];
+
+    private int status;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private ByteBuffer[] body = EMPTY;
+    private ResponseSpool spool;
+    private File file;
+    private long filePosition;
+    private long fileLength;
+    private long contentLength;
+    private boolean headOnly;
+
+    public HttpResponse(int status) {
+        this.status = status;
+    }
+
+    /**
+     * @return a plain text response ending with CRLF like the servlets send
+     */
+    public static HttpResponse text(int status, String message) {
+        HttpResponse response = new HttpResponse(status);
+        response.setHeader("Content-Type", "text/plain; charset=utf-8");
+        response.setBody(ByteBuffer.wrap((message + "\r\n").getBytes(StandardCharsets.UTF_8)));
+        return response;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public void addHeader(String name, String value) {
+        String previous = headers.get(name);
+        headers.put(name, previous == null ? value : previous + ", " + value);
+    }
+
+    public void setBody(ByteBuffer... buffers) {
+        body = buffers;
+        contentLength = 0;
+        for (ByteBuffer b : buffers) {
+            contentLength += b.remaining();
+        }
+    }
+
+    /**
+     * Takes over the spool, it's released once the response is written.
+     * Bytes in memory are written first, then the spilled part is transferred
+     * from its file.
+     */
+    public void setBody(ResponseSpool spool) throws IOException {
+        this.spool = spool;
+        spool.close();
+        setBody(spool.getBuffers());
+        if (spool.getFile() != null) {
+            file = spool.getFile();
+            filePosition = 0;
+            fileLength = spool.getFileSize();
+            contentLength += fileLength;
+        }
+    }
+
+    public void setBody(File file, long position, long count) {
+        this.file = file;
+        this.filePosition = position;
+        this.fileLength = count;
+        this.contentLength = count;
+        body = EMPTY;
+    }
+
+    public ByteBuffer[] getBody() {
+        return body;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFilePosition() {
+        return filePosition;
+    }
+
+    /**
+     * @return bytes of the file sent after the buffers
+     */
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * For HEAD, headers including Content-Length are sent without the body.
+     */
+    public void setHeadOnly(boolean headOnly) {
+        this.headOnly = headOnly;
+    }
+
+    public boolean isHeadOnly() {
+        return headOnly;
+    }
+
+    public void release() {
+        if (spool != null) {
+            spool.release();
+            spool = null;
+        }
+        body = EMPTY;
+    }
+}
@@ -0,0 +1,570 @@
+package schema.registry.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.io.Files;
+
+import schema.registry.AdaptiveCompression;
+import schema.registry.AttachmentUtil;
+import schema.registry.Bulkheads;
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.ConfigUtil;
+import schema.registry.ContentEncodingOutputStream;
+import schema.registry.FilterStreamUtil;
+import schema.registry.HttpUtil;
+import schema.registry.ResponseSpool;
+import schema.registry.SchemaCatalog;
+import schema.registry.SchemaFiles;
+import schema.registry.SchemaIndex;
+import schema.registry.SchemaInfo;
+
+/**
+ * Serves /i, /s, /e and /d with the same status codes, headers and bodies
+ * as the servlets, see SchemaInfoServlet, SchemaServlet, EncodeServlet and
+ * DecodeServlet. Responses are always spooled, "stream=true" is ignored.
+ *
+ * Catalog snapshots and small schema files are kept in direct buffers, so
+ * /i and /s are served from memory on the event loops. Conversions run on
+ * the worker pool.
+ */
+class RequestHandler {
+
+    private static Logger logger = LoggerFactory.getLogger(RequestHandler.class);
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final String[] QUERY_PARAMETERS = {
+        "type", "message", "prefix", "custodian", "dependsOn", "limit", "cursor", "fields"
+    };
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return format;
+        }
+    };
+
+    private final StandaloneServer server;
+    private final Bulkheads bulkheads;
+    private final AdaptiveCompression adaptive;
+    private final int minEncodedSize;
+    private final long maxCachedFileSize;
+    private final String cacheControl;
+    /**
+     * Keyed by identity of resolved files and snapshots, so entries of old
+     * registry generations are never hit again and get evicted or collected.
+     */
+    private final Cache<SchemaFiles.SchemaFile, ByteBuffer> files;
+    private final Cache<byte[], ByteBuffer> snapshots;
+
+    RequestHandler(StandaloneServer server, Properties config) throws IOException {
+        this.server = server;
+        bulkheads = new Bulkheads(config);
+        adaptive = new AdaptiveCompression(config);
+        minEncodedSize = ConfigUtil.getInt(config, "contentEncoding.minSize", HttpUtil.DEFAULT_MIN_ENCODED_SIZE);
+        maxCachedFileSize = ConfigUtil.getLong(config, "schemaFiles.maxCachedFileSize", 1024 * 1024);
+        cacheControl = "public, max-age=" + ConfigUtil.getLong(config, "schemaFiles.maxAge", 300);
+
+        Weigher<Object, ByteBuffer> weigher = new Weigher<Object, ByteBuffer>() {
+            @Override
+            public int weigh(Object key, ByteBuffer value) {
+                return value.capacity();
+            }
+        };
+        files = CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumWeight(ConfigUtil.getLong(config, "schemaFiles.cacheSize", 32 * 1024 * 1024))
+                .weigher(weigher)
+                .build();
+        snapshots = CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumWeight(ConfigUtil.getLong(config, "server.catalogCacheSize", 32 * 1024 * 1024))
+                .weigher(weigher)
+                .build();
+    }
+
+    /**
+     * @return true if the endpoint is served on the event loop
+     */
+    boolean isInline(String endpoint) {
+        return "/i".equals(endpoint) || "/s".equals(endpoint);
+    }
+
+    /**
+     * Takes the bulkhead permit of a conversion before it's queued, the
+     * request holds it until release().
+     *
+     * @return a 429 response if a limit is exceeded, otherwise null
+     */
+    HttpResponse admit(String endpoint, String pathInfo, HttpRequest request) {
+        if (!"/e".equals(endpoint) && !"/d".equals(endpoint) || pathInfo == null || pathInfo.equals("/")) {
+            return null;
+        }
+
+        // unknown IDs are answered by handle()
+        String id = pathInfo.substring(1);
+        SchemaInfo schema = server.getRegistry().getSchemas().get(id);
+        if (schema == null) {
+            return null;
+        }
+
+        Bulkheads.Permit permit = bulkheads.tryAcquire(id, schema, request.getBodySize());
+        if (permit == null) {
+            HttpResponse response = HttpResponse.text(429, "too many requests for schema " + id);
+            response.setHeader("Retry-After",
+                    String.valueOf(bulkheads.getRetryAfter(id, schema, request.getBodySize())));
+            return response;
+        }
+
+        request.setPermit(permit);
+        return null;
+    }
+
+    /**
+     * @param pathInfo the path after the endpoint, null if none
+     */
+    HttpResponse handle(String endpoint, String pathInfo, HttpRequest request) {
+        String method = request.getMethod();
+        boolean get = method.equals("GET") || method.equals("HEAD");
+        boolean post = method.equals("POST") || method.equals("PUT");
+        try {
+            HttpResponse response;
+            switch (endpoint) {
+                case "/i":
+                    response = get ? info(pathInfo, request) : notAllowed("GET, HEAD");
+                    break;
+                case "/s":
+                    response = get ? schema(pathInfo, request) : notAllowed("GET, HEAD");
+                    break;
+                case "/e":
+                    return post ? encode(pathInfo, request) : notAllowed("POST, PUT");
+                case "/d":
+                    return post ? decode(pathInfo, request) : notAllowed("POST, PUT");
+                default:
+                    return HttpResponse.text(404, "not found");
+            }
+
+            response.setHeadOnly(method.equals("HEAD"));
+            return response;
+        } catch (IllegalArgumentException ex) {
+            return HttpResponse.text(400, ex.getMessage());
+        } catch (IOException | RuntimeException ex) {
+            logger.error("fail to process " + request.getUri(), ex);
+            return HttpResponse.text(500, "internal error");
+        }
+    }
+
+    private HttpResponse info(String id, HttpRequest request) throws IOException {
+        CentralSchemaRegistry registry = server.getRegistry();
+        if ((id == null || id.equals("/")) && isQuery(request)) {
+            return query(request, registry);
+        }
+
+        HttpResponse response = new HttpResponse(200);
+        response.setHeader("Content-Type", "application/json; charset=utf-8");
+        if (id == null || id.equals("/")) {
+            attach(request, response, "all-schemas.json");
+            return write(request, response, registry.getCatalog().getAll());
+        }
+
+        id = id.substring(1);
+        SchemaCatalog.Snapshot snapshot = registry.getCatalog().get(id);
+        if (snapshot == null) {
+            return HttpResponse.text(404, "schema ID isn't found");
+        }
+
+        attach(request, response, id + ".json");
+        return write(request, response, snapshot);
+    }
+
+    private static boolean isQuery(HttpRequest request) {
+        for (String name : QUERY_PARAMETERS) {
+            if (request.getParameter(name) != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private HttpResponse query(HttpRequest request, CentralSchemaRegistry registry) throws IOException {
+        SchemaIndex.Page page;
+        try {
+            String limit = request.getParameter("limit");
+            int n = limit == null || limit.isEmpty() ? DEFAULT_LIMIT : Integer.parseInt(limit);
+            if (n <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+
+            page = registry.getIndex().query(request.getParameter("type"),
+                    request.getParameter("message"), request.getParameter("prefix"),
+                    request.getParameter("custodian"), request.getParameter("dependsOn"),
+                    Math.min(n, MAX_LIMIT), request.getParameter("cursor"));
+        } catch (IllegalArgumentException ex) {
+            return HttpResponse.text(400, ex.getMessage());
+        }
+
+        ResponseSpool spool = new ResponseSpool();
+        try {
+            registry.getCatalog().writePage(spool, page, "id".equals(request.getParameter("fields")));
+        } catch (IOException | RuntimeException ex) {
+            spool.release();
+            throw ex;
+        }
+
+        HttpResponse response = new HttpResponse(200);
+        response.setHeader("Content-Type", "application/json; charset=utf-8");
+        response.setBody(spool);
+        return response;
+    }
+
+    private HttpResponse write(HttpRequest request, HttpResponse response, SchemaCatalog.Snapshot snapshot)
+            throws IOException {
+        // each content coding has its own ETag
+        boolean gzip = HttpUtil.acceptsGzip(request.getHeader("Accept-Encoding"));
+        String etag = gzip ? snapshot.getGzippedEtag() : snapshot.getEtag();
+        response.setHeader("ETag", etag);
+        response.setHeader("Vary", "Accept-Encoding");
+
+        if (HttpUtil.matchesEtag(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(304);
+            return response;
+        }
+
+        final byte[] bytes;
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            bytes = snapshot.getGzipped();
+        } else {
+            bytes = snapshot.getBytes();
+        }
+
+        response.setBody(load(snapshots, bytes, new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return bytes;
+            }
+        }));
+        return response;
+    }
+
+    private HttpResponse schema(String id, HttpRequest request) throws IOException {
+        CentralSchemaRegistry registry = server.getRegistry();
+        if (id == null || id.equals("/")) {
+            return HttpResponse.text(400, "schema ID isn't specified in URI path");
+        }
+
+        id = id.substring(1);
+        SchemaInfo schema = registry.getSchemas().get(id);
+        if (schema == null) {
+            return HttpResponse.text(404, "schema ID isn't found");
+        }
+
+        final SchemaFiles.SchemaFile f = registry.getFiles().get(id);
+        if (!f.exists()) {
+            return HttpResponse.text(404, "schema is missing");
+        }
+
+        if (!f.canRead()) {
+            return HttpResponse.text(403, "file permission forbidden");
+        }
+
+        HttpResponse response = new HttpResponse(200);
+        response.setHeader("Content-Type", "text/plain; charset=utf-8");
+        attach(request, response, id + "_" + schema.getFilename());
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", f.getEtag());
+        response.setHeader("Last-Modified", DATE_FORMAT.get().format(new Date(f.getLastModified())));
+        response.setHeader("Cache-Control", cacheControl);
+
+        if (notModified(request, f)) {
+            response.setStatus(304);
+            return response;
+        }
+
+        long length = f.getLength();
+        long[] range = rangeApplies(request, f)
+                ? HttpUtil.parseRange(request.getHeader("Range"), length) : null;
+        if (range != null && range[0] < 0) {
+            response.setStatus(416);
+            response.setHeader("Content-Range", "bytes */" + length);
+            return response;
+        }
+
+        long first = 0;
+        long count = length;
+        if (range != null) {
+            first = range[0];
+            count = range[1] - range[0] + 1;
+            response.setStatus(206);
+            response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
+
+        if (length <= maxCachedFileSize) {
+            ByteBuffer bytes = load(files, f, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return Files.toByteArray(f.getFile());
+                }
+            });
+            ByteBuffer slice = bytes.duplicate();
+            slice.position((int) Math.min(first, slice.limit()));
+            slice.limit((int) Math.min(slice.limit(), first + count));
+            response.setBody(slice);
+        } else {
+            response.setBody(f.getFile(), first, count);
+        }
+        return response;
+    }
+
+    private static boolean notModified(HttpRequest request, SchemaFiles.SchemaFile f) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return HttpUtil.matchesEtag(ifNoneMatch, f.getEtag());
+        }
+
+        long since = getDateHeader(request, "If-Modified-Since");
+        return since >= 0 && f.getLastModified() / 1000 <= since / 1000;
+    }
+
+    /**
+     * "If-Range" must be the strong ETag or a date not before Last-Modified.
+     */
+    private static boolean rangeApplies(HttpRequest request, SchemaFiles.SchemaFile f) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(f.getEtag());
+        }
+
+        long date = getDateHeader(request, "If-Range");
+        return date >= 0 && f.getLastModified() / 1000 <= date / 1000;
+    }
+
+    /**
+     * @return -1 if the header is absent or malformed
+     */
+    private static long getDateHeader(HttpRequest request, String name) {
+        String value = request.getHeader(name);
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return DATE_FORMAT.get().parse(value).getTime();
+        } catch (ParseException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Copies bytes to a direct buffer once, later requests send views of the
+     * cached buffer without copying.
+     */
+    private static <K> ByteBuffer load(Cache<K, ByteBuffer> cache, final K key, final Callable<byte[]> loader)
+            throws IOException {
+        try {
+            return cache.get(key, new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() throws Exception {
+                    byte[] bytes = loader.call();
+                    ByteBuffer b = ByteBuffer.allocateDirect(bytes.length);
+                    b.put(bytes);
+                    b.flip();
+                    return b.asReadOnlyBuffer();
+                }
+            }).duplicate();
+        } catch (ExecutionException ex) {
+            throw new IOException("fail to load " + key, ex.getCause());
+        }
+    }
+
+    private HttpResponse encode(String id, final HttpRequest request) {
+        if (id == null || id.equals("/")) {
+            return HttpResponse.text(400, "schema ID isn't specified in URI path");
+        }
+
+        id = id.substring(1);
+        CentralSchemaRegistry registry = server.getRegistry();
+        SchemaInfo schema = registry.getSchemas().get(id);
+        if (schema == null) {
+            return HttpResponse.text(404, "schema ID isn't found");
+        }
+
+        String contentEncoding = request.getHeader("Content-Encoding");
+        String decodingFilters = HttpUtil.getDecodingFilters(contentEncoding);
+        if (decodingFilters == null) {
+            return HttpResponse.text(415, "unsupported Content-Encoding " + contentEncoding);
+        }
+
+        ResponseSpool spool = new ResponseSpool();
+        InputStream decodedIn = null;
+        OutputStream filterOut = null;
+        try {
+            final HttpResponse response = new HttpResponse(200);
+            response.setHeader("Content-Type", "application/octet-stream");
+            decodedIn = FilterStreamUtil.filter(request.getInputStream(), decodingFilters);
+
+            final String filters = request.getParameter("f");
+            OutputStream encodedOut = encodeContent(request, response, spool, filters);
+            filterOut = FilterStreamUtil.filter(encodedOut, filters, adaptive.select(
+                    id + "/" + request.getParameter("m") + "/" + filters,
+                    new AdaptiveCompression.Listener() {
+                        @Override
+                        public void chosen(String filter) {
+                            response.setHeader(AdaptiveCompression.HEADER,
+                                    AdaptiveCompression.resolve(filters, filter));
+                        }
+                    }));
+
+            attach(request, response, id + "-" + System.currentTimeMillis() + ".dat");
+
+            registry.serialize(id, request.getParameter("m"), decodedIn, filterOut, request.getParameterMap());
+            if (filterOut != spool) {
+                // filters write their trailers
+                filterOut.close();
+            }
+            filterOut = null;
+
+            response.setBody(spool);
+            return response;
+        } catch (Exception ex) {
+            spool.release();
+            logger.info("fail to decode {}: {}", request.getUri(), ex.toString());
+            return HttpResponse.text(400, ex.getMessage());
+        } finally {
+            close(decodedIn);
+            close(filterOut);
+        }
+    }
+
+    private HttpResponse decode(String id, HttpRequest request) {
+        CentralSchemaRegistry registry = server.getRegistry();
+
+        // without schema ID in URI path, the schema is looked up by wire header
+        SchemaInfo schema = null;
+        if (id == null || id.equals("/")) {
+            id = null;
+        } else {
+            id = id.substring(1);
+            schema = registry.getSchemas().get(id);
+            if (schema == null) {
+                return HttpResponse.text(404, "schema ID isn't found");
+            }
+        }
+
+        String contentEncoding = request.getHeader("Content-Encoding");
+        String decodingFilters = HttpUtil.getDecodingFilters(contentEncoding);
+        if (decodingFilters == null) {
+            return HttpResponse.text(415, "unsupported Content-Encoding " + contentEncoding);
+        }
+
+        ResponseSpool spool = new ResponseSpool();
+        InputStream filterIn = null;
+        OutputStream encodedOut = null;
+        try {
+            HttpResponse response = new HttpResponse(200);
+            response.setHeader("Content-Type", "text/plain; charset=utf-8");
+
+            // "f" filters apply to the body after HTTP content coding is removed
+            filterIn = FilterStreamUtil.filter(FilterStreamUtil.filter(request.getInputStream(), decodingFilters),
+                    request.getParameter("f"));
+            encodedOut = encodeContent(request, response, spool, null);
+
+            if (id == null) {
+                attach(request, response, "header-" + System.currentTimeMillis() + ".txt");
+                registry.deserializeWithHeader(request.getParameter("m"), filterIn, encodedOut,
+                        request.getParameterMap());
+            } else {
+                attach(request, response, id + "-" + System.currentTimeMillis() + ".txt");
+                registry.deserialize(id, request.getParameter("m"), filterIn, encodedOut,
+                        request.getParameterMap());
+            }
+            if (encodedOut != spool) {
+                encodedOut.close();
+            }
+            encodedOut = null;
+
+            response.setBody(spool);
+            return response;
+        } catch (Exception ex) {
+            spool.release();
+            logger.info("fail to encode {}: {}", request.getUri(), ex.toString());
+            return HttpResponse.text(400, ex.getMessage());
+        } finally {
+            close(filterIn);
+            close(encodedOut);
+        }
+    }
+
+    /**
+     * Same negotiation as HttpUtil.encodeContent() for servlet responses.
+     */
+    private OutputStream encodeContent(HttpRequest request, final HttpResponse response, OutputStream out,
+            String filters) {
+        if (HttpUtil.isCompressed(filters)) {
+            return out;
+        }
+
+        response.addHeader("Vary", "Accept-Encoding");
+        final String coding = HttpUtil.negotiateContentCoding(request.getHeader("Accept-Encoding"));
+        if (coding == null) {
+            return out;
+        }
+
+        return new ContentEncodingOutputStream(out, HttpUtil.getCodingFilter(coding), minEncodedSize) {
+            @Override
+            protected void started() {
+                response.setHeader("Content-Encoding", coding);
+            }
+        };
+    }
+
+    private static void attach(HttpRequest request, HttpResponse response, String filename) {
+        if (request.getParameter("attachment") != null) {
+            response.setHeader("Content-Disposition", AttachmentUtil.getDisposition(filename));
+        }
+    }
+
+    private static HttpResponse notAllowed(String allow) {
+        HttpResponse response = HttpResponse.text(405, "method isn't allowed");
+        response.setHeader("Allow", allow);
+        return response;
+    }
+
+    /**
+     * Only for streams left open by a failed conversion, the spool is
+     * released anyway.
+     */
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // nothing to do, the conversion already failed
+            }
+        }
+    }
+}
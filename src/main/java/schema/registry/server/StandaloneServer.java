@@ -0,0 +1,381 @@
+package schema.registry.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import schema.registry.BufferPool;
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.CodecPools;
+import schema.registry.ConfigUtil;
+import schema.registry.FilterStreamUtil;
+import schema.registry.Metrics;
+import schema.registry.ResponseSpool;
+
+/**
+ * Serves /i, /s, /e and /d without a servlet container, for sidecars and
+ * tests where starting Tomcat costs more than the registry itself.
+ *
+ * A few event loops own non-blocking connections with keep-alive and
+ * pipelining, request bodies are read into pooled direct buffers and
+ * responses are written from spooled or cached direct buffers with
+ * gathering writes. Conversions run on a bounded worker pool, requests are
+ * rejected with 503 and "Retry-After" when its queue is full.
+ *
+ * Usage: StandaloneServer [name=value ...], settings are read from
+ * SchemaRegistry.properties like the servlet context listener does, or
+ * from "config=file", and arguments override them.
+ */
+public class StandaloneServer implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(StandaloneServer.class);
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Response headers fit easily, larger ones are sent from a heap buffer.
+     */
+    private static final int HEADER_BUFFER_SIZE = 4096;
+
+    private final Properties config;
+    private final File schemaList;
+    private final String contextPath;
+    private final int maxPipelined;
+    private final int maxHeaderSize;
+    private final long maxRequestSize;
+    private final long idleTimeout;
+    private final int retryAfter;
+    private final BufferPool buffers;
+    private final BufferPool headerBuffers;
+    private final EventLoop[] loops;
+    private final ThreadPoolExecutor workers;
+    private final RequestHandler handler;
+    private final Timer timer = new Timer("schemaListReloader", true);
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile CentralSchemaRegistry registry;
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * Loads the registry, call start() to accept connections.
+     */
+    public StandaloneServer(Properties config) throws IOException, ClassNotFoundException {
+        this.config = config;
+        String list = config.getProperty("schemaList");
+        String rootDirectory = config.getProperty("rootDirectory");
+        if (list == null || rootDirectory == null) {
+            throw new IllegalArgumentException("schemaList and rootDirectory must both be provided");
+        }
+
+        FilterStreamUtil.configure(config);
+        CodecPools.configure(config);
+        ResponseSpool.configure(config);
+        Metrics.configure(config);
+
+        schemaList = new File(list);
+        registry = new CentralSchemaRegistry(schemaList, new File(rootDirectory));
+
+        String path = config.getProperty("server.contextPath", "/SchemaRegistry");
+        contextPath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        maxPipelined = Math.max(1, ConfigUtil.getInt(config, "server.maxPipelined", 16));
+        maxHeaderSize = ConfigUtil.getInt(config, "server.maxHeaderSize", 16 * 1024);
+        maxRequestSize = ConfigUtil.getLong(config, "server.maxRequestSize", 256L * 1024 * 1024);
+        idleTimeout = ConfigUtil.getLong(config, "server.idleTimeout", 60) * 1000;
+        retryAfter = ConfigUtil.getInt(config, "retryAfter", 1);
+
+        int bufferSize = ConfigUtil.getInt(config, "server.bufferSize", 64 * 1024);
+        buffers = new BufferPool(bufferSize,
+                ConfigUtil.getInt(config, "server.maxPooledBuffers", 1024), true);
+        headerBuffers = new BufferPool(HEADER_BUFFER_SIZE,
+                ConfigUtil.getInt(config, "server.maxPooledBuffers", 1024), true);
+
+        loops = new EventLoop[Math.max(1, ConfigUtil.getInt(config, "server.ioThreads",
+                Math.max(1, Math.min(4, CPUS / 2))))];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(this, "server-io-" + (i + 1), bufferSize);
+        }
+
+        int threads = ConfigUtil.getInt(config, "server.workerThreads", CPUS);
+        workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(ConfigUtil.getInt(config, "server.workerQueue", 1000)),
+                new ThreadFactory() {
+                    private final AtomicInteger n = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "server-worker-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        handler = new RequestHandler(this, config);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        Properties config = new Properties();
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            if (i <= 0) {
+                System.err.println("Usage: StandaloneServer [config=file] [name=value ...]");
+                System.exit(2);
+            }
+            overrides.setProperty(arg.substring(0, i), arg.substring(i + 1));
+        }
+
+        File f = overrides.containsKey("config") ? new File(overrides.getProperty("config"))
+                : firstExistedPropertyFile(System.getProperty("user.dir"), System.getProperty("user.home"),
+                        "/home/y/conf/SchemaRegistry");
+        if (f != null) {
+            try (FileInputStream in = new FileInputStream(f)) {
+                config.load(in);
+            }
+        }
+        config.putAll(overrides);
+
+        final StandaloneServer server = new StandaloneServer(config);
+        long loaded = System.nanoTime();
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("server-shutdown") {
+            @Override
+            public void run() {
+                server.close();
+            }
+        });
+
+        logger.info("loaded {} schemas in {} ms, listening on {}{} in {} ms, {} ms since JVM start",
+                server.getRegistry().getSchemas().size(),
+                TimeUnit.NANOSECONDS.toMillis(loaded - start), server.getAddress(), server.contextPath,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * Binds "server.host":"server.port", port 0 picks a free port.
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(config.getProperty("server.host", "0.0.0.0"),
+                ConfigUtil.getInt(config, "server.port", 8080)),
+                ConfigUtil.getInt(config, "server.backlog", 1024));
+        serverChannel.configureBlocking(false);
+
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+        loops[0].accept(serverChannel);
+
+        int reloadInterval = ConfigUtil.getInt(config, "reloadInterval", 5);
+        timer.scheduleAtFixedRate(new SchemaListReloader(), 5000,
+                (reloadInterval <= 0 ? 5 : reloadInterval) * 1000L);
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverChannel.socket().getLocalSocketAddress();
+    }
+
+    public CentralSchemaRegistry getRegistry() {
+        return registry;
+    }
+
+    public ThreadPoolExecutor getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return requests rejected because the worker queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting, closes connections and waits for the event loops,
+     * conversions still running aren't waited for.
+     */
+    @Override
+    public void close() {
+        timer.cancel();
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException ex) {
+            logger.warn("fail to close server socket", ex);
+        }
+
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+        try {
+            for (EventLoop loop : loops) {
+                loop.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        Metrics.get().unregister();
+    }
+
+    EventLoop nextLoop() {
+        return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+
+    BufferPool getBuffers() {
+        return buffers;
+    }
+
+    BufferPool getHeaderBuffers() {
+        return headerBuffers;
+    }
+
+    int getMaxPipelined() {
+        return maxPipelined;
+    }
+
+    int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Called in the connection's event loop once a request is complete,
+     * /i and /s are served right there, conversions go to the workers.
+     */
+    void dispatch(final HttpConnection connection, final HttpConnection.Exchange exchange) {
+        final HttpRequest request = exchange.request;
+        String path;
+        try {
+            path = request.getPath();
+        } catch (IllegalArgumentException ex) {
+            request.release();
+            connection.complete(exchange, HttpResponse.text(400, ex.getMessage()));
+            return;
+        }
+
+        if (!path.startsWith(contextPath + "/")) {
+            request.release();
+            connection.complete(exchange, HttpResponse.text(404, "not found"));
+            return;
+        }
+
+        path = path.substring(contextPath.length());
+        int slash = path.indexOf('/', 1);
+        final String endpoint = slash < 0 ? path : path.substring(0, slash);
+        final String pathInfo = slash < 0 ? null : path.substring(slash);
+        exchange.endpoint = endpoint;
+
+        if (handler.isInline(endpoint)) {
+            HttpResponse response = handler.handle(endpoint, pathInfo, request);
+            request.release();
+            connection.complete(exchange, response);
+            return;
+        }
+
+        HttpResponse rejection = handler.admit(endpoint, pathInfo, request);
+        if (rejection != null) {
+            request.release();
+            connection.complete(exchange, rejection);
+            return;
+        }
+
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    HttpResponse response;
+                    try {
+                        response = handler.handle(endpoint, pathInfo, request);
+                    } finally {
+                        request.release();
+                    }
+                    connection.complete(exchange, response);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            request.release();
+            HttpResponse response = HttpResponse.text(503, "server is busy");
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+            connection.complete(exchange, response);
+        }
+    }
+
+    /**
+     * Called in the connection's event loop once the response is written.
+     */
+    void completed(HttpConnection.Exchange exchange) {
+        if ("/e".equals(exchange.endpoint) || "/d".equals(exchange.endpoint)) {
+            Metrics.get().recordRequest(exchange.endpoint, exchange.response.getStatus(),
+                    System.nanoTime() - exchange.start, exchange.request.getBodySize(),
+                    exchange.response.getContentLength());
+        }
+    }
+
+    private static File firstExistedPropertyFile(String... directories) {
+        for (String dir : directories) {
+            File f = new File(dir, "SchemaRegistry.properties");
+            if (f.exists()) {
+                logger.info("found file {}", f.getPath());
+                return f;
+            }
+        }
+
+        return null;
+    }
+
+    private class SchemaListReloader extends TimerTask {
+
+        private long lastModifiedTime;
+
+        SchemaListReloader() throws IOException {
+            lastModifiedTime = schemaList.getCanonicalFile().lastModified();
+        }
+
+        @Override
+        public void run() {
+            try {
+                long t = schemaList.getCanonicalFile().lastModified();
+                if (t == lastModifiedTime) {
+                    return;
+                }
+
+                CentralSchemaRegistry oldRegistry = registry;
+                registry = new CentralSchemaRegistry(schemaList, oldRegistry.getRootDirectory());
+                oldRegistry.retire();
+                lastModifiedTime = t;
+                logger.info("successfully reload {}, canonical path is {}",
+                        schemaList.getPath(), schemaList.getCanonicalPath());
+            } catch (IOException | ClassNotFoundException ex) {
+                logger.error("fail to reload schema list " + schemaList.getPath(), ex);
+            }
+        }
+    }
+}
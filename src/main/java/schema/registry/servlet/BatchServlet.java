@@ -0,0 +1,85 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.util.Properties;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import schema.registry.BatchProcessor;
+import schema.registry.Bulkheads;
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.ConfigUtil;
+
+/**
+ * Converts many messages of different schemas in one request, see
+ * {@link BatchProcessor} for the framing.
+ */
+@WebServlet(name = "BatchServlet", urlPatterns = {"/b/*"}, asyncSupported = true)
+public class BatchServlet extends HttpServlet {
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    protected void processRequest(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        CentralSchemaRegistry registry = (CentralSchemaRegistry) request.getServletContext()
+                .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
+        Properties config = (Properties) request.getServletContext()
+                .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY_CONFIG);
+        ConversionExecutors executors = (ConversionExecutors) request.getServletContext()
+                .getAttribute(ConversionExecutors.ATTRIBUTE);
+        Bulkheads bulkheads = (Bulkheads) request.getServletContext()
+                .getAttribute(Bulkheads.ATTRIBUTE);
+
+        BatchProcessor processor = new BatchProcessor(registry, bulkheads,
+                executors.getSmallExecutor(),
+                ConfigUtil.getInt(config, "batch.window", CPUS * 2),
+                ConfigUtil.getInt(config, "batch.maxEntrySize", 16 * 1024 * 1024));
+
+        response.setContentType("application/octet-stream");
+        try (ServletInputStream in = request.getInputStream();
+                ServletOutputStream out = response.getOutputStream()) {
+            try {
+                processor.process(in, out, request.getParameterMap());
+            } catch (Exception ex) {
+                request.getServletContext().log("fail to process batch", ex);
+                if (!response.isCommitted()) {
+                    response.resetBuffer();
+                    response.setContentType("text/plain; charset=utf-8");
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    out.println(ex.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        dispatch(request, response);
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        dispatch(request, response);
+    }
+
+    private void dispatch(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        ConversionExecutors executors = (ConversionExecutors) request.getServletContext()
+                .getAttribute(ConversionExecutors.ATTRIBUTE);
+
+        executors.dispatch(request, response, new ConversionExecutors.Conversion() {
+            @Override
+            public void process(HttpServletRequest request, HttpServletResponse response)
+                    throws ServletException, IOException {
+                processRequest(request, response);
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import schema.registry.AttachmentUtil;
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.HttpUtil;
+import schema.registry.SchemaBundle;
+
+/**
+ * Serves the generated directories of a schema and its dependencies as zip,
+ * see {@link SchemaBundle}.
+ */
+@WebServlet(name = "BundleServlet", urlPatterns = {"/bundle/*"})
+public class BundleServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        CentralSchemaRegistry registry = (CentralSchemaRegistry) request.getServletContext()
+                .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
+
+        try (ServletOutputStream out = response.getOutputStream()) {
+            String id = request.getPathInfo();
+            if (id == null || id.equals("/")) {
+                response.setContentType("text/plain; charset=utf-8");
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                out.println("schema ID isn't specified in URI path");
+                return;
+            }
+
+            id = id.substring(1);
+            if (!registry.getSchemas().containsKey(id)) {
+                response.setContentType("text/plain; charset=utf-8");
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                out.println("schema ID isn't found");
+                return;
+            }
+
+            List<String> ids = SchemaBundle.getIds(registry, id);
+            String etag = SchemaBundle.getEtag(registry.getCatalog(), ids);
+            response.setHeader("ETag", etag);
+
+            if (HttpUtil.matchesEtag(request.getHeader("If-None-Match"), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            response.setContentType("application/zip");
+            AttachmentUtil.attach(request, response, id + ".zip");
+            SchemaBundle.write(registry.getRootDirectory(), ids, out);
+        }
+    }
+}
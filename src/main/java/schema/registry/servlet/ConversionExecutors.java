@@ -0,0 +1,260 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import schema.registry.Bulkheads;
+import schema.registry.ConfigUtil;
+import schema.registry.Metrics;
+import schema.registry.RequestProfile;
+import schema.registry.SchemaInfo;
+import schema.registry.SchemaRegistry;
+
+/**
+ * Runs conversions off the container's request threads, small messages and
+ * streaming bulk uploads use separate bounded pools so large uploads can't
+ * starve small ones, and neither can starve /i and /s.
+ *
+ * Requests are rejected with 503 and "Retry-After" when the pool's queue is
+ * full, and with 429 when the schema's bulkhead is full, both before the
+ * request body is read.
+ *
+ * On timeout the conversion is cancelled and whichever side, the timeout
+ * handler or the conversion thread, completes first writes the final
+ * response, the other's later writes fail, see {@link GuardedResponse}.
+ */
+public class ConversionExecutors {
+
+    public static final String ATTRIBUTE = "conversionExecutors";
+    /**
+     * Request attribute of the {@link Bulkheads.Permit} taken on dispatch,
+     * the conversion releases it with the bytes actually read.
+     */
+    public static final String PERMIT_ATTRIBUTE = "bulkheadPermit";
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    private final ThreadPoolExecutor smallExecutor;
+    private final ThreadPoolExecutor bulkExecutor;
+    private final long bulkThreshold;
+    private final long timeout;
+    private final int retryAfter;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public interface Conversion {
+
+        void process(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException;
+    }
+
+    public ConversionExecutors(Properties config) {
+        smallExecutor = newExecutor("small",
+                ConfigUtil.getInt(config, "executor.small.threads", CPUS),
+                ConfigUtil.getInt(config, "executor.small.queue", 1000));
+        bulkExecutor = newExecutor("bulk",
+                ConfigUtil.getInt(config, "executor.bulk.threads", Math.max(1, CPUS / 2)),
+                ConfigUtil.getInt(config, "executor.bulk.queue", 16));
+        bulkThreshold = ConfigUtil.getLong(config, "executor.bulkThreshold", 1024 * 1024);
+        timeout = ConfigUtil.getLong(config, "asyncTimeout", 60000);
+        retryAfter = ConfigUtil.getInt(config, "retryAfter", 1);
+    }
+
+    public void dispatch(HttpServletRequest request, HttpServletResponse response,
+            Conversion conversion) throws IOException {
+        dispatch(request, response, null, conversion);
+    }
+
+    /**
+     * Requests without Content-Length are streaming uploads of unknown size,
+     * they're treated as bulk.
+     *
+     * @param id schema ID whose bulkhead permit is taken before queueing, the
+     * permit is released once the conversion is done, null for none
+     */
+    public void dispatch(HttpServletRequest request, HttpServletResponse response, String id,
+            final Conversion conversion) throws IOException {
+        long length = request.getContentLength();
+        final ServletContext sc = request.getServletContext();
+        Bulkheads.Permit acquired = null;
+        Bulkheads bulkheads = (Bulkheads) sc.getAttribute(Bulkheads.ATTRIBUTE);
+        SchemaRegistry registry = (SchemaRegistry) sc.getAttribute(
+                SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
+        // unknown IDs are answered by the conversion
+        SchemaInfo schema = id == null || bulkheads == null || registry == null
+                ? null : registry.getSchemas().get(id);
+        if (schema != null) {
+            acquired = bulkheads.tryAcquire(id, schema, length);
+            if (acquired == null) {
+                response.setStatus(SC_TOO_MANY_REQUESTS);
+                response.setHeader("Retry-After", String.valueOf(bulkheads.getRetryAfter(id, schema, length)));
+                response.setContentType("text/plain; charset=utf-8");
+                response.getOutputStream().println("too many requests for schema " + id);
+                return;
+            }
+            request.setAttribute(PERMIT_ATTRIBUTE, acquired);
+        }
+        final Bulkheads.Permit permit = acquired;
+
+        ThreadPoolExecutor executor = length >= 0 && length <= bulkThreshold
+                ? smallExecutor : bulkExecutor;
+        final String uri = request.getRequestURI();
+        final String endpoint = request.getServletPath();
+        final long bytesIn = Math.max(0, length);
+        final long start = System.nanoTime();
+        request.setAttribute(RequestProfile.DISPATCHED_ATTRIBUTE, start);
+        final AsyncContext ac = request.startAsync(request, response);
+        final AtomicBoolean completed = new AtomicBoolean();
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicReference<Future<?>> future = new AtomicReference<>();
+
+        ac.setTimeout(timeout);
+        ac.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) throws IOException {
+                HttpServletResponse resp = (HttpServletResponse) event.getSuppliedResponse();
+                // streamed responses have no Content-Length, their bytes out are unknown
+                String contentLength = resp.getHeader("Content-Length");
+                Metrics.get().recordRequest(endpoint, resp.getStatus(), System.nanoTime() - start, bytesIn,
+                        contentLength == null ? 0 : Long.parseLong(contentLength));
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                timedOut.incrementAndGet();
+                if (GuardedResponse.complete(completed)) {
+                    Future<?> f = future.get();
+                    if (f != null) {
+                        f.cancel(true);
+                    }
+                    // a running conversion releases the permit when it returns
+                    if (!started.get()) {
+                        release(permit);
+                    }
+
+                    HttpServletResponse resp = (HttpServletResponse) event.getAsyncContext().getResponse();
+                    if (!resp.isCommitted()) {
+                        resp.reset();
+                        reject(resp, "conversion timed out");
+                    }
+                    event.getAsyncContext().complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) throws IOException {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) throws IOException {
+            }
+        });
+
+        final GuardedResponse guardedResponse = new GuardedResponse(
+                (HttpServletResponse) ac.getResponse(), completed);
+        try {
+            future.set(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    started.set(true);
+                    try {
+                        if (completed.get()) {
+                            // timed out while waiting in queue
+                            return;
+                        }
+
+                        conversion.process((HttpServletRequest) ac.getRequest(), guardedResponse);
+                    } catch (ServletException | IOException | RuntimeException ex) {
+                        if (!completed.get()) {
+                            sc.log("fail to process " + uri, ex);
+                        }
+                    } finally {
+                        release(permit);
+                        if (GuardedResponse.complete(completed)) {
+                            ac.complete();
+                        }
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            release(permit);
+            if (GuardedResponse.complete(completed)) {
+                reject(response, "server is busy");
+                ac.complete();
+            }
+        }
+    }
+
+    public void shutdown() {
+        smallExecutor.shutdown();
+        bulkExecutor.shutdown();
+    }
+
+    public ThreadPoolExecutor getSmallExecutor() {
+        return smallExecutor;
+    }
+
+    public ThreadPoolExecutor getBulkExecutor() {
+        return bulkExecutor;
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * The conversion has released it with the bytes it read unless it
+     * failed before, then nothing more is charged.
+     */
+    private static void release(Bulkheads.Permit permit) {
+        if (permit != null) {
+            permit.release(0);
+        }
+    }
+
+    private void reject(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        response.setContentType("text/plain; charset=utf-8");
+        response.getOutputStream().println(message);
+    }
+
+    private static ThreadPoolExecutor newExecutor(final String name, int threads, int queueSize) {
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    private final AtomicInteger n = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "conversion-" + name + "-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
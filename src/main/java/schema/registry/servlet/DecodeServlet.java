@@ -2,6 +2,8 @@ package schema.registry.servlet;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
@@ -10,53 +12,159 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
 import schema.registry.AttachmentUtil;
+import schema.registry.Bulkheads;
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.ConfigUtil;
 import schema.registry.FilterStreamUtil;
+import schema.registry.HttpUtil;
+import schema.registry.RequestProfile;
+import schema.registry.ResponseCache;
+import schema.registry.ResponseSpool;
 import schema.registry.SchemaInfo;
-import schema.registry.SchemaRegistry;
+import schema.registry.SlowRequestLog;
 
-@WebServlet(name = "DecodeServlet", urlPatterns = {"/d/*"})
+@WebServlet(name = "DecodeServlet", urlPatterns = {"/d/*"}, asyncSupported = true)
 public class DecodeServlet extends HttpServlet {
 
-    protected void processRequest(HttpServletRequest request, HttpServletResponse response)
+    protected void processRequest(final HttpServletRequest request, final HttpServletResponse response)
             throws ServletException, IOException {
-        SchemaRegistry registry = (SchemaRegistry) request.getServletContext()
+        final CentralSchemaRegistry registry = (CentralSchemaRegistry) request.getServletContext()
                 .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
 
         response.setContentType("text/plain; charset=utf-8");
         try (ServletInputStream in = request.getInputStream();
                 ServletOutputStream out = response.getOutputStream()) {
+            // after getInputStream(), so that a form body isn't parsed by getParameter()
+            final RequestProfile profile = RequestProfile.start(request);
+
+            // without schema ID in URI path, the schema is looked up by wire header
             String id = request.getPathInfo();
+            SchemaInfo schema = null;
             if (id == null || id.equals("/")) {
-                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                out.println("schema ID isn't specified in URI path");
-                return;
+                id = null;
+            } else {
+                id = id.substring(1);
+                schema = registry.getSchemas().get(id);
+                if (schema == null) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    out.println("schema ID isn't found");
+                    return;
+                }
             }
 
-            id = id.substring(1);
-            SchemaInfo schema = registry.getSchemas().get(id);
-            if (schema == null) {
-                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                out.println("schema ID isn't found");
+            if (HttpUtil.getDecodingFilters(request.getHeader("Content-Encoding")) == null) {
+                response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+                out.println("unsupported Content-Encoding " + request.getHeader("Content-Encoding"));
                 return;
             }
 
-            InputStream filterIn = null;
-            try {
-                filterIn = FilterStreamUtil.filter(in, request.getParameter("f"));
+            // taken by ConversionExecutors before queueing, none without schema ID
+            Bulkheads.Permit permit = (Bulkheads.Permit) request.getAttribute(ConversionExecutors.PERMIT_ATTRIBUTE);
 
-                AttachmentUtil.attach(request, response, id + "-" + System.currentTimeMillis() + ".txt");
+            CountingInputStream countingIn = new CountingInputStream(in);
+            InputStream timedIn = profile.time(countingIn, RequestProfile.Stage.READ);
+            CountingOutputStream countingOut = new CountingOutputStream(out);
+            OutputStream responseOut = profile.timeResponse(response, countingOut);
 
-                registry.deserialize(id, request.getParameter("m"), filterIn, out,
-                        request.getParameterMap());
+            // unless streaming, output is spooled so a failure still gets a clean error response
+            ResponseSpool spool = "true".equals(request.getParameter("stream")) ? null : new ResponseSpool();
+            ResponseCache cache = (ResponseCache) request.getServletContext()
+                    .getAttribute(ResponseCache.ATTRIBUTE);
+            // responses looked up by wire header aren't cached, the schema isn't known beforehand
+            String version = cache == null || spool == null || id == null
+                    ? null : ResponseCache.getVersion(registry.getSchemas(), id);
+            // set here, not in convert(), so cached responses get their own filename too
+            AttachmentUtil.attach(request, response,
+                    (id == null ? "header" : id) + "-" + System.currentTimeMillis() + ".txt");
+            try {
+                if (spool == null) {
+                    convert(request, response, registry, id, timedIn, responseOut, profile);
+                } else if (version == null) {
+                    convert(request, response, registry, id, timedIn, spool, profile);
+                    spool.commit(response, responseOut);
+                } else {
+                    final String schemaId = id;
+                    cache.serve(request, response, responseOut, id, version, null, timedIn, spool,
+                            new ResponseCache.Conversion() {
+                                @Override
+                                public void convert(InputStream in, OutputStream target) throws Exception {
+                                    DecodeServlet.this.convert(request, response, registry, schemaId, in, target,
+                                            profile);
+                                }
+                            });
+                }
             } catch (Exception ex) {
-                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                out.println(ex.getMessage());
-                request.getServletContext().log("fail to encode", ex);
+                if (spool != null && response.isCommitted()) {
+                    request.getServletContext().log("fail to send response", ex);
+                } else {
+                    if (spool != null) {
+                        response.reset();
+                        response.setContentType("text/plain; charset=utf-8");
+                    }
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    out.println(ex.getMessage());
+                    request.getServletContext().log("fail to encode", ex);
+                }
             } finally {
+                if (permit != null) {
+                    permit.release(countingIn.getCount());
+                }
+                if (spool != null) {
+                    spool.release();
+                }
+                SlowRequestLog.record(profile, request, response, id, countingIn.getCount(), countingOut.getCount());
+            }
+        }
+    }
+
+    /**
+     * Converts the request body into target, filters are closed, target
+     * itself is left open.
+     *
+     * @param id null to look up the schema by wire header
+     */
+    private void convert(HttpServletRequest request, HttpServletResponse response, CentralSchemaRegistry registry,
+            String id, InputStream in, OutputStream target, RequestProfile profile) throws Exception {
+        InputStream filterIn = null;
+        OutputStream encodedOut = target;
+        profile.enter(RequestProfile.Stage.CONVERT);
+        try {
+            // "f" filters apply to the body after HTTP content coding is removed
+            filterIn = FilterStreamUtil.filter(HttpUtil.decodeContent(request, in), request.getParameter("f"));
+
+            Properties config = (Properties) request.getServletContext()
+                    .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY_CONFIG);
+            encodedOut = HttpUtil.encodeContent(request, response, target, null,
+                    ConfigUtil.getInt(config, "contentEncoding.minSize", HttpUtil.DEFAULT_MIN_ENCODED_SIZE));
+
+            if (id == null) {
+                registry.deserializeWithHeader(request.getParameter("m"),
+                        profile.time(filterIn, RequestProfile.Stage.DECODE),
+                        profile.time(encodedOut, RequestProfile.Stage.ENCODE),
+                        request.getParameterMap());
+            } else {
+                registry.deserialize(id, request.getParameter("m"),
+                        profile.time(filterIn, RequestProfile.Stage.DECODE),
+                        profile.time(encodedOut, RequestProfile.Stage.ENCODE),
+                        request.getParameterMap());
+            }
+        } finally {
+            try {
                 if (in != filterIn && filterIn != null) {
                     filterIn.close();
                 }
+            } finally {
+                try {
+                    if (target != encodedOut) {
+                        profile.time(encodedOut, RequestProfile.Stage.ENCODE).close();
+                    }
+                } finally {
+                    profile.exit();
+                }
             }
         }
     }
@@ -64,12 +172,28 @@ public class DecodeServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        processRequest(request, response);
+        dispatch(request, response);
     }
 
     @Override
     protected void doPut(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        processRequest(request, response);
+        dispatch(request, response);
+    }
+
+    private void dispatch(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        ConversionExecutors executors = (ConversionExecutors) request.getServletContext()
+                .getAttribute(ConversionExecutors.ATTRIBUTE);
+
+        String id = request.getPathInfo();
+        executors.dispatch(request, response, id == null || id.equals("/") ? null : id.substring(1),
+                new ConversionExecutors.Conversion() {
+                    @Override
+                    public void process(HttpServletRequest request, HttpServletResponse response)
+                            throws ServletException, IOException {
+                        processRequest(request, response);
+                    }
+                });
     }
 }
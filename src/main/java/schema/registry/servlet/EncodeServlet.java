@@ -1,7 +1,9 @@
 package schema.registry.servlet;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Properties;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
@@ -10,22 +12,36 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
+import schema.registry.AdaptiveCompression;
 import schema.registry.AttachmentUtil;
+import schema.registry.Bulkheads;
+import schema.registry.ConfigUtil;
 import schema.registry.FilterStreamUtil;
+import schema.registry.HttpUtil;
+import schema.registry.RequestProfile;
+import schema.registry.ResponseCache;
+import schema.registry.ResponseSpool;
 import schema.registry.SchemaInfo;
 import schema.registry.SchemaRegistry;
+import schema.registry.SlowRequestLog;
 
-@WebServlet(name = "EncodeServlet", urlPatterns = {"/e/*"})
+@WebServlet(name = "EncodeServlet", urlPatterns = {"/e/*"}, asyncSupported = true)
 public class EncodeServlet extends HttpServlet {
 
-    protected void processRequest(HttpServletRequest request, HttpServletResponse response)
+    protected void processRequest(final HttpServletRequest request, final HttpServletResponse response)
             throws ServletException, IOException {
-        SchemaRegistry registry = (SchemaRegistry) request.getServletContext()
+        final SchemaRegistry registry = (SchemaRegistry) request.getServletContext()
                 .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
 
         response.setContentType("text/plain; charset=utf-8");
         try (ServletInputStream in = request.getInputStream();
                 ServletOutputStream out = response.getOutputStream()) {
+            // after getInputStream(), so that a form body isn't parsed by getParameter()
+            final RequestProfile profile = RequestProfile.start(request);
+
             String id = request.getPathInfo();
             if (id == null || id.equals("/")) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -41,23 +57,115 @@ public class EncodeServlet extends HttpServlet {
                 return;
             }
 
-            OutputStream filterOut = null;
-            try {
-                response.setContentType("application/octet-stream");
-                filterOut = FilterStreamUtil.filter(out, request.getParameter("f"));
+            if (HttpUtil.getDecodingFilters(request.getHeader("Content-Encoding")) == null) {
+                response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+                out.println("unsupported Content-Encoding " + request.getHeader("Content-Encoding"));
+                return;
+            }
+
+            // taken by ConversionExecutors before queueing
+            Bulkheads.Permit permit = (Bulkheads.Permit) request.getAttribute(ConversionExecutors.PERMIT_ATTRIBUTE);
 
-                AttachmentUtil.attach(request, response, id + "-" + System.currentTimeMillis() + ".dat");
+            CountingInputStream countingIn = new CountingInputStream(in);
+            InputStream timedIn = profile.time(countingIn, RequestProfile.Stage.READ);
+            CountingOutputStream countingOut = new CountingOutputStream(out);
+            OutputStream responseOut = profile.timeResponse(response, countingOut);
 
-                registry.serialize(id, request.getParameter("m"), in, filterOut,
-                        request.getParameterMap());
+            // unless streaming, output is spooled so a failure still gets a clean error response
+            ResponseSpool spool = "true".equals(request.getParameter("stream")) ? null : new ResponseSpool();
+            ResponseCache cache = (ResponseCache) request.getServletContext()
+                    .getAttribute(ResponseCache.ATTRIBUTE);
+            String version = cache == null || spool == null
+                    ? null : ResponseCache.getVersion(registry.getSchemas(), id);
+            // set here, not in convert(), so cached responses get their own filename too
+            AttachmentUtil.attach(request, response, id + "-" + System.currentTimeMillis() + ".dat");
+            try {
+                if (spool == null) {
+                    convert(request, response, registry, id, timedIn, responseOut, profile);
+                } else if (version == null) {
+                    convert(request, response, registry, id, timedIn, spool, profile);
+                    spool.commit(response, responseOut);
+                } else {
+                    final String schemaId = id;
+                    cache.serve(request, response, responseOut, id, version, request.getParameter("f"),
+                            timedIn, spool, new ResponseCache.Conversion() {
+                                @Override
+                                public void convert(InputStream in, OutputStream target) throws Exception {
+                                    EncodeServlet.this.convert(request, response, registry, schemaId, in, target,
+                                            profile);
+                                }
+                            });
+                }
             } catch (Exception ex) {
-                response.setContentType("text/plain; charset=utf-8");
-                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                out.println(ex.getMessage());
-                request.getServletContext().log("fail to decode", ex);
+                if (spool != null && response.isCommitted()) {
+                    request.getServletContext().log("fail to send response", ex);
+                } else {
+                    if (spool != null) {
+                        response.reset();
+                    }
+                    response.setContentType("text/plain; charset=utf-8");
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    out.println(ex.getMessage());
+                    request.getServletContext().log("fail to decode", ex);
+                }
             } finally {
-                if (out != filterOut && filterOut != null) {
-                    filterOut.close();
+                if (permit != null) {
+                    permit.release(countingIn.getCount());
+                }
+                if (spool != null) {
+                    spool.release();
+                }
+                SlowRequestLog.record(profile, request, response, id, countingIn.getCount(), countingOut.getCount());
+            }
+        }
+    }
+
+    /**
+     * Converts the request body into target, filters are closed so they
+     * write their trailers, target itself is left open.
+     */
+    private void convert(HttpServletRequest request, final HttpServletResponse response, SchemaRegistry registry,
+            String id, InputStream in, OutputStream target, RequestProfile profile) throws Exception {
+        InputStream decodedIn = null;
+        OutputStream filterOut = null;
+        profile.enter(RequestProfile.Stage.CONVERT);
+        try {
+            decodedIn = HttpUtil.decodeContent(request, in);
+
+            response.setContentType("application/octet-stream");
+            final String filters = request.getParameter("f");
+            AdaptiveCompression adaptive = (AdaptiveCompression) request.getServletContext()
+                    .getAttribute(AdaptiveCompression.ATTRIBUTE);
+            Properties config = (Properties) request.getServletContext()
+                    .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY_CONFIG);
+            OutputStream encodedOut = HttpUtil.encodeContent(request, response, target, filters,
+                    ConfigUtil.getInt(config, "contentEncoding.minSize", HttpUtil.DEFAULT_MIN_ENCODED_SIZE));
+            filterOut = FilterStreamUtil.filter(encodedOut, filters, adaptive.select(
+                    id + "/" + request.getParameter("m") + "/" + filters,
+                    new AdaptiveCompression.Listener() {
+                        @Override
+                        public void chosen(String filter) {
+                            response.setHeader(AdaptiveCompression.HEADER,
+                                    AdaptiveCompression.resolve(filters, filter));
+                        }
+                    }));
+
+            registry.serialize(id, request.getParameter("m"),
+                    profile.time(decodedIn, RequestProfile.Stage.DECODE),
+                    profile.time(filterOut, RequestProfile.Stage.ENCODE),
+                    request.getParameterMap());
+        } finally {
+            try {
+                if (target != filterOut && filterOut != null) {
+                    profile.time(filterOut, RequestProfile.Stage.ENCODE).close();
+                }
+            } finally {
+                try {
+                    if (in != decodedIn && decodedIn != null) {
+                        decodedIn.close();
+                    }
+                } finally {
+                    profile.exit();
                 }
             }
         }
@@ -66,12 +174,28 @@ public class EncodeServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        processRequest(request, response);
+        dispatch(request, response);
     }
 
     @Override
     protected void doPut(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        processRequest(request, response);
+        dispatch(request, response);
+    }
+
+    private void dispatch(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        ConversionExecutors executors = (ConversionExecutors) request.getServletContext()
+                .getAttribute(ConversionExecutors.ATTRIBUTE);
+
+        String id = request.getPathInfo();
+        executors.dispatch(request, response, id == null || id.equals("/") ? null : id.substring(1),
+                new ConversionExecutors.Conversion() {
+                    @Override
+                    public void process(HttpServletRequest request, HttpServletResponse response)
+                            throws ServletException, IOException {
+                        processRequest(request, response);
+                    }
+                });
     }
 }
@@ -0,0 +1,121 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.GenerationTracker;
+import schema.registry.SchemaFootprint;
+
+/**
+ * Ranks schemas by estimated footprint, lists registry generations still
+ * reachable and JVM class loading and metaspace usage.
+ */
+@WebServlet(name = "FootprintServlet", urlPatterns = {"/footprint"})
+public class FootprintServlet extends HttpServlet {
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        CentralSchemaRegistry registry = (CentralSchemaRegistry) request.getServletContext()
+                .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
+
+        try (ServletOutputStream out = response.getOutputStream()) {
+            int limit;
+            try {
+                String s = request.getParameter("limit");
+                limit = s == null || s.isEmpty() ? DEFAULT_LIMIT : Integer.parseInt(s);
+                if (limit <= 0) {
+                    throw new IllegalArgumentException("limit must be positive");
+                }
+            } catch (IllegalArgumentException ex) {
+                response.setContentType("text/plain; charset=utf-8");
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                out.println(ex.getMessage());
+                return;
+            }
+
+            // lets unreachable generations disappear before they're listed
+            if ("true".equals(request.getParameter("gc"))) {
+                System.gc();
+            }
+
+            String type = request.getParameter("type");
+            List<SchemaFootprint> footprints = new ArrayList<>();
+            Map<String, Map<String, Long>> totals = new TreeMap<>();
+            for (SchemaFootprint f : registry.getFootprints().values()) {
+                if (type == null || type.equals(f.getType())) {
+                    footprints.add(f);
+                    add(totals, f);
+                }
+            }
+            Collections.sort(footprints, SchemaFootprint.BY_ESTIMATED_BYTES);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("generation", registry.getGeneration());
+            result.put("jvm", getJvmStats());
+            result.put("totals", totals);
+            result.put("schemas", footprints.subList(0, Math.min(limit, footprints.size())));
+            result.put("generations", GenerationTracker.getGenerations());
+
+            response.setContentType("application/json; charset=utf-8");
+            mapper.writeValue(out, result);
+        }
+    }
+
+    private static void add(Map<String, Map<String, Long>> totals, SchemaFootprint f) {
+        Map<String, Long> t = totals.get(f.getType());
+        if (t == null) {
+            t = new LinkedHashMap<>();
+            totals.put(f.getType(), t);
+        }
+
+        increase(t, "schemas", 1);
+        increase(t, "classes", f.getClasses());
+        increase(t, "classFileBytes", f.getClassFileBytes());
+        increase(t, "schemaBytes", f.getSchemaBytes());
+        increase(t, "codecBytes", f.getCodecBytes());
+        increase(t, "estimatedBytes", f.getEstimatedBytes());
+    }
+
+    private static void increase(Map<String, Long> m, String key, long n) {
+        Long v = m.get(key);
+        m.put(key, v == null ? n : v + n);
+    }
+
+    private static Map<String, Object> getJvmStats() {
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loadedClasses", classLoading.getLoadedClassCount());
+        stats.put("totalLoadedClasses", classLoading.getTotalLoadedClassCount());
+        stats.put("unloadedClasses", classLoading.getUnloadedClassCount());
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = pool.getName();
+            if (name.equals("Metaspace") || name.endsWith("Perm Gen")) {
+                stats.put("metaspaceUsedBytes", pool.getUsage().getUsed());
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,221 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * The response handed to a conversion thread, once the request is completed
+ * by the other side, i.e. timed out, writes fail with IOException and header
+ * changes are dropped, the container may already have recycled the response.
+ *
+ * Every change holds the lock of the completed flag, so the side completing
+ * the request only has to wait for the change in progress.
+ */
+class GuardedResponse extends HttpServletResponseWrapper {
+
+    private final AtomicBoolean completed;
+    private ServletOutputStream out;
+    private PrintWriter writer;
+
+    GuardedResponse(HttpServletResponse response, AtomicBoolean completed) {
+        super(response);
+        this.completed = completed;
+    }
+
+    /**
+     * Completes the request unless the other side did.
+     *
+     * @return true if the caller may write its final response and complete
+     */
+    static boolean complete(AtomicBoolean completed) {
+        synchronized (completed) {
+            return completed.compareAndSet(false, true);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        synchronized (completed) {
+            checkCompleted();
+            if (out == null) {
+                out = new GuardedOutputStream(super.getOutputStream());
+            }
+            return out;
+        }
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        synchronized (completed) {
+            checkCompleted();
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(
+                        new GuardedOutputStream(super.getOutputStream()), getCharacterEncoding()));
+            }
+            return writer;
+        }
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.setStatus(sc);
+            }
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.setHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.addHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.setDateHeader(name, date);
+            }
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.setIntHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void setContentType(String type) {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.setContentType(type);
+            }
+        }
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.setContentLength(len);
+            }
+        }
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        synchronized (completed) {
+            checkCompleted();
+            super.sendError(sc, msg);
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        synchronized (completed) {
+            checkCompleted();
+            super.sendError(sc);
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.reset();
+            }
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        synchronized (completed) {
+            if (!completed.get()) {
+                super.resetBuffer();
+            }
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        synchronized (completed) {
+            checkCompleted();
+            super.flushBuffer();
+        }
+    }
+
+    private void checkCompleted() throws IOException {
+        if (completed.get()) {
+            throw new IOException("request is already completed");
+        }
+    }
+
+    private class GuardedOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream out;
+
+        GuardedOutputStream(ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (completed) {
+                checkCompleted();
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (completed) {
+                checkCompleted();
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (completed) {
+                checkCompleted();
+                out.flush();
+            }
+        }
+
+        /**
+         * Closing after completion is a no-op, try-with-resources in the
+         * conversion always closes.
+         */
+        @Override
+        public void close() throws IOException {
+            synchronized (completed) {
+                if (!completed.get()) {
+                    out.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import schema.registry.Bulkheads;
+
+@WebServlet(name = "LimitsServlet", urlPatterns = {"/limits"})
+public class LimitsServlet extends HttpServlet {
+
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Bulkheads bulkheads = (Bulkheads) request.getServletContext()
+                .getAttribute(Bulkheads.ATTRIBUTE);
+
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("schemas", bulkheads.getSchemaStats());
+        limits.put("types", bulkheads.getTypeStats());
+
+        response.setContentType("application/json; charset=utf-8");
+        try (ServletOutputStream out = response.getOutputStream()) {
+            mapper.writeValue(out, limits);
+        }
+    }
+}
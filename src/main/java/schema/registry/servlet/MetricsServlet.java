@@ -0,0 +1,179 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import schema.registry.AdaptiveCompression;
+import schema.registry.BufferPool;
+import schema.registry.Bulkheads;
+import schema.registry.CodecPool;
+import schema.registry.CodecPools;
+import schema.registry.FilterStreamUtil;
+import schema.registry.Metrics;
+import schema.registry.PrometheusWriter;
+import schema.registry.ResponseCache;
+import schema.registry.ResponseSpool;
+import schema.registry.SlowRequestLog;
+
+/**
+ * Exports conversion and request metrics, and gauges of executors,
+ * bulkheads, pools and caches, in Prometheus text format.
+ */
+@WebServlet(name = "MetricsServlet", urlPatterns = {"/metrics"})
+public class MetricsServlet extends HttpServlet {
+
+    private static final String PREFIX = "schema_registry_";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        ServletContext sc = request.getServletContext();
+
+        response.setContentType(PrometheusWriter.CONTENT_TYPE);
+        try (Writer out = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)) {
+            PrometheusWriter writer = new PrometheusWriter(out);
+            Metrics metrics = Metrics.get();
+            writer.family(PREFIX + "conversion", "Conversions of /e, /d and /b", metrics.getConversions());
+            writer.family(PREFIX + "http_request", "Requests run by conversion executors", metrics.getRequests());
+
+            writeExecutors(writer, (ConversionExecutors) sc.getAttribute(ConversionExecutors.ATTRIBUTE));
+            writeBulkheads(writer, (Bulkheads) sc.getAttribute(Bulkheads.ATTRIBUTE));
+            writeBufferPool(writer, "filter", FilterStreamUtil.getPool());
+            writeBufferPool(writer, "spool", ResponseSpool.getPool());
+            writeCodecPools(writer);
+            writeSpool(writer);
+            writer.header(PREFIX + "slow_requests_total", "counter", "requests slower than slowLog.threshold");
+            writer.sample(PREFIX + "slow_requests_total", SlowRequestLog.getSlow());
+            writeResponseCache(writer, (ResponseCache) sc.getAttribute(ResponseCache.ATTRIBUTE));
+            writeAdaptiveCompression(writer,
+                    (AdaptiveCompression) sc.getAttribute(AdaptiveCompression.ATTRIBUTE));
+        }
+    }
+
+    private static void writeExecutors(PrometheusWriter writer, ConversionExecutors executors)
+            throws IOException {
+        if (executors == null) {
+            return;
+        }
+
+        writer.header(PREFIX + "executor_active_threads", "gauge", "threads running conversions");
+        writer.sample(PREFIX + "executor_active_threads", executors.getSmallExecutor().getActiveCount(),
+                "executor", "small");
+        writer.sample(PREFIX + "executor_active_threads", executors.getBulkExecutor().getActiveCount(),
+                "executor", "bulk");
+        writer.header(PREFIX + "executor_queued", "gauge", "conversions waiting for a thread");
+        writeQueued(writer, "small", executors.getSmallExecutor());
+        writeQueued(writer, "bulk", executors.getBulkExecutor());
+        writer.header(PREFIX + "executor_rejected_total", "counter", "requests rejected as server is busy");
+        writer.sample(PREFIX + "executor_rejected_total", executors.getRejected());
+        writer.header(PREFIX + "executor_timed_out_total", "counter", "requests timed out");
+        writer.sample(PREFIX + "executor_timed_out_total", executors.getTimedOut());
+    }
+
+    private static void writeQueued(PrometheusWriter writer, String name, ThreadPoolExecutor executor)
+            throws IOException {
+        writer.sample(PREFIX + "executor_queued", executor.getQueue().size(), "executor", name);
+    }
+
+    private static void writeBulkheads(PrometheusWriter writer, Bulkheads bulkheads) throws IOException {
+        if (bulkheads == null) {
+            return;
+        }
+
+        writer.header(PREFIX + "bulkhead_in_flight", "gauge", "conversions holding a bulkhead permit");
+        for (Map.Entry<String, Bulkheads.Stats> e : bulkheads.getSchemaStats().entrySet()) {
+            writer.sample(PREFIX + "bulkhead_in_flight", e.getValue().getInFlight(), "id", e.getKey());
+        }
+        for (Map.Entry<String, Bulkheads.Stats> e : bulkheads.getTypeStats().entrySet()) {
+            writer.sample(PREFIX + "bulkhead_in_flight", e.getValue().getInFlight(), "schemaType", e.getKey());
+        }
+        writer.header(PREFIX + "bulkhead_rejected_total", "counter", "conversions rejected by a bulkhead");
+        for (Map.Entry<String, Bulkheads.Stats> e : bulkheads.getSchemaStats().entrySet()) {
+            writer.sample(PREFIX + "bulkhead_rejected_total", e.getValue().getRejected(), "id", e.getKey());
+        }
+        for (Map.Entry<String, Bulkheads.Stats> e : bulkheads.getTypeStats().entrySet()) {
+            writer.sample(PREFIX + "bulkhead_rejected_total", e.getValue().getRejected(), "schemaType", e.getKey());
+        }
+    }
+
+    private static void writeBufferPool(PrometheusWriter writer, String name, BufferPool pool) throws IOException {
+        writer.header(PREFIX + "buffer_pool_" + name + "_pooled", "gauge", "idle buffers in the pool");
+        writer.sample(PREFIX + "buffer_pool_" + name + "_pooled", pool.getPooled());
+        writer.header(PREFIX + "buffer_pool_" + name + "_allocated_total", "counter", "buffers allocated");
+        writer.sample(PREFIX + "buffer_pool_" + name + "_allocated_total", pool.getAllocated());
+        writer.header(PREFIX + "buffer_pool_" + name + "_acquired_total", "counter", "buffers acquired");
+        writer.sample(PREFIX + "buffer_pool_" + name + "_acquired_total", pool.getAcquired());
+    }
+
+    private static void writeCodecPools(PrometheusWriter writer) throws IOException {
+        Map<String, CodecPool<?>> pools = CodecPools.getPools();
+
+        writer.header(PREFIX + "codec_pool_idle", "gauge", "idle codec contexts");
+        for (CodecPool<?> pool : pools.values()) {
+            writer.sample(PREFIX + "codec_pool_idle", pool.getIdle(), "pool", pool.getName());
+        }
+        writer.header(PREFIX + "codec_pool_in_use", "gauge", "borrowed codec contexts");
+        for (CodecPool<?> pool : pools.values()) {
+            writer.sample(PREFIX + "codec_pool_in_use", pool.getInUse(), "pool", pool.getName());
+        }
+        writer.header(PREFIX + "codec_pool_created_total", "counter", "codec contexts created");
+        for (CodecPool<?> pool : pools.values()) {
+            writer.sample(PREFIX + "codec_pool_created_total", pool.getCreated(), "pool", pool.getName());
+        }
+        writer.header(PREFIX + "codec_pool_native_bytes", "gauge", "estimated native memory of codec contexts");
+        writer.sample(PREFIX + "codec_pool_native_bytes", CodecPools.getEstimatedNativeBytes());
+    }
+
+    private static void writeSpool(PrometheusWriter writer) throws IOException {
+        writer.header(PREFIX + "spool_responses_total", "counter", "responses spooled");
+        writer.sample(PREFIX + "spool_responses_total", ResponseSpool.getSpooled());
+        writer.header(PREFIX + "spool_spilled_total", "counter", "responses spilled to a temporary file");
+        writer.sample(PREFIX + "spool_spilled_total", ResponseSpool.getSpilled());
+    }
+
+    private static void writeResponseCache(PrometheusWriter writer, ResponseCache cache) throws IOException {
+        if (cache == null) {
+            return;
+        }
+
+        Map<String, Object> stats = cache.getStats();
+        writer.header(PREFIX + "response_cache_entries", "gauge", "cached responses");
+        writer.sample(PREFIX + "response_cache_entries", ((Number) stats.get("entries")).doubleValue());
+        writer.header(PREFIX + "response_cache_bytes", "gauge", "bytes of cached responses");
+        writer.sample(PREFIX + "response_cache_bytes", ((Number) stats.get("bytes")).doubleValue());
+        writer.header(PREFIX + "response_cache_off_heap_bytes", "gauge", "bytes of cached responses off heap");
+        writer.sample(PREFIX + "response_cache_off_heap_bytes", ((Number) stats.get("offHeapBytes")).doubleValue());
+        writer.header(PREFIX + "response_cache_requests_total", "counter", "requests looked up in the cache");
+        writer.sample(PREFIX + "response_cache_requests_total", ((Number) stats.get("hits")).doubleValue(),
+                "result", "hit");
+        writer.sample(PREFIX + "response_cache_requests_total", ((Number) stats.get("misses")).doubleValue(),
+                "result", "miss");
+        writer.sample(PREFIX + "response_cache_requests_total", ((Number) stats.get("bypasses")).doubleValue(),
+                "result", "bypass");
+        writer.header(PREFIX + "response_cache_evictions_total", "counter", "cached responses evicted");
+        writer.sample(PREFIX + "response_cache_evictions_total", ((Number) stats.get("evictions")).doubleValue());
+    }
+
+    private static void writeAdaptiveCompression(PrometheusWriter writer, AdaptiveCompression auto)
+            throws IOException {
+        if (auto == null) {
+            return;
+        }
+
+        writer.header(PREFIX + "filter_auto_evaluations_total", "counter", "samples compressed by every candidate");
+        writer.sample(PREFIX + "filter_auto_evaluations_total", auto.getEvaluations());
+        writer.header(PREFIX + "filter_auto_hits_total", "counter", "choices of filter auto found in cache");
+        writer.sample(PREFIX + "filter_auto_hits_total", auto.getHits());
+    }
+}
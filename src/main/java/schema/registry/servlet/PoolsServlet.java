@@ -0,0 +1,39 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import schema.registry.CodecPools;
+import schema.registry.FilterStreamUtil;
+import schema.registry.ResponseSpool;
+
+@WebServlet(name = "PoolsServlet", urlPatterns = {"/pools"})
+public class PoolsServlet extends HttpServlet {
+
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Map<String, Object> pools = new LinkedHashMap<>();
+        pools.put("buffers", FilterStreamUtil.getPool());
+        pools.put("spoolBuffers", ResponseSpool.getPool());
+        pools.put("codecs", CodecPools.getPools());
+        pools.put("estimatedNativeBytes", CodecPools.getEstimatedNativeBytes());
+
+        response.setContentType("application/json; charset=utf-8");
+        try (ServletOutputStream out = response.getOutputStream()) {
+            mapper.writeValue(out, pools);
+        }
+    }
+}
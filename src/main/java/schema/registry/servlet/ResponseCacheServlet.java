@@ -0,0 +1,34 @@
+package schema.registry.servlet;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import schema.registry.ResponseCache;
+
+@WebServlet(name = "ResponseCacheServlet", urlPatterns = {"/cache"})
+public class ResponseCacheServlet extends HttpServlet {
+
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        ResponseCache cache = (ResponseCache) request.getServletContext()
+                .getAttribute(ResponseCache.ATTRIBUTE);
+
+        response.setContentType("application/json; charset=utf-8");
+        try (ServletOutputStream out = response.getOutputStream()) {
+            mapper.writeValue(out, cache == null
+                    ? Collections.singletonMap("enabled", false) : cache.getStats());
+        }
+    }
+}
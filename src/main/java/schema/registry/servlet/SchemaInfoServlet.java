@@ -9,35 +9,44 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import schema.registry.AttachmentUtil;
-import schema.registry.SchemaInfo;
-import schema.registry.SchemaRegistry;
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.HttpUtil;
+import schema.registry.SchemaCatalog;
+import schema.registry.SchemaIndex;
 
 @WebServlet(name = "SchemaInfoServlet", urlPatterns = {"/i/*"})
 public class SchemaInfoServlet extends HttpServlet {
 
-    private static ObjectMapper mapper = new ObjectMapper();
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+    private static final String[] QUERY_PARAMETERS = {
+        "type", "message", "prefix", "custodian", "dependsOn", "limit", "cursor", "fields"
+    };
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        SchemaRegistry registry = (SchemaRegistry) request.getServletContext()
+        CentralSchemaRegistry registry = (CentralSchemaRegistry) request.getServletContext()
                 .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
 
         response.setContentType("application/json; charset=utf-8");
         try (ServletOutputStream out = response.getOutputStream()) {
             String id = request.getPathInfo();
+            if ((id == null || id.equals("/")) && isQuery(request)) {
+                query(request, response, out, registry);
+                return;
+            }
+
             if (id == null || id.equals("/")) {
                 AttachmentUtil.attach(request, response, "all-schemas.json");
-                mapper.writeValue(out, registry.getSchemas());
+                write(request, response, out, registry.getCatalog().getAll());
                 return;
             }
 
             id = id.substring(1);
-            SchemaInfo schema = registry.getSchemas().get(id);
-            if (schema == null) {
+            SchemaCatalog.Snapshot snapshot = registry.getCatalog().get(id);
+            if (snapshot == null) {
                 response.setContentType("text/plain; charset=utf-8");
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 out.println("schema ID isn't found");
@@ -45,7 +54,66 @@ public class SchemaInfoServlet extends HttpServlet {
             }
 
             AttachmentUtil.attach(request, response, id + ".json");
-            mapper.writeValue(out, schema);
+            write(request, response, out, snapshot);
+        }
+    }
+
+    private static boolean isQuery(HttpServletRequest request) {
+        for (String name : QUERY_PARAMETERS) {
+            if (request.getParameter(name) != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void query(HttpServletRequest request, HttpServletResponse response,
+            ServletOutputStream out, CentralSchemaRegistry registry) throws IOException {
+        SchemaIndex.Page page;
+        try {
+            String limit = request.getParameter("limit");
+            int n = limit == null || limit.isEmpty() ? DEFAULT_LIMIT : Integer.parseInt(limit);
+            if (n <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+
+            page = registry.getIndex().query(request.getParameter("type"),
+                    request.getParameter("message"), request.getParameter("prefix"),
+                    request.getParameter("custodian"), request.getParameter("dependsOn"),
+                    Math.min(n, MAX_LIMIT), request.getParameter("cursor"));
+        } catch (IllegalArgumentException ex) {
+            response.setContentType("text/plain; charset=utf-8");
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.println(ex.getMessage());
+            return;
         }
+
+        registry.getCatalog().writePage(out, page, "id".equals(request.getParameter("fields")));
+    }
+
+    private void write(HttpServletRequest request, HttpServletResponse response,
+            ServletOutputStream out, SchemaCatalog.Snapshot snapshot) throws IOException {
+        // each content coding has its own ETag
+        boolean gzip = HttpUtil.acceptsGzip(request.getHeader("Accept-Encoding"));
+        String etag = gzip ? snapshot.getGzippedEtag() : snapshot.getEtag();
+        response.setHeader("ETag", etag);
+        response.setHeader("Vary", "Accept-Encoding");
+
+        if (HttpUtil.matchesEtag(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] bytes;
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            bytes = snapshot.getGzipped();
+        } else {
+            bytes = snapshot.getBytes();
+        }
+
+        response.setContentLength(bytes.length);
+        out.write(bytes);
     }
 }
@@ -3,6 +3,7 @@ package schema.registry.servlet;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Enumeration;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -12,13 +13,22 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
+import schema.registry.AdaptiveCompression;
+import schema.registry.Bulkheads;
 import schema.registry.CentralSchemaRegistry;
+import schema.registry.CodecPools;
+import schema.registry.FilterStreamUtil;
+import schema.registry.Metrics;
+import schema.registry.ResponseCache;
+import schema.registry.ResponseSpool;
 import schema.registry.SchemaRegistry;
+import schema.registry.SlowRequestLog;
 
 @WebListener
 public class SchemaRegistryServletContextListener implements ServletContextListener {
 
     public static String SCHEMA_REGISTRY = "schemaRegistry";
+    public static String SCHEMA_REGISTRY_CONFIG = "schemaRegistryConfig";
     private static String SCHEMA_LIST = "schemaList";
     private static String ROOT_DIRECTORY = "rootDirectory";
     private static String RELOAD_INTERVAL = "reloadInterval";
@@ -31,6 +41,7 @@ public class SchemaRegistryServletContextListener implements ServletContextListe
         String schemaList = sc.getInitParameter(SCHEMA_LIST);
         String rootDirectory = sc.getInitParameter(ROOT_DIRECTORY);
         int reloadInterval = DEFAULT_RELOAD_INTERVAL;
+        Properties config = new Properties();
 
         if (sc.getInitParameter(RELOAD_INTERVAL) != null) {
             reloadInterval = Integer.parseInt(sc.getInitParameter(RELOAD_INTERVAL));
@@ -45,6 +56,7 @@ public class SchemaRegistryServletContextListener implements ServletContextListe
                 try (FileInputStream in = new FileInputStream(f)) {
                     Properties p = new Properties();
                     p.load(in);
+                    config.putAll(p);
                     schemaList = p.getProperty(SCHEMA_LIST);
                     rootDirectory = p.getProperty(ROOT_DIRECTORY);
                     if (p.getProperty(RELOAD_INTERVAL) != null) {
@@ -57,6 +69,14 @@ public class SchemaRegistryServletContextListener implements ServletContextListe
             }
         }
 
+        // other settings in property file take priority over init parameters
+        for (Enumeration<String> names = sc.getInitParameterNames(); names.hasMoreElements();) {
+            String name = names.nextElement();
+            if (!config.containsKey(name)) {
+                config.setProperty(name, sc.getInitParameter(name));
+            }
+        }
+
         if (reloadInterval <= 0) {
             reloadInterval = DEFAULT_RELOAD_INTERVAL;
         }
@@ -70,6 +90,16 @@ public class SchemaRegistryServletContextListener implements ServletContextListe
             CentralSchemaRegistry registry = new CentralSchemaRegistry(
                     schemaListFile, new File(rootDirectory));
             sc.setAttribute(SCHEMA_REGISTRY, registry);
+            sc.setAttribute(SCHEMA_REGISTRY_CONFIG, config);
+            sc.setAttribute(ConversionExecutors.ATTRIBUTE, new ConversionExecutors(config));
+            sc.setAttribute(Bulkheads.ATTRIBUTE, new Bulkheads(config));
+            FilterStreamUtil.configure(config);
+            CodecPools.configure(config);
+            ResponseSpool.configure(config);
+            Metrics.configure(config);
+            SlowRequestLog.configure(config);
+            sc.setAttribute(ResponseCache.ATTRIBUTE, ResponseCache.create(config));
+            sc.setAttribute(AdaptiveCompression.ATTRIBUTE, new AdaptiveCompression(config));
             startReloadTimerTask(sc, schemaListFile, reloadInterval);
         } catch (IOException | ClassNotFoundException ex) {
             sce.getServletContext().log("fail to create schema registry", ex);
@@ -80,6 +110,14 @@ public class SchemaRegistryServletContextListener implements ServletContextListe
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         timer.cancel();
+
+        ConversionExecutors executors = (ConversionExecutors) sce.getServletContext()
+                .getAttribute(ConversionExecutors.ATTRIBUTE);
+        if (executors != null) {
+            executors.shutdown();
+        }
+        Metrics.get().unregister();
+
         sce.getServletContext().log("destroyed");
     }
 
@@ -123,9 +161,18 @@ public class SchemaRegistryServletContextListener implements ServletContextListe
                     return;
                 }
 
+                SchemaRegistry oldRegistry = getRegistry();
                 CentralSchemaRegistry registry = new CentralSchemaRegistry(schemaList,
-                        getRegistry().getRootDirectory());
+                        oldRegistry.getRootDirectory());
                 sc.setAttribute(SCHEMA_REGISTRY, registry);
+                if (oldRegistry instanceof CentralSchemaRegistry) {
+                    ((CentralSchemaRegistry) oldRegistry).retire();
+                }
+
+                ResponseCache cache = (ResponseCache) sc.getAttribute(ResponseCache.ATTRIBUTE);
+                if (cache != null) {
+                    cache.invalidate(oldRegistry.getSchemas(), registry.getSchemas());
+                }
                 lastModifiedTime = t;
                 sc.log("successfully reload " + schemaList.getPath()
                         + ", canonical path is " + schemaList.getCanonicalPath());
@@ -1,7 +1,14 @@
 package schema.registry.servlet;
 
-import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.annotation.WebServlet;
@@ -9,19 +16,57 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.io.Files;
 
 import schema.registry.AttachmentUtil;
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.ConfigUtil;
+import schema.registry.HttpUtil;
+import schema.registry.SchemaFiles;
 import schema.registry.SchemaInfo;
-import schema.registry.SchemaRegistry;
 
+/**
+ * Serves schema files, files not larger than "schemaFiles.maxCachedFileSize"
+ * are kept in memory up to "schemaFiles.cacheSize" bytes in total, larger
+ * files are transferred from a FileChannel.
+ */
 @WebServlet(name = "SchemaServlet", urlPatterns = {"/s/*"})
 public class SchemaServlet extends HttpServlet {
 
+    /**
+     * Keyed by identity of resolved files, so entries of old registry
+     * generations are never hit again and get evicted or collected.
+     */
+    private Cache<SchemaFiles.SchemaFile, byte[]> cache;
+    private long maxCachedFileSize;
+    private String cacheControl;
+
+    @Override
+    public void init() throws ServletException {
+        Properties config = (Properties) getServletContext()
+                .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY_CONFIG);
+
+        maxCachedFileSize = ConfigUtil.getLong(config, "schemaFiles.maxCachedFileSize", 1024 * 1024);
+        cacheControl = "public, max-age=" + ConfigUtil.getLong(config, "schemaFiles.maxAge", 300);
+        cache = CacheBuilder.newBuilder()
+                .weakKeys()
+                .maximumWeight(ConfigUtil.getLong(config, "schemaFiles.cacheSize", 32 * 1024 * 1024))
+                .weigher(new Weigher<SchemaFiles.SchemaFile, byte[]>() {
+                    @Override
+                    public int weigh(SchemaFiles.SchemaFile key, byte[] value) {
+                        return value.length;
+                    }
+                })
+                .build();
+    }
+
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        SchemaRegistry registry = (SchemaRegistry) request.getServletContext()
+        CentralSchemaRegistry registry = (CentralSchemaRegistry) request.getServletContext()
                 .getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY);
 
         response.setContentType("text/plain; charset=utf-8");
@@ -41,11 +86,7 @@ public class SchemaServlet extends HttpServlet {
                 return;
             }
 
-            File f = new File(registry.getRootDirectory(), id + "/" + schema.getFilename() + ".orig");
-            if (!f.exists()) {
-                f = new File(registry.getRootDirectory(), id + "/" + schema.getFilename());
-            }
-
+            SchemaFiles.SchemaFile f = registry.getFiles().get(id);
             if (!f.exists()) {
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
                 out.println("schema is missing");
@@ -60,7 +101,106 @@ public class SchemaServlet extends HttpServlet {
 
             AttachmentUtil.attach(request, response, id + "_" + schema.getFilename());
 
-            Files.copy(f, out);
+            response.setHeader("Accept-Ranges", "bytes");
+            response.setHeader("ETag", f.getEtag());
+            response.setDateHeader("Last-Modified", f.getLastModified());
+            response.setHeader("Cache-Control", cacheControl);
+
+            if (notModified(request, f)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            long length = f.getLength();
+            long[] range = rangeApplies(request, f)
+                    ? HttpUtil.parseRange(request.getHeader("Range"), length) : null;
+            if (range != null && range[0] < 0) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader("Content-Range", "bytes */" + length);
+                return;
+            }
+
+            long first = 0;
+            long count = length;
+            if (range != null) {
+                first = range[0];
+                count = range[1] - range[0] + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            }
+
+            response.setHeader("Content-Length", String.valueOf(count));
+
+            if (length <= maxCachedFileSize) {
+                byte[] bytes = load(f);
+                out.write(bytes, (int) first, (int) Math.max(0, Math.min(count, bytes.length - first)));
+            } else {
+                transfer(f, first, count, out);
+            }
+        }
+    }
+
+    private static boolean notModified(HttpServletRequest request, SchemaFiles.SchemaFile f) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return HttpUtil.matchesEtag(ifNoneMatch, f.getEtag());
+        }
+
+        long since = getDateHeader(request, "If-Modified-Since");
+        return since >= 0 && f.getLastModified() / 1000 <= since / 1000;
+    }
+
+    /**
+     * "If-Range" must be the strong ETag or a date not before Last-Modified.
+     */
+    private static boolean rangeApplies(HttpServletRequest request, SchemaFiles.SchemaFile f) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(f.getEtag());
+        }
+
+        long date = getDateHeader(request, "If-Range");
+        return date >= 0 && f.getLastModified() / 1000 <= date / 1000;
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException ex) {
+            return -1;
+        }
+    }
+
+    private byte[] load(final SchemaFiles.SchemaFile f) throws IOException {
+        try {
+            return cache.get(f, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return Files.toByteArray(f.getFile());
+                }
+            });
+        } catch (ExecutionException ex) {
+            throw new IOException("fail to read " + f.getFile(), ex.getCause());
+        }
+    }
+
+    private static void transfer(SchemaFiles.SchemaFile f, long position, long count,
+            ServletOutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileInputStream in = new FileInputStream(f.getFile())) {
+            FileChannel channel = in.getChannel();
+            long end = position + count;
+            while (position < end) {
+                long n = channel.transferTo(position, end - position, target);
+                if (n <= 0) {
+                    throw new IOException("file is truncated: " + f.getFile());
+                }
+                position += n;
+            }
         }
     }
 }
@@ -0,0 +1,129 @@
+package schema.registry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class AvroBlockIndexTest {
+
+    private static final String SCHEMA = "{\"type\":\"record\",\"name\":\"Event\",\"fields\":["
+            + "{\"name\":\"id\",\"type\":\"long\"},{\"name\":\"name\",\"type\":\"string\"}]}";
+    private static final int RECORDS = 500;
+
+    private File rootDirectory;
+    private AvroSchemaRegistry registry;
+    private byte[] dataFile;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        rootDirectory = Files.createTempDirectory("avro-block-index").toFile();
+        File dir = new File(rootDirectory, "event");
+        Assert.assertTrue(dir.mkdir());
+        Files.write(new File(dir, "event.avsc").toPath(), SCHEMA.getBytes(StandardCharsets.UTF_8));
+
+        SchemaInfo info = new SchemaInfo();
+        info.setType(AvroSchemaRegistry.TYPE);
+        info.setFilename("event.avsc");
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        schemas.put("event", info);
+        registry = new AvroSchemaRegistry(schemas, rootDirectory);
+
+        // a small sync interval gives many blocks
+        Schema schema = new Schema.Parser().parse(SCHEMA);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataFileWriter<GenericRecord> writer = new DataFileWriter<GenericRecord>(
+                new GenericDatumWriter<GenericRecord>(schema)).setSyncInterval(64).create(schema, out)) {
+            for (int i = 0; i < RECORDS; i++) {
+                GenericRecord record = new GenericData.Record(schema);
+                record.put("id", (long) i);
+                record.put("name", "record-" + i);
+                writer.append(record);
+            }
+        }
+        dataFile = out.toByteArray();
+    }
+
+    @AfterClass
+    public void tearDown() {
+        new File(rootDirectory, "event/event.avsc").delete();
+        new File(rootDirectory, "event").delete();
+        rootDirectory.delete();
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        AvroBlockIndex index;
+        try (AvroBlockIndex.BlockReader<GenericRecord> reader = new AvroBlockIndex.BlockReader<>(
+                new SeekableByteArrayInput(dataFile), new GenericDatumReader<GenericRecord>())) {
+            index = AvroBlockIndex.build(reader);
+
+            Assert.assertTrue(index.getBlockCount() > 10, "blocks: " + index.getBlockCount());
+            Assert.assertEquals(index.getRecordCount(), RECORDS);
+
+            // every recorded position starts a block whose first record is the indexed one
+            GenericRecord record = null;
+            for (int block = 0; block < index.getBlockCount(); block++) {
+                reader.seek(index.getPosition(block));
+                record = reader.next(record);
+                Assert.assertEquals(record.get("id"), index.getFirstRecord(block));
+            }
+        }
+
+        Assert.assertEquals(index.findBlock(-1), -1);
+        Assert.assertEquals(index.findBlock(RECORDS), -1);
+        Assert.assertEquals(index.findBlock(0), 0);
+    }
+
+    @Test
+    public void testPaging() throws IOException {
+        for (long offset : new long[]{0, 1, 63, 100, 257, 450, RECORDS - 1}) {
+            Assert.assertEquals(page("a", offset, 40), expected(offset, 40), "offset " + offset);
+        }
+
+        Assert.assertEquals(page("a", 480, -1), expected(480, 20));
+        Assert.assertEquals(page("a", RECORDS, 10), expected(0, 0));
+        Assert.assertEquals(page("a", 10, 0), expected(0, 0));
+    }
+
+    private List<Long> page(String key, long offset, long limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        registry.deserializeDataFile(new SeekableByteArrayInput(dataFile), key, out, offset, limit);
+
+        List<Long> ids = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            int i = line.indexOf("\"id\":");
+            if (i >= 0) {
+                ids.add(Long.parseLong(line.substring(i + 5, line.indexOf(',', i)).trim()));
+            }
+        }
+
+        return ids;
+    }
+
+    private static List<Long> expected(long offset, long limit) {
+        List<Long> ids = new ArrayList<>();
+        for (long i = offset; i < Math.min(RECORDS, offset + limit); i++) {
+            ids.add(i);
+        }
+
+        return ids;
+    }
+}
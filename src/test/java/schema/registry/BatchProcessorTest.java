@@ -0,0 +1,190 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class BatchProcessorTest {
+
+    private static final String SCHEMA = "{\"type\":\"record\",\"name\":\"Counter\","
+            + "\"fields\":[{\"name\":\"n\",\"type\":\"long\"}]}";
+
+    private File root;
+    private CentralSchemaRegistry registry;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        root = TestSchemas.createRoot(Collections.singletonMap("counter", SCHEMA));
+        registry = TestSchemas.createRegistry(root);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        TestSchemas.delete(root);
+    }
+
+    @Test
+    public void testFramingAndOrder() throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(request);
+        for (int i = 0; i < 50; ++i) {
+            BatchProcessor.writeEntry(out, BatchProcessor.ENCODE, "counter", null, json(i));
+        }
+        BatchProcessor.writeEntry(out, BatchProcessor.ENCODE, "unknown", "", json(0));
+        BatchProcessor.writeEntry(out, 'x', "counter", "", json(0));
+        BatchProcessor.writeEntry(out, BatchProcessor.ENCODE, "counter", "", "not json".getBytes(StandardCharsets.UTF_8));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<BatchProcessor.Result> encoded = process(
+                    new BatchProcessor(registry, null, executor, 3, 1024), request.toByteArray());
+            Assert.assertEquals(encoded.size(), 53);
+            Assert.assertEquals(encoded.get(50).getStatus(), BatchProcessor.SC_NOT_FOUND);
+            Assert.assertEquals(encoded.get(51).getStatus(), BatchProcessor.SC_BAD_REQUEST);
+            Assert.assertEquals(encoded.get(52).getStatus(), BatchProcessor.SC_BAD_REQUEST);
+
+            // decoding the encoded entries gives back the original order
+            request.reset();
+            for (int i = 0; i < 50; ++i) {
+                Assert.assertEquals(encoded.get(i).getStatus(), BatchProcessor.SC_OK);
+                BatchProcessor.writeEntry(out, BatchProcessor.DECODE, "counter", "", encoded.get(i).getBody());
+            }
+
+            List<BatchProcessor.Result> decoded = process(
+                    new BatchProcessor(registry, null, executor, 3, 1024), request.toByteArray());
+            Assert.assertEquals(decoded.size(), 50);
+            for (int i = 0; i < 50; ++i) {
+                Assert.assertEquals(decoded.get(i).getStatus(), BatchProcessor.SC_OK);
+                Assert.assertEquals(new String(decoded.get(i).getBody(), StandardCharsets.UTF_8),
+                        new String(json(i), StandardCharsets.UTF_8));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "bad payload length 100.*")
+    public void testEntryTooLarge() throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        BatchProcessor.writeEntry(new DataOutputStream(request), BatchProcessor.ENCODE, "counter", "",
+                new byte[100]);
+
+        BatchProcessor.readEntry(new DataInputStream(new ByteArrayInputStream(request.toByteArray())), 99);
+    }
+
+    /**
+     * Batches running in the executor that also converts their entries used
+     * to wait forever for entries queued behind themselves.
+     */
+    @Test(timeOut = 30000)
+    public void testMoreBatchesThanThreads() throws Exception {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(request);
+        for (int i = 0; i < 20; ++i) {
+            BatchProcessor.writeEntry(out, BatchProcessor.ENCODE, "counter", "", json(i));
+        }
+        final byte[] body = request.toByteArray();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<List<BatchProcessor.Result>>> batches = new ArrayList<>();
+            for (int i = 0; i < 6; ++i) {
+                batches.add(executor.submit(new Callable<List<BatchProcessor.Result>>() {
+                    @Override
+                    public List<BatchProcessor.Result> call() throws IOException {
+                        return process(new BatchProcessor(registry, null, executor, 4, 1024), body);
+                    }
+                }));
+            }
+
+            for (Future<List<BatchProcessor.Result>> batch : batches) {
+                List<BatchProcessor.Result> results = batch.get(20, TimeUnit.SECONDS);
+                Assert.assertEquals(results.size(), 20);
+                for (BatchProcessor.Result result : results) {
+                    Assert.assertEquals(result.getStatus(), BatchProcessor.SC_OK);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A batch waits for its own entries to free a permit, it doesn't
+     * reject them.
+     */
+    @Test(timeOut = 30000)
+    public void testBulkheads() throws IOException {
+        Properties config = new Properties();
+        config.setProperty("limit.avro.maxConcurrency", "1");
+        Bulkheads bulkheads = new Bulkheads(config);
+
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(request);
+        for (int i = 0; i < 20; ++i) {
+            BatchProcessor.writeEntry(out, BatchProcessor.ENCODE, "counter", "", json(i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (BatchProcessor.Result result : process(
+                    new BatchProcessor(registry, bulkheads, executor, 8, 1024), request.toByteArray())) {
+                Assert.assertEquals(result.getStatus(), BatchProcessor.SC_OK);
+            }
+            Assert.assertEquals(bulkheads.getTypeStats().get("avro").getInFlight(), 0);
+
+            // only permits held by other requests reject entries
+            SchemaInfo schema = registry.getSchemas().get("counter");
+            Bulkheads.Permit permit = bulkheads.tryAcquire("counter", schema, -1);
+            List<BatchProcessor.Result> results = process(
+                    new BatchProcessor(registry, bulkheads, executor, 8, 1024), request.toByteArray());
+            Assert.assertEquals(results.size(), 20);
+            for (BatchProcessor.Result result : results) {
+                Assert.assertEquals(result.getStatus(), BatchProcessor.SC_TOO_MANY_REQUESTS);
+            }
+
+            permit.release(0);
+            Assert.assertEquals(bulkheads.getTypeStats().get("avro").getInFlight(), 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<BatchProcessor.Result> process(BatchProcessor processor, byte[] request)
+            throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        processor.process(new ByteArrayInputStream(request), response, new HashMap<String, String[]>());
+
+        List<BatchProcessor.Result> results = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+        BatchProcessor.Result result;
+        while (null != (result = BatchProcessor.readResult(in))) {
+            results.add(result);
+        }
+
+        return results;
+    }
+
+    private static byte[] json(long n) {
+        return ("{\"n\":" + n + "}").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package schema.registry;
+
+import java.util.Properties;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class BulkheadsTest {
+
+    @Test
+    public void testConcurrencyLimit() {
+        SchemaInfo schema = schema("avro");
+        schema.setMaxConcurrency(2);
+        Bulkheads bulkheads = new Bulkheads(new Properties());
+
+        Bulkheads.Permit first = bulkheads.tryAcquire("a", schema, 10);
+        Bulkheads.Permit second = bulkheads.tryAcquire("a", schema, 10);
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        Assert.assertNull(bulkheads.tryAcquire("a", schema, 10));
+        // other schemas aren't affected
+        Assert.assertNotNull(bulkheads.tryAcquire("b", schema("avro"), 10));
+
+        Assert.assertEquals(bulkheads.getSchemaStats().get("a").getInFlight(), 2);
+        Assert.assertEquals(bulkheads.getSchemaStats().get("a").getRejected(), 1);
+        Assert.assertEquals(bulkheads.getRetryAfter("a", schema, 10), 1);
+
+        // releasing twice frees one slot only
+        first.release(10);
+        first.release(10);
+        Assert.assertNotNull(bulkheads.tryAcquire("a", schema, 10));
+        Assert.assertNull(bulkheads.tryAcquire("a", schema, 10));
+    }
+
+    @Test
+    public void testTypeConcurrencyLimit() {
+        Properties config = new Properties();
+        config.setProperty("limit.thrift.maxConcurrency", "1");
+        config.setProperty("retryAfter", "3");
+        Bulkheads bulkheads = new Bulkheads(config);
+
+        Bulkheads.Permit permit = bulkheads.tryAcquire("a", schema("thrift"), -1);
+        Assert.assertNotNull(permit);
+        Assert.assertNull(bulkheads.tryAcquire("b", schema("thrift"), -1));
+        Assert.assertNotNull(bulkheads.tryAcquire("c", schema("avro"), -1));
+        Assert.assertEquals(bulkheads.getRetryAfter("b", schema("thrift"), -1), 3);
+
+        Assert.assertEquals(bulkheads.getTypeStats().get("thrift").getRejected(), 1);
+        Assert.assertEquals(bulkheads.getSchemaStats().get("b").getRejected(), 1);
+
+        permit.release(100);
+        Assert.assertNotNull(bulkheads.tryAcquire("b", schema("thrift"), -1));
+    }
+
+    @Test
+    public void testByteRateLimit() {
+        SchemaInfo schema = schema("avro");
+        schema.setMaxBytesPerSecond(1000L);
+        Bulkheads bulkheads = new Bulkheads(new Properties());
+
+        // the bucket starts full with one second of bytes
+        bulkheads.tryAcquire("a", schema, 600).release(600);
+        bulkheads.tryAcquire("a", schema, 400).release(400);
+        Assert.assertNull(bulkheads.tryAcquire("a", schema, 500));
+        Assert.assertEquals(bulkheads.getRetryAfter("a", schema, 500), 1);
+
+        // a request of unknown size is charged on release and may take
+        // the bucket far below zero, retrying is pointless for seconds
+        SchemaInfo other = schema("avro");
+        other.setMaxBytesPerSecond(1000L);
+        bulkheads.tryAcquire("b", other, -1).release(10000);
+        Assert.assertNull(bulkheads.tryAcquire("b", other, 100));
+        int retryAfter = bulkheads.getRetryAfter("b", other, 100);
+        Assert.assertTrue(retryAfter >= 9 && retryAfter <= 10, "retry after " + retryAfter);
+    }
+
+    @Test
+    public void testTypeLimitsResolvedOnce() {
+        Properties config = new Properties();
+        config.setProperty("limit.protobuf.maxBytesPerSecond", "1000");
+        Bulkheads bulkheads = new Bulkheads(config);
+        // configured types are listed before any request
+        Assert.assertEquals(bulkheads.getTypeStats().get("protobuf").getInFlight(), 0);
+
+        // later configuration changes aren't seen
+        config.setProperty("limit.protobuf.maxConcurrency", "1");
+        Assert.assertNotNull(bulkheads.tryAcquire("a", schema("protobuf"), 0));
+        Assert.assertNotNull(bulkheads.tryAcquire("b", schema("protobuf"), 1000));
+        Assert.assertNull(bulkheads.tryAcquire("c", schema("protobuf"), 1));
+        Assert.assertEquals(bulkheads.getRetryAfter("c", schema("protobuf"), 1), 1);
+        Assert.assertEquals(bulkheads.getTypeStats().get("protobuf").getInFlight(), 2);
+        Assert.assertEquals(bulkheads.getTypeStats().get("protobuf").getRejected(), 1);
+    }
+
+    private static SchemaInfo schema(String type) {
+        SchemaInfo schema = new SchemaInfo();
+        schema.setType(type);
+        return schema;
+    }
+}
@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
@@ -32,6 +33,45 @@ public class CentralSchemaRegistryTest {
                 person);
     }
 
+    @Test
+    public void testGeneratedPayloads() throws IOException, ClassNotFoundException {
+        CentralSchemaRegistry registry = new CentralSchemaRegistry(new File("schemas.json"), new File("generated"));
+        PayloadGenerator generator = new PayloadGenerator(registry, new PayloadGenerator.Options(), 1);
+
+        for (PayloadGenerator.Payload p : generator.generateAll(3, new HashMap<String, String[]>())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            registry.serialize(p.getId(), p.getMessageName(), new ByteArrayInputStream(p.getText()), out,
+                    new HashMap<String, String[]>());
+
+            Assert.assertEquals(out.toByteArray(), p.getBinary(), p.getId() + " " + p.getMessageName());
+        }
+    }
+
+    @Test
+    public void testResolvedCodec() throws IOException, ClassNotFoundException {
+        CentralSchemaRegistry registry = new CentralSchemaRegistry(new File("schemas.json"), new File("generated"));
+        SchemaCodec codec = registry.resolve("protobuf-example-addressbook", "Person",
+                new HashMap<String, String[]>());
+
+        byte[] text = "name: \"my name\"\nid: 1\n".getBytes(StandardCharsets.UTF_8);
+        byte[] binary = codec.encode(text);
+        Assert.assertEquals(codec.decode(binary), text);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(binary.length);
+        direct.put(binary).flip();
+        ByteBuffer decoded = codec.decode(direct);
+        Assert.assertFalse(direct.hasRemaining());
+        Assert.assertEquals(decoded, ByteBuffer.wrap(text));
+
+        registry.retire();
+        try {
+            codec.encode(text);
+            Assert.fail("codec of retired generation still works");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
     private String query(SchemaRegistry registry, String id, String messageName,
             String text, String filters)
             throws IOException {
@@ -0,0 +1,267 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import com.google.common.io.ByteStreams;
+import com.ning.compress.lzf.LZFInputStream;
+import com.ning.compress.lzf.LZFOutputStream;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CodecPoolsTest {
+
+    private static final int[] SIZES = {0, 1, 1000, 65535, 65536, 300001};
+
+    @Test
+    public void testGzipSameFormatAsJdk() throws IOException {
+        for (int size : SIZES) {
+            byte[] data = FilterStreamUtilTest.random(size);
+            for (String filters : new String[]{"gzip", "gzip:1", "gzip:9"}) {
+                Assert.assertEquals(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(
+                        FilterStreamUtilTest.encode(data, filters, 7777)))), data, filters + " " + size);
+            }
+
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write(data);
+            }
+            Assert.assertEquals(FilterStreamUtilTest.decode(gzipped.toByteArray(), "gzip"), data, "size " + size);
+        }
+    }
+
+    @Test
+    public void testGzipConcatenatedMembers() throws IOException {
+        byte[] first = FilterStreamUtilTest.random(5000);
+        byte[] second = FilterStreamUtilTest.random(70000);
+
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(FilterStreamUtilTest.encode(first, "gzip", 8192));
+        try (OutputStream out = new GZIPOutputStream(members)) {
+            out.write(second);
+        }
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        Assert.assertEquals(FilterStreamUtilTest.decode(members.toByteArray(), "gzip"), expected.toByteArray());
+    }
+
+    @Test
+    public void testDeflateSameFormatAsJdk() throws IOException {
+        for (int size : SIZES) {
+            byte[] data = FilterStreamUtilTest.random(size);
+            Assert.assertEquals(ByteStreams.toByteArray(new InflaterInputStream(new ByteArrayInputStream(
+                    FilterStreamUtilTest.encode(data, "deflate:6", 1000)))), data, "size " + size);
+
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            try (OutputStream out = new DeflaterOutputStream(deflated)) {
+                out.write(data);
+            }
+            Assert.assertEquals(FilterStreamUtilTest.decode(deflated.toByteArray(), "deflate"), data,
+                    "size " + size);
+        }
+    }
+
+    @Test
+    public void testLz4AndLzfSameFormatAsLibraries() throws IOException {
+        byte[] data = FilterStreamUtilTest.random(300001);
+
+        Assert.assertEquals(ByteStreams.toByteArray(new LZ4BlockInputStream(new ByteArrayInputStream(
+                FilterStreamUtilTest.encode(data, "lz4:hc:4k", 1000)))), data);
+        Assert.assertEquals(ByteStreams.toByteArray(new LZFInputStream(new ByteArrayInputStream(
+                FilterStreamUtilTest.encode(data, "lzf", 1000)))), data);
+
+        ByteArrayOutputStream lz4 = new ByteArrayOutputStream();
+        try (OutputStream out = new LZ4BlockOutputStream(lz4)) {
+            out.write(data);
+        }
+        Assert.assertEquals(FilterStreamUtilTest.decode(lz4.toByteArray(), "lz4"), data);
+
+        ByteArrayOutputStream lzf = new ByteArrayOutputStream();
+        try (OutputStream out = new LZFOutputStream(lzf)) {
+            out.write(data);
+        }
+        Assert.assertEquals(FilterStreamUtilTest.decode(lzf.toByteArray(), "lzf"), data);
+    }
+
+    @Test
+    public void testContextsReused() throws IOException {
+        byte[] data = FilterStreamUtilTest.random(10000);
+        byte[] encoded = FilterStreamUtilTest.encode(data, "gzip:3", 8192);
+        FilterStreamUtilTest.decode(encoded, "gzip:3");
+
+        CodecPool<Deflater> deflaters = CodecPools.getDeflaterPool(3, true);
+        CodecPool<Inflater> inflaters = CodecPools.getInflaterPool(true);
+        long created = deflaters.getCreated() + inflaters.getCreated();
+        long borrowed = deflaters.getBorrowed() + inflaters.getBorrowed();
+
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals(FilterStreamUtilTest.decode(
+                    FilterStreamUtilTest.encode(data, "gzip:3", 8192), "gzip"), data);
+        }
+
+        Assert.assertEquals(deflaters.getBorrowed() + inflaters.getBorrowed(), borrowed + 20);
+        Assert.assertEquals(deflaters.getCreated() + inflaters.getCreated(), created);
+        Assert.assertEquals(deflaters.getInUse(), 0);
+        Assert.assertEquals(inflaters.getInUse(), 0);
+    }
+
+    @Test
+    public void testContextReleasedOnBadHeader() throws IOException {
+        CodecPool<Inflater> inflaters = CodecPools.getInflaterPool(true);
+        try {
+            FilterStreamUtilTest.decode("not gzip at all".getBytes(StandardCharsets.UTF_8), "gzip");
+            Assert.fail("bad header is accepted");
+        } catch (ZipException ex) {
+            // expected
+        }
+
+        Assert.assertEquals(inflaters.getInUse(), 0);
+    }
+
+    @Test
+    public void testFailedChainReleasesContexts() throws IOException {
+        byte[] data = FilterStreamUtilTest.random(10000);
+        CodecPool<Deflater> deflaters = CodecPools.getDeflaterPool(4, true);
+        CodecPool<Inflater> inflaters = CodecPools.getInflaterPool(true);
+        CodecPool<Checksum> checksums = CodecPools.getLZ4ChecksumPool();
+
+        // a bad filter late in the list is found before anything is borrowed
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long borrowed = deflaters.getBorrowed();
+        try {
+            FilterStreamUtil.filter(out, "gzip:4,bogus");
+            Assert.fail("bogus filter is accepted");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertEquals(ex.getMessage(), "unknown filter bogus");
+        }
+        Assert.assertEquals(deflaters.getBorrowed(), borrowed);
+        Assert.assertEquals(out.size(), 0);
+
+        // inner gzip finds no gzip header after the outer stages
+        for (String filters : new String[]{"gzip,gzip", "lz4,gzip"}) {
+            final AtomicInteger closed = new AtomicInteger();
+            InputStream in = new FilterInputStream(new ByteArrayInputStream(
+                    FilterStreamUtilTest.encode(data, filters.substring(0, filters.indexOf(',')), 8192))) {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+            try {
+                FilterStreamUtil.filter(in, filters);
+                Assert.fail("bad header is accepted");
+            } catch (ZipException ex) {
+                // expected
+            }
+
+            Assert.assertEquals(inflaters.getInUse(), 0, filters);
+            Assert.assertEquals(checksums.getInUse(), 0, filters);
+            // the caller's stream is left for the caller to close
+            Assert.assertEquals(closed.get(), 0, filters);
+        }
+
+        // so is the pooled buffer of a skip running out of input
+        BufferPool buffers = FilterStreamUtil.getPool();
+        FilterStreamUtilTest.decode(data, "skip5");
+        int pooled = buffers.getPooled();
+        try {
+            FilterStreamUtil.filter(new ByteArrayInputStream(new byte[10]), "skip100");
+            Assert.fail("skipped past the end");
+        } catch (EOFException ex) {
+            // expected
+        }
+        Assert.assertEquals(buffers.getPooled(), pooled);
+    }
+
+    @Test
+    public void testIdleContextsBounded() {
+        final AtomicInteger live = new AtomicInteger();
+        CodecPool<Object> pool = new CodecPool<>("test", new CodecPool.Factory<Object>() {
+            @Override
+            public Object create() {
+                live.incrementAndGet();
+                return new Object();
+            }
+
+            @Override
+            public void reset(Object context) {
+            }
+
+            @Override
+            public void destroy(Object context) {
+                live.decrementAndGet();
+            }
+        }, 2, 100, true);
+
+        List<Object> borrowed = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            borrowed.add(pool.borrow());
+        }
+        Assert.assertEquals(pool.getInUse(), 5);
+        Assert.assertEquals(pool.getEstimatedBytes(), 500);
+
+        for (Object context : borrowed) {
+            pool.release(context);
+        }
+        Assert.assertEquals(pool.getInUse(), 0);
+        Assert.assertEquals(pool.getIdle(), 2);
+        Assert.assertEquals(pool.getDestroyed(), 3);
+        Assert.assertEquals(live.get(), 2);
+
+        // idle contexts are handed out before new ones are created
+        pool.borrow();
+        pool.borrow();
+        Assert.assertEquals(pool.getCreated(), 5);
+        pool.borrow();
+        Assert.assertEquals(pool.getCreated(), 6);
+    }
+
+    /**
+     * A context whose reset fails isn't pooled.
+     */
+    @Test
+    public void testFailedResetDestroys() {
+        final AtomicInteger destroyed = new AtomicInteger();
+        CodecPool<InputStream> pool = new CodecPool<>("test", new CodecPool.Factory<InputStream>() {
+            @Override
+            public InputStream create() {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            @Override
+            public void reset(InputStream context) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public void destroy(InputStream context) {
+                destroyed.incrementAndGet();
+            }
+        }, 2, 100, false);
+
+        pool.release(pool.borrow());
+        Assert.assertEquals(pool.getIdle(), 0);
+        Assert.assertEquals(destroyed.get(), 1);
+    }
+}
@@ -0,0 +1,162 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.google.common.io.ByteStreams;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xerial.snappy.SnappyInputStream;
+import org.xerial.snappy.SnappyOutputStream;
+
+public class FilterStreamUtilTest {
+
+    /**
+     * Around the 3 byte groups, the 57 byte lines and the 64KB buffers.
+     */
+    private static final int[] SIZES = {0, 1, 2, 3, 4, 56, 57, 58, 171, 65535, 65536, 200001};
+
+    @Test
+    public void testBase64SameAsCommonsCodec() throws IOException {
+        for (int size : SIZES) {
+            byte[] data = random(size);
+            for (int chunk : new int[]{1, 7, 8192, Integer.MAX_VALUE}) {
+                Assert.assertEquals(encode(data, "base64", chunk), baseline(data, true), "size " + size);
+                Assert.assertEquals(encode(data, "base64raw", chunk), baseline(data, false), "size " + size);
+            }
+
+            Assert.assertEquals(decode(baseline(data, true), "base64"), data, "size " + size);
+            Assert.assertEquals(decode(baseline(data, false), "base64raw"), data, "size " + size);
+
+            // unchunked output is readable by the baseline decoder
+            Assert.assertEquals(ByteStreams.toByteArray(new Base64InputStream(
+                    new ByteArrayInputStream(encode(data, "base64raw", 8192)))), data, "size " + size);
+        }
+    }
+
+    @Test
+    public void testChainsReadableByBaselineStreams() throws IOException {
+        byte[] data = random(300000);
+
+        // the first filter is the outermost layer of the encoded bytes
+        InputStream in = new SnappyInputStream(new Base64InputStream(
+                new ByteArrayInputStream(encode(data, "base64,snappy", 4096))));
+        Assert.assertEquals(ByteStreams.toByteArray(in), data);
+
+        ByteArrayOutputStream baseline = new ByteArrayOutputStream();
+        try (OutputStream out = new SnappyOutputStream(new Base64OutputStream(baseline))) {
+            out.write(data);
+        }
+        Assert.assertEquals(decode(baseline.toByteArray(), "base64,snappy"), data);
+
+        for (String filters : new String[]{"base64,deflate,gzip", "lz4,base64raw", "lzf,bzip2:1", "identity"}) {
+            Assert.assertEquals(decode(encode(data, filters, 1000), filters), data, filters);
+        }
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        byte[] data = "header\0body".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(read(data, "skip0"), "body");
+        Assert.assertEquals(read(data, "skip3"), "der\0body");
+        Assert.assertEquals(read(data, "skip7,skip1"), "ody");
+
+        // skipping runs before decoding
+        byte[] encoded = encode("payload".getBytes(StandardCharsets.UTF_8), "base64", 8192);
+        byte[] framed = new byte[encoded.length + 4];
+        System.arraycopy(encoded, 0, framed, 4, encoded.length);
+        Assert.assertEquals(read(framed, "skip4,base64"), "payload");
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testSkipPastEnd() throws IOException {
+        decode(new byte[10], "skip11");
+    }
+
+    @Test
+    public void testUnknownFilters() throws IOException {
+        for (String filters : new String[]{"rot13", "skip", "skip-1", "skipx", "gzip:10", "base64:1",
+                "lz4:hc:hc", "lz4:1g", "bzip2:0"}) {
+            try {
+                FilterStreamUtil.filter(new ByteArrayInputStream(new byte[0]), filters);
+                if (!filters.startsWith("skip")) {
+                    FilterStreamUtil.filter(new ByteArrayOutputStream(), filters);
+                }
+                Assert.fail("accepted " + filters);
+            } catch (IllegalArgumentException ex) {
+                Assert.assertTrue(ex.getMessage().startsWith("unknown filter"), ex.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testBuffersReturnedOnClose() throws IOException {
+        byte[] data = random(100000);
+        decode(encode(data, "base64", 8192), "base64");
+
+        BufferPool pool = FilterStreamUtil.getPool();
+        long allocated = pool.getAllocated();
+        long acquired = pool.getAcquired();
+        for (int i = 0; i < 10; ++i) {
+            decode(encode(data, "base64,lzf", 8192), "base64,lzf");
+        }
+
+        Assert.assertTrue(pool.getAcquired() > acquired);
+        Assert.assertEquals(pool.getAllocated(), allocated);
+    }
+
+    static byte[] encode(byte[] data, String filters, int chunk) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = FilterStreamUtil.filter(buffer, filters)) {
+            for (int i = 0; i < data.length; i += chunk) {
+                int len = Math.min(chunk, data.length - i);
+                if (len == 1) {
+                    out.write(data[i]);
+                } else {
+                    out.write(data, i, len);
+                }
+            }
+        }
+
+        return buffer.toByteArray();
+    }
+
+    static byte[] decode(byte[] data, String filters) throws IOException {
+        try (InputStream in = FilterStreamUtil.filter(new ByteArrayInputStream(data), filters)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    static byte[] random(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(size);
+        // half random, half repeated so codecs have something to compress
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) (i % 2 == 0 ? random.nextInt() : i / 64);
+        }
+
+        return data;
+    }
+
+    private static String read(byte[] data, String filters) throws IOException {
+        return new String(decode(data, filters), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] baseline(byte[] data, boolean chunked) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = chunked ? new Base64OutputStream(buffer)
+                : new Base64OutputStream(buffer, true, 0, null)) {
+            out.write(data);
+        }
+
+        return buffer.toByteArray();
+    }
+}
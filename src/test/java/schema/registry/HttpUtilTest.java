@@ -0,0 +1,214 @@
+package schema.registry;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class HttpUtilTest {
+
+    private static final long[] UNSATISFIABLE = {-1, -1};
+    private static final List<String> SUPPORTED = Arrays.asList("gzip", "deflate", "lz4");
+
+    @Test
+    public void testParseRange() {
+        Assert.assertEquals(HttpUtil.parseRange("bytes=0-9", 100), new long[]{0, 9});
+        Assert.assertEquals(HttpUtil.parseRange("bytes=90-", 100), new long[]{90, 99});
+        Assert.assertEquals(HttpUtil.parseRange("bytes=-10", 100), new long[]{90, 99});
+        Assert.assertEquals(HttpUtil.parseRange("bytes= 5-5", 100), new long[]{5, 5});
+
+        // clamped to the entity
+        Assert.assertEquals(HttpUtil.parseRange("bytes=50-1000", 100), new long[]{50, 99});
+        Assert.assertEquals(HttpUtil.parseRange("bytes=-1000", 100), new long[]{0, 99});
+    }
+
+    @Test
+    public void testParseUnsatisfiableRange() {
+        Assert.assertEquals(HttpUtil.parseRange("bytes=100-", 100), UNSATISFIABLE);
+        Assert.assertEquals(HttpUtil.parseRange("bytes=100-200", 100), UNSATISFIABLE);
+        Assert.assertEquals(HttpUtil.parseRange("bytes=-0", 100), UNSATISFIABLE);
+        Assert.assertEquals(HttpUtil.parseRange("bytes=-5", 0), UNSATISFIABLE);
+        Assert.assertEquals(HttpUtil.parseRange("bytes=0-", 0), UNSATISFIABLE);
+    }
+
+    @Test
+    public void testParseIgnoredRange() {
+        // the whole entity is sent for these
+        Assert.assertNull(HttpUtil.parseRange(null, 100));
+        Assert.assertNull(HttpUtil.parseRange("items=0-9", 100));
+        Assert.assertNull(HttpUtil.parseRange("bytes=0-9,20-29", 100));
+        Assert.assertNull(HttpUtil.parseRange("bytes=9-0", 100));
+        Assert.assertNull(HttpUtil.parseRange("bytes=5", 100));
+        Assert.assertNull(HttpUtil.parseRange("bytes=a-b", 100));
+        Assert.assertNull(HttpUtil.parseRange("bytes=-", 100));
+    }
+
+    @Test
+    public void testMatchesEtag() {
+        String etag = "\"abc\"";
+        Assert.assertTrue(HttpUtil.matchesEtag("\"abc\"", etag));
+        Assert.assertTrue(HttpUtil.matchesEtag("W/\"abc\"", etag));
+        Assert.assertTrue(HttpUtil.matchesEtag("\"x\", \"abc\"", etag));
+        Assert.assertTrue(HttpUtil.matchesEtag("*", etag));
+
+        Assert.assertFalse(HttpUtil.matchesEtag(null, etag));
+        Assert.assertFalse(HttpUtil.matchesEtag("", etag));
+        Assert.assertFalse(HttpUtil.matchesEtag("abc", etag));
+        Assert.assertFalse(HttpUtil.matchesEtag("\"abc-gzip\"", etag));
+        Assert.assertFalse(HttpUtil.matchesEtag("\"x\",\"y\"", etag));
+    }
+
+    @Test
+    public void testNegotiateEncoding() {
+        Assert.assertEquals(HttpUtil.negotiateEncoding("gzip", SUPPORTED), "gzip");
+        Assert.assertEquals(HttpUtil.negotiateEncoding("br, GZIP", SUPPORTED), "gzip");
+        Assert.assertEquals(HttpUtil.negotiateEncoding("gzip;q=0.5, deflate", SUPPORTED), "deflate");
+        Assert.assertEquals(HttpUtil.negotiateEncoding("gzip ; q=0.9, lz4;q=1.0", SUPPORTED), "lz4");
+
+        // ties go to the first listed
+        Assert.assertEquals(HttpUtil.negotiateEncoding("deflate, gzip", SUPPORTED), "deflate");
+        Assert.assertEquals(HttpUtil.negotiateEncoding("lz4;q=0.5, gzip;q=0.5", SUPPORTED), "lz4");
+
+        // "*" is the first supported coding not listed
+        Assert.assertEquals(HttpUtil.negotiateEncoding("*", SUPPORTED), "gzip");
+        Assert.assertEquals(HttpUtil.negotiateEncoding("gzip;q=0, *", SUPPORTED), "deflate");
+        Assert.assertEquals(HttpUtil.negotiateEncoding("*;q=0.1, lz4;q=0.5", SUPPORTED), "lz4");
+
+        Assert.assertNull(HttpUtil.negotiateEncoding(null, SUPPORTED));
+        Assert.assertNull(HttpUtil.negotiateEncoding("", SUPPORTED));
+        Assert.assertNull(HttpUtil.negotiateEncoding("identity, br", SUPPORTED));
+        Assert.assertNull(HttpUtil.negotiateEncoding("gzip;q=0", SUPPORTED));
+        Assert.assertNull(HttpUtil.negotiateEncoding("gzip;q=high", SUPPORTED));
+        Assert.assertNull(HttpUtil.negotiateEncoding("gzip;q=0, deflate;q=0, lz4;q=0, *", SUPPORTED));
+    }
+
+    @Test
+    public void testGetDecodingFilters() {
+        Assert.assertEquals(HttpUtil.getDecodingFilters(null), "");
+        Assert.assertEquals(HttpUtil.getDecodingFilters("identity"), "");
+        Assert.assertEquals(HttpUtil.getDecodingFilters("x-gzip"), "gzip");
+        Assert.assertEquals(HttpUtil.getDecodingFilters("GZIP"), "gzip");
+
+        // the last applied coding is decoded first
+        Assert.assertEquals(HttpUtil.getDecodingFilters("gzip, identity, deflate"), "deflate,gzip");
+        Assert.assertEquals(HttpUtil.getDecodingFilters("snappy,lz4"), "lz4,snappy");
+
+        Assert.assertNull(HttpUtil.getDecodingFilters("br"));
+        Assert.assertNull(HttpUtil.getDecodingFilters("gzip, compress"));
+    }
+
+    @Test
+    public void testIsCompressed() {
+        Assert.assertTrue(HttpUtil.isCompressed("gzip"));
+        Assert.assertTrue(HttpUtil.isCompressed("LZ4:hc, base64"));
+        Assert.assertTrue(HttpUtil.isCompressed("auto"));
+
+        // only the outermost filter counts
+        Assert.assertFalse(HttpUtil.isCompressed("base64,gzip"));
+        Assert.assertFalse(HttpUtil.isCompressed("identity"));
+        Assert.assertFalse(HttpUtil.isCompressed(""));
+        Assert.assertFalse(HttpUtil.isCompressed(null));
+    }
+
+    @Test
+    public void testNegotiateContentCoding() {
+        Assert.assertEquals(HttpUtil.negotiateContentCoding("br, gzip"), "gzip");
+        Assert.assertEquals(HttpUtil.negotiateContentCoding("x-gzip"), "x-gzip");
+        Assert.assertEquals(HttpUtil.negotiateContentCoding("*"), "gzip");
+        Assert.assertEquals(HttpUtil.getCodingFilter("x-gzip"), "gzip");
+        Assert.assertNull(HttpUtil.negotiateContentCoding("br"));
+        Assert.assertNull(HttpUtil.getCodingFilter("br"));
+    }
+
+    @Test
+    public void testEncodeContent() throws IOException {
+        byte[] small = FilterStreamUtilTest.random(100);
+        byte[] large = FilterStreamUtilTest.random(5000);
+
+        // small responses aren't worth compressing
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        Assert.assertEquals(encode("gzip", null, response, small), small);
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        verify(response, never()).setHeader(anyString(), anyString());
+
+        response = mock(HttpServletResponse.class);
+        byte[] gzipped = encode("gzip;q=0.5, deflate;q=0.1", null, response, large);
+        verify(response).setHeader("Content-Encoding", "gzip");
+        Assert.assertEquals(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))), large);
+
+        response = mock(HttpServletResponse.class);
+        byte[] deflated = encode("br, deflate", "base64", response, large);
+        verify(response).setHeader("Content-Encoding", "deflate");
+        Assert.assertEquals(ByteStreams.toByteArray(new InflaterInputStream(new ByteArrayInputStream(deflated))),
+                large);
+
+        response = mock(HttpServletResponse.class);
+        Assert.assertEquals(encode("br", null, response, large), large);
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        verify(response, never()).setHeader(anyString(), anyString());
+
+        // nothing to negotiate when the "f" filters already compress
+        response = mock(HttpServletResponse.class);
+        Assert.assertEquals(encode("gzip", "snappy", response, large), large);
+        verify(response, never()).addHeader(anyString(), anyString());
+        verify(response, never()).setHeader(anyString(), anyString());
+    }
+
+    @Test
+    public void testDecodeContent() throws IOException {
+        byte[] data = FilterStreamUtilTest.random(5000);
+        byte[] encoded = FilterStreamUtilTest.encode(FilterStreamUtilTest.encode(data, "deflate", 8192),
+                "gzip", 8192);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Content-Encoding")).thenReturn("deflate, gzip");
+        try (InputStream in = HttpUtil.decodeContent(request, new ByteArrayInputStream(encoded))) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+        }
+
+        when(request.getHeader("Content-Encoding")).thenReturn("br");
+        try {
+            HttpUtil.decodeContent(request, new ByteArrayInputStream(encoded));
+            Assert.fail("br is decoded");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertEquals(ex.getMessage(), "unsupported Content-Encoding");
+        }
+    }
+
+    /**
+     * @return bytes written through {@link HttpUtil#encodeContent} with
+     * minimum size 1000, in chunks of 7 bytes
+     */
+    private static byte[] encode(String acceptEncoding, String filters, HttpServletResponse response, byte[] data)
+            throws IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = HttpUtil.encodeContent(request, response, buffer, filters, 1000)) {
+            for (int i = 0; i < data.length; i += 7) {
+                out.write(data, i, Math.min(7, data.length - i));
+            }
+        }
+
+        return buffer.toByteArray();
+    }
+}
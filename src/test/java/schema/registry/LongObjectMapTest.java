@@ -0,0 +1,51 @@
+package schema.registry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void testPutGet() {
+        LongObjectMap<String> map = new LongObjectMap<>(2);
+        Assert.assertNull(map.get(0));
+
+        Assert.assertNull(map.put(0, "zero"));
+        Assert.assertNull(map.put(-1, "minus one"));
+        Assert.assertNull(map.put(Long.MIN_VALUE, "min"));
+        Assert.assertEquals(map.put(0, "ZERO"), "zero");
+
+        Assert.assertEquals(map.size(), 3);
+        Assert.assertEquals(map.get(0), "ZERO");
+        Assert.assertEquals(map.get(-1), "minus one");
+        Assert.assertEquals(map.get(Long.MIN_VALUE), "min");
+        Assert.assertNull(map.get(1));
+    }
+
+    @Test
+    public void testRehash() {
+        // keys differing only in high bits still spread and survive growing
+        LongObjectMap<Long> map = new LongObjectMap<>(1);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            long key = i % 2 == 0 ? (long) i << 32 : random.nextLong();
+            map.put(key, key);
+            expected.put(key, key);
+        }
+
+        Assert.assertEquals(map.size(), expected.size());
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            Assert.assertEquals(map.get(e.getKey()), e.getValue());
+        }
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testNullValue() {
+        new LongObjectMap<String>(4).put(1, null);
+    }
+}
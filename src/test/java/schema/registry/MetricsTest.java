@@ -0,0 +1,62 @@
+package schema.registry;
+
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void testSeriesLookup() {
+        Metrics metrics = new Metrics(100, false);
+        metrics.recordConversion(Metrics.ENCODE, "avro", "a", null, "GZIP", 2000, 10, 5, false);
+        metrics.recordConversion(Metrics.ENCODE, "avro", "a", "", "gzip", 3000, 10, 5, true);
+        metrics.recordConversion(Metrics.DECODE, "avro", "a", null, "gzip", 4000, 5, 10, false);
+        metrics.recordRequest("/e", 200, 5000, 10, 5);
+        metrics.recordRequest("/e", 200, 5000, 10, 5);
+        metrics.recordRequest("/e", 999, 5000, 10, 5);
+
+        Map<String, Metrics.Series> conversions = metrics.getConversions().getSeries();
+        Assert.assertEquals(conversions.keySet().toString(),
+                "[[decode, avro, a, , gzip], [encode, avro, a, , gzip]]");
+        Metrics.Series encode = conversions.get("[encode, avro, a, , gzip]");
+        Assert.assertEquals(encode.getCount(), 2);
+        Assert.assertEquals(encode.getErrors(), 1);
+        Assert.assertEquals(encode.getBytesIn(), 20);
+
+        Map<String, Metrics.Series> requests = metrics.getRequests().getSeries();
+        Assert.assertEquals(requests.keySet().toString(), "[[/e, 200], [/e, 999]]");
+        Assert.assertEquals(requests.get("[/e, 200]").getCount(), 2);
+    }
+
+    @Test
+    public void testOtherSeries() {
+        Metrics metrics = new Metrics(2, false);
+        metrics.recordConversion(Metrics.ENCODE, "avro", "a", null, null, 1000, 1, 1, false);
+        metrics.recordConversion(Metrics.ENCODE, "avro", "b", null, null, 1000, 1, 1, false);
+        for (String id : new String[]{"c", "d", "a", "e"}) {
+            metrics.recordConversion(Metrics.ENCODE, "avro", id, "M", "gzip", 1000, 1, 1, false);
+        }
+
+        // label combinations beyond the bound share one "other" series
+        Map<String, Metrics.Series> series = metrics.getConversions().getSeries();
+        Assert.assertEquals(series.keySet().toString(),
+                "[[encode, avro, a, , ], [encode, avro, b, , ], [encode, avro, other, other, other]]");
+        Assert.assertEquals(series.get("[encode, avro, a, , ]").getCount(), 1);
+        Assert.assertEquals(series.get("[encode, avro, other, other, other]").getCount(), 4);
+    }
+
+    @Test
+    public void testBuckets() {
+        Assert.assertEquals(Metrics.bucket(0), 0);
+        Assert.assertEquals(Metrics.bucket(1023), 0);
+        Assert.assertEquals(Metrics.bucket(1024), 1);
+        Assert.assertEquals(Metrics.bucket(Long.MAX_VALUE), Metrics.BUCKETS - 1);
+        for (long nanos = 1024; nanos < (1L << (Metrics.MAX_EXPONENT + 1)); nanos = nanos * 5 / 4 + 1) {
+            int bucket = Metrics.bucket(nanos);
+            Assert.assertTrue(nanos < Metrics.upperBound(bucket), String.valueOf(nanos));
+            Assert.assertTrue(nanos >= Metrics.upperBound(bucket - 1), String.valueOf(nanos));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final int[] SIZES = {0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 10 * CHUNK_SIZE + 17};
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReadableByGzipInputStream() throws IOException {
+        for (int size : SIZES) {
+            byte[] data = FilterStreamUtilTest.random(size);
+            for (int level : new int[]{Deflater.DEFAULT_COMPRESSION, 0, 1, 9}) {
+                for (int maxInFlight : new int[]{1, 6}) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(buffer, level, CHUNK_SIZE,
+                            executor, maxInFlight)) {
+                        write(out, data, 5000);
+                    }
+
+                    Assert.assertEquals(gunzip(buffer.toByteArray()), data,
+                            "size " + size + " level " + level + " maxInFlight " + maxInFlight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushing ends a chunk early, so the next chunk has a short dictionary.
+     */
+    @Test
+    public void testFlushMidChunk() throws IOException {
+        byte[] data = FilterStreamUtilTest.random(5 * CHUNK_SIZE);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(buffer, 6, CHUNK_SIZE, executor, 4)) {
+            for (int i = 0; i < data.length; i += 1000) {
+                out.write(data, i, Math.min(1000, data.length - i));
+                if (i % 7 == 0) {
+                    out.flush();
+                }
+            }
+        }
+
+        Assert.assertEquals(gunzip(buffer.toByteArray()), data);
+    }
+
+    @Test
+    public void testCompressedInCallerWhenRejected() throws IOException {
+        byte[] data = FilterStreamUtilTest.random(4 * CHUNK_SIZE + 3);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(buffer, 6, CHUNK_SIZE, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, 2)) {
+            write(out, data, 1);
+        }
+
+        Assert.assertEquals(gunzip(buffer.toByteArray()), data);
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        byte[] data = FilterStreamUtilTest.random(300001);
+        Assert.assertEquals(gunzip(FilterStreamUtilTest.encode(data, "pgzip", 7777)), data);
+        Assert.assertEquals(gunzip(FilterStreamUtilTest.encode(data, "pgzip:1", 7777)), data);
+
+        // and by the pooled gzip reader
+        Assert.assertEquals(FilterStreamUtilTest.decode(FilterStreamUtilTest.encode(data, "pgzip", 7777), "gzip"),
+                data);
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "stream is closed")
+    public void testWriteAfterClose() throws IOException {
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), 6, CHUNK_SIZE,
+                executor, 2);
+        out.close();
+        out.close();
+        out.write(1);
+    }
+
+    private static void write(ParallelGzipOutputStream out, byte[] data, int chunk) throws IOException {
+        for (int i = 0; i < data.length; i += chunk) {
+            int len = Math.min(chunk, data.length - i);
+            if (len == 1) {
+                out.write(data[i]);
+            } else {
+                out.write(data, i, len);
+            }
+        }
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped)));
+    }
+}
@@ -0,0 +1,200 @@
+package schema.registry;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ResponseCacheTest {
+
+    private final AtomicInteger conversions = new AtomicInteger();
+
+    @BeforeMethod
+    public void setUp() {
+        conversions.set(0);
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        ResponseCache cache = new ResponseCache(1024 * 1024, 1024, 4096, 100, 0);
+        Map<String, SchemaInfo> schemas = schemas("1", "1");
+
+        Assert.assertEquals(serve(cache, schemas, "a", "gzip", null, "body"), "a:body");
+        Assert.assertEquals(conversions.get(), 1);
+
+        HttpServletResponse response = mockResponse();
+        Assert.assertEquals(serve(cache, schemas, "a", "gzip", null, "body", response), "a:body");
+        Assert.assertEquals(conversions.get(), 1);
+        verify(response).setHeader(AdaptiveCompression.HEADER, "a");
+        verify(response).setContentLength(6);
+        // headers of the first request only aren't replayed
+        verify(response, never()).setHeader(eq("Content-Disposition"), anyString());
+        verify(response, never()).setHeader(eq("Set-Cookie"), anyString());
+
+        // any other body misses
+        Assert.assertEquals(serve(cache, schemas, "a", "gzip", null, "other"), "a:other");
+        Assert.assertEquals(conversions.get(), 2);
+
+        Map<String, Object> stats = cache.getStats();
+        Assert.assertEquals(stats.get("hits"), 1L);
+        Assert.assertEquals(stats.get("misses"), 2L);
+        Assert.assertEquals(stats.get("entries"), 2L);
+        Assert.assertEquals(stats.get("bytesSaved"), 6L);
+    }
+
+    @Test
+    public void testKeyedOnNegotiatedCoding() throws Exception {
+        ResponseCache cache = new ResponseCache(1024 * 1024, 1024, 4096, 100, 0);
+        Map<String, SchemaInfo> schemas = schemas("1", "1");
+
+        serve(cache, schemas, "a", "gzip, deflate", null, "body");
+        serve(cache, schemas, "a", "br;q=0.9, gzip", null, "body");
+        serve(cache, schemas, "a", "GZIP;q=1.0", null, "body");
+        Assert.assertEquals(conversions.get(), 1);
+
+        serve(cache, schemas, "a", "deflate", null, "body");
+        Assert.assertEquals(conversions.get(), 2);
+        serve(cache, schemas, "a", "br", null, "body");
+        serve(cache, schemas, "a", null, null, "body");
+        Assert.assertEquals(conversions.get(), 3);
+
+        // compressing filters leave no coding to negotiate
+        serve(cache, schemas, "a", "gzip", "snappy", "body");
+        serve(cache, schemas, "a", "deflate", "snappy", "body");
+        serve(cache, schemas, "a", null, "snappy", "body");
+        Assert.assertEquals(conversions.get(), 4);
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ResponseCache cache = new ResponseCache(1024 * 1024, 1024, 4096, 0, 0);
+        Map<String, SchemaInfo> schemas = schemas("1", "1");
+
+        serve(cache, schemas, "a", null, null, "body");
+        serve(cache, schemas, "b", null, null, "body");
+        Assert.assertEquals(conversions.get(), 2);
+        Assert.assertEquals(cache.getStats().get("offHeapBytes"), 12L);
+
+        // "a" depends on "b", so changing "b" drops both
+        Map<String, SchemaInfo> changed = schemas("1", "2");
+        cache.invalidate(schemas, changed);
+        Assert.assertEquals(cache.getStats().get("entries"), 0L);
+        Assert.assertEquals(cache.getStats().get("bytes"), 0L);
+
+        serve(cache, changed, "a", null, null, "body");
+        serve(cache, changed, "b", null, null, "body");
+        Assert.assertEquals(conversions.get(), 4);
+
+        cache.invalidate(changed, schemas("1", "2"));
+        Assert.assertEquals(cache.getStats().get("entries"), 2L);
+
+        Map<String, SchemaInfo> removed = schemas("2", "2");
+        removed.remove("b");
+        Assert.assertNull(ResponseCache.getVersion(removed, "a"));
+        cache.invalidate(changed, removed);
+        Assert.assertEquals(cache.getStats().get("entries"), 0L);
+    }
+
+    @Test
+    public void testTooLargeNotCached() throws Exception {
+        ResponseCache cache = new ResponseCache(1024 * 1024, 8, 8, 100, 0);
+        Map<String, SchemaInfo> schemas = schemas("1", "1");
+
+        // request body over maxBodySize
+        serve(cache, schemas, "a", null, null, "123456789");
+        serve(cache, schemas, "a", null, null, "123456789");
+        Assert.assertEquals(conversions.get(), 2);
+
+        // response over maxEntrySize
+        Assert.assertEquals(serve(cache, schemas, "a", null, null, "1234567"), "a:1234567");
+        serve(cache, schemas, "a", null, null, "1234567");
+        Assert.assertEquals(conversions.get(), 4);
+        Assert.assertEquals(cache.getStats().get("bypasses"), 4L);
+        Assert.assertEquals(cache.getStats().get("entries"), 0L);
+    }
+
+    /**
+     * @return "a" depending on "b", with the given sha1sums
+     */
+    private static Map<String, SchemaInfo> schemas(String a, String b) {
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        schemas.put("a", schema(a, "b"));
+        schemas.put("b", schema(b));
+        return schemas;
+    }
+
+    private static SchemaInfo schema(String sha1sum, String... dependencies) {
+        SchemaInfo schema = new SchemaInfo();
+        schema.setSha1sum(sha1sum);
+        schema.setDependencies(Arrays.asList(dependencies));
+        return schema;
+    }
+
+    private String serve(ResponseCache cache, Map<String, SchemaInfo> schemas, String id, String acceptEncoding,
+            String filters, String body) throws Exception {
+        return serve(cache, schemas, id, acceptEncoding, filters, body, mockResponse());
+    }
+
+    private String serve(ResponseCache cache, Map<String, SchemaInfo> schemas, final String id,
+            String acceptEncoding, String filters, String body, final HttpServletResponse response)
+            throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getServletPath()).thenReturn("/e");
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        Map<String, String[]> parameters = new HashMap<>();
+        parameters.put("f", new String[]{String.valueOf(filters)});
+        when(request.getParameterMap()).thenReturn(parameters);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseSpool spool = new ResponseSpool();
+        try {
+            cache.serve(request, response, out, id, ResponseCache.getVersion(schemas, id), filters,
+                    new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), spool,
+                    new ResponseCache.Conversion() {
+                        @Override
+                        public void convert(InputStream in, OutputStream out) throws Exception {
+                            conversions.incrementAndGet();
+                            when(response.getHeaderNames()).thenReturn(Arrays.asList(AdaptiveCompression.HEADER,
+                                    "Content-Disposition", "Set-Cookie"));
+                            when(response.getHeaders(AdaptiveCompression.HEADER))
+                                    .thenReturn(Collections.singleton(id));
+                            when(response.getHeaders("Content-Disposition"))
+                                    .thenReturn(Collections.singleton("attachment; filename=\"" + id + "-1.dat\""));
+                            when(response.getHeaders("Set-Cookie")).thenReturn(Collections.singleton("session=1"));
+                            out.write((id + ":").getBytes(StandardCharsets.UTF_8));
+                            ByteStreams.copy(in, out);
+                            out.close();
+                        }
+                    });
+        } finally {
+            spool.release();
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static HttpServletResponse mockResponse() {
+        return mock(HttpServletResponse.class);
+    }
+}
@@ -0,0 +1,156 @@
+package schema.registry;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ResponseSpoolTest {
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final int MEMORY_THRESHOLD = 4 * BUFFER_SIZE;
+
+    private File directory;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("spool").toFile();
+
+        Properties config = new Properties();
+        config.setProperty("spool.bufferSize", String.valueOf(BUFFER_SIZE));
+        config.setProperty("spool.maxPooledBuffers", "8");
+        config.setProperty("spool.memoryThreshold", String.valueOf(MEMORY_THRESHOLD));
+        config.setProperty("spool.maxSize", "100000");
+        config.setProperty("spool.directory", directory.getPath());
+        ResponseSpool.configure(config);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        ResponseSpool.configure(new Properties());
+        TestSchemas.delete(directory);
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        long spilled = ResponseSpool.getSpilled();
+        byte[] data = FilterStreamUtilTest.random(MEMORY_THRESHOLD);
+
+        ResponseSpool spool = write(data);
+        try {
+            Assert.assertEquals(ResponseSpool.getSpilled(), spilled);
+            Assert.assertEquals(directory.list().length, 0);
+            Assert.assertEquals(spool.getBuffers().length, 4);
+            Assert.assertEquals(read(spool), data);
+        } finally {
+            spool.release();
+        }
+
+        Assert.assertEquals(ResponseSpool.getPool().getPooled(), 4);
+    }
+
+    @Test
+    public void testSpillsPastMemoryThreshold() throws IOException {
+        long spilled = ResponseSpool.getSpilled();
+        byte[] data = FilterStreamUtilTest.random(MEMORY_THRESHOLD + 50001);
+
+        ResponseSpool spool = write(data);
+        try {
+            Assert.assertEquals(ResponseSpool.getSpilled(), spilled + 1);
+            Assert.assertEquals(directory.list().length, 1);
+            Assert.assertEquals(spool.size(), data.length);
+
+            // memory buffers first, then the file
+            ByteBuffer[] buffers = spool.getBuffers();
+            Assert.assertEquals(buffers.length, 4);
+            Assert.assertEquals(spool.getFileSize(), 50001);
+            Assert.assertEquals(spool.getFile().length(), 50001);
+            ByteArrayOutputStream gathered = new ByteArrayOutputStream();
+            for (ByteBuffer b : buffers) {
+                byte[] bytes = new byte[b.remaining()];
+                b.get(bytes);
+                gathered.write(bytes);
+            }
+            gathered.write(Files.readAllBytes(spool.getFile().toPath()));
+            Assert.assertEquals(gathered.toByteArray(), data);
+
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            spool.commit(response, out);
+            verify(response).setContentLength(data.length);
+            Assert.assertEquals(out.toByteArray(), data);
+        } finally {
+            spool.release();
+        }
+
+        // the file is deleted right away, no mapping keeps it
+        Assert.assertEquals(directory.list().length, 0);
+        Assert.assertEquals(ResponseSpool.getPool().getPooled(), 5);
+    }
+
+    @Test
+    public void testMaxSize() throws IOException {
+        ResponseSpool spool = new ResponseSpool();
+        try {
+            spool.write(new byte[99999]);
+            spool.write(1);
+            spool.write(1);
+            Assert.fail("spool is larger than spool.maxSize");
+        } catch (IOException ex) {
+            Assert.assertEquals(ex.getMessage(), "response is larger than 100000 bytes, retry with stream=true");
+            Assert.assertEquals(spool.size(), 100000);
+        } finally {
+            spool.release();
+        }
+
+        Assert.assertEquals(directory.list().length, 0);
+    }
+
+    @Test
+    public void testClosedAndReleased() throws IOException {
+        ResponseSpool spool = write(new byte[10]);
+        try {
+            spool.write(1);
+            Assert.fail("write after close");
+        } catch (IOException ex) {
+            Assert.assertEquals(ex.getMessage(), "stream is closed");
+        }
+
+        spool.release();
+        spool.release();
+        try {
+            spool.writeTo(new ByteArrayOutputStream());
+            Assert.fail("write out after release");
+        } catch (IOException ex) {
+            Assert.assertEquals(ex.getMessage(), "spool is released");
+        }
+    }
+
+    private static ResponseSpool write(byte[] data) throws IOException {
+        ResponseSpool spool = new ResponseSpool();
+        for (int i = 0; i < data.length; i += 999) {
+            spool.write(data, i, Math.min(999, data.length - i));
+        }
+        spool.close();
+
+        return spool;
+    }
+
+    private static byte[] read(ResponseSpool spool) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        spool.writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,132 @@
+package schema.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class SchemaIndexTest {
+
+    private SchemaIndex index;
+
+    @BeforeClass
+    public void setUp() {
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        for (int i = 0; i < 30; ++i) {
+            SchemaInfo schema = new SchemaInfo();
+            schema.setType(i % 3 == 0 ? "avro" : "protobuf");
+            schema.setCustodian(i % 2 == 0 ? "even" : "odd");
+            schema.setMessages(new TreeSet<>(Collections.singleton("M" + i % 5)));
+            if (i % 10 == 0) {
+                schema.setDefaultMessage("Default");
+            }
+            if (i > 0 && i % 4 == 0) {
+                schema.setDependencies(Arrays.asList(id(0), id(i - 1)));
+            }
+            schemas.put(id(i), schema);
+        }
+
+        index = SchemaIndex.build(schemas);
+    }
+
+    @Test
+    public void testSingleCondition() {
+        Assert.assertEquals(index.size(), 30);
+        Assert.assertEquals(query(null, null, null, null, null), range(0, 30, 1));
+        Assert.assertEquals(query("avro", null, null, null, null), range(0, 30, 3));
+        Assert.assertEquals(query(null, "M2", null, null, null), range(2, 30, 5));
+        Assert.assertEquals(query(null, "Default", null, null, null), range(0, 30, 10));
+        Assert.assertEquals(query(null, null, null, "odd", null), range(1, 30, 2));
+        Assert.assertEquals(query(null, null, null, null, id(0)), range(4, 30, 4));
+        Assert.assertEquals(query(null, null, null, null, id(7)), Collections.singletonList(id(8)));
+        Assert.assertEquals(query(null, null, "s-1", null, null), range(10, 20, 1));
+        Assert.assertEquals(query("thrift", null, null, null, null), Collections.emptyList());
+        Assert.assertEquals(query(null, null, "t", null, null), Collections.emptyList());
+    }
+
+    @Test
+    public void testConditionsAreCombined() {
+        // avro: 0, 3, 6, ... even: 0, 2, 4, ... M0: 0, 5, 10, ...
+        Assert.assertEquals(query("avro", null, null, "even", null), range(0, 30, 6));
+        Assert.assertEquals(query("avro", "M0", null, "even", null), Arrays.asList(id(0)));
+        Assert.assertEquals(query("avro", null, "s-1", "even", null), Arrays.asList(id(12), id(18)));
+        Assert.assertEquals(query("avro", null, null, null, id(0)), Arrays.asList(id(12), id(24)));
+    }
+
+    @Test
+    public void testPagination() {
+        List<String> all = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            SchemaIndex.Page page = index.query("protobuf", null, null, null, null, 7, cursor);
+            Assert.assertTrue(page.getIds().size() <= 7);
+            all.addAll(page.getIds());
+            cursor = page.getNext();
+            ++pages;
+        } while (cursor != null);
+
+        // 20 protobuf schemas in pages of 7, 7 and 6
+        Assert.assertEquals(pages, 3);
+        List<String> expected = new ArrayList<>(range(0, 30, 1));
+        expected.removeAll(range(0, 30, 3));
+        Assert.assertEquals(all, expected);
+
+        // an exactly full last page has no next either
+        SchemaIndex.Page full = index.query(null, null, null, null, null, 30, null);
+        Assert.assertEquals(full.getIds().size(), 30);
+        Assert.assertNull(full.getNext());
+    }
+
+    @Test
+    public void testCursorSurvivesRemovedId() {
+        SchemaIndex.Page first = index.query(null, null, null, null, null, 5, null);
+        Assert.assertEquals(first.getIds(), range(0, 5, 1));
+
+        // the cursor names the last returned ID, not a position
+        Map<String, SchemaInfo> schemas = new HashMap<>();
+        for (int i = 0; i < 30; ++i) {
+            if (i != 4 && i != 5) {
+                SchemaInfo schema = new SchemaInfo();
+                schema.setType("avro");
+                schemas.put(id(i), schema);
+            }
+        }
+
+        SchemaIndex.Page next = SchemaIndex.build(schemas).query(null, null, null, null, null, 3, first.getNext());
+        Assert.assertEquals(next.getIds(), range(6, 9, 1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "bad cursor .*")
+    public void testBadCursor() {
+        index.query(null, null, null, null, null, 5, "not*base64");
+    }
+
+    private List<String> query(String type, String message, String prefix, String custodian, String dependsOn) {
+        SchemaIndex.Page page = index.query(type, message, prefix, custodian, dependsOn, 100, null);
+        Assert.assertNull(page.getNext());
+        return page.getIds();
+    }
+
+    /**
+     * Zero padded so the ID order is the numeric order.
+     */
+    private static String id(int i) {
+        return String.format("s-%02d", i);
+    }
+
+    private static List<String> range(int from, int to, int step) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i += step) {
+            ids.add(id(i));
+        }
+        return ids;
+    }
+}
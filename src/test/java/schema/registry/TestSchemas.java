@@ -0,0 +1,59 @@
+package schema.registry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * Temporary schema list and root directory of Avro schemas, they need no
+ * generated classes unlike protobuf and thrift.
+ */
+public final class TestSchemas {
+
+    private TestSchemas() {
+    }
+
+    /**
+     * @param avroSchemas schema text keyed by schema ID
+     * @return root directory with "schemas.json"
+     */
+    public static File createRoot(Map<String, String> avroSchemas) throws IOException {
+        File root = Files.createTempDirectory("schemas").toFile();
+
+        StringBuilder list = new StringBuilder("{");
+        for (Map.Entry<String, String> e : avroSchemas.entrySet()) {
+            File dir = new File(root, e.getKey());
+            if (!dir.mkdir()) {
+                throw new IOException("fail to create " + dir);
+            }
+            Files.write(new File(dir, "schema.avsc").toPath(), e.getValue().getBytes(StandardCharsets.UTF_8));
+
+            list.append(list.length() == 1 ? "" : ",")
+                    .append('"').append(e.getKey()).append("\":{\"type\":\"avro\",\"filename\":\"schema.avsc\"}");
+        }
+        list.append('}');
+        Files.write(new File(root, "schemas.json").toPath(), list.toString().getBytes(StandardCharsets.UTF_8));
+
+        return root;
+    }
+
+    public static CentralSchemaRegistry createRegistry(File root) throws IOException {
+        try {
+            return new CentralSchemaRegistry(new File(root, "schemas.json"), root);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,106 @@
+package schema.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.hash.Hashing;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class WireHeaderTest {
+
+    /**
+     * Two IDs whose derived numbers, murmur3_32 & Integer.MAX_VALUE, collide.
+     */
+    private static final String FIRST = "schema-3894";
+    private static final String SECOND = "schema-5191";
+
+    @Test
+    public void testIdRoundTrip() throws IOException {
+        SchemaInfo schema = new SchemaInfo();
+        schema.setNumber(0x12345678);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WireHeader.write(out, schema, "id");
+        WireHeader.writeLength(out, 300);
+        Assert.assertEquals(out.toByteArray(), new byte[]{0x00, 0x12, 0x34, 0x56, 0x78, 0, 0, 1, 44});
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        WireHeader header = WireHeader.read(in);
+        Assert.assertFalse(header.isFingerprint());
+        Assert.assertEquals(header.getValue(), 0x12345678);
+        Assert.assertEquals(WireHeader.readLength(in), 300);
+        Assert.assertNull(WireHeader.read(in));
+    }
+
+    @Test
+    public void testFingerprintRoundTrip() throws IOException {
+        SchemaInfo schema = new SchemaInfo();
+        schema.setFingerprint(0x8877665544332211L);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WireHeader.write(out, schema, "fingerprint");
+        Assert.assertEquals(out.toByteArray(), new byte[]{(byte) 0xC3, 0x01,
+                0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88});
+
+        WireHeader header = WireHeader.read(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertTrue(header.isFingerprint());
+        Assert.assertEquals(header.getValue(), 0x8877665544332211L);
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void testTruncated() throws IOException {
+        WireHeader.read(new ByteArrayInputStream(new byte[]{0x00, 0x12, 0x34}));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownMagic() throws IOException {
+        WireHeader.read(new ByteArrayInputStream(new byte[]{0x7F, 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void testDerivedNumberCollision() throws IOException {
+        Assert.assertEquals(derivedNumber(FIRST), derivedNumber(SECOND));
+
+        Map<String, String> schemas = new LinkedHashMap<>();
+        schemas.put(FIRST, "{\"type\":\"record\",\"name\":\"A\",\"fields\":[{\"name\":\"a\",\"type\":\"int\"}]}");
+        schemas.put(SECOND, "{\"type\":\"record\",\"name\":\"B\",\"fields\":[{\"name\":\"b\",\"type\":\"string\"}]}");
+        File root = TestSchemas.createRoot(schemas);
+        try {
+            // the collision used to abort the whole load
+            CentralSchemaRegistry registry = TestSchemas.createRegistry(root);
+            int number = derivedNumber(FIRST);
+            Assert.assertEquals(registry.getIdByNumber(number), FIRST);
+            Assert.assertEquals(registry.getIdByNumber(number + 1), SECOND);
+
+            // delimited messages of both schemas decode by header
+            Map<String, String[]> parameters = new HashMap<>();
+            parameters.put("header", new String[]{"id"});
+            parameters.put("header.delimited", new String[]{"true"});
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            registry.serialize(FIRST, null, new ByteArrayInputStream("{\"a\":7}".getBytes(StandardCharsets.UTF_8)),
+                    stream, parameters);
+            registry.serialize(SECOND, null, new ByteArrayInputStream("{\"b\":\"x\"}".getBytes(StandardCharsets.UTF_8)),
+                    stream, parameters);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            registry.deserializeWithHeader(null, new ByteArrayInputStream(stream.toByteArray()), out, parameters);
+            Assert.assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8), "{\"a\":7}\n{\"b\":\"x\"}\n");
+        } finally {
+            TestSchemas.delete(root);
+        }
+    }
+
+    private static int derivedNumber(String id) {
+        return Hashing.murmur3_32().hashString(id, StandardCharsets.UTF_8).asInt() & Integer.MAX_VALUE;
+    }
+}
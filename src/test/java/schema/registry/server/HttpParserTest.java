@@ -0,0 +1,154 @@
+package schema.registry.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import schema.registry.BufferPool;
+
+public class HttpParserTest {
+
+    private static final long MAX_REQUEST_SIZE = 1000;
+
+    @Test
+    public void testPipelined() throws Exception {
+        HttpParser parser = parser();
+        ByteBuffer in = bytes("GET /a?x=1&x=2 HTTP/1.1\r\nHost: h\r\n\r\n"
+                + "POST /b HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello"
+                + "\r\nGET http://h/c HTTP/1.0\r\n\r\n");
+
+        HttpRequest a = parser.parse(in);
+        Assert.assertEquals(a.getMethod(), "GET");
+        Assert.assertEquals(a.getPath(), "/a");
+        Assert.assertEquals(a.getParameterMap().get("x"), new String[]{"1", "2"});
+        Assert.assertEquals(a.getHeader("HOST"), "h");
+        Assert.assertEquals(a.getBodySize(), 0);
+
+        HttpRequest b = parser.parse(in);
+        Assert.assertEquals(b.getMethod(), "POST");
+        Assert.assertEquals(body(b), "hello");
+
+        // an empty line before the request line is skipped
+        HttpRequest c = parser.parse(in);
+        Assert.assertEquals(c.getUri(), "/c");
+        Assert.assertFalse(c.isKeepAlive());
+        Assert.assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void testByteByByte() throws Exception {
+        HttpParser parser = parser();
+        ByteBuffer in = bytes("PUT /a HTTP/1.1\r\nContent-Length: 300\r\nExpect: 100-continue\r\n\r\n"
+                + repeat('x', 300));
+
+        HttpRequest request = null;
+        boolean continued = false;
+        for (int i = 0; i < in.limit(); ++i) {
+            ByteBuffer b = in.duplicate();
+            b.position(i).limit(i + 1);
+            Assert.assertNull(request);
+            request = parser.parse(b);
+            continued |= parser.takeContinue();
+        }
+
+        Assert.assertTrue(continued);
+        Assert.assertEquals(body(request), repeat('x', 300));
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        HttpParser parser = parser();
+        ByteBuffer in = bytes("POST /a HTTP/1.1\r\nTransfer-Encoding: Chunked\r\n\r\n"
+                + "5;name=value\r\nhello\r\n"
+                + "A\r\n, chunked!\r\n"
+                + "0\r\nTrailer: x\r\n\r\n"
+                + "GET /b HTTP/1.1\r\n\r\n");
+
+        HttpRequest a = parser.parse(in);
+        Assert.assertEquals(body(a), "hello, chunked!");
+        Assert.assertEquals(a.getBodySize(), 15);
+        Assert.assertEquals(parser.parse(in).getUri(), "/b");
+    }
+
+    @Test
+    public void testChunkedLimits() throws Exception {
+        // the body is limited as a whole, not chunk by chunk
+        assertRejected(413, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "1F4\r\n" + repeat('x', 500) + "\r\n1F5\r\n");
+        // and a huge size doesn't overflow the check
+        assertRejected(413, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "1\r\nx\r\n7FFFFFFFFFFFFFFF\r\n");
+        assertRejected(400, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n");
+        assertRejected(400, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n1\r\nxy\r\n");
+    }
+
+    @Test
+    public void testTransferEncoding() throws Exception {
+        // chunked only, not as the last of other codings
+        assertRejected(501, "POST / HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n");
+        assertRejected(501, "POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n"
+                + "Transfer-Encoding: chunked\r\n\r\n");
+        assertRejected(501, "POST / HTTP/1.1\r\nTransfer-Encoding: xchunked\r\n\r\n");
+
+        assertRejected(400, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nContent-Length: 5\r\n\r\n");
+        assertRejected(400, "POST / HTTP/1.1\r\nContent-Length: 0\r\nTransfer-Encoding: chunked\r\n\r\n");
+    }
+
+    @Test
+    public void testContentLength() throws Exception {
+        // repeated, but the same
+        HttpRequest request = parser().parse(bytes("POST / HTTP/1.1\r\nContent-Length: 3\r\n"
+                + "Content-Length: 3\r\n\r\nabc"));
+        Assert.assertEquals(body(request), "abc");
+
+        assertRejected(400, "POST / HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 4\r\n\r\nabcd");
+        assertRejected(400, "POST / HTTP/1.1\r\nContent-Length: 3, 4\r\n\r\nabcd");
+        assertRejected(400, "POST / HTTP/1.1\r\nContent-Length: 3,\r\n\r\nabc");
+        assertRejected(400, "POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        assertRejected(400, "POST / HTTP/1.1\r\nContent-Length: abc\r\n\r\n");
+        assertRejected(413, "POST / HTTP/1.1\r\nContent-Length: 1001\r\n\r\n");
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        assertRejected(400, "GET /a\r\n\r\n");
+        assertRejected(400, "GET a HTTP/1.1\r\n\r\n");
+        assertRejected(505, "GET /a HTTP/2.0\r\n\r\n");
+        assertRejected(400, "GET /a HTTP/1.1\r\n folded\r\n\r\n");
+        assertRejected(400, "GET /a HTTP/1.1\r\nno colon\r\n\r\n");
+        assertRejected(431, "GET /a HTTP/1.1\r\nX: " + repeat('x', 200) + "\r\n\r\n");
+    }
+
+    private static HttpParser parser() {
+        return new HttpParser(new BufferPool(64, 4), 200, MAX_REQUEST_SIZE);
+    }
+
+    private static void assertRejected(int status, String request) {
+        try {
+            parser().parse(bytes(request));
+            Assert.fail("accepted " + request);
+        } catch (HttpParser.ParseException ex) {
+            Assert.assertEquals(ex.getStatus(), status, ex.getMessage());
+        }
+    }
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String body(HttpRequest request) throws IOException {
+        return new String(ByteStreams.toByteArray(request.getInputStream()), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; ++i) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
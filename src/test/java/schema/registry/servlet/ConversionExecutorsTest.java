@@ -0,0 +1,186 @@
+package schema.registry.servlet;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mockito.ArgumentCaptor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import schema.registry.Bulkheads;
+import schema.registry.SchemaInfo;
+import schema.registry.SchemaRegistry;
+
+public class ConversionExecutorsTest {
+
+    @Test
+    public void testTimeoutCancelsConversion() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        AsyncContext ac = mock(AsyncContext.class);
+        when(request.getContentLength()).thenReturn(10);
+        when(request.getServletContext()).thenReturn(mock(ServletContext.class));
+        when(request.startAsync(any(ServletRequest.class), any(ServletResponse.class))).thenReturn(ac);
+        when(ac.getRequest()).thenReturn(request);
+        when(ac.getResponse()).thenReturn(response);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final AtomicBoolean lateWriteFailed = new AtomicBoolean();
+
+        ConversionExecutors executors = new ConversionExecutors(new Properties());
+        try {
+            executors.dispatch(request, response, new ConversionExecutors.Conversion() {
+                @Override
+                public void process(HttpServletRequest request, HttpServletResponse response)
+                        throws ServletException, IOException {
+                    try {
+                        started.countDown();
+                        Thread.sleep(10000);
+                    } catch (InterruptedException ex) {
+                        interrupted.set(true);
+                    }
+
+                    try {
+                        response.setStatus(HttpServletResponse.SC_OK);
+                        response.getOutputStream().write("late".getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException ex) {
+                        lateWriteFailed.set(true);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+            verify(ac).addListener(listener.capture());
+            listener.getValue().onTimeout(new AsyncEvent(ac, request, response));
+
+            Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+            Assert.assertTrue(interrupted.get(), "conversion isn't cancelled");
+            Assert.assertTrue(lateWriteFailed.get(), "late write isn't rejected");
+
+            verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+            Assert.assertEquals(new String(body.toByteArray(), StandardCharsets.UTF_8), "conversion timed out\r\n");
+
+            // the worker has returned, only the timeout handler completed
+            executors.getSmallExecutor().shutdown();
+            Assert.assertTrue(executors.getSmallExecutor().awaitTermination(5, TimeUnit.SECONDS));
+            verify(ac, times(1)).complete();
+            Assert.assertEquals(executors.getTimedOut(), 1);
+        } finally {
+            executors.shutdown();
+        }
+    }
+
+    @Test
+    public void testBulkheadRejectsBeforeQueueing() throws Exception {
+        SchemaInfo schema = new SchemaInfo();
+        schema.setType("avro");
+        schema.setMaxConcurrency(1);
+        SchemaRegistry registry = mock(SchemaRegistry.class);
+        when(registry.getSchemas()).thenReturn(Collections.singletonMap("a", schema));
+
+        Properties config = new Properties();
+        config.setProperty("retryAfter", "2");
+        Bulkheads bulkheads = new Bulkheads(config);
+        ServletContext sc = mock(ServletContext.class);
+        when(sc.getAttribute(Bulkheads.ATTRIBUTE)).thenReturn(bulkheads);
+        when(sc.getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY)).thenReturn(registry);
+
+        // the first conversion holds the only permit until it's let go
+        final CountDownLatch release = new CountDownLatch(1);
+        HttpServletRequest first = mockRequest(sc);
+        ConversionExecutors executors = new ConversionExecutors(new Properties());
+        try {
+            executors.dispatch(first, mock(HttpServletResponse.class), "a", new ConversionExecutors.Conversion() {
+                @Override
+                public void process(HttpServletRequest request, HttpServletResponse response) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            verify(first).setAttribute(eq(ConversionExecutors.PERMIT_ATTRIBUTE), any(Bulkheads.Permit.class));
+
+            HttpServletRequest second = mockRequest(sc);
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+            });
+            executors.dispatch(second, response, "a", new ConversionExecutors.Conversion() {
+                @Override
+                public void process(HttpServletRequest request, HttpServletResponse response) {
+                    Assert.fail("rejected request is converted");
+                }
+            });
+
+            verify(second, never()).startAsync(any(ServletRequest.class), any(ServletResponse.class));
+            verify(response).setStatus(429);
+            verify(response).setHeader("Retry-After", "2");
+            Assert.assertEquals(new String(body.toByteArray(), StandardCharsets.UTF_8),
+                    "too many requests for schema a\r\n");
+
+            release.countDown();
+            executors.getSmallExecutor().shutdown();
+            Assert.assertTrue(executors.getSmallExecutor().awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertEquals(bulkheads.getSchemaStats().get("a").getInFlight(), 0);
+        } finally {
+            executors.shutdown();
+        }
+    }
+
+    private static HttpServletRequest mockRequest(ServletContext sc) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        AsyncContext ac = mock(AsyncContext.class);
+        when(request.getContentLength()).thenReturn(10);
+        when(request.getServletContext()).thenReturn(sc);
+        when(request.startAsync(any(ServletRequest.class), any(ServletResponse.class))).thenReturn(ac);
+        when(ac.getRequest()).thenReturn(request);
+        when(ac.getResponse()).thenReturn(mock(HttpServletResponse.class));
+        return request;
+    }
+}
@@ -0,0 +1,104 @@
+package schema.registry.servlet;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import schema.registry.CentralSchemaRegistry;
+import schema.registry.SchemaCatalog;
+import schema.registry.TestSchemas;
+
+public class SchemaInfoServletTest {
+
+    private File root;
+    private CentralSchemaRegistry registry;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        root = TestSchemas.createRoot(Collections.singletonMap("counter", "{\"type\":\"record\","
+                + "\"name\":\"Counter\",\"fields\":[{\"name\":\"n\",\"type\":\"long\"}]}"));
+        registry = TestSchemas.createRegistry(root);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        TestSchemas.delete(root);
+    }
+
+    @Test
+    public void testEtagPerContentCoding() throws Exception {
+        SchemaCatalog.Snapshot snapshot = registry.getCatalog().get("counter");
+        Assert.assertNotEquals(snapshot.getGzippedEtag(), snapshot.getEtag());
+
+        HttpServletResponse identity = mockResponse();
+        ByteArrayOutputStream identityBody = get(null, null, identity);
+        verify(identity).setHeader("ETag", snapshot.getEtag());
+        verify(identity).setHeader("Vary", "Accept-Encoding");
+        verify(identity, never()).setHeader("Content-Encoding", "gzip");
+        Assert.assertEquals(identityBody.toByteArray(), snapshot.getBytes());
+
+        HttpServletResponse gzipped = mockResponse();
+        ByteArrayOutputStream gzippedBody = get("gzip", null, gzipped);
+        verify(gzipped).setHeader("ETag", snapshot.getGzippedEtag());
+        verify(gzipped).setHeader("Vary", "Accept-Encoding");
+        verify(gzipped).setHeader("Content-Encoding", "gzip");
+        Assert.assertEquals(ByteStreams.toByteArray(new GZIPInputStream(
+                new ByteArrayInputStream(gzippedBody.toByteArray()))), snapshot.getBytes());
+
+        // a validator of one coding doesn't validate the other
+        HttpServletResponse mixed = mockResponse();
+        Assert.assertEquals(get("gzip", snapshot.getEtag(), mixed).toByteArray(), snapshot.getGzipped());
+        verify(mixed, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+        HttpServletResponse notModified = mockResponse();
+        Assert.assertEquals(get("gzip", snapshot.getGzippedEtag(), notModified).size(), 0);
+        verify(notModified).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
+    private ByteArrayOutputStream get(String acceptEncoding, String ifNoneMatch, HttpServletResponse response)
+            throws ServletException, IOException {
+        ServletContext sc = mock(ServletContext.class);
+        when(sc.getAttribute(SchemaRegistryServletContextListener.SCHEMA_REGISTRY)).thenReturn(registry);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getServletContext()).thenReturn(sc);
+        when(request.getPathInfo()).thenReturn("/counter");
+        when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+        when(request.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        new SchemaInfoServlet().doGet(request, response);
+        return body;
+    }
+
+    private static HttpServletResponse mockResponse() {
+        return mock(HttpServletResponse.class);
+    }
+}